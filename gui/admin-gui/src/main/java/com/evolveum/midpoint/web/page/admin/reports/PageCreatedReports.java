@@ -110,6 +110,9 @@ public class PageCreatedReports extends PageAdmin {
 
     private static final Map<FileFormatTypeType, String> REPORT_EXPORT_TYPE_MAP = new HashMap<>();
 
+    private static final String COMPRESSED_FILE_SUFFIX = ".gz";
+    private static final String COMPRESSED_CONTENT_TYPE = "application/gzip";
+
     private final IModel<ReportDeleteDialogDto> deleteModel = new Model<>();
 
     private ReportDataType currentReport;
@@ -588,7 +591,13 @@ public class PageCreatedReports extends PageAdmin {
             return null;
         }
 
-        String contentType = REPORT_EXPORT_TYPE_MAP.get(report.getFileFormat());
+        String contentType;
+        if (StringUtils.endsWith(report.getFilePath(), COMPRESSED_FILE_SUFFIX)) {
+            // E.g. compressed activity reports (.csv.gz); the content is not directly readable as CSV.
+            contentType = COMPRESSED_CONTENT_TYPE;
+        } else {
+            contentType = REPORT_EXPORT_TYPE_MAP.get(report.getFileFormat());
+        }
         if (StringUtils.isEmpty(contentType)) {
             contentType = "multipart/mixed; charset=UTF-8";
         }
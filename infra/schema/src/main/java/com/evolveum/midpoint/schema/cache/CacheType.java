@@ -16,6 +16,8 @@ public enum CacheType {
     GLOBAL_REPO_OBJECT_CACHE, GLOBAL_REPO_VERSION_CACHE, GLOBAL_REPO_QUERY_CACHE,
     LOCAL_FOCUS_CONSTRAINT_CHECKER_CACHE, LOCAL_SHADOW_CONSTRAINT_CHECKER_CACHE,
     LOCAL_ASSOCIATION_TARGET_SEARCH_EVALUATOR_CACHE,
-    LOCAL_DEFAULT_SEARCH_EVALUATOR_CACHE
+    LOCAL_DEFAULT_SEARCH_EVALUATOR_CACHE,
+    GLOBAL_SEARCH_EXPRESSION_EVALUATOR_CACHE,
+    GLOBAL_ABSENT_SHADOW_IDENTIFIERS_CACHE
 
 }
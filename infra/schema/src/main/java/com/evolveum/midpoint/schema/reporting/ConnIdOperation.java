@@ -15,6 +15,7 @@ import com.evolveum.midpoint.schema.result.OperationResultStatus;
 import com.evolveum.midpoint.schema.statistics.ProvisioningOperation;
 
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ConnIdOperationRecordType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ConnectorPoolStatisticsType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectReferenceType;
 
 import com.evolveum.midpoint.xml.ns._public.common.common_3.OperationResultStatusType;
@@ -40,6 +41,9 @@ public class ConnIdOperation {
     private OperationResultStatus status;
     private String message;
 
+    /** Information on obtaining the connector instance from the pool (if applicable). */
+    private ConnectorPoolStatisticsType connectorPoolStatistics;
+
     private ConnIdOperation(
             @NotNull String identifier,
             @NotNull ProvisioningOperation operation,
@@ -125,6 +129,14 @@ public class ConnIdOperation {
         this.message = message;
     }
 
+    public ConnectorPoolStatisticsType getConnectorPoolStatistics() {
+        return connectorPoolStatistics;
+    }
+
+    public void setConnectorPoolStatistics(ConnectorPoolStatisticsType connectorPoolStatistics) {
+        this.connectorPoolStatistics = connectorPoolStatistics;
+    }
+
     @Override
     public String toString() {
         return "ConnIdOperation{" +
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.schema.statistics;
+
+import static com.evolveum.midpoint.schema.statistics.Formatting.Alignment.LEFT;
+import static com.evolveum.midpoint.schema.statistics.Formatting.Alignment.RIGHT;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Prints connector pool statistics (part of provisioning statistics).
+ */
+public class ConnectorPoolStatisticsPrinter extends AbstractStatisticsPrinter<ProvisioningStatisticsType> {
+
+    public ConnectorPoolStatisticsPrinter(ProvisioningStatisticsType information, Options options) {
+        super(information, options, null, null);
+    }
+
+    @Override
+    public void prepare() {
+        createData();
+        createFormatting();
+    }
+
+    private void createData() {
+        initData();
+
+        List<ProvisioningStatisticsEntryType> entries = new ArrayList<>(information.getEntry());
+        entries.sort(ProvisioningStatisticsTypeUtil.createEntryComparator());
+
+        for (ProvisioningStatisticsEntryType entry : entries) {
+            ConnectorPoolStatisticsType pool = entry.getConnectorPool();
+            if (pool == null) {
+                continue;
+            }
+            Data.Record record = data.createRecord();
+            record.add(ProvisioningStatisticsTypeUtil.getResourceName(entry));
+            record.add(ProvisioningStatisticsTypeUtil.getObjectClassLocalName(entry));
+            record.add(pool.getBorrowCount());
+            record.add(pool.getWaitCount());
+            record.add(pool.getTimeoutCount());
+            record.add(pool.getTotalWaitTime());
+            record.add(pool.getMaxWaitTime());
+            record.add(avg(pool.getTotalWaitTime(), pool.getWaitCount()));
+            record.add(pool.getCreatedCount());
+            record.add(pool.getMaxActive());
+            record.add(pool.getLastActive());
+            record.add(pool.getLastSize());
+        }
+    }
+
+    private void createFormatting() {
+        initFormatting();
+        addColumn("Resource", LEFT, formatString());
+        addColumn("Object class", LEFT, formatString());
+        addColumn("Borrows", RIGHT, formatInt());
+        addColumn("Waits", RIGHT, formatInt());
+        addColumn("Timeouts", RIGHT, formatInt());
+        addColumn("Wait time (ms)", RIGHT, formatInt());
+        addColumn("Max", RIGHT, formatInt());
+        addColumn("Avg", RIGHT, formatFloat1());
+        addColumn("Created", RIGHT, formatInt());
+        addColumn("Max active", RIGHT, formatInt());
+        addColumn("Last active", RIGHT, formatInt());
+        addColumn("Last size", RIGHT, formatInt());
+    }
+}
@@ -71,6 +71,9 @@ public class ProvisioningStatistics {
                     .totalTime(operation.getNetRunningTime())
                     .minTime(operation.getNetRunningTime())
                     .maxTime(operation.getNetRunningTime());
+        if (operation.getConnectorPoolStatistics() != null) {
+            delta.getEntry().get(0).setConnectorPool(operation.getConnectorPoolStatistics().clone());
+        }
 
         addTo(this.value, delta);
     }
@@ -123,6 +126,33 @@ public class ProvisioningStatistics {
     /** Adds two "part information" */
     private static void addEntryInformation(ProvisioningStatisticsEntryType sum, ProvisioningStatisticsEntryType delta) {
         addOperations(sum.getOperation(), delta.getOperation());
+        addConnectorPool(sum, delta.getConnectorPool());
+    }
+
+    /** Counters and times are summed up; "max" values are maximized; "last" values are taken from the delta. */
+    private static void addConnectorPool(ProvisioningStatisticsEntryType sumEntry, ConnectorPoolStatisticsType delta) {
+        if (delta == null) {
+            return;
+        }
+        ConnectorPoolStatisticsType sum = sumEntry.getConnectorPool();
+        if (sum == null) {
+            sumEntry.setConnectorPool(delta.clone());
+            return;
+        }
+        sum.setBorrowCount(or0(sum.getBorrowCount()) + or0(delta.getBorrowCount()));
+        sum.setWaitCount(or0(sum.getWaitCount()) + or0(delta.getWaitCount()));
+        sum.setTimeoutCount(or0(sum.getTimeoutCount()) + or0(delta.getTimeoutCount()));
+        sum.setTotalWaitTime(or0(sum.getTotalWaitTime()) + or0(delta.getTotalWaitTime()));
+        sum.setMaxWaitTime(Math.max(or0(sum.getMaxWaitTime()), or0(delta.getMaxWaitTime())));
+        sum.setCreatedCount(or0(sum.getCreatedCount()) + or0(delta.getCreatedCount()));
+        sum.setCreationTime(or0(sum.getCreationTime()) + or0(delta.getCreationTime()));
+        sum.setMaxActive(Math.max(or0(sum.getMaxActive()), or0(delta.getMaxActive())));
+        if (delta.getLastActive() != null) {
+            sum.setLastActive(delta.getLastActive());
+        }
+        if (delta.getLastSize() != null) {
+            sum.setLastSize(delta.getLastSize());
+        }
     }
 
     private static void addOperations(List<ProvisioningStatisticsOperationEntryType> sumOperations, List<ProvisioningStatisticsOperationEntryType> deltaOperations) {
@@ -159,6 +189,10 @@ public class ProvisioningStatistics {
     /** Formats the information. */
     public static String format(ProvisioningStatisticsType source, AbstractStatisticsPrinter.Options options) {
         ProvisioningStatisticsType information = source != null ? source : new ProvisioningStatisticsType();
-        return new ProvisioningStatisticsPrinter(information, options).print();
+        String operations = new ProvisioningStatisticsPrinter(information, options).print();
+        if (information.getEntry().stream().noneMatch(entry -> entry.getConnectorPool() != null)) {
+            return operations;
+        }
+        return operations + "\nConnector pools:\n" + new ConnectorPoolStatisticsPrinter(information, options).print();
     }
 }
@@ -32,6 +32,9 @@ import static java.util.Collections.singleton;
 
 public class ActivityItemProcessingStatisticsUtil {
 
+    /** How many records of worker threads count changes are kept. */
+    public static final int MAX_WORKER_THREADS_RECORDS = 100;
+
     @SuppressWarnings("unused")
     public static int getItemsProcessedWithFailure(ActivityItemProcessingStatisticsType info) {
         if (info != null) {
@@ -281,6 +284,24 @@ public class ActivityItemProcessingStatisticsUtil {
         addProcessed(sum.getProcessed(), delta.getProcessed());
         addCurrent(sum.getCurrent(), delta.getCurrent());
         addRunRecords(sum, delta);
+        addWorkerThreadsRecords(sum, delta);
+    }
+
+    /** Merges the records of worker threads count changes, keeping only the most recent ones. */
+    private static void addWorkerThreadsRecords(@NotNull ActivityItemProcessingStatisticsType sum,
+            @NotNull ActivityItemProcessingStatisticsType delta) {
+        if (delta.getWorkerThreads().isEmpty()) {
+            return;
+        }
+        List<WorkerThreadsRecordType> records = new ArrayList<>(sum.getWorkerThreads());
+        records.addAll(delta.getWorkerThreads());
+        records.sort(Comparator.comparing(r -> XmlTypeConverter.toMillisNullable(r.getTimestamp()),
+                Comparator.nullsFirst(Comparator.naturalOrder())));
+        List<WorkerThreadsRecordType> recent =
+                records.subList(Math.max(0, records.size() - MAX_WORKER_THREADS_RECORDS), records.size());
+        List<WorkerThreadsRecordType> recentCloned = CloneUtil.cloneCollectionMembersWithoutIds(recent);
+        sum.getWorkerThreads().clear();
+        sum.getWorkerThreads().addAll(recentCloned);
     }
 
     private static void addRunRecords(@NotNull ActivityItemProcessingStatisticsType sum,
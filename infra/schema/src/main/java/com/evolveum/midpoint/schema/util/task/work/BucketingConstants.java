@@ -22,4 +22,6 @@ public class BucketingConstants {
     public static final String GET_WORK_BUCKET_NO_MORE_BUCKETS_WAIT_TIME_ELAPSED = "getWorkBucket.NoMoreBucketsWaitTimeElapsed";
     public static final String COMPLETE_WORK_BUCKET = "completeWorkBucket";
     public static final String RELEASE_WORK_BUCKET = "releaseWorkBucket";
+    public static final String UPDATE_BUCKET_WATERMARK = "updateBucketWatermark";
+    public static final String SPLIT_WORK_BUCKET = "splitWorkBucket";
 }
@@ -7,6 +7,7 @@
 
 package com.evolveum.midpoint.model.common;
 
+import com.evolveum.midpoint.model.common.mapping.MappingPrototypeCache;
 import com.evolveum.midpoint.model.common.mapping.metadata.MetadataMappingEvaluator;
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.crypto.Protector;
@@ -53,4 +54,5 @@ public class ModelCommonBeans {
     @Autowired public MetadataMappingEvaluator metadataMappingEvaluator; // FIXME
     @Autowired public SecurityContextManager securityContextManager; // in order to get c:actor variable
     @Autowired public Protector protector;
+    @Autowired public MappingPrototypeCache mappingPrototypeCache;
 }
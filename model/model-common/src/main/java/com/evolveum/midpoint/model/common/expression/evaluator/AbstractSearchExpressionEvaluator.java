@@ -16,6 +16,7 @@ import javax.xml.namespace.QName;
 
 import org.apache.commons.lang3.BooleanUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import com.evolveum.midpoint.common.LocalizationService;
 import com.evolveum.midpoint.model.api.ModelExecuteOptions;
@@ -25,6 +26,8 @@ import com.evolveum.midpoint.model.api.context.ModelContext;
 import com.evolveum.midpoint.model.api.context.ModelElementContext;
 import com.evolveum.midpoint.model.common.expression.ModelExpressionThreadLocalHolder;
 import com.evolveum.midpoint.model.common.expression.evaluator.caching.AbstractSearchExpressionEvaluatorCache;
+import com.evolveum.midpoint.model.common.expression.evaluator.caching.GlobalSearchExpressionEvaluatorCache;
+import com.evolveum.midpoint.model.common.expression.evaluator.caching.GlobalSearchQueryKey;
 import com.evolveum.midpoint.model.common.expression.evaluator.transformation.AbstractValueTransformationExpressionEvaluator;
 import com.evolveum.midpoint.model.common.util.PopulatorUtil;
 import com.evolveum.midpoint.prism.*;
@@ -91,16 +94,21 @@ public abstract class AbstractSearchExpressionEvaluator<
     private final ModelInteractionService modelInteractionService;
     protected CacheConfigurationManager cacheConfigurationManager;
 
+    /** Node-wide cache of search results. Null if not available (e.g. in tests). */
+    @Nullable private final GlobalSearchExpressionEvaluatorCache globalCache;
+
     AbstractSearchExpressionEvaluator(QName elementName, E expressionEvaluatorType,
             D outputDefinition, Protector protector, PrismContext prismContext,
             ObjectResolver objectResolver, ModelService modelService, ModelInteractionService modelInteractionService, SecurityContextManager securityContextManager,
             LocalizationService localizationService,
-            CacheConfigurationManager cacheConfigurationManager) {
+            CacheConfigurationManager cacheConfigurationManager,
+            @Nullable GlobalSearchExpressionEvaluatorCache globalCache) {
         super(elementName, expressionEvaluatorType, outputDefinition, protector, prismContext, securityContextManager, localizationService);
         this.objectResolver = objectResolver;
         this.modelService = modelService;
         this.modelInteractionService = modelInteractionService;
         this.cacheConfigurationManager = cacheConfigurationManager;
+        this.globalCache = globalCache;
     }
 
     @NotNull
@@ -291,8 +299,8 @@ public abstract class AbstractSearchExpressionEvaluator<
                 log("Cache: NULL {} ({})", false, query, targetTypeClass.getSimpleName());
                 collector.registerNotAvailable(cacheClass, targetTypeClass, statisticsLevel);
             }
-            return executeSearch(null, targetTypeClass, targetTypeQName, query, searchStrategy, createOnDemandRetry,
-                    additionalAttributeDeltas, params, contextDescription, task, result);
+            return executeSearchUsingGlobalCache(null, targetTypeClass, targetTypeQName, query, searchStrategy,
+                    createOnDemandRetry, additionalAttributeDeltas, params, contextDescription, task, result);
         }
 
         assert cacheClass != null && cacheType != null;
@@ -301,8 +309,8 @@ public abstract class AbstractSearchExpressionEvaluator<
             log("Cache: PASS {} ({})", tracePass, query, targetTypeClass.getSimpleName());
             cache.registerPass();
             collector.registerPass(cacheClass, targetTypeClass, statisticsLevel);
-            return executeSearch(null, targetTypeClass, targetTypeQName, query, searchStrategy, createOnDemandRetry,
-                    additionalAttributeDeltas, params, contextDescription, task, result);
+            return executeSearchUsingGlobalCache(null, targetTypeClass, targetTypeQName, query, searchStrategy,
+                    createOnDemandRetry, additionalAttributeDeltas, params, contextDescription, task, result);
         }
 
         List<V> list = cache.getQueryResult(targetTypeClass, query, searchStrategy, params, prismContext);
@@ -316,7 +324,7 @@ public abstract class AbstractSearchExpressionEvaluator<
         collector.registerMiss(cacheClass, targetTypeClass, statisticsLevel);
         log("Cache: MISS {} ({})", traceMiss, query, targetTypeClass.getSimpleName());
         List<PrismObject<O>> rawResult = new ArrayList<>();
-        List<V> freshList = executeSearch(
+        List<V> freshList = executeSearchUsingGlobalCache(
                 rawResult,
                 targetTypeClass,
                 targetTypeQName,
@@ -328,8 +336,9 @@ public abstract class AbstractSearchExpressionEvaluator<
                 contextDescription,
                 task,
                 result);
-        if (!freshList.isEmpty()) {
+        if (!freshList.isEmpty() && !rawResult.isEmpty()) {
             // we don't want to cache negative results (e.g. if used with focal objects it might mean that they would be attempted to create multiple times)
+            // (raw results are not available if the values were taken from the global cache)
             cache.putQueryResult(
                     targetTypeClass,
                     query,
@@ -342,6 +351,69 @@ public abstract class AbstractSearchExpressionEvaluator<
         return freshList;
     }
 
+    /**
+     * Executes the search using the node-wide cache, if it's available and enabled for the target type.
+     * Objects found are put into `rawResult` (if not null) only if the search is really executed.
+     */
+    private List<V> executeSearchUsingGlobalCache(
+            List<PrismObject<O>> rawResult,
+            Class<O> targetTypeClass,
+            QName targetTypeQName,
+            ObjectQuery query,
+            ObjectSearchStrategyType searchStrategy,
+            boolean createOnDemandRetry,
+            List<ItemDelta<V, D>> additionalAttributeDeltas,
+            ExpressionEvaluationContext params,
+            String contextDescription,
+            Task task,
+            OperationResult result)
+            throws ExpressionEvaluationException, ObjectNotFoundException, SchemaException {
+
+        CachePerformanceCollector collector = CachePerformanceCollector.INSTANCE;
+        CacheConfiguration cacheConfiguration = globalCache != null ? globalCache.getConfiguration() : null;
+        CacheConfiguration.CacheObjectTypeConfiguration cacheObjectTypeConfiguration =
+                cacheConfiguration != null ? cacheConfiguration.getForObjectType(targetTypeClass) : null;
+        StatisticsLevel statisticsLevel = getStatisticsLevel(cacheObjectTypeConfiguration, cacheConfiguration);
+
+        GlobalSearchQueryKey key;
+        if (cacheConfiguration == null || createOnDemandRetry) {
+            key = null;
+        } else if (!cacheConfiguration.supportsObjectType(targetTypeClass)) {
+            collector.registerPass(GlobalSearchExpressionEvaluatorCache.class, targetTypeClass, statisticsLevel);
+            key = null;
+        } else {
+            key = globalCache.createKey(getClass(), targetTypeClass, query, searchStrategy);
+        }
+        if (key == null) {
+            return executeSearch(rawResult, targetTypeClass, targetTypeQName, query, searchStrategy, createOnDemandRetry,
+                    additionalAttributeDeltas, params, contextDescription, task, result);
+        }
+
+        List<String> cachedOids = globalCache.get(key);
+        if (cachedOids != null) {
+            collector.registerHit(GlobalSearchExpressionEvaluatorCache.class, targetTypeClass, statisticsLevel);
+            log("Global cache: HIT {} ({})", false, query, targetTypeClass.getSimpleName());
+            List<V> values = new ArrayList<>(cachedOids.size());
+            for (String oid : cachedOids) {
+                values.add(createPrismValue(oid, null, targetTypeQName, additionalAttributeDeltas, params));
+            }
+            return values;
+        }
+        collector.registerMiss(GlobalSearchExpressionEvaluatorCache.class, targetTypeClass, statisticsLevel);
+        log("Global cache: MISS {} ({})", false, query, targetTypeClass.getSimpleName());
+
+        long stamp = globalCache.getStamp(key);
+        List<PrismObject<O>> objectsFound = rawResult != null ? rawResult : new ArrayList<>();
+        List<V> values = executeSearch(objectsFound, targetTypeClass, targetTypeQName, query, searchStrategy,
+                false, additionalAttributeDeltas, params, contextDescription, task, result);
+        List<String> oids = new ArrayList<>(objectsFound.size());
+        for (PrismObject<O> object : objectsFound) {
+            oids.add(object.getOid());
+        }
+        globalCache.put(key, query, oids, stamp);
+        return values;
+    }
+
     private ObjectSearchStrategyType getSearchStrategy() {
         if (expressionEvaluatorBean.getSearchStrategy() != null) {
             return expressionEvaluatorBean.getSearchStrategy();
@@ -13,6 +13,7 @@ import javax.xml.namespace.QName;
 import com.evolveum.midpoint.common.LocalizationService;
 import com.evolveum.midpoint.model.api.ModelInteractionService;
 import com.evolveum.midpoint.model.api.ModelService;
+import com.evolveum.midpoint.model.common.expression.evaluator.caching.GlobalSearchExpressionEvaluatorCache;
 import com.evolveum.midpoint.prism.PrismContainerDefinition;
 import com.evolveum.midpoint.prism.PrismContainerValue;
 import com.evolveum.midpoint.prism.PrismContext;
@@ -48,9 +49,11 @@ public class AssignmentTargetSearchExpressionEvaluator
             AssignmentTargetSearchExpressionEvaluatorType expressionEvaluatorType,
             PrismContainerDefinition<AssignmentType> outputDefinition,Protector protector, PrismContext prismContext,
             ObjectResolver objectResolver, ModelService modelService, ModelInteractionService modelInteractionService, SecurityContextManager securityContextManager,
-            LocalizationService localizationService, CacheConfigurationManager cacheConfigurationManager) {
+            LocalizationService localizationService, CacheConfigurationManager cacheConfigurationManager,
+            GlobalSearchExpressionEvaluatorCache globalCache) {
         super(elementName, expressionEvaluatorType, outputDefinition, protector, prismContext, objectResolver,
-                modelService, modelInteractionService, securityContextManager, localizationService, cacheConfigurationManager);
+                modelService, modelInteractionService, securityContextManager, localizationService, cacheConfigurationManager,
+                globalCache);
     }
 
     protected PrismContainerValue<AssignmentType> createPrismValue(
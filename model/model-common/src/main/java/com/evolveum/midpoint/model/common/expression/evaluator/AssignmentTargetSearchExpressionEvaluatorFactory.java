@@ -12,6 +12,7 @@ import javax.xml.namespace.QName;
 
 import com.evolveum.midpoint.model.api.ModelInteractionService;
 import com.evolveum.midpoint.model.api.ModelService;
+import com.evolveum.midpoint.model.common.expression.evaluator.caching.GlobalSearchExpressionEvaluatorCache;
 import com.evolveum.midpoint.prism.ItemDefinition;
 import com.evolveum.midpoint.prism.PrismContainerDefinition;
 import com.evolveum.midpoint.prism.PrismContext;
@@ -43,16 +44,18 @@ public class AssignmentTargetSearchExpressionEvaluatorFactory
     private final ModelService modelService;
     private final ModelInteractionService modelInteractionService;
     private final SecurityContextManager securityContextManager;
+    private final GlobalSearchExpressionEvaluatorCache globalCache;
 
     public AssignmentTargetSearchExpressionEvaluatorFactory(ExpressionFactory expressionFactory, PrismContext prismContext,
             Protector protector, ModelService modelService, ModelInteractionService modelInteractionService, SecurityContextManager securityContextManager,
-            CacheConfigurationManager cacheConfigurationManager) {
+            CacheConfigurationManager cacheConfigurationManager, GlobalSearchExpressionEvaluatorCache globalCache) {
         super(expressionFactory, cacheConfigurationManager);
         this.prismContext = prismContext;
         this.protector = protector;
         this.modelService = modelService;
         this.modelInteractionService = modelInteractionService;
         this.securityContextManager = securityContextManager;
+        this.globalCache = globalCache;
     }
 
     @Override
@@ -72,6 +75,6 @@ public class AssignmentTargetSearchExpressionEvaluatorFactory
         return (ExpressionEvaluator<V>) new AssignmentTargetSearchExpressionEvaluator(
                 ELEMENT_NAME, evaluatorBean, (PrismContainerDefinition<AssignmentType>) outputDefinition, protector,
                 prismContext, getObjectResolver(), modelService, modelInteractionService, securityContextManager, getLocalizationService(),
-                cacheConfigurationManager);
+                cacheConfigurationManager, globalCache);
     }
 }
@@ -18,6 +18,7 @@ import com.evolveum.midpoint.schema.processor.ResourceObjectTypeDefinition;
 import com.evolveum.midpoint.model.api.ModelService;
 import com.evolveum.midpoint.model.common.expression.evaluator.caching.AbstractSearchExpressionEvaluatorCache;
 import com.evolveum.midpoint.model.common.expression.evaluator.caching.AssociationSearchExpressionEvaluatorCache;
+import com.evolveum.midpoint.model.common.expression.evaluator.caching.GlobalSearchExpressionEvaluatorCache;
 import com.evolveum.midpoint.prism.PrismContainerDefinition;
 import com.evolveum.midpoint.prism.PrismContainerValue;
 import com.evolveum.midpoint.prism.PrismContext;
@@ -69,7 +70,8 @@ public class AssociationTargetSearchExpressionEvaluator
             ModelInteractionService modelInteractionService,
             SecurityContextManager securityContextManager,
             LocalizationService localizationService,
-            CacheConfigurationManager cacheConfigurationManager) {
+            CacheConfigurationManager cacheConfigurationManager,
+            GlobalSearchExpressionEvaluatorCache globalCache) {
         super(
                 elementName,
                 expressionEvaluatorBean,
@@ -81,7 +83,8 @@ public class AssociationTargetSearchExpressionEvaluator
                 modelInteractionService,
                 securityContextManager,
                 localizationService,
-                cacheConfigurationManager);
+                cacheConfigurationManager,
+                globalCache);
     }
 
     @Override
@@ -13,6 +13,7 @@ import javax.xml.namespace.QName;
 
 import com.evolveum.midpoint.model.api.ModelInteractionService;
 import com.evolveum.midpoint.model.api.ModelService;
+import com.evolveum.midpoint.model.common.expression.evaluator.caching.GlobalSearchExpressionEvaluatorCache;
 import com.evolveum.midpoint.prism.ItemDefinition;
 import com.evolveum.midpoint.prism.PrismContainerDefinition;
 import com.evolveum.midpoint.prism.PrismContext;
@@ -43,16 +44,18 @@ public class AssociationTargetSearchExpressionEvaluatorFactory extends AbstractO
     private final ModelService modelService;
     private final ModelInteractionService modelInteractionService;
     private final SecurityContextManager securityContextManager;
+    private final GlobalSearchExpressionEvaluatorCache globalCache;
 
     public AssociationTargetSearchExpressionEvaluatorFactory(ExpressionFactory expressionFactory, PrismContext prismContext,
             Protector protector, ModelService modelService, ModelInteractionService modelInteractionService, SecurityContextManager securityContextManager,
-            CacheConfigurationManager cacheConfigurationManager) {
+            CacheConfigurationManager cacheConfigurationManager, GlobalSearchExpressionEvaluatorCache globalCache) {
         super(expressionFactory, cacheConfigurationManager);
         this.prismContext = prismContext;
         this.protector = protector;
         this.modelService = modelService;
         this.modelInteractionService = modelInteractionService;
         this.securityContextManager = securityContextManager;
+        this.globalCache = globalCache;
     }
 
     @Override
@@ -74,6 +77,6 @@ public class AssociationTargetSearchExpressionEvaluatorFactory extends AbstractO
                 new AssociationTargetSearchExpressionEvaluator(ELEMENT_NAME, evaluatorBean,
                         (PrismContainerDefinition<ShadowAssociationType>) outputDefinition, protector, prismContext,
                         getObjectResolver(), modelService, modelInteractionService, securityContextManager, getLocalizationService(),
-                        cacheConfigurationManager);
+                        cacheConfigurationManager, globalCache);
     }
 }
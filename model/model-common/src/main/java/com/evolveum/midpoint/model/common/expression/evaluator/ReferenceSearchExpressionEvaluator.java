@@ -13,6 +13,7 @@ import javax.xml.namespace.QName;
 import com.evolveum.midpoint.common.LocalizationService;
 import com.evolveum.midpoint.model.api.ModelInteractionService;
 import com.evolveum.midpoint.model.api.ModelService;
+import com.evolveum.midpoint.model.common.expression.evaluator.caching.GlobalSearchExpressionEvaluatorCache;
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.PrismReferenceDefinition;
@@ -50,7 +51,8 @@ public class ReferenceSearchExpressionEvaluator
             ModelInteractionService modelInteractionService,
             SecurityContextManager securityContextManager,
             LocalizationService localizationService,
-            CacheConfigurationManager cacheConfigurationManager) {
+            CacheConfigurationManager cacheConfigurationManager,
+            GlobalSearchExpressionEvaluatorCache globalCache) {
         super(
                 elementName,
                 expressionEvaluatorType,
@@ -62,7 +64,8 @@ public class ReferenceSearchExpressionEvaluator
                 modelInteractionService,
                 securityContextManager,
                 localizationService,
-                cacheConfigurationManager);
+                cacheConfigurationManager,
+                globalCache);
     }
 
     protected PrismReferenceValue createPrismValue(
@@ -13,6 +13,7 @@ import javax.xml.namespace.QName;
 
 import com.evolveum.midpoint.model.api.ModelInteractionService;
 import com.evolveum.midpoint.model.api.ModelService;
+import com.evolveum.midpoint.model.common.expression.evaluator.caching.GlobalSearchExpressionEvaluatorCache;
 import com.evolveum.midpoint.prism.ItemDefinition;
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.PrismReferenceDefinition;
@@ -42,16 +43,18 @@ public class ReferenceSearchExpressionEvaluatorFactory extends AbstractObjectRes
     private final ModelService modelService;
     private final ModelInteractionService modelInteractionService;
     private final SecurityContextManager securityContextManager;
+    private final GlobalSearchExpressionEvaluatorCache globalCache;
 
     public ReferenceSearchExpressionEvaluatorFactory(ExpressionFactory expressionFactory, PrismContext prismContext,
             Protector protector, ModelService modelService, ModelInteractionService modelInteractionService, SecurityContextManager securityContextManager,
-            CacheConfigurationManager cacheConfigurationManager) {
+            CacheConfigurationManager cacheConfigurationManager, GlobalSearchExpressionEvaluatorCache globalCache) {
         super(expressionFactory, cacheConfigurationManager);
         this.prismContext = prismContext;
         this.protector = protector;
         this.modelService = modelService;
         this.modelInteractionService = modelInteractionService;
         this.securityContextManager = securityContextManager;
+        this.globalCache = globalCache;
     }
 
     @Override
@@ -73,6 +76,6 @@ public class ReferenceSearchExpressionEvaluatorFactory extends AbstractObjectRes
         return (ExpressionEvaluator<V>)
                 new ReferenceSearchExpressionEvaluator(ELEMENT_NAME, evaluatorBean,
                         (PrismReferenceDefinition) outputDefinition, protector, prismContext, getObjectResolver(), modelService,
-                        modelInteractionService, securityContextManager, getLocalizationService(), cacheConfigurationManager);
+                        modelInteractionService, securityContextManager, getLocalizationService(), cacheConfigurationManager, globalCache);
     }
 }
@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.common.expression.evaluator.caching;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.cache2k.Cache2kBuilder;
+import org.cache2k.event.CacheEntryEvictedListener;
+import org.cache2k.event.CacheEntryExpiredListener;
+import org.cache2k.expiry.Expiry;
+import org.cache2k.expiry.ExpiryPolicy;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.CacheInvalidationContext;
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.match.MatchingRuleRegistry;
+import com.evolveum.midpoint.prism.query.ObjectFilter;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.repo.api.Cache;
+import com.evolveum.midpoint.repo.api.CacheRegistry;
+import com.evolveum.midpoint.repo.api.DeleteObjectResult;
+import com.evolveum.midpoint.repo.api.ModifyObjectResult;
+import com.evolveum.midpoint.repo.api.RepositoryOperationResult;
+import com.evolveum.midpoint.repo.cache.handlers.AddObjectResult;
+import com.evolveum.midpoint.repo.cache.invalidation.RepositoryCacheInvalidationDetails;
+import com.evolveum.midpoint.schema.cache.CacheConfigurationManager;
+import com.evolveum.midpoint.schema.cache.CacheType;
+import com.evolveum.midpoint.util.caching.CacheConfiguration;
+import com.evolveum.midpoint.util.caching.CacheConfiguration.CacheObjectTypeConfiguration;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectSearchStrategyType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SingleCacheStateInformationType;
+
+/**
+ * Node-wide cache for results of search-based expression evaluators (associationTargetSearch, assignmentTargetSearch,
+ * referenceSearch). Unlike {@link AssociationSearchExpressionEvaluatorCache} it is not bound to a thread and an operation,
+ * so e.g. reconciliation workers searching for the same groups for each user share the results.
+ *
+ * Only the OIDs of the found objects are stored; the evaluator creates the values from them, as these depend on the
+ * evaluation context. Only repository searches with non-empty results are cached.
+ *
+ * Entries are invalidated by the repository cache invalidation events: a change of an object of given type removes
+ * the entries that contain the object, or whose filter matches the object after the change. Events without details
+ * (e.g. from other nodes) remove all the entries for the type. As not all changes are propagated clusterwide,
+ * the entries expire after the configured time to live.
+ *
+ * The entries are indexed by the object type searched for, so a change touches (and matches the filters of) only
+ * the entries of the related types. For the same reason, the stamps protecting against storing outdated results
+ * are maintained per type.
+ *
+ * Enabled by `globalSearchExpressionEvaluatorCache` in the caching profile. The capacity is determined when the cache
+ * is first used.
+ */
+@Component
+public class GlobalSearchExpressionEvaluatorCache implements Cache {
+
+    private static final Trace LOGGER = TraceManager.getTrace(GlobalSearchExpressionEvaluatorCache.class);
+    private static final Trace LOGGER_CONTENT = TraceManager.getTrace(GlobalSearchExpressionEvaluatorCache.class.getName() + ".content");
+
+    private static final String CACHE_NAME = "searchExpressionEvaluatorCache";
+
+    private static final long DEFAULT_CAPACITY = 10000;
+    private static final int DEFAULT_TIME_TO_LIVE = 60;
+
+    @Autowired private CacheRegistry cacheRegistry;
+    @Autowired private CacheConfigurationManager cacheConfigurationManager;
+    @Autowired private PrismContext prismContext;
+    @Autowired private MatchingRuleRegistry matchingRuleRegistry;
+
+    /** Created when the cache is first used with a configuration present. */
+    private volatile org.cache2k.Cache<GlobalSearchQueryKey, CachedResult> cache;
+
+    /**
+     * Incremented on each invalidation of given type (and its supertypes and subtypes). Results are not kept in the cache
+     * if there was a related invalidation since the search was started, as the result may be outdated.
+     */
+    private final Map<Class<?>, AtomicLong> stamps = new ConcurrentHashMap<>();
+
+    /** Incremented when everything is invalidated. */
+    private final AtomicLong globalStamp = new AtomicLong();
+
+    /**
+     * Keys of the entries, indexed by the object type searched for. It may contain keys of entries that were
+     * already removed (e.g. by invalidation racing with the put); these are removed when found.
+     */
+    private final Map<Class<?>, Set<GlobalSearchQueryKey>> keysByType = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void register() {
+        cacheRegistry.registerCache(this);
+    }
+
+    @PreDestroy
+    public void unregister() {
+        cacheRegistry.unregisterCache(this);
+        org.cache2k.Cache<GlobalSearchQueryKey, CachedResult> current = cache;
+        if (current != null) {
+            current.close();
+            cache = null;
+        }
+    }
+
+    public CacheConfiguration getConfiguration() {
+        return cacheConfigurationManager.getConfiguration(CacheType.GLOBAL_SEARCH_EXPRESSION_EVALUATOR_CACHE);
+    }
+
+    /**
+     * Returns the key for given search, or null if the search is not to be cached (the cache is disabled,
+     * the search goes to the resource, or the query cannot be serialized).
+     */
+    public @Nullable GlobalSearchQueryKey createKey(@NotNull Class<?> evaluatorClass, @NotNull Class<? extends ObjectType> type,
+            @NotNull ObjectQuery query, @NotNull ObjectSearchStrategyType searchStrategy) {
+        if (searchStrategy != ObjectSearchStrategyType.IN_REPOSITORY || getCache() == null) {
+            return null;
+        }
+        try {
+            return new GlobalSearchQueryKey(evaluatorClass, type, query, searchStrategy, prismContext);
+        } catch (Exception e) { // see AssociationSearchExpressionEvaluatorCache#createQueryKey
+            LoggingUtils.logException(LOGGER, "Couldn't create query key for {}, not caching it", e, query);
+            return null;
+        }
+    }
+
+    /** Returns a stamp to be used when the search result is put into the cache. Must be obtained before the search. */
+    public long getStamp(@NotNull GlobalSearchQueryKey key) {
+        // Both are only incremented, so the sum changes whenever any of them does.
+        return globalStamp.get() + stamps.computeIfAbsent(key.getType(), t -> new AtomicLong()).get();
+    }
+
+    /** Returns OIDs of the objects found, or null if the search is not cached. */
+    public @Nullable List<String> get(@NotNull GlobalSearchQueryKey key) {
+        org.cache2k.Cache<GlobalSearchQueryKey, CachedResult> current = cache;
+        CachedResult value = current != null ? current.peek(key) : null;
+        return value != null ? value.oids : null;
+    }
+
+    /** Stores the search result, unless there was an invalidation since the stamp was taken. */
+    public void put(@NotNull GlobalSearchQueryKey key, @NotNull ObjectQuery query, @NotNull List<String> oids, long stamp) {
+        org.cache2k.Cache<GlobalSearchQueryKey, CachedResult> current = cache;
+        if (current == null || oids.isEmpty()) {
+            return;
+        }
+        ObjectFilter filter = query.getFilter();
+        // Indexing first, so that a concurrent invalidation that comes after the put finds the entry.
+        keysByType.computeIfAbsent(key.getType(), t -> ConcurrentHashMap.newKeySet()).add(key);
+        current.put(key, new CachedResult(filter != null ? filter.clone() : null, oids));
+        if (getStamp(key) != stamp) {
+            LOGGER.trace("Not caching result of {} because of intervening invalidation", key);
+            current.remove(key);
+            removeFromIndex(key);
+        }
+    }
+
+    private void removeFromIndex(@NotNull GlobalSearchQueryKey key) {
+        Set<GlobalSearchQueryKey> keys = keysByType.get(key.getType());
+        if (keys != null) {
+            keys.remove(key);
+        }
+    }
+
+    private org.cache2k.Cache<GlobalSearchQueryKey, CachedResult> getCache() {
+        org.cache2k.Cache<GlobalSearchQueryKey, CachedResult> current = cache;
+        if (current != null) {
+            return current;
+        }
+        CacheConfiguration configuration = getConfiguration();
+        if (configuration == null) {
+            return null;
+        }
+        synchronized (this) {
+            if (cache == null) {
+                long capacity = configuration.getMaxSize() != null ? configuration.getMaxSize() : DEFAULT_CAPACITY;
+                if (capacity <= 0) {
+                    return null;
+                }
+                cache = new Cache2kBuilder<GlobalSearchQueryKey, CachedResult>() {}
+                        .name(CACHE_NAME)
+                        .entryCapacity(capacity)
+                        .expiryPolicy(getExpiryPolicy())
+                        .addListener((CacheEntryEvictedListener<GlobalSearchQueryKey, CachedResult>)
+                                (c, entry) -> removeFromIndex(entry.getKey()))
+                        .addListener((CacheEntryExpiredListener<GlobalSearchQueryKey, CachedResult>)
+                                (c, entry) -> removeFromIndex(entry.getKey()))
+                        .build();
+                LOGGER.info("Created global search expression evaluator cache with a capacity of {} queries", capacity);
+            }
+            return cache;
+        }
+    }
+
+    private ExpiryPolicy<GlobalSearchQueryKey, CachedResult> getExpiryPolicy() {
+        return (key, value, loadTime, oldEntry) -> getExpiryTime(key.getType());
+    }
+
+    private long getExpiryTime(Class<?> type) {
+        CacheConfiguration configuration = getConfiguration();
+        CacheObjectTypeConfiguration typeConfiguration = configuration != null ? configuration.getForObjectType(type) : null;
+        if (typeConfiguration == null) {
+            return Expiry.NOW;
+        } else if (typeConfiguration.getEffectiveTimeToLive() != null) {
+            return System.currentTimeMillis() + typeConfiguration.getEffectiveTimeToLive() * 1000L;
+        } else {
+            return System.currentTimeMillis() + DEFAULT_TIME_TO_LIVE * 1000L;
+        }
+    }
+
+    @Override
+    public void invalidate(Class<?> type, String oid, CacheInvalidationContext context) {
+        if (type == null) {
+            globalStamp.incrementAndGet();
+            org.cache2k.Cache<GlobalSearchQueryKey, CachedResult> current = cache;
+            if (current != null) {
+                current.clear();
+            }
+            keysByType.clear();
+            return;
+        }
+        if (!ObjectType.class.isAssignableFrom(type)) {
+            return;
+        }
+        stamps.forEach((searchedType, stamp) -> {
+            if (isRelated(searchedType, type)) {
+                stamp.incrementAndGet();
+            }
+        });
+        org.cache2k.Cache<GlobalSearchQueryKey, CachedResult> current = cache;
+        if (current == null) {
+            return;
+        }
+        RepositoryOperationResult operationResult = getOperationResult(context);
+        boolean deleted = operationResult instanceof DeleteObjectResult;
+        PrismObject<?> objectAfter = getObjectAfter(operationResult);
+        keysByType.forEach((searchedType, keys) -> {
+            if (!isRelated(searchedType, type)) {
+                return;
+            }
+            keys.removeIf(key -> {
+                CachedResult result = current.peek(key);
+                if (result == null) {
+                    return true; // already removed from the cache
+                }
+                boolean remove = oid == null
+                        || result.oids.contains(oid)
+                        || !deleted && mayMatch(result.filter, objectAfter);
+                if (remove) {
+                    LOGGER.trace("Removing {} because of change of {}:{}", key, type.getSimpleName(), oid);
+                    current.remove(key);
+                }
+                return remove;
+            });
+        });
+    }
+
+    private static boolean isRelated(@NotNull Class<?> searchedType, @NotNull Class<?> changedType) {
+        return searchedType.isAssignableFrom(changedType) || changedType.isAssignableFrom(searchedType);
+    }
+
+    /** Can the object (after the change) match the filter? We are conservative here. */
+    private boolean mayMatch(ObjectFilter filter, PrismObject<?> objectAfter) {
+        if (filter == null || objectAfter == null) {
+            return true;
+        }
+        try {
+            return filter.match(objectAfter.getValue(), matchingRuleRegistry);
+        } catch (Exception e) { // SchemaException, UnsupportedOperationException, ...
+            LOGGER.debug("Couldn't match {} to {}, considering it matching: {}", objectAfter, filter, e.getMessage(), e);
+            return true;
+        }
+    }
+
+    private RepositoryOperationResult getOperationResult(CacheInvalidationContext context) {
+        if (context != null && context.getDetails() instanceof RepositoryCacheInvalidationDetails) {
+            return ((RepositoryCacheInvalidationDetails) context.getDetails()).getResult();
+        } else {
+            return null;
+        }
+    }
+
+    private @Nullable PrismObject<?> getObjectAfter(RepositoryOperationResult operationResult) {
+        if (operationResult instanceof AddObjectResult) {
+            return ((AddObjectResult<?>) operationResult).getObject();
+        } else if (operationResult instanceof ModifyObjectResult) {
+            return ((ModifyObjectResult<?>) operationResult).getObjectAfter();
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public @NotNull Collection<SingleCacheStateInformationType> getStateInformation() {
+        org.cache2k.Cache<GlobalSearchQueryKey, CachedResult> current = cache;
+        if (current == null) {
+            return Collections.emptySet();
+        }
+        int queries = 0;
+        int objects = 0;
+        for (CachedResult result : current.asMap().values()) {
+            queries++;
+            objects += result.oids.size();
+        }
+        return Collections.singleton(
+                new SingleCacheStateInformationType()
+                        .name(GlobalSearchExpressionEvaluatorCache.class.getName())
+                        .size(queries)
+                        .secondarySize(objects));
+    }
+
+    @Override
+    public void dumpContent() {
+        org.cache2k.Cache<GlobalSearchQueryKey, CachedResult> current = cache;
+        if (current != null && LOGGER_CONTENT.isInfoEnabled()) {
+            current.asMap().forEach((key, result) ->
+                    LOGGER_CONTENT.info("Cached search expression evaluation: {}: {}", key, result.oids));
+        }
+    }
+
+    /** Immutable. */
+    private static class CachedResult {
+
+        /** Filter of the query, used to determine if a changed object could be in the result. Null means "all objects". */
+        @Nullable private final ObjectFilter filter;
+
+        @NotNull private final List<String> oids;
+
+        private CachedResult(@Nullable ObjectFilter filter, @NotNull List<String> oids) {
+            this.filter = filter;
+            this.oids = List.copyOf(oids);
+        }
+    }
+}
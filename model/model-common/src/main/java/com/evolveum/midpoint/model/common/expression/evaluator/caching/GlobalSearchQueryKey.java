@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.common.expression.evaluator.caching;
+
+import java.util.Objects;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectSearchStrategyType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+
+/**
+ * Key for {@link GlobalSearchExpressionEvaluatorCache}: the (normalized) query plus the evaluator class,
+ * as evaluators can filter the search results in their own ways (e.g. dead shadows are not association targets).
+ */
+public class GlobalSearchQueryKey extends QueryKey {
+
+    @NotNull private final Class<?> evaluatorClass;
+
+    GlobalSearchQueryKey(@NotNull Class<?> evaluatorClass, Class<? extends ObjectType> type, ObjectQuery query,
+            ObjectSearchStrategyType searchStrategy, PrismContext prismContext) {
+        super(type, query, searchStrategy, prismContext);
+        this.evaluatorClass = evaluatorClass;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!super.equals(o)) {
+            return false;
+        }
+        GlobalSearchQueryKey that = (GlobalSearchQueryKey) o;
+        return evaluatorClass.equals(that.evaluatorClass);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), evaluatorClass);
+    }
+
+    @Override
+    public String toString() {
+        return evaluatorClass.getSimpleName() + ":" + super.toString();
+    }
+}
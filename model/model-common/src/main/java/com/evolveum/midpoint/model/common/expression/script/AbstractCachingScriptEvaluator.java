@@ -44,7 +44,7 @@ public abstract class AbstractCachingScriptEvaluator<I, C> extends AbstractScrip
 
     public AbstractCachingScriptEvaluator(PrismContext prismContext, Protector protector, LocalizationService localizationService) {
         super(prismContext, protector, localizationService);
-        this.scriptCache = new ScriptCache<>();
+        this.scriptCache = new ScriptCache<>(ScriptCache.DEFAULT_CAPACITY, this::releaseCompiledScript);
     }
 
     protected ScriptCache<I, C> getScriptCache() {
@@ -161,20 +161,16 @@ public abstract class AbstractCachingScriptEvaluator<I, C> extends AbstractScrip
     }
 
     private C getCompiledScript(String codeString, ScriptExpressionEvaluationContext context) throws ExpressionEvaluationException, SecurityViolationException {
-        C compiledScript = scriptCache.getCode(context.getExpressionProfile(), codeString);
-        if (compiledScript != null) {
-            return compiledScript;
-        }
-        InternalMonitor.recordCount(InternalCounters.SCRIPT_COMPILE_COUNT);
-        try {
-            compiledScript = compileScript(codeString, context);
-        } catch (ExpressionEvaluationException | SecurityViolationException e) {
-            throw e;
-        } catch (Exception e) {
-            throw new ExpressionEvaluationException(e.getMessage() + " while compiling " + context.getContextDescription(), e);
-        }
-        scriptCache.putCode(context.getExpressionProfile(), codeString, compiledScript);
-        return compiledScript;
+        return scriptCache.getOrCompileCode(context.getExpressionProfile(), codeString, () -> {
+            InternalMonitor.recordCount(InternalCounters.SCRIPT_COMPILE_COUNT);
+            try {
+                return compileScript(codeString, context);
+            } catch (ExpressionEvaluationException | SecurityViolationException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new ExpressionEvaluationException(e.getMessage() + " while compiling " + context.getContextDescription(), e);
+            }
+        });
     }
 
     protected abstract C compileScript(String codeString, ScriptExpressionEvaluationContext context) throws Exception;
@@ -182,6 +178,12 @@ public abstract class AbstractCachingScriptEvaluator<I, C> extends AbstractScrip
     protected abstract Object evaluateScript(C compiledScript, ScriptExpressionEvaluationContext context)
             throws Exception;
 
+    /**
+     * Called when the compiled code is removed from the cache, so the resources held by it can be released.
+     */
+    protected void releaseCompiledScript(C compiledScript) {
+    }
+
     private <T> T convertScalarResult(Class<T> expectedType, Object rawValue, ScriptExpressionEvaluationContext context) throws ExpressionEvaluationException {
         try {
             T convertedValue = ExpressionUtil.convertValue(expectedType, context.getAdditionalConvertor(), rawValue, getProtector(), getPrismContext());
@@ -6,6 +6,8 @@
  */
 package com.evolveum.midpoint.model.common.expression.script;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -40,6 +42,9 @@ public abstract class AbstractScriptEvaluator implements ScriptEvaluator {
     private final Protector protector;
     private final LocalizationService localizationService;
 
+    /** Variables for the most recently used collection of function libraries. */
+    private volatile FunctionVariables cachedFunctionVariables;
+
     public AbstractScriptEvaluator(PrismContext prismContext, Protector protector,
             LocalizationService localizationService) {
         this.prismContext = prismContext;
@@ -82,14 +87,40 @@ public abstract class AbstractScriptEvaluator implements ScriptEvaluator {
      */
     protected Map<String, Object> prepareScriptVariablesValueMap(ScriptExpressionEvaluationContext context)
             throws ExpressionSyntaxException, ObjectNotFoundException, CommunicationException, ConfigurationException, SecurityViolationException, ExpressionEvaluationException {
-        Map<String, Object> scriptVariableMap = new HashMap<>();
-        // Functions
-        if (context.getFunctions() != null) {
-            for (FunctionLibrary funcLib : context.getFunctions()) {
-                scriptVariableMap.put(funcLib.getVariableName(), funcLib.getGenericFunctions());
-            }
+        Map<String, Object> scriptVariableMap = new HashMap<>(getFunctionVariables(context.getFunctions()));
+        addScriptVariables(scriptVariableMap, context);
+        return scriptVariableMap;
+    }
+
+    /**
+     * Returns variables for the function libraries (e.g. `basic`, `midpoint`, `log`, custom libraries): name -> value.
+     *
+     * They do not change between evaluations, so the map is computed once and reused as long as the same collection
+     * of libraries is used. (Script expression factory provides the same collection until the custom libraries change.)
+     * The returned map is immutable.
+     */
+    protected Map<String, Object> getFunctionVariables(@Nullable Collection<FunctionLibrary> functions) {
+        if (functions == null) {
+            return Map.of();
+        }
+        FunctionVariables cached = cachedFunctionVariables;
+        if (cached != null && cached.functions == functions) {
+            return cached.variables;
         }
+        Map<String, Object> variables = new HashMap<>();
+        for (FunctionLibrary funcLib : functions) {
+            variables.put(funcLib.getVariableName(), funcLib.getGenericFunctions());
+        }
+        FunctionVariables computed = new FunctionVariables(functions, Collections.unmodifiableMap(variables));
+        cachedFunctionVariables = computed;
+        return computed.variables;
+    }
 
+    /**
+     * Adds the variables (other than function libraries) to the map: name -> value.
+     */
+    protected void addScriptVariables(Map<String, Object> scriptVariableMap, ScriptExpressionEvaluationContext context)
+            throws ExpressionSyntaxException, ObjectNotFoundException, CommunicationException, ConfigurationException, SecurityViolationException, ExpressionEvaluationException {
         // Variables
         VariablesMap variables = context.getVariables();
         if (variables != null) {
@@ -123,8 +154,6 @@ public abstract class AbstractScriptEvaluator implements ScriptEvaluator {
 
         putIfMissing(scriptVariableMap, ExpressionConstants.VAR_PRISM_CONTEXT, prismContext);
         putIfMissing(scriptVariableMap, ExpressionConstants.VAR_LOCALIZATION_SERVICE, localizationService);
-
-        return scriptVariableMap;
     }
 
     private void putIfMissing(Map<String, Object> scriptVariableMap, String key, Object value) {
@@ -148,4 +177,15 @@ public abstract class AbstractScriptEvaluator implements ScriptEvaluator {
             return value;
         }
     }
+
+    private static class FunctionVariables {
+
+        private final Collection<FunctionLibrary> functions;
+        private final Map<String, Object> variables;
+
+        private FunctionVariables(Collection<FunctionLibrary> functions, Map<String, Object> variables) {
+            this.functions = functions;
+            this.variables = variables;
+        }
+    }
 }
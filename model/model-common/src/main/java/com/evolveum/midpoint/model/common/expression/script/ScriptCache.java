@@ -6,59 +6,252 @@
  */
 package com.evolveum.midpoint.model.common.expression.script;
 
-import java.util.HashMap;
+import static com.evolveum.midpoint.util.caching.CacheConfiguration.StatisticsLevel.PER_CACHE;
+
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.cache2k.Cache;
+import org.cache2k.Cache2kBuilder;
+import org.cache2k.event.CacheEntryEvictedListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import com.evolveum.midpoint.schema.expression.ExpressionProfile;
+import com.evolveum.midpoint.util.caching.CachePerformanceCollector;
+import com.evolveum.midpoint.util.exception.ExpressionEvaluationException;
+import com.evolveum.midpoint.util.exception.SecurityViolationException;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ScriptExpressionEvaluatorType;
 
 /**
  * Cache for compiled scripts and interpreters, aware of expression profiles.
  *
+ * Compiled code is kept in a size-bounded concurrent cache, keyed by expression profile and source code.
+ * A script is compiled at most once at a time: threads that miss on a script being compiled wait for that compilation
+ * instead of compiling the script themselves. Code that is evicted (or cleared) is passed to the release action,
+ * so that e.g. Groovy classes can be unloaded.
+ *
+ * Hits and misses are recorded in {@link CachePerformanceCollector}. The number of compilations and the time spent
+ * by them are available via {@link #getCompilations()} and {@link #getCompilationTime()}.
+ *
  * @param <C> compiled code
  * @author Radovan Semancik
  */
 public class ScriptCache<I,C> {
 
-    private final Map<String, I> interpreterCache = new HashMap<>();
-    private final Map<String, Map<String, C>> codeCache = new HashMap<>();
+    private static final Trace LOGGER = TraceManager.getTrace(ScriptCache.class);
+
+    public static final long DEFAULT_CAPACITY = 10000;
+
+    /** Profile key used for the "null" profile, as concurrent maps do not allow null keys. */
+    private static final String NULL_PROFILE_KEY = "";
+
+    /** Compiles the code. */
+    @FunctionalInterface
+    public interface Compiler<C> {
+        C compile() throws ExpressionEvaluationException, SecurityViolationException;
+    }
+
+    private final Map<String, I> interpreterCache = new ConcurrentHashMap<>();
+    /** Values are of type C. (The builder cannot be parameterized by a type variable.) */
+    @NotNull private final Cache<Key, Object> codeCache;
+
+    /** Compilations being executed right now. */
+    private final Map<Key, CompletableFuture<C>> compilationsInProgress = new ConcurrentHashMap<>();
+
+    @Nullable private final Consumer<C> releaseAction;
+
+    private final AtomicLong compilations = new AtomicLong();
+    private final AtomicLong compilationTime = new AtomicLong();
 
-    public synchronized I getInterpreter(ExpressionProfile profile) {
+    public ScriptCache() {
+        this(DEFAULT_CAPACITY, null);
+    }
+
+    public ScriptCache(long capacity, @Nullable Consumer<C> releaseAction) {
+        this.releaseAction = releaseAction;
+        this.codeCache = Cache2kBuilder.of(Key.class, Object.class)
+                .entryCapacity(capacity)
+                .eternal(true)
+                .addListener((CacheEntryEvictedListener<Key, Object>) (cache, entry) -> release(entry.getValue()))
+                .build();
+    }
+
+    public I getInterpreter(ExpressionProfile profile) {
         return interpreterCache.get(getProfileKey(profile));
     }
 
-    public synchronized void putInterpreter(ExpressionProfile profile, I interpreter) {
-        interpreterCache.put(getProfileKey(profile), interpreter);
+    /**
+     * Stores the interpreter, unless there is one already.
+     *
+     * @return The interpreter that is in the cache after this call.
+     */
+    public I putInterpreter(ExpressionProfile profile, I interpreter) {
+        I existing = interpreterCache.putIfAbsent(getProfileKey(profile), interpreter);
+        return existing != null ? existing : interpreter;
+    }
+
+    public C getCode(ExpressionProfile profile, String sourceCodeKey) {
+        return peek(new Key(getProfileKey(profile), sourceCodeKey));
+    }
+
+    private C peek(Key key) {
+        //noinspection unchecked
+        return (C) codeCache.peek(key);
+    }
+
+    public void putCode(ExpressionProfile profile, String sourceCodeKey, C compiledCode) {
+        codeCache.put(new Key(getProfileKey(profile), sourceCodeKey), compiledCode);
+    }
+
+    /**
+     * Returns the compiled code from the cache; compiling it if needed. Concurrent requests for the same code
+     * wait for a single compilation.
+     */
+    public @NotNull C getOrCompileCode(ExpressionProfile profile, String sourceCodeKey, @NotNull Compiler<C> compiler)
+            throws ExpressionEvaluationException, SecurityViolationException {
+        Key key = new Key(getProfileKey(profile), sourceCodeKey);
+        C cached = peek(key);
+        if (cached != null) {
+            CachePerformanceCollector.INSTANCE.registerHit(ScriptCache.class, ScriptExpressionEvaluatorType.class, PER_CACHE);
+            return cached;
+        }
+
+        CompletableFuture<C> ourCompilation = new CompletableFuture<>();
+        CompletableFuture<C> otherCompilation = compilationsInProgress.putIfAbsent(key, ourCompilation);
+        if (otherCompilation != null) {
+            CachePerformanceCollector.INSTANCE.registerHit(ScriptCache.class, ScriptExpressionEvaluatorType.class, PER_CACHE);
+            return waitForCompilation(otherCompilation, compiler);
+        }
+
+        try {
+            // The compilation could have finished between the peek and the registration of our compilation.
+            C compiled = peek(key);
+            if (compiled == null) {
+                CachePerformanceCollector.INSTANCE.registerMiss(ScriptCache.class, ScriptExpressionEvaluatorType.class, PER_CACHE);
+                compiled = compile(compiler);
+                codeCache.put(key, compiled);
+            }
+            ourCompilation.complete(compiled);
+            return compiled;
+        } catch (Throwable t) {
+            ourCompilation.completeExceptionally(t);
+            throw t;
+        } finally {
+            compilationsInProgress.remove(key, ourCompilation);
+        }
     }
 
-    public synchronized C getCode(ExpressionProfile profile, String sourceCodeKey) {
-        String profileKey = getProfileKey(profile);
-        Map<String, C> profileCache = codeCache.get(profileKey);
-        if (profileCache == null) {
-            return null;
+    private @NotNull C compile(@NotNull Compiler<C> compiler) throws ExpressionEvaluationException, SecurityViolationException {
+        long start = System.nanoTime();
+        try {
+            return Objects.requireNonNull(compiler.compile(), "compiled code");
+        } finally {
+            compilations.incrementAndGet();
+            compilationTime.addAndGet(System.nanoTime() - start);
         }
-        return profileCache.get(sourceCodeKey);
     }
 
-    public synchronized void putCode(ExpressionProfile profile, String sourceCodeKey, C compiledCode) {
-        String profileKey = getProfileKey(profile);
-        Map<String, C> profileCache = codeCache.get(profileKey);
-        if (profileCache == null) {
-            profileCache = new HashMap<>();
-            codeCache.put(profileKey, profileCache);
+    private @NotNull C waitForCompilation(@NotNull CompletableFuture<C> compilation, @NotNull Compiler<C> compiler)
+            throws ExpressionEvaluationException, SecurityViolationException {
+        try {
+            return compilation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.debug("Interrupted while waiting for script compilation, compiling the script on our own");
+            return compile(compiler);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ExpressionEvaluationException) {
+                throw (ExpressionEvaluationException) cause;
+            } else if (cause instanceof SecurityViolationException) {
+                throw (SecurityViolationException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new SystemException(cause);
+            }
         }
-        profileCache.put(sourceCodeKey, compiledCode);
     }
 
     private String getProfileKey(ExpressionProfile profile) {
         if (profile == null) {
-            return null;
+            return NULL_PROFILE_KEY;
         } else {
             return profile.getIdentifier();
         }
     }
 
-    public synchronized void clear() {
+    private void release(Object compiledCode) {
+        if (releaseAction != null && compiledCode != null) {
+            try {
+                //noinspection unchecked
+                releaseAction.accept((C) compiledCode);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Couldn't release compiled code {}: {}", compiledCode, e.getMessage(), e);
+            }
+        }
+    }
+
+    public void clear() {
+        codeCache.asMap().values().forEach(this::release);
         codeCache.clear();
     }
 
+    /** Number of compiled scripts in the cache. */
+    public int size() {
+        return codeCache.asMap().size();
+    }
+
+    /** Number of compilations executed. */
+    public long getCompilations() {
+        return compilations.get();
+    }
+
+    /** Time spent by the compilations, in nanoseconds. */
+    public long getCompilationTime() {
+        return compilationTime.get();
+    }
+
+    public void close() {
+        codeCache.close();
+    }
+
+    private static class Key {
+
+        @NotNull private final String profileKey;
+        @NotNull private final String sourceCode;
+
+        private Key(@NotNull String profileKey, @NotNull String sourceCode) {
+            this.profileKey = profileKey;
+            this.sourceCode = sourceCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return profileKey.equals(key.profileKey) && sourceCode.equals(key.sourceCode);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(profileKey, sourceCode);
+        }
+    }
 }
@@ -75,6 +75,9 @@ public class ScriptExpressionFactory implements Cache {
     /** The collection is immutable. */
     private volatile Collection<FunctionLibrary> cachedCustomFunctionLibraries;
 
+    /** Standard and custom libraries, derived from {@link #cachedCustomFunctionLibraries}. */
+    private volatile AllFunctionLibraries cachedAllFunctionLibraries;
+
     @PostConstruct
     public void register() {
         if (cacheRegistry != null) {
@@ -163,10 +166,8 @@ public class ScriptExpressionFactory implements Cache {
         expression.setPrismContext(prismContext);
         expression.setOutputDefinition(outputDefinition);
         expression.setObjectResolver(objectResolver);
-        Collection<FunctionLibrary> allFunctionLibraries = new ArrayList<>(standardFunctionLibraries);
-        allFunctionLibraries.addAll(
-                getCustomFunctionLibraries(expressionFactory, result));
-        expression.setFunctions(allFunctionLibraries);
+        expression.setFunctions(
+                getAllFunctionLibraries(expressionFactory, result));
 
         // It is not very elegant to process expression profile and script expression profile here.
         // It is somehow redundant, as it was already pre-processed in the expression evaluator/factory
@@ -209,6 +210,25 @@ public class ScriptExpressionFactory implements Cache {
         return scriptProfile;
     }
 
+    /**
+     * Returns standard and custom libraries together. The same (immutable) collection is returned until the custom
+     * libraries change, so the script evaluators can reuse the variables derived from it.
+     */
+    private @NotNull Collection<FunctionLibrary> getAllFunctionLibraries(
+            ExpressionFactory expressionFactory, OperationResult result)
+            throws ExpressionSyntaxException {
+        Collection<FunctionLibrary> custom = getCustomFunctionLibraries(expressionFactory, result);
+        AllFunctionLibraries cached = cachedAllFunctionLibraries;
+        if (cached != null && cached.custom == custom) {
+            return cached.all;
+        }
+        List<FunctionLibrary> all = new ArrayList<>(standardFunctionLibraries);
+        all.addAll(custom);
+        AllFunctionLibraries computed = new AllFunctionLibraries(custom, Collections.unmodifiableList(all));
+        cachedAllFunctionLibraries = computed;
+        return computed.all;
+    }
+
     private @NotNull Collection<FunctionLibrary> getCustomFunctionLibraries(
             ExpressionFactory expressionFactory, OperationResult result)
             throws ExpressionSyntaxException {
@@ -308,9 +328,18 @@ public class ScriptExpressionFactory implements Cache {
     @NotNull
     @Override
     public Collection<SingleCacheStateInformationType> getStateInformation() {
-        return Collections.singleton(new SingleCacheStateInformationType()
+        List<SingleCacheStateInformationType> information = new ArrayList<>();
+        information.add(new SingleCacheStateInformationType()
                 .name(ScriptExpressionFactory.class.getName())
                 .size(emptyIfNull(cachedCustomFunctionLibraries).size()));
+        for (ScriptEvaluator evaluator : evaluatorMap.values()) {
+            if (evaluator instanceof AbstractCachingScriptEvaluator) {
+                information.add(new SingleCacheStateInformationType()
+                        .name(ScriptCache.class.getName() + "." + evaluator.getLanguageName())
+                        .size(((AbstractCachingScriptEvaluator<?, ?>) evaluator).getScriptCache().size()));
+            }
+        }
+        return information;
     }
 
     @Override
@@ -322,6 +351,25 @@ public class ScriptExpressionFactory implements Cache {
             } else {
                 LOGGER_CONTENT.info("Custom function library cache is not yet initialized");
             }
+            for (ScriptEvaluator evaluator : evaluatorMap.values()) {
+                if (evaluator instanceof AbstractCachingScriptEvaluator) {
+                    ScriptCache<?, ?> scriptCache = ((AbstractCachingScriptEvaluator<?, ?>) evaluator).getScriptCache();
+                    LOGGER_CONTENT.info("Script cache for {}: {} compiled script(s); {} compilation(s) taking {} ms",
+                            evaluator.getLanguageName(), scriptCache.size(), scriptCache.getCompilations(),
+                            scriptCache.getCompilationTime() / 1_000_000);
+                }
+            }
+        }
+    }
+
+    private static class AllFunctionLibraries {
+
+        @NotNull private final Collection<FunctionLibrary> custom;
+        @NotNull private final Collection<FunctionLibrary> all;
+
+        private AllFunctionLibraries(@NotNull Collection<FunctionLibrary> custom, @NotNull Collection<FunctionLibrary> all) {
+            this.custom = custom;
+            this.all = all;
         }
     }
 }
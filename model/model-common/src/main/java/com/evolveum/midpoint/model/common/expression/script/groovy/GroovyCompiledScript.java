@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.common.expression.script.groovy;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import groovy.lang.Binding;
+import groovy.lang.Script;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Compiled Groovy script: the script class, with a pool of its instances.
+ *
+ * Creating a script instance (reflectively) and its binding for each evaluation is costly, as mappings are evaluated
+ * very often. So the instances, with their bindings, are kept in a small pool. The binding variables are cleared
+ * after each evaluation. An instance is used by one evaluation at a time; if the pool is empty (e.g. the script
+ * is evaluated recursively or by many threads), a new instance is created.
+ *
+ * The pool is owned by this object, so it lives as long as the script is in the script cache. (A thread-local pool would
+ * keep the instances - and so the script class - referenced from the worker threads even after the script is evicted.)
+ * When the script is evicted, {@link #release()} empties the pool.
+ *
+ * Scripts that have their own instance fields (e.g. declared by `@Field`) are not pooled, as these fields would keep
+ * their values between evaluations.
+ */
+class GroovyCompiledScript {
+
+    private static final int MAX_POOLED_INSTANCES = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    @NotNull private final Class<? extends Script> scriptClass;
+
+    /** Null if the instances are not pooled. */
+    @Nullable private final BlockingQueue<Script> pool;
+
+    /** True if the script was evicted from the cache, so the instances should no longer be pooled. */
+    private volatile boolean released;
+
+    GroovyCompiledScript(@NotNull Class<? extends Script> scriptClass, boolean pooling) {
+        this.scriptClass = scriptClass;
+        this.pool = pooling && !hasInstanceFields(scriptClass) ? new ArrayBlockingQueue<>(MAX_POOLED_INSTANCES) : null;
+    }
+
+    private static boolean hasInstanceFields(Class<?> scriptClass) {
+        for (Field field : scriptClass.getDeclaredFields()) {
+            String name = field.getName();
+            if (!field.isSynthetic()
+                    && !Modifier.isStatic(field.getModifiers())
+                    && !name.startsWith("$") // Groovy internal fields
+                    && !name.startsWith("__$")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @NotNull Class<? extends Script> getScriptClass() {
+        return scriptClass;
+    }
+
+    boolean isPooled() {
+        return pool != null;
+    }
+
+    /** Returns an instance with empty binding. It has to be returned by {@link #returnInstance(Script)}. */
+    @NotNull Script borrowInstance() {
+        if (pool != null) {
+            Script instance = pool.poll();
+            if (instance != null) {
+                return instance;
+            }
+        }
+        return InvokerHelper.createScript(scriptClass, new Binding());
+    }
+
+    /**
+     * Clears the binding (not to hold the variable values) and puts the instance back to the pool,
+     * if there is room in it.
+     */
+    void returnInstance(@NotNull Script instance) {
+        instance.getBinding().getVariables().clear();
+        if (pool != null && !released) {
+            pool.offer(instance);
+        }
+    }
+
+    /** Called when the script is evicted from the cache: drops the pooled instances. */
+    void release() {
+        released = true;
+        if (pool != null) {
+            pool.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return scriptClass.getName();
+    }
+}
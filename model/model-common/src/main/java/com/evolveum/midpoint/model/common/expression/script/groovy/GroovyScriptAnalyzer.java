@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.common.expression.script.groovy;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.codehaus.groovy.ast.*;
+import org.codehaus.groovy.ast.expr.*;
+import org.codehaus.groovy.classgen.VariableScopeVisitor;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.control.SourceUnit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+/**
+ * Static analysis of Groovy scripts: determines what the script refers to outside itself.
+ *
+ * Used to find out whether the result of a script can depend on anything else than its code, i.e. on variables
+ * (including function libraries), on script-level methods provided by the environment, or on Java/Groovy classes
+ * (like `LocalDate.now()`). The analysis is conservative: a reference that cannot be classified is reported.
+ */
+public class GroovyScriptAnalyzer {
+
+    private static final Trace LOGGER = TraceManager.getTrace(GroovyScriptAnalyzer.class);
+
+    /**
+     * Returns the names of variables, implicit-this methods and classes the script refers to.
+     *
+     * @return null if the script could not be analyzed (e.g. because it cannot be compiled)
+     */
+    public static @Nullable Set<String> getExternalReferences(@NotNull String code) {
+        CompilationUnit unit = new CompilationUnit();
+        SourceUnit source = unit.addSource("AnalyzedScript.groovy", code);
+        try {
+            // Only up to the conversion, as AST transformations (run in later phases) can execute arbitrary code.
+            // Names are not resolved to classes then; they are reported as (unknown) variables instead.
+            unit.compile(Phases.CONVERSION);
+            for (ClassNode classNode : source.getAST().getClasses()) {
+                new VariableScopeVisitor(source).visitClass(classNode);
+            }
+        } catch (RuntimeException e) { // including CompilationFailedException
+            LOGGER.trace("Couldn't analyze script, considering it not analyzable: {}", e.getMessage(), e);
+            return null;
+        }
+        ReferenceCollector collector = new ReferenceCollector();
+        Set<String> ownMethods = new TreeSet<>();
+        for (ModuleNode module : unit.getAST().getModules()) {
+            // The statement block is the body of the script's "run" method. Other methods of the script class
+            // (like the generated "main") are not visited, except for the ones declared in the script.
+            module.getStatementBlock().visit(collector);
+            for (MethodNode method : module.getMethods()) {
+                ownMethods.add(method.getName() + "()");
+                if (method.getCode() != null) {
+                    method.getCode().visit(collector);
+                }
+            }
+            for (ClassNode classNode : module.getClasses()) {
+                if (!classNode.isScript()) {
+                    collector.references.add("class:" + classNode.getName());
+                }
+            }
+        }
+        collector.references.removeAll(ownMethods);
+        return collector.references;
+    }
+
+    private static class ReferenceCollector extends CodeVisitorSupport {
+
+        private final Set<String> references = new TreeSet<>();
+
+        @Override
+        public void visitVariableExpression(VariableExpression expression) {
+            Variable accessed = expression.getAccessedVariable();
+            if (expression.isThisExpression() || expression.isSuperExpression()
+                    || accessed == null || accessed instanceof DynamicVariable) {
+                references.add(expression.getName());
+            }
+            super.visitVariableExpression(expression);
+        }
+
+        @Override
+        public void visitMethodCallExpression(MethodCallExpression call) {
+            if (call.isImplicitThis()) {
+                // Not visiting the (implicit) "this" object expression; the method is checked at the end.
+                references.add(call.getMethodAsString() + "()");
+                call.getMethod().visit(this);
+                call.getArguments().visit(this);
+            } else {
+                super.visitMethodCallExpression(call);
+            }
+        }
+
+        @Override
+        public void visitStaticMethodCallExpression(StaticMethodCallExpression call) {
+            references.add(call.getOwnerType().getName() + "." + call.getMethod() + "()");
+            super.visitStaticMethodCallExpression(call);
+        }
+
+        @Override
+        public void visitConstructorCallExpression(ConstructorCallExpression call) {
+            references.add("new " + call.getType().getName());
+            super.visitConstructorCallExpression(call);
+        }
+
+        @Override
+        public void visitClassExpression(ClassExpression expression) {
+            references.add("class:" + expression.getType().getName());
+            super.visitClassExpression(expression);
+        }
+    }
+}
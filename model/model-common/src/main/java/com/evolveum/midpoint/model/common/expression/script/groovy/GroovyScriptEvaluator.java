@@ -10,7 +10,6 @@ import java.lang.reflect.Method;
 import java.util.List;
 import java.util.Map;
 
-import groovy.lang.Binding;
 import groovy.lang.GString;
 import groovy.lang.GroovyClassLoader;
 import groovy.lang.GroovyRuntimeException;
@@ -24,6 +23,7 @@ import org.codehaus.groovy.control.customizers.SecureASTCustomizer;
 import org.codehaus.groovy.control.messages.SyntaxErrorMessage;
 import org.codehaus.groovy.runtime.InvokerHelper;
 import org.codehaus.groovy.syntax.SyntaxException;
+import org.jetbrains.annotations.VisibleForTesting;
 
 import com.evolveum.midpoint.common.LocalizationService;
 import com.evolveum.midpoint.model.common.expression.script.AbstractCachingScriptEvaluator;
@@ -42,7 +42,7 @@ import com.evolveum.midpoint.util.exception.SecurityViolationException;
  *
  * "Sandboxing" based on type checking inspired by work of Cédric Champeau (http://melix.github.io/blog/2015/03/sandboxing.html)
  */
-public class GroovyScriptEvaluator extends AbstractCachingScriptEvaluator<GroovyClassLoader, Class<?>> {
+public class GroovyScriptEvaluator extends AbstractCachingScriptEvaluator<GroovyClassLoader, GroovyCompiledScript> {
 
     public static final String LANGUAGE_NAME = "Groovy";
     public static final String LANGUAGE_URL = MidPointConstants.EXPRESSION_LANGUAGE_URL_BASE + LANGUAGE_NAME;
@@ -61,6 +61,9 @@ public class GroovyScriptEvaluator extends AbstractCachingScriptEvaluator<Groovy
      */
     private static final ScriptExpressionProfile BUILTIN_SCRIPT_EXPRESSION_PROFILE = new ScriptExpressionProfile(BUILTIN_EXPRESSION_PROFILE_NAME);
 
+    /** Should the script instances be reused? See {@link GroovyCompiledScript}. */
+    private volatile boolean reuseScriptInstances = true;
+
     public GroovyScriptEvaluator(PrismContext prismContext, Protector protector, LocalizationService localizationService) {
         super(prismContext, protector, localizationService);
 
@@ -97,8 +100,23 @@ public class GroovyScriptEvaluator extends AbstractCachingScriptEvaluator<Groovy
         }
     }
 
+    /** Applies to scripts compiled after the call. */
+    @VisibleForTesting
+    public void setReuseScriptInstances(boolean reuseScriptInstances) {
+        this.reuseScriptInstances = reuseScriptInstances;
+    }
+
     @Override
-    protected Class<?> compileScript(String codeString, ScriptExpressionEvaluationContext context) throws ExpressionEvaluationException, SecurityViolationException {
+    protected GroovyCompiledScript compileScript(String codeString, ScriptExpressionEvaluationContext context) throws ExpressionEvaluationException, SecurityViolationException {
+        Class<?> compiledScriptClass = parseClass(codeString, context);
+        if (!Script.class.isAssignableFrom(compiledScriptClass)) {
+            throw new ExpressionEvaluationException("Expected groovy script class, but got " + compiledScriptClass);
+        }
+        //noinspection unchecked
+        return new GroovyCompiledScript((Class<? extends Script>) compiledScriptClass, reuseScriptInstances);
+    }
+
+    private Class<?> parseClass(String codeString, ScriptExpressionEvaluationContext context) throws ExpressionEvaluationException, SecurityViolationException {
         try {
             return getGroovyLoader(context).parseClass(codeString, context.getContextDescription());
         } catch (MultipleCompilationErrorsException e) {
@@ -120,14 +138,32 @@ public class GroovyScriptEvaluator extends AbstractCachingScriptEvaluator<Groovy
         }
         ScriptExpressionProfile scriptExpressionProfile = context.getScriptExpressionProfile();
         groovyClassLoader = createGroovyLoader(scriptExpressionProfile, context);
-        getScriptCache().putInterpreter(context.getExpressionProfile(), groovyClassLoader);
-        return groovyClassLoader;
+        return getScriptCache().putInterpreter(context.getExpressionProfile(), groovyClassLoader);
     }
 
     private GroovyClassLoader createGroovyLoader(ScriptExpressionProfile expressionProfile, ScriptExpressionEvaluationContext context) throws SecurityViolationException {
         CompilerConfiguration compilerConfiguration = new CompilerConfiguration(CompilerConfiguration.DEFAULT);
         configureCompiler(compilerConfiguration, expressionProfile, context);
-        return new GroovyClassLoader(GroovyScriptEvaluator.class.getClassLoader(), compilerConfiguration);
+        return new ScriptClassLoader(GroovyScriptEvaluator.class.getClassLoader(), compilerConfiguration);
+    }
+
+    /**
+     * Makes the script class unloadable: drops the pooled script instances, and removes the class from the class cache
+     * of the loader that compiled it, and from the Groovy meta-class registry.
+     */
+    @Override
+    protected void releaseCompiledScript(GroovyCompiledScript compiledScript) {
+        compiledScript.release();
+        Class<?> compiledScriptClass = compiledScript.getScriptClass();
+        InvokerHelper.removeClass(compiledScriptClass);
+        ClassLoader loader = compiledScriptClass.getClassLoader();
+        // Classes are defined by a per-compilation inner loader whose parent is the loader we have created.
+        while (loader != null && !(loader instanceof ScriptClassLoader)) {
+            loader = loader.getParent();
+        }
+        if (loader != null) {
+            ((ScriptClassLoader) loader).removeClass(compiledScriptClass);
+        }
     }
 
     private void configureCompiler(CompilerConfiguration compilerConfiguration, ScriptExpressionProfile scriptExpressionProfile, ScriptExpressionEvaluationContext context) throws SecurityViolationException {
@@ -180,17 +216,16 @@ public class GroovyScriptEvaluator extends AbstractCachingScriptEvaluator<Groovy
     }
 
     @Override
-    protected Object evaluateScript(Class<?> compiledScriptClass, ScriptExpressionEvaluationContext context) throws Exception {
+    protected Object evaluateScript(GroovyCompiledScript compiledScript, ScriptExpressionEvaluationContext context) throws Exception {
 
-        if (!Script.class.isAssignableFrom(compiledScriptClass)) {
-            throw new ExpressionEvaluationException("Expected groovy script class, but got " + compiledScriptClass);
-        }
-
-        Binding binding = new Binding(prepareScriptVariablesValueMap(context));
+        Script script = compiledScript.borrowInstance();
         try {
-            Script scriptResultObject = InvokerHelper.createScript(compiledScriptClass, binding);
+            //noinspection unchecked
+            Map<String, Object> variables = script.getBinding().getVariables();
+            variables.putAll(getFunctionVariables(context.getFunctions()));
+            addScriptVariables(variables, context);
 
-            Object resultObject = scriptResultObject.run();
+            Object resultObject = script.run();
             if (resultObject == null) {
                 return null;
             }
@@ -205,6 +240,8 @@ public class GroovyScriptEvaluator extends AbstractCachingScriptEvaluator<Groovy
             // we can not set is as cause, so we can copy message only.
             // Seems also other groovy runtime exceptions are not serializable.
             throw new ExpressionEvaluationException("Groovy Evaluation Failed: " + e.getMessage(),serializationSafeThrowable(e));
+        } finally {
+            compiledScript.returnInstance(script);
         }
     }
 
@@ -220,6 +257,22 @@ public class GroovyScriptEvaluator extends AbstractCachingScriptEvaluator<Groovy
         return e;
     }
 
+    /** Groovy class loader that allows removing the script classes from its class cache. */
+    private static class ScriptClassLoader extends GroovyClassLoader {
+
+        private ScriptClassLoader(ClassLoader parent, CompilerConfiguration config) {
+            super(parent, config);
+        }
+
+        private void removeClass(Class<?> scriptClass) {
+            String name = scriptClass.getName();
+            // Scripts may have the same (generated) class names, so we must not remove a class of another script.
+            if (classCache.get(name) == scriptClass) {
+                removeClassCacheEntry(name);
+            }
+        }
+    }
+
     static AccessDecision decideGroovyBuiltin(String className, String methodName) {
         return BUILTIN_SCRIPT_EXPRESSION_PROFILE.decideClassAccess(className, methodName);
     }
@@ -24,6 +24,7 @@ import javax.xml.datatype.XMLGregorianCalendar;
 import javax.xml.namespace.QName;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import com.evolveum.midpoint.model.api.context.Mapping;
 import com.evolveum.midpoint.model.common.ModelCommonBeans;
@@ -206,6 +207,12 @@ public abstract class AbstractMappingImpl<V extends PrismValue, D extends ItemDe
      */
     private final MappingPreExpression mappingPreExpression;
 
+    /**
+     * Parsed sources and target, and compiled expressions of the mapping bean, shared with other mappings
+     * created from the same bean. Null if the bean is not cached. See {@link MappingPrototypeCache}.
+     */
+    @Nullable transient final MappingPrototype mappingPrototype;
+
     /**
      * Additional clause for condition evaluation. If set to "false" then condition for old state
      * is considered to be false. Used to skip evaluation for old state if we know there's nothing
@@ -393,6 +400,7 @@ public abstract class AbstractMappingImpl<V extends PrismValue, D extends ItemDe
         valuePolicySupplier = builder.getValuePolicySupplier();
         variableProducer = builder.getVariableProducer();
         mappingPreExpression = builder.getMappingPreExpression();
+        mappingPrototype = ModelCommonBeans.get().mappingPrototypeCache.get(mappingBean, originObject, expressionProfile);
         conditionMaskOld = builder.isConditionMaskOld();
         conditionMaskNew = builder.isConditionMaskNew();
         profiling = builder.isProfiling();
@@ -440,6 +448,7 @@ public abstract class AbstractMappingImpl<V extends PrismValue, D extends ItemDe
         this.originObject = prototype.originObject;
         this.valuePolicySupplier = prototype.valuePolicySupplier;
         this.mappingPreExpression = prototype.mappingPreExpression;
+        this.mappingPrototype = prototype.mappingPrototype;
         this.conditionMaskOld = prototype.conditionMaskOld;
         this.conditionMaskNew = prototype.conditionMaskNew;
 
@@ -897,7 +906,11 @@ public abstract class AbstractMappingImpl<V extends PrismValue, D extends ItemDe
         ValueSetDefinition<V, D> rangeSetDef = new ValueSetDefinition<>(rangeSetDefBean, getOutputDefinition(), valueMetadataDefinition,
                 expressionProfile, name, mappingSpecification, "range",
                 "range of " + name + " in " + getMappingContextDescription(), task, result);
-        rangeSetDef.init(ModelCommonBeans.get().expressionFactory);
+        if (mappingPrototype != null) {
+            mappingPrototype.initRange(rangeSetDef, "range of " + name + " in " + getMappingContextDescription(), task, result);
+        } else {
+            rangeSetDef.init(ModelCommonBeans.get().expressionFactory);
+        }
         rangeSetDef.setAdditionalVariables(variables);
         for (V originalValue : originalTargetValues) {
             if (rangeSetDef.contains(originalValue)) {
@@ -1284,12 +1297,14 @@ public abstract class AbstractMappingImpl<V extends PrismValue, D extends ItemDe
             conditionOutputTriple.addToZeroSet(PrismContext.get().itemFactory().createPropertyValue(Boolean.TRUE));
         } else {
             Expression<PrismPropertyValue<Boolean>, PrismPropertyDefinition<Boolean>> expression =
-                    ExpressionUtil.createCondition(
-                            conditionExpressionType,
-                            expressionProfile,
-                            ModelCommonBeans.get().expressionFactory,
-                            "condition in " + getMappingContextDescription(),
-                            task, result);
+                    mappingPrototype != null ?
+                            mappingPrototype.getCondition("condition in " + getMappingContextDescription(), task, result) :
+                            ExpressionUtil.createCondition(
+                                    conditionExpressionType,
+                                    expressionProfile,
+                                    ModelCommonBeans.get().expressionFactory,
+                                    "condition in " + getMappingContextDescription(),
+                                    task, result);
             ExpressionEvaluationContext context = new ExpressionEvaluationContext(sources, variables,
                     "condition in " + getMappingContextDescription(), task);
             context.setValuePolicySupplier(valuePolicySupplier);
@@ -1305,9 +1320,14 @@ public abstract class AbstractMappingImpl<V extends PrismValue, D extends ItemDe
     private void evaluateExpression(OperationResult result)
             throws SchemaException, ExpressionEvaluationException, ObjectNotFoundException,
             CommunicationException, ConfigurationException, SecurityViolationException {
-        expression = ModelCommonBeans.get().expressionFactory.makeExpression(
-                mappingBean.getExpression(), getOutputDefinition(), expressionProfile,
-                "expression in " + getMappingContextDescription(), task, result);
+        if (mappingPrototype != null) {
+            expression = mappingPrototype.getExpression(
+                    getOutputDefinition(), "expression in " + getMappingContextDescription(), task, result);
+        } else {
+            expression = ModelCommonBeans.get().expressionFactory.makeExpression(
+                    mappingBean.getExpression(), getOutputDefinition(), expressionProfile,
+                    "expression in " + getMappingContextDescription(), task, result);
+        }
         ExpressionEvaluationContext context = new ExpressionEvaluationContext(sources, variables,
                 "expression in " + getMappingContextDescription(), task);
         context.setDefaultSource(defaultSource);
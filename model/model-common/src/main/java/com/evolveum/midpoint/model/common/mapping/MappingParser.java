@@ -72,7 +72,8 @@ class MappingParser<D extends ItemDefinition<?>, MBT extends AbstractMappingType
     }
 
     private void parseTarget() throws SchemaException {
-        ItemPath targetPath = ExpressionUtil.getPath(m.mappingBean.getTarget());
+        ItemPath targetPath = m.mappingPrototype != null ?
+                m.mappingPrototype.getTargetPath() : ExpressionUtil.getPath(m.mappingBean.getTarget());
         if (targetPath == null) {
             outputDefinition = m.defaultTargetDefinition;
             originalOutputPath = m.defaultTargetPath;
@@ -108,19 +109,25 @@ class MappingParser<D extends ItemDefinition<?>, MBT extends AbstractMappingType
             m.sources.add(m.defaultSource);
             m.defaultSource.recompute();
         }
-        // FIXME remove this ugly hack
-        if (m.mappingBean instanceof MappingType) {
+        if (m.mappingPrototype != null) {
+            for (MappingPrototype.SourcePrototype sourcePrototype : m.mappingPrototype.getSources()) {
+                addSource(parseSource(sourcePrototype.getSourceDefinition(), sourcePrototype, result));
+            }
+        } else if (m.mappingBean instanceof MappingType) { // FIXME remove this ugly hack
             for (VariableBindingDefinitionType sourceDefinition : m.mappingBean.getSource()) {
-                Source<?, ?> source = parseSource(sourceDefinition, result);
-                source.recompute();
-
-                // Override existing sources (e.g. default source)
-                m.sources.removeIf(existing -> existing.getName().equals(source.getName()));
-                m.sources.add(source);
+                addSource(parseSource(sourceDefinition, null, result));
             }
         }
     }
 
+    private void addSource(Source<?, ?> source) throws SchemaException {
+        source.recompute();
+
+        // Override existing sources (e.g. default source)
+        m.sources.removeIf(existing -> existing.getName().equals(source.getName()));
+        m.sources.add(source);
+    }
+
     @NotNull ItemPath getSourcePath(VariableBindingDefinitionType sourceType) throws SchemaException {
         ItemPathType itemPathType = sourceType.getPath();
         if (itemPathType == null) {
@@ -134,11 +141,19 @@ class MappingParser<D extends ItemDefinition<?>, MBT extends AbstractMappingType
     }
 
     private <IV extends PrismValue, ID extends ItemDefinition<?>> Source<IV, ID> parseSource(
-            VariableBindingDefinitionType sourceDefinition, OperationResult result)
+            VariableBindingDefinitionType sourceDefinition, @Nullable MappingPrototype.SourcePrototype sourcePrototype,
+            OperationResult result)
             throws SchemaException, ObjectNotFoundException, ExpressionEvaluationException,
             CommunicationException, ConfigurationException, SecurityViolationException {
-        ItemPath path = getSourcePath(sourceDefinition);
-        @NotNull QName sourceQName = sourceDefinition.getName() != null ? sourceDefinition.getName() : ItemPath.toName(path.last());
+        ItemPath path;
+        QName sourceQName;
+        if (sourcePrototype != null) {
+            path = sourcePrototype.getPath();
+            sourceQName = sourcePrototype.getName();
+        } else {
+            path = getSourcePath(sourceDefinition);
+            sourceQName = sourceDefinition.getName() != null ? sourceDefinition.getName() : ItemPath.toName(path.last());
+        }
         String variableName = sourceQName.getLocalPart();
 
         TypedValue<?> typedSourceObject = ExpressionUtil.resolvePathGetTypedValue(
@@ -195,7 +210,13 @@ class MappingParser<D extends ItemDefinition<?>, MBT extends AbstractMappingType
                     m.expressionProfile, variableName, null,
                     "domain of " + variableName, "domain of " + variableName + " in " + m.getMappingContextDescription(),
                     m.getTask(), result);
-            setDef.init(ModelCommonBeans.get().expressionFactory);
+            if (sourcePrototype != null) {
+                //noinspection ConstantConditions
+                m.mappingPrototype.initDomain(sourcePrototype, setDef,
+                        "domain of " + variableName + " in " + m.getMappingContextDescription(), m.getTask(), result);
+            } else {
+                setDef.init(ModelCommonBeans.get().expressionFactory);
+            }
             setDef.setAdditionalVariables(m.variables);
             try {
 
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.common.mapping;
+
+import static com.evolveum.midpoint.util.MiscUtil.stateCheck;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.xml.namespace.QName;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.model.common.ModelCommonBeans;
+import com.evolveum.midpoint.prism.ItemDefinition;
+import com.evolveum.midpoint.prism.PrismPropertyDefinition;
+import com.evolveum.midpoint.prism.PrismPropertyValue;
+import com.evolveum.midpoint.prism.PrismValue;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.repo.common.expression.Expression;
+import com.evolveum.midpoint.repo.common.expression.ExpressionUtil;
+import com.evolveum.midpoint.repo.common.expression.ValueSetDefinition;
+import com.evolveum.midpoint.schema.expression.ExpressionProfile;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.exception.SecurityViolationException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.AbstractMappingType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ExpressionType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.MappingType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ValueSetDefinitionType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.VariableBindingDefinitionType;
+import com.evolveum.prism.xml.ns._public.types_3.ItemPathType;
+
+/**
+ * The parts of a mapping that do not depend on the evaluation: parsed source and target paths, and compiled expression,
+ * condition, and range (and domain) conditions. Shared by all mappings created from the same mapping bean,
+ * see {@link MappingPrototypeCache}. So the per-evaluation work is only the binding of variables, resolution
+ * of sources and target, and the execution of the expressions.
+ *
+ * The expressions are compiled lazily, when first needed. Concurrent threads can compile the same expression more times;
+ * the outcome is the same, so we do not synchronize here.
+ */
+class MappingPrototype {
+
+    /** The (immutable) bean this prototype was created for. */
+    @NotNull private final AbstractMappingType mappingBean;
+
+    /** Expression profile the expressions are compiled for. */
+    @Nullable private final ExpressionProfile expressionProfile;
+
+    /** Parsed explicit sources (for {@link MappingType} only). */
+    @NotNull private final List<SourcePrototype> sources;
+
+    /** Parsed target path, if specified. */
+    @Nullable private final ItemPath targetPath;
+
+    /** Compiled condition, if the mapping has one. */
+    private volatile Expression<PrismPropertyValue<Boolean>, PrismPropertyDefinition<Boolean>> condition;
+
+    /** Compiled expression, along with the output definition it was compiled for. */
+    private volatile CompiledExpression<?, ?> expression;
+
+    /** Compiled range conditions, if the target has a range. */
+    private volatile SetConditions rangeConditions;
+
+    private MappingPrototype(@NotNull AbstractMappingType mappingBean, @Nullable ExpressionProfile expressionProfile,
+            @NotNull List<SourcePrototype> sources, @Nullable ItemPath targetPath) {
+        this.mappingBean = mappingBean;
+        this.expressionProfile = expressionProfile;
+        this.sources = sources;
+        this.targetPath = targetPath;
+    }
+
+    /**
+     * Returns null if the sources cannot be parsed. The error is then reported by {@link MappingParser}
+     * when the mapping is evaluated.
+     *
+     * The bean must be immutable, see {@link MappingPrototypeCache}.
+     */
+    static @Nullable MappingPrototype create(
+            @NotNull AbstractMappingType mappingBean, @Nullable ExpressionProfile expressionProfile) {
+        stateCheck(mappingBean.asPrismContainerValue().isImmutable(), "Mutable mapping bean: %s", mappingBean);
+        List<SourcePrototype> sources = new ArrayList<>();
+        if (mappingBean instanceof MappingType) {
+            for (VariableBindingDefinitionType sourceDefinition : mappingBean.getSource()) {
+                ItemPathType pathBean = sourceDefinition.getPath();
+                ItemPath path = pathBean != null ? pathBean.getItemPath() : null;
+                if (path == null || path.isEmpty()) {
+                    return null;
+                }
+                QName name = sourceDefinition.getName() != null ? sourceDefinition.getName() : ItemPath.toName(path.last());
+                sources.add(new SourcePrototype(sourceDefinition, path, name));
+            }
+        }
+        return new MappingPrototype(mappingBean, expressionProfile, Collections.unmodifiableList(sources),
+                ExpressionUtil.getPath(mappingBean.getTarget()));
+    }
+
+    /** Prototypes of the explicit sources, in the order in which they are defined. */
+    @NotNull List<SourcePrototype> getSources() {
+        return sources;
+    }
+
+    @Nullable ItemPath getTargetPath() {
+        return targetPath;
+    }
+
+    @NotNull Expression<PrismPropertyValue<Boolean>, PrismPropertyDefinition<Boolean>> getCondition(
+            @NotNull String shortDesc, Task task, OperationResult result)
+            throws SchemaException, ObjectNotFoundException, SecurityViolationException {
+        Expression<PrismPropertyValue<Boolean>, PrismPropertyDefinition<Boolean>> current = condition;
+        if (current == null) {
+            current = createCondition(mappingBean.getCondition(), shortDesc, task, result);
+            condition = current;
+        }
+        return current;
+    }
+
+    /**
+     * The expression is kept for the output definition used most recently. These are usually the same (immutable)
+     * schema definitions, so the expression is compiled once.
+     */
+    <V extends PrismValue, D extends ItemDefinition<?>> @NotNull Expression<V, D> getExpression(
+            D outputDefinition, @NotNull String shortDesc, Task task, OperationResult result)
+            throws SchemaException, ObjectNotFoundException, SecurityViolationException {
+        CompiledExpression<?, ?> current = expression;
+        if (current != null && current.outputDefinition == outputDefinition) {
+            //noinspection unchecked
+            return (Expression<V, D>) current.expression;
+        }
+        Expression<V, D> created = ModelCommonBeans.get().expressionFactory.makeExpression(
+                mappingBean.getExpression(), outputDefinition, expressionProfile, shortDesc, task, result);
+        if (outputDefinition == null || outputDefinition.isImmutable()) {
+            expression = new CompiledExpression<>(outputDefinition, created);
+        }
+        return created;
+    }
+
+    /** Initializes the range of the target (created for the target set definition). */
+    void initRange(@NotNull ValueSetDefinition<?, ?> rangeSetDef, @NotNull String shortDesc, Task task,
+            OperationResult result) throws SchemaException, ObjectNotFoundException, SecurityViolationException {
+        SetConditions current = rangeConditions;
+        if (current == null) {
+            current = createSetConditions(mappingBean.getTarget().getSet(), shortDesc, task, result);
+            rangeConditions = current;
+        }
+        current.init(rangeSetDef);
+    }
+
+    /** Initializes the domain of the source (created for the source set definition). */
+    void initDomain(@NotNull SourcePrototype source, @NotNull ValueSetDefinition<?, ?> domainSetDef, @NotNull String shortDesc,
+            Task task, OperationResult result) throws SchemaException, ObjectNotFoundException, SecurityViolationException {
+        SetConditions current = source.domainConditions;
+        if (current == null) {
+            current = createSetConditions(source.sourceDefinition.getSet(), shortDesc, task, result);
+            source.domainConditions = current;
+        }
+        current.init(domainSetDef);
+    }
+
+    private @NotNull Expression<PrismPropertyValue<Boolean>, PrismPropertyDefinition<Boolean>> createCondition(
+            ExpressionType conditionBean, String shortDesc, Task task, OperationResult result)
+            throws SchemaException, ObjectNotFoundException, SecurityViolationException {
+        return ExpressionUtil.createCondition(
+                conditionBean, expressionProfile, ModelCommonBeans.get().expressionFactory, shortDesc, task, result);
+    }
+
+    private SetConditions createSetConditions(@NotNull ValueSetDefinitionType setBean, String shortDesc, Task task,
+            OperationResult result) throws SchemaException, ObjectNotFoundException, SecurityViolationException {
+        return new SetConditions(
+                setBean.getCondition() != null ? createCondition(setBean.getCondition(), shortDesc, task, result) : null,
+                setBean.getYieldCondition() != null ? createCondition(setBean.getYieldCondition(), shortDesc, task, result) : null);
+    }
+
+    /** Parsed source definition. */
+    static class SourcePrototype {
+
+        @NotNull private final VariableBindingDefinitionType sourceDefinition;
+        @NotNull private final ItemPath path;
+        @NotNull private final QName name;
+
+        /** Compiled domain conditions, if the source has a domain. */
+        private volatile SetConditions domainConditions;
+
+        private SourcePrototype(
+                @NotNull VariableBindingDefinitionType sourceDefinition, @NotNull ItemPath path, @NotNull QName name) {
+            this.sourceDefinition = sourceDefinition;
+            this.path = path;
+            this.name = name;
+        }
+
+        @NotNull VariableBindingDefinitionType getSourceDefinition() {
+            return sourceDefinition;
+        }
+
+        @NotNull ItemPath getPath() {
+            return path;
+        }
+
+        @NotNull QName getName() {
+            return name;
+        }
+    }
+
+    /** Compiled conditions of a value set definition. */
+    private static class SetConditions {
+
+        @Nullable private final Expression<PrismPropertyValue<Boolean>, PrismPropertyDefinition<Boolean>> condition;
+        @Nullable private final Expression<PrismPropertyValue<Boolean>, PrismPropertyDefinition<Boolean>> yieldCondition;
+
+        private SetConditions(
+                @Nullable Expression<PrismPropertyValue<Boolean>, PrismPropertyDefinition<Boolean>> condition,
+                @Nullable Expression<PrismPropertyValue<Boolean>, PrismPropertyDefinition<Boolean>> yieldCondition) {
+            this.condition = condition;
+            this.yieldCondition = yieldCondition;
+        }
+
+        private void init(ValueSetDefinition<?, ?> setDef) {
+            setDef.init(condition, yieldCondition);
+        }
+    }
+
+    /** Expression compiled for given output definition. */
+    private static class CompiledExpression<V extends PrismValue, D extends ItemDefinition<?>> {
+
+        private final D outputDefinition;
+        @NotNull private final Expression<V, D> expression;
+
+        private CompiledExpression(D outputDefinition, @NotNull Expression<V, D> expression) {
+            this.outputDefinition = outputDefinition;
+            this.expression = expression;
+        }
+    }
+}
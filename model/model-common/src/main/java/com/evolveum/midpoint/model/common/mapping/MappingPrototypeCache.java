@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.common.mapping;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.cache2k.Cache2kBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.CacheInvalidationContext;
+import com.evolveum.midpoint.prism.PrismContainerValue;
+import com.evolveum.midpoint.prism.PrismContainerable;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.repo.api.Cache;
+import com.evolveum.midpoint.repo.api.CacheInvalidationEventSpecification;
+import com.evolveum.midpoint.repo.api.CacheRegistry;
+import com.evolveum.midpoint.schema.expression.ExpressionProfile;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Node-wide cache of {@link MappingPrototype} instances.
+ *
+ * Only immutable mappings defined in objects having OID and version (e.g. roles, templates, resources) are cached.
+ * The key is "OID:version" of the object, the path of the mapping bean in the object, and the expression profile.
+ * As the bean is immutable, the key determines its content, so the cached prototype is used without comparing the beans.
+ *
+ * A new version of the object leads to different keys. The entries of modified roles, templates, and resources are removed
+ * on their invalidation events; the obsolete entries of other objects are eventually evicted, as the cache is size-bounded.
+ * (We do not listen to changes of all the objects, as most of them - users, shadows - contain no mappings.)
+ * Changes of function libraries and of the system configuration (where the expression profiles are defined) clear
+ * the whole cache.
+ */
+@Component
+public class MappingPrototypeCache implements Cache {
+
+    private static final Trace LOGGER = TraceManager.getTrace(MappingPrototypeCache.class);
+    private static final Trace LOGGER_CONTENT = TraceManager.getTrace(MappingPrototypeCache.class.getName() + ".content");
+
+    private static final Collection<CacheInvalidationEventSpecification> EVENT_SPECIFICATIONS =
+            CacheInvalidationEventSpecification.setOf(
+                    FunctionLibraryType.class,
+                    SystemConfigurationType.class,
+                    AbstractRoleType.class,
+                    ObjectTemplateType.class,
+                    ResourceType.class);
+
+    private static final long CAPACITY = 10000;
+
+    @Autowired private CacheRegistry cacheRegistry;
+
+    @NotNull private final org.cache2k.Cache<String, MappingPrototype> prototypes =
+            Cache2kBuilder.of(String.class, MappingPrototype.class)
+                    .entryCapacity(CAPACITY)
+                    .eternal(true)
+                    .build();
+
+    @PostConstruct
+    public void register() {
+        cacheRegistry.registerCache(this);
+    }
+
+    @PreDestroy
+    public void unregister() {
+        cacheRegistry.unregisterCache(this);
+        prototypes.close();
+    }
+
+    /**
+     * Returns the prototype for given mapping bean, or null if the mapping cannot be cached (it is not a part
+     * of a repository object with known OID and version).
+     */
+    @Nullable MappingPrototype get(
+            @NotNull AbstractMappingType mappingBean, @Nullable ObjectType originObject,
+            @Nullable ExpressionProfile expressionProfile) {
+        String key = createKey(mappingBean, originObject, expressionProfile);
+        if (key == null) {
+            return null;
+        }
+        MappingPrototype cached = prototypes.peek(key);
+        if (cached != null) {
+            return cached;
+        }
+        MappingPrototype created = MappingPrototype.create(mappingBean, expressionProfile);
+        if (created != null) {
+            LOGGER.trace("Created mapping prototype for {}", key);
+            prototypes.put(key, created);
+        }
+        return created;
+    }
+
+    private @Nullable String createKey(@NotNull AbstractMappingType mappingBean, @Nullable ObjectType originObject,
+            @Nullable ExpressionProfile expressionProfile) {
+        if (originObject == null || originObject.getOid() == null || originObject.getVersion() == null) {
+            return null;
+        }
+        //noinspection unchecked
+        PrismContainerValue<AbstractMappingType> value = mappingBean.asPrismContainerValue();
+        if (!value.isImmutable()) {
+            // The bean can be changed in memory (e.g. in an object being modified by the current operation),
+            // so the version of the object does not determine its content.
+            return null;
+        }
+        if (!isUniquelyIdentifiedIn(value, originObject.getOid())) {
+            return null;
+        }
+        ItemPath path = value.getPath();
+        return originObject.getOid() + ":" + originObject.getVersion() + ":" + path + ":"
+                + (expressionProfile != null ? expressionProfile.getIdentifier() : "");
+    }
+
+    /** Is the value contained in the object and has a path that identifies it unambiguously? */
+    private boolean isUniquelyIdentifiedIn(PrismContainerValue<?> value, String oid) {
+        PrismContainerValue<?> current = value;
+        for (;;) {
+            PrismContainerable<?> parent = current.getParent();
+            if (parent instanceof PrismObject) {
+                return oid.equals(((PrismObject<?>) parent).getOid());
+            }
+            if (parent == null
+                    || current.getId() == null
+                    && (parent.getDefinition() == null || !parent.getDefinition().isSingleValue())) {
+                return false;
+            }
+            current = current.getParentContainerValue();
+            if (current == null) {
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public Collection<CacheInvalidationEventSpecification> getEventSpecifications() {
+        return EVENT_SPECIFICATIONS;
+    }
+
+    @Override
+    public void invalidate(Class<?> type, String oid, CacheInvalidationContext context) {
+        if (type == null || oid == null
+                || FunctionLibraryType.class.isAssignableFrom(type)
+                || SystemConfigurationType.class.isAssignableFrom(type)) {
+            LOGGER.trace("Clearing the cache");
+            prototypes.clear();
+        } else {
+            String prefix = oid + ":";
+            List<String> keys = prototypes.asMap().keySet().stream()
+                    .filter(key -> key.startsWith(prefix))
+                    .collect(Collectors.toList());
+            LOGGER.trace("Removing {} entries for {}", keys.size(), oid);
+            prototypes.removeAll(keys);
+        }
+    }
+
+    @Override
+    public @NotNull Collection<SingleCacheStateInformationType> getStateInformation() {
+        return Collections.singleton(new SingleCacheStateInformationType()
+                .name(MappingPrototypeCache.class.getName())
+                .size(prototypes.asMap().size()));
+    }
+
+    @Override
+    public void dumpContent() {
+        if (LOGGER_CONTENT.isInfoEnabled()) {
+            prototypes.asMap().keySet().forEach(key ->
+                    LOGGER_CONTENT.info("Cached mapping prototype: {}", key));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.common.expression.script;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import static com.evolveum.midpoint.prism.util.PrismTestUtil.getPrismContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import javax.xml.namespace.QName;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeSuite;
+import org.testng.annotations.Test;
+import org.xml.sax.SAXException;
+
+import com.evolveum.midpoint.common.Clock;
+import com.evolveum.midpoint.common.LocalizationTestUtil;
+import com.evolveum.midpoint.model.common.expression.functions.FunctionLibrary;
+import com.evolveum.midpoint.model.common.expression.functions.FunctionLibraryUtil;
+import com.evolveum.midpoint.model.common.expression.script.groovy.GroovyScriptEvaluator;
+import com.evolveum.midpoint.prism.ItemDefinition;
+import com.evolveum.midpoint.prism.PrimitiveType;
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismPropertyValue;
+import com.evolveum.midpoint.prism.crypto.KeyStoreBasedProtectorBuilder;
+import com.evolveum.midpoint.prism.crypto.Protector;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.repo.common.DirectoryFileObjectResolver;
+import com.evolveum.midpoint.repo.common.ObjectResolver;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.schema.constants.MidPointConstants;
+import com.evolveum.midpoint.schema.expression.VariablesMap;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.test.util.InfraTestMixin;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.util.DOMUtil;
+import com.evolveum.midpoint.util.PrettyPrinter;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ScriptExpressionEvaluatorType;
+
+/**
+ * Compares the throughput of Groovy script evaluation with and without reusing the script instances.
+ *
+ * Currently not a part of automated test suite.
+ */
+public class GroovyScriptEvaluationPerformanceTest extends AbstractUnitTest
+        implements InfraTestMixin {
+
+    private static final File TEST_DIR = new File("src/test/resources/expression/groovy");
+    private static final File OBJECTS_DIR = new File("src/test/resources/objects");
+
+    private static final QName PROPERTY_NAME = new QName(MidPointConstants.NS_MIDPOINT_TEST_PREFIX, "whatever");
+
+    private static final int WARM_UP_ITERATIONS = 20_000;
+    private static final int ITERATIONS = 200_000;
+
+    private Collection<FunctionLibrary> functions;
+    private GroovyScriptEvaluator reusingEvaluator;
+    private GroovyScriptEvaluator nonReusingEvaluator;
+
+    @BeforeSuite
+    public void setup() throws SchemaException, SAXException, IOException {
+        PrettyPrinter.setDefaultNamespacePrefix(MidPointConstants.NS_MIDPOINT_PUBLIC_PREFIX);
+        PrismTestUtil.resetPrismContext(MidPointPrismContextFactory.FACTORY);
+    }
+
+    @BeforeClass
+    public void setupEvaluators() {
+        PrismContext prismContext = getPrismContext();
+        Protector protector = KeyStoreBasedProtectorBuilder.create(prismContext).buildOnly();
+        functions = new ArrayList<>();
+        functions.add(FunctionLibraryUtil.createBasicFunctionLibrary(prismContext, protector, new Clock()));
+
+        reusingEvaluator = new GroovyScriptEvaluator(prismContext, protector, LocalizationTestUtil.getLocalizationService());
+        nonReusingEvaluator = new GroovyScriptEvaluator(prismContext, protector, LocalizationTestUtil.getLocalizationService());
+        nonReusingEvaluator.setReuseScriptInstances(false);
+    }
+
+    @Test
+    public void test100EvaluateWithoutReuse() throws Exception {
+        evaluate(nonReusingEvaluator, "without reuse");
+    }
+
+    @Test
+    public void test110EvaluateWithReuse() throws Exception {
+        evaluate(reusingEvaluator, "with reuse");
+    }
+
+    private void evaluate(ScriptEvaluator evaluator, String desc) throws Exception {
+        given();
+        OperationResult result = createOperationResult();
+        ScriptExpressionEvaluatorType scriptType = PrismTestUtil.parseAtomicValue(
+                new File(TEST_DIR, "expression-string-variables.xml"), ScriptExpressionEvaluatorType.COMPLEX_TYPE);
+        ItemDefinition<?> outputDefinition =
+                getPrismContext().definitionFactory().createPropertyDefinition(PROPERTY_NAME, DOMUtil.XSD_STRING);
+        ObjectResolver resolver = new DirectoryFileObjectResolver(OBJECTS_DIR);
+
+        ScriptExpression scriptExpression = new ScriptExpression(evaluator, scriptType);
+        scriptExpression.setOutputDefinition(outputDefinition);
+        scriptExpression.setObjectResolver(resolver);
+        scriptExpression.setFunctions(functions);
+
+        VariablesMap variables = VariablesMap.create(getPrismContext(),
+                "foo", "FOO", PrimitiveType.STRING,
+                "bar", "BAR", PrimitiveType.STRING);
+
+        ScriptExpressionEvaluationContext context = new ScriptExpressionEvaluationContext();
+        context.setVariables(variables);
+        context.setEvaluateNew(false);
+        context.setScriptExpression(scriptExpression);
+        context.setContextDescription(desc);
+
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            evaluate(scriptExpression, context, result);
+        }
+
+        when();
+        long start = System.nanoTime();
+        List<PrismPropertyValue<String>> lastResults = null;
+        for (int i = 0; i < ITERATIONS; i++) {
+            lastResults = evaluate(scriptExpression, context, result);
+        }
+        long duration = System.nanoTime() - start;
+
+        then();
+        assertEquals("Wrong script result", "FOOBAR", lastResults.get(0).getValue());
+        displayValue("Evaluations per second " + desc, ITERATIONS * 1e9 / duration);
+    }
+
+    /** Each evaluation gets its own result, not to accumulate the subresults. */
+    private List<PrismPropertyValue<String>> evaluate(ScriptExpression scriptExpression,
+            ScriptExpressionEvaluationContext context, OperationResult parentResult) throws Exception {
+        context.setResult(parentResult.createMinorSubresult("evaluate"));
+        try {
+            return scriptExpression.evaluate(context);
+        } finally {
+            parentResult.getSubresults().clear();
+        }
+    }
+}
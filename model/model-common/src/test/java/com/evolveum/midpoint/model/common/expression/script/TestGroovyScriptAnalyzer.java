@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.common.expression.script;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.model.common.expression.script.groovy.GroovyScriptAnalyzer;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+
+/**
+ * Tests {@link GroovyScriptAnalyzer}: scripts that refer to nothing outside themselves must have no external references,
+ * and any reference to variables, environment-provided methods, or classes must be reported.
+ */
+public class TestGroovyScriptAnalyzer extends AbstractUnitTest {
+
+    @Test
+    public void test100SelfContainedScripts() {
+        assertThat(GroovyScriptAnalyzer.getExternalReferences("true")).isEmpty();
+        assertThat(GroovyScriptAnalyzer.getExternalReferences("1 + 2 == 3")).isEmpty();
+        assertThat(GroovyScriptAnalyzer.getExternalReferences("'abc'.toUpperCase() == 'ABC'")).isEmpty();
+        assertThat(GroovyScriptAnalyzer.getExternalReferences("def x = 5\nx > 3")).isEmpty();
+        assertThat(GroovyScriptAnalyzer.getExternalReferences("[1, 2, 3].every { it > 0 }")).isEmpty();
+    }
+
+    @Test
+    public void test110ScriptMethods() {
+        assertThat(GroovyScriptAnalyzer.getExternalReferences("def five() { 5 }\nfive() == 5")).isEmpty();
+        assertThat(GroovyScriptAnalyzer.getExternalReferences("unknown() == 5")).containsExactly("unknown()");
+    }
+
+    @Test
+    public void test120Variables() {
+        assertThat(GroovyScriptAnalyzer.getExternalReferences("user != null")).containsExactly("user");
+        assertThat(GroovyScriptAnalyzer.getExternalReferences("basic.stringify(focus.name) == 'jack'"))
+                .containsExactlyInAnyOrder("basic", "focus");
+        assertThat(GroovyScriptAnalyzer.getExternalReferences("this != null")).contains("this");
+    }
+
+    @Test
+    public void test130Classes() {
+        // Class names are not resolved (to avoid running AST transformations), so they are seen as variables.
+        assertThat(GroovyScriptAnalyzer.getExternalReferences("LocalDate.now() != null")).contains("LocalDate");
+        assertThat(GroovyScriptAnalyzer.getExternalReferences("new Date() != null")).contains("new Date");
+        assertThat(GroovyScriptAnalyzer.getExternalReferences("class X {}\ntrue")).contains("class:X");
+    }
+
+    @Test
+    public void test140UnparseableScript() {
+        assertThat(GroovyScriptAnalyzer.getExternalReferences("{{ this is not groovy")).isNull();
+    }
+}
@@ -15,7 +15,10 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.xml.namespace.QName;
 
 import org.testng.AssertJUnit;
@@ -119,6 +122,73 @@ public class TestScriptCaching extends AbstractUnitTest
         assertTrue("Even Horatio was wrong! " + horatio1Time + " -> " + horatio2Time, horatio2Time <= horatio1Time);
     }
 
+    /** Concurrent requests for the same script should wait for a single compilation. */
+    @Test
+    public void testConcurrentCompilation() throws Exception {
+        given();
+        ScriptCache<Object, String> cache = new ScriptCache<>();
+        AtomicInteger compilations = new AtomicInteger();
+        CountDownLatch compilationStarted = new CountDownLatch(1);
+        CountDownLatch compilationAllowed = new CountDownLatch(1);
+        ScriptCache.Compiler<String> slowCompiler = () -> {
+            compilations.incrementAndGet();
+            compilationStarted.countDown();
+            try {
+                compilationAllowed.await();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            return "compiled";
+        };
+
+        when();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> cache.getOrCompileCode(null, "code", slowCompiler)));
+            compilationStarted.await();
+            for (int i = 0; i < 3; i++) {
+                futures.add(executor.submit(() -> cache.getOrCompileCode(null, "code", slowCompiler)));
+            }
+            Thread.sleep(100); // letting the other threads reach the cache
+            compilationAllowed.countDown();
+
+            then();
+            for (Future<String> future : futures) {
+                assertEquals("Wrong compiled code", "compiled", future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals("Wrong number of compilations", 1, compilations.get());
+        assertEquals("Wrong number of compilations recorded", 1, cache.getCompilations());
+    }
+
+    /** Cache should be bounded, and the evicted code should be released. */
+    @Test
+    public void testEviction() throws Exception {
+        given();
+        List<String> released = Collections.synchronizedList(new ArrayList<>());
+        ScriptCache<Object, String> cache = new ScriptCache<>(10, released::add);
+
+        when();
+        for (int i = 0; i < 100; i++) {
+            String code = "code" + i;
+            cache.getOrCompileCode(null, code, () -> "compiled-" + code);
+        }
+
+        then();
+        assertTrue("Cache is too large: " + cache.size(), cache.size() <= 10);
+        assertEquals("Wrong number of released scripts", 100 - cache.size(), released.size());
+
+        when("clear");
+        cache.clear();
+
+        then("clear");
+        assertEquals("Wrong cache size after clear", 0, cache.size());
+        assertEquals("Wrong number of released scripts after clear", 100, released.size());
+    }
+
     private void assertScriptMonitor(int expCompilations, int expExecutions, String desc) {
         assertEquals("Unexpected number of script compilations after " + desc, expCompilations, InternalMonitor.getCount(InternalCounters.SCRIPT_COMPILE_COUNT));
         assertEquals("Unexpected number of script executions after " + desc, expExecutions, InternalMonitor.getCount(InternalCounters.SCRIPT_EXECUTION_COUNT));
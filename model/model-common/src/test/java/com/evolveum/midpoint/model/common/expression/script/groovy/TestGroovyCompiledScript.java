@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.common.expression.script.groovy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.MissingPropertyException;
+import groovy.lang.Script;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.model.common.AbstractModelCommonTest;
+
+/**
+ * Tests the pooling of script instances in {@link GroovyCompiledScript}: the bindings are reset between evaluations,
+ * recursive (re-entrant) evaluations get their own instances, scripts with `@Field` are not pooled,
+ * and released scripts do not pool their instances any more.
+ */
+public class TestGroovyCompiledScript extends AbstractModelCommonTest {
+
+    private final GroovyClassLoader loader = new GroovyClassLoader(getClass().getClassLoader());
+
+    /** A pooled instance is reused, and the variables of the previous evaluation are not visible to the next one. */
+    @Test
+    public void test100BindingReset() {
+        given();
+        GroovyCompiledScript script = compile("'Hello ' + name", true);
+
+        when();
+        Object first = evaluate(script, Map.of("name", "jack"));
+        Script pooled = script.borrowInstance();
+        Map<?, ?> pooledVariables = new HashMap<>(pooled.getBinding().getVariables());
+        script.returnInstance(pooled);
+
+        then();
+        assertThat(script.isPooled()).as("pooled").isTrue();
+        assertThat(first).isEqualTo("Hello jack");
+        assertThat(pooledVariables).as("variables of the pooled instance").isEmpty();
+        assertThatThrownBy(() -> evaluate(script, Map.of()))
+                .as("evaluation without the variable")
+                .isInstanceOf(MissingPropertyException.class);
+        assertThat(evaluate(script, Map.of("name", "will"))).isEqualTo("Hello will");
+    }
+
+    /** Instances borrowed at the same time are different; both are reused afterwards. */
+    @Test
+    public void test110ConcurrentInstances() {
+        given();
+        GroovyCompiledScript script = compile("name", true);
+
+        when();
+        Script first = script.borrowInstance();
+        Script second = script.borrowInstance();
+        script.returnInstance(second);
+        script.returnInstance(first);
+        Script third = script.borrowInstance();
+        Script fourth = script.borrowInstance();
+
+        then();
+        assertThat(second).isNotSameAs(first);
+        assertThat(third).as("reused instance").isIn(first, second);
+        assertThat(fourth).as("reused instance").isIn(first, second).isNotSameAs(third);
+    }
+
+    /**
+     * The script calls (via a variable) the evaluation of itself. The nested evaluations use their own instances,
+     * so the variables of the outer evaluation are intact after the nested one returns.
+     */
+    @Test
+    public void test120RecursiveEvaluation() {
+        given();
+        GroovyCompiledScript script = compile(
+                "def before = tag\n"
+                        + "def nested = depth > 0 ? recurse.apply(depth - 1) : ''\n"
+                        + "return before + '/' + tag + nested", true);
+        Function<Integer, Object> recurse = new Function<>() {
+            @Override
+            public Object apply(Integer depth) {
+                return evaluate(script, createVariables(depth, this));
+            }
+        };
+
+        when();
+        Object result = evaluate(script, createVariables(2, recurse));
+
+        then();
+        assertThat(result).isEqualTo("t2/t2t1/t1t0/t0");
+    }
+
+    /** Scripts with their own fields are not pooled, as the fields would keep the values between evaluations. */
+    @Test
+    public void test130FieldDetection() {
+        when();
+        GroovyCompiledScript withField = compile(
+                "import groovy.transform.Field\n"
+                        + "@Field int counter = 0\n"
+                        + "counter++\n"
+                        + "return counter", true);
+        GroovyCompiledScript plain = compile("def counter = 0\ncounter++\nreturn counter", true);
+        GroovyCompiledScript notPooling = compile("return 1", false);
+
+        then();
+        assertThat(withField.isPooled()).as("script with @Field pooled").isFalse();
+        assertThat(evaluate(withField, Map.of())).isEqualTo(1);
+        assertThat(evaluate(withField, Map.of())).isEqualTo(1);
+        assertThat(plain.isPooled()).as("plain script pooled").isTrue();
+        assertThat(notPooling.isPooled()).as("script with pooling off pooled").isFalse();
+    }
+
+    /** A released (evicted) script drops its pooled instances, and does not pool the returned ones. */
+    @Test
+    public void test140Release() {
+        given();
+        GroovyCompiledScript script = compile("name", true);
+        Script before = script.borrowInstance();
+        script.returnInstance(before);
+
+        when();
+        script.release();
+        Script afterRelease = script.borrowInstance();
+        script.returnInstance(afterRelease);
+        Script next = script.borrowInstance();
+
+        then();
+        assertThat(afterRelease).as("instance after release").isNotSameAs(before);
+        assertThat(next).as("instance after return").isNotSameAs(afterRelease);
+    }
+
+    private GroovyCompiledScript compile(String code, boolean pooling) {
+        //noinspection unchecked
+        return new GroovyCompiledScript((Class<? extends Script>) loader.parseClass(code), pooling);
+    }
+
+    /** Evaluates the script in the same way as {@link GroovyScriptEvaluator} does. */
+    private Object evaluate(GroovyCompiledScript script, Map<String, Object> variables) {
+        Script instance = script.borrowInstance();
+        try {
+            //noinspection unchecked
+            instance.getBinding().getVariables().putAll(variables);
+            return instance.run();
+        } finally {
+            script.returnInstance(instance);
+        }
+    }
+
+    private Map<String, Object> createVariables(int depth, Function<Integer, Object> recurse) {
+        return Map.of(
+                "depth", depth,
+                "tag", "t" + depth,
+                "recurse", recurse);
+    }
+}
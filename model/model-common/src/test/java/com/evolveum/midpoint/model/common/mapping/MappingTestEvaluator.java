@@ -107,6 +107,7 @@ public class MappingTestEvaluator {
         beans.objectResolver = resolver;
         beans.prismContext = prismContext;
         beans.protector = protector;
+        beans.mappingPrototypeCache = new MappingPrototypeCache();
         beans.init();
 
         if (withMetadata) {
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.common.mapping;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.xml.sax.SAXException;
+
+import com.evolveum.midpoint.model.common.AbstractModelCommonTest;
+import com.evolveum.midpoint.model.common.ModelCommonBeans;
+import com.evolveum.midpoint.prism.PrismPropertyDefinition;
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Tests {@link MappingPrototypeCache}: the prototypes are shared for the same version of the same object,
+ * a new version gets a new prototype, mutable beans are not cached, the compiled expression and condition are shared,
+ * and the invalidation removes the right entries.
+ */
+public class TestMappingPrototypeCache extends AbstractModelCommonTest {
+
+    private static final String TEMPLATE_OID = "4b3f1a0e-8c2d-4e5f-9a6b-7c8d9e0f1a2b";
+    private static final String OTHER_TEMPLATE_OID = "4b3f1a0e-8c2d-4e5f-9a6b-7c8d9e0f1a2c";
+
+    private MappingTestEvaluator evaluator;
+    private MappingPrototypeCache cache;
+
+    @BeforeClass
+    public void setupFactory() throws SAXException, IOException, SchemaException {
+        evaluator = new MappingTestEvaluator();
+        evaluator.init();
+        cache = ModelCommonBeans.get().mappingPrototypeCache;
+    }
+
+    /** Beans from the same version of the same object share the prototype, even if they are different instances. */
+    @Test
+    public void test100CacheHit() {
+        given();
+        ObjectTemplateType template = createTemplate(TEMPLATE_OID, "1", true);
+        ObjectTemplateType sameVersion = createTemplate(TEMPLATE_OID, "1", true);
+
+        when();
+        MappingPrototype first = cache.get(getMapping(template), template, null);
+        MappingPrototype second = cache.get(getMapping(template), template, null);
+        MappingPrototype third = cache.get(getMapping(sameVersion), sameVersion, null);
+
+        then();
+        assertThat(first).as("prototype").isNotNull();
+        assertThat(second).as("prototype for the same bean").isSameAs(first);
+        assertThat(third).as("prototype for the same version").isSameAs(first);
+    }
+
+    /** A new version of the object gets a new prototype. */
+    @Test
+    public void test110VersionChange() {
+        given();
+        ObjectTemplateType v1 = createTemplate(TEMPLATE_OID, "1", true);
+        ObjectTemplateType v2 = createTemplate(TEMPLATE_OID, "2", true);
+
+        when();
+        MappingPrototype first = cache.get(getMapping(v1), v1, null);
+        MappingPrototype second = cache.get(getMapping(v2), v2, null);
+
+        then();
+        assertThat(first).as("prototype for v1").isNotNull();
+        assertThat(second).as("prototype for v2").isNotNull().isNotSameAs(first);
+    }
+
+    /** Mutable beans can be changed in memory, so they are not cached. */
+    @Test
+    public void test120MutableBeanNotCached() {
+        given();
+        ObjectTemplateType template = createTemplate(TEMPLATE_OID, "3", false);
+
+        when();
+        MappingPrototype prototype = cache.get(getMapping(template), template, null);
+
+        then();
+        assertThat(prototype).as("prototype for mutable bean").isNull();
+    }
+
+    /** The expression and the condition are compiled once, and shared by the evaluations. */
+    @Test
+    public void test130SharedExpressionAndCondition() throws Exception {
+        given();
+        Task task = createTask();
+        OperationResult result = createOperationResult();
+        ObjectTemplateType template = createTemplate(TEMPLATE_OID, "4", true);
+        MappingPrototype prototype = cache.get(getMapping(template), template, null);
+        assertThat(prototype).as("prototype").isNotNull();
+        PrismPropertyDefinition<PolyString> titleDefinition =
+                evaluator.getUserDefinition().findPropertyDefinition(UserType.F_TITLE);
+
+        when();
+        Object condition1 = prototype.getCondition("condition", task, result);
+        Object condition2 = cache.get(getMapping(template), template, null)
+                .getCondition("condition", task, result);
+        Object expression1 = prototype.getExpression(titleDefinition, "expression", task, result);
+        Object expression2 = cache.get(getMapping(template), template, null)
+                .getExpression(titleDefinition, "expression", task, result);
+
+        then();
+        assertThat(condition2).as("condition").isSameAs(condition1);
+        assertThat(expression2).as("expression").isSameAs(expression1);
+    }
+
+    /**
+     * Invalidation of a template removes its entries only; invalidation of a function library
+     * (or of the system configuration) clears the whole cache.
+     */
+    @Test
+    public void test140Invalidation() {
+        given();
+        ObjectTemplateType template = createTemplate(TEMPLATE_OID, "5", true);
+        ObjectTemplateType other = createTemplate(OTHER_TEMPLATE_OID, "1", true);
+        MappingPrototype templatePrototype = cache.get(getMapping(template), template, null);
+        MappingPrototype otherPrototype = cache.get(getMapping(other), other, null);
+
+        when("template is invalidated");
+        cache.invalidate(ObjectTemplateType.class, TEMPLATE_OID, null);
+
+        then("its prototype is gone, the other one is kept");
+        assertThat(cache.get(getMapping(template), template, null)).as("template prototype").isNotSameAs(templatePrototype);
+        assertThat(cache.get(getMapping(other), other, null)).as("other prototype").isSameAs(otherPrototype);
+
+        when("function library is invalidated");
+        cache.invalidate(FunctionLibraryType.class, "8e0bd3c4-5b1a-4d6e-9f2a-3c4d5e6f7a8b", null);
+
+        then("everything is gone");
+        assertThat(getCacheSize()).as("cache size").isZero();
+    }
+
+    private ObjectTemplateType createTemplate(String oid, String version, boolean immutable) {
+        ObjectTemplateType template = new ObjectTemplateType()
+                .oid(oid)
+                .version(version)
+                .name("template-" + oid)
+                .mapping(new ObjectTemplateMappingType()
+                        .id(1L)
+                        .name("title")
+                        .expression(new ExpressionType()
+                                .expressionEvaluator(new ObjectFactory().createScript(
+                                        new ScriptExpressionEvaluatorType()
+                                                .code("'Captain ' + name"))))
+                        .condition(new ExpressionType()
+                                .expressionEvaluator(new ObjectFactory().createScript(
+                                        new ScriptExpressionEvaluatorType()
+                                                .code("name != null")))));
+        if (immutable) {
+            template.asPrismObject().freeze();
+        }
+        return template;
+    }
+
+    private AbstractMappingType getMapping(ObjectTemplateType template) {
+        return template.getMapping().get(0);
+    }
+
+    private int getCacheSize() {
+        return cache.getStateInformation().iterator().next().getSize();
+    }
+}
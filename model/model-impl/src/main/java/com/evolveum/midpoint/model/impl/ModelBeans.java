@@ -27,11 +27,14 @@ import com.evolveum.midpoint.model.common.archetypes.ArchetypeManager;
 import com.evolveum.midpoint.model.common.mapping.MappingFactory;
 import com.evolveum.midpoint.model.impl.correlation.CorrelationCaseManager;
 import com.evolveum.midpoint.model.impl.lens.*;
+import com.evolveum.midpoint.model.impl.lens.assignments.FocusIndependentEvaluationCache;
+import com.evolveum.midpoint.model.impl.lens.executor.ProjectionExecutionPool;
 import com.evolveum.midpoint.model.impl.lens.identities.IdentitiesManager;
 import com.evolveum.midpoint.model.impl.lens.indexing.IndexingManager;
 import com.evolveum.midpoint.model.impl.lens.projector.Projector;
 import com.evolveum.midpoint.model.impl.lens.projector.credentials.CredentialsProcessor;
 import com.evolveum.midpoint.model.impl.lens.projector.focus.AutoAssignMappingCollector;
+import com.evolveum.midpoint.model.impl.lens.projector.focus.MappingDependencyGraphCache;
 import com.evolveum.midpoint.model.impl.lens.projector.focus.ProjectionMappingSetEvaluator;
 import com.evolveum.midpoint.model.impl.lens.projector.focus.ProjectionValueMetadataCreator;
 import com.evolveum.midpoint.model.impl.lens.projector.loader.ContextLoader;
@@ -116,6 +119,7 @@ public class ModelBeans {
     @Autowired public EventDispatcher eventDispatcher;
     @Autowired public SystemObjectCache systemObjectCache;
     @Autowired public CacheConfigurationManager cacheConfigurationManager;
+    @Autowired public ProjectionExecutionPool projectionExecutionPool;
     @Autowired public SynchronizationService synchronizationService;
     @Autowired public ClockworkAuditHelper clockworkAuditHelper;
     @Autowired public ClockworkAuthorizationHelper clockworkAuthorizationHelper;
@@ -136,4 +140,6 @@ public class ModelBeans {
     @Autowired public SynchronizationActionFactory synchronizationActionFactory;
     @Autowired public ProjectionContextKeyFactory projectionContextKeyFactory;
     @Autowired public ArchetypeManager archetypeManager;
+    @Autowired public FocusIndependentEvaluationCache focusIndependentEvaluationCache;
+    @Autowired public MappingDependencyGraphCache mappingDependencyGraphCache;
 }
@@ -14,6 +14,7 @@ import com.evolveum.midpoint.common.SequenceUtil;
 import com.evolveum.midpoint.model.api.ModelExecuteOptions;
 import com.evolveum.midpoint.model.api.context.ModelContext;
 import com.evolveum.midpoint.model.common.expression.ModelExpressionThreadLocalHolder;
+import com.evolveum.midpoint.model.impl.lens.LensContext;
 import com.evolveum.midpoint.prism.*;
 import com.evolveum.midpoint.prism.crypto.Protector;
 import com.evolveum.midpoint.prism.delta.ItemDeltaUtil;
@@ -68,36 +69,23 @@ public class SequentialValueExpressionEvaluator<V extends PrismValue, D extends
      * Returns sequence counter value for this clockwork run.
      *
      * Because mappings are evaluated repeatedly, the value is obtained from the repository only for the first time.
-     * Then it is stored in model context to be reused as needed.
+     * Then it is stored in model context to be reused as needed. (Atomically, as projections can be computed concurrently.)
      */
     static long getSequenceCounterValue(String sequenceOid, RepositoryService repositoryService, OperationResult result)
             throws ObjectNotFoundException, SchemaException {
-        ModelContext<? extends FocusType> ctx = ModelExpressionThreadLocalHolder.getLensContextRequired();
-
-        Long alreadyObtainedValue = ctx.getSequenceCounter(sequenceOid);
-        if (alreadyObtainedValue != null) {
-            return alreadyObtainedValue;
-        } else {
-            long freshValue;
-            if (!isAdvanceSequenceSafe()) {
-                freshValue = repositoryService.advanceSequence(sequenceOid, result);
+        LensContext<?> ctx = (LensContext<?>) ModelExpressionThreadLocalHolder.getLensContextRequired();
+        boolean advanceSequenceSafe = isAdvanceSequenceSafe(ctx);
+        return ctx.getOrAllocateSequenceCounter(sequenceOid, oid -> {
+            if (!advanceSequenceSafe) {
+                return repositoryService.advanceSequence(oid, result);
             } else {
                 SequenceType seq =
                         repositoryService
-                                .getObject(SequenceType.class, sequenceOid, null, result)
+                                .getObject(SequenceType.class, oid, null, result)
                                 .asObjectable();
-                freshValue = SequenceUtil.advanceSequence(seq);
+                return SequenceUtil.advanceSequence(seq);
             }
-
-            ctx.setSequenceCounter(sequenceOid, freshValue);
-
-            return freshValue;
-        }
-    }
-
-    private static boolean isAdvanceSequenceSafe() {
-        return isAdvanceSequenceSafe(
-                ModelExpressionThreadLocalHolder.getLensContextRequired());
+        });
     }
 
     public static boolean isAdvanceSequenceSafe(ModelContext<?> context) {
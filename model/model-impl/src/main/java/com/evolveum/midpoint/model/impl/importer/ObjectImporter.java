@@ -12,9 +12,9 @@ import static com.evolveum.midpoint.schema.GetOperationOptions.createReadOnlyCol
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
 import javax.xml.namespace.QName;
 
 import org.apache.commons.lang3.StringUtils;
@@ -32,6 +32,7 @@ import com.evolveum.midpoint.common.validator.EventResult;
 import com.evolveum.midpoint.common.validator.LegacyValidator;
 import com.evolveum.midpoint.model.api.ModelExecuteOptions;
 import com.evolveum.midpoint.model.api.ModelService;
+import com.evolveum.midpoint.model.impl.lens.projector.focus.FocusConstraintsChecker;
 import com.evolveum.midpoint.model.impl.migrator.Migrator;
 import com.evolveum.midpoint.model.impl.util.ModelImplUtils;
 import com.evolveum.midpoint.prism.*;
@@ -43,6 +44,8 @@ import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.prism.schema.MutablePrismSchema;
 import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.schema.ObjectDeltaOperation;
+import com.evolveum.midpoint.schema.cache.CacheConfigurationManager;
+import com.evolveum.midpoint.schema.cache.CacheType;
 import com.evolveum.midpoint.schema.constants.SchemaConstants;
 import com.evolveum.midpoint.schema.result.OperationConstants;
 import com.evolveum.midpoint.schema.result.OperationResult;
@@ -74,6 +77,9 @@ public class ObjectImporter {
     private static final String OPERATION_VALIDATE_DYN_SCHEMA = ObjectImporter.class.getName()
             + ".validateDynamicSchema";
 
+    /** Number of objects whose names are checked for uniqueness at once (in non-raw imports), if not configured. */
+    private static final int DEFAULT_IMPORT_BATCH_SIZE = 100;
+
     @Autowired private Protector protector;
     @Autowired private LightweightIdentifierGenerator lightweightIdentifierGenerator;
     @Autowired private PrismContext prismContext;
@@ -81,6 +87,7 @@ public class ObjectImporter {
     @Autowired private ModelService modelService;
     @Autowired private Clock clock;
     @Autowired private Migrator migrator;
+    @Autowired private CacheConfigurationManager cacheConfigurationManager;
 
     // this method is responsible for computing the operation result!
     public void importObjects(InputStream input, String language, ImportOptionsType options, Task task, OperationResult parentResult) {
@@ -102,50 +109,21 @@ public class ObjectImporter {
                 options.getStopAfterErrors() : 0;
 
         if (!PrismContext.LANG_XML.equals(language)) {
-            AtomicInteger index = new AtomicInteger(0);
-            AtomicInteger errors = new AtomicInteger(0);
-            AtomicInteger successes = new AtomicInteger(0);
-            PrismParser.ObjectHandler handler = new PrismParser.ObjectHandler() {
-                @Override
-                public boolean handleData(PrismObject<?> object) {
-                    OperationResult objectResult = parentResult.createSubresult(OperationConstants.IMPORT_OBJECT);
-                    objectResult.addContext("objectNumber", index.incrementAndGet());
-                    importParsedObject(object, objectResult, options, task);
-                    objectResult.computeStatusIfUnknown();
-                    objectResult.cleanupResult();
-                    parentResult.summarize();
-
-                    if (objectResult.isAcceptable()) {
-                        successes.incrementAndGet();
-                    } else {
-                        errors.incrementAndGet();
-                    }
-                    return stopAfterErrors == 0 || errors.get() < stopAfterErrors;
-                }
-
-                @Override
-                public boolean handleError(Throwable t) {
-                    OperationResult objectResult = parentResult.createSubresult(OperationConstants.IMPORT_OBJECT);
-                    objectResult.addContext("objectNumber", index.incrementAndGet());
-                    objectResult.recordFatalError("Couldn't parse object", t);
-                    parentResult.summarize();
-
-                    errors.incrementAndGet();
-                    return stopAfterErrors == 0 || errors.get() < stopAfterErrors;
-                }
-            };
+            ImportObjectHandler handler = new ImportObjectHandler(options, stopAfterErrors, task, parentResult);
             PrismParser parser = prismContext.parserFor(input).language(language);
             if (options != null && options.isCompatMode() != null && options.isCompatMode()) {
                 parser = parser.compat();
             }
             try {
                 parser.parseObjectsIteratively(handler);
+                handler.importBatch();
             } catch (SchemaException | IOException e) {
+                handler.importBatch();
                 parentResult.recordFatalError("Couldn't parse objects to be imported: " + e.getMessage(), e);
                 LoggingUtils.logUnexpectedException(LOGGER, "Couldn't parse objects to be imported", e);
                 return;
             }
-            parentResult.computeStatus(errors.get() + " errors, " + successes.get() + " passed");
+            parentResult.computeStatus(handler.errors + " errors, " + handler.successes + " passed");
         } else {
             EventHandler<Objectable> handler = new EventHandler<>() {
 
@@ -184,6 +162,128 @@ public class ObjectImporter {
         }
     }
 
+    /**
+     * Imports objects parsed from non-XML data. If the objects go through the clockwork (non-raw import),
+     * they are imported in batches: names of the objects in a batch are checked for uniqueness at once,
+     * see {@link FocusConstraintsChecker#checkNamesInBatch(Collection, RepositoryService, PrismContext, OperationResult)}.
+     * The objects are imported in their original order.
+     */
+    private class ImportObjectHandler implements PrismParser.ObjectHandler {
+
+        private final ImportOptionsType options;
+        private final int stopAfterErrors;
+        private final Task task;
+        private final OperationResult parentResult;
+        private final int batchSize;
+
+        /** Objects parsed but not imported yet. */
+        private final List<PrismObject<?>> batch = new ArrayList<>();
+
+        private int index;
+        private int errors;
+        private int successes;
+
+        private ImportObjectHandler(ImportOptionsType options, int stopAfterErrors, Task task, OperationResult parentResult) {
+            this.options = options;
+            this.stopAfterErrors = stopAfterErrors;
+            this.task = task;
+            this.parentResult = parentResult;
+            this.batchSize = getBatchSize(options);
+        }
+
+        /** Batching makes sense only if the objects go through the clockwork, i.e. for non-raw imports. */
+        private int getBatchSize(ImportOptionsType options) {
+            if (options == null || options.getModelExecutionOptions() == null
+                    || !isFalse(options.getModelExecutionOptions().isRaw())) {
+                return 1;
+            } else if (options.getBatchSize() != null) {
+                return options.getBatchSize();
+            } else {
+                return DEFAULT_IMPORT_BATCH_SIZE;
+            }
+        }
+
+        @Override
+        public boolean handleData(PrismObject<?> object) {
+            if (batchSize <= 1) {
+                return importObject(object);
+            }
+            batch.add(object);
+            return batch.size() < batchSize || importBatch();
+        }
+
+        @Override
+        public boolean handleError(Throwable t) {
+            if (!importBatch()) {
+                return false;
+            }
+            OperationResult objectResult = parentResult.createSubresult(OperationConstants.IMPORT_OBJECT);
+            objectResult.addContext("objectNumber", ++index);
+            objectResult.recordFatalError("Couldn't parse object", t);
+            parentResult.summarize();
+
+            errors++;
+            return shouldContinue();
+        }
+
+        /** Imports the objects collected so far. Returns false if the import should stop. */
+        private boolean importBatch() {
+            if (batch.isEmpty()) {
+                return true;
+            }
+            FocusConstraintsChecker.enterCache(
+                    cacheConfigurationManager.getConfiguration(CacheType.LOCAL_FOCUS_CONSTRAINT_CHECKER_CACHE));
+            try {
+                checkNamesInBatch();
+                for (PrismObject<?> object : batch) {
+                    if (!importObject(object)) {
+                        return false;
+                    }
+                }
+                return true;
+            } finally {
+                batch.clear();
+                FocusConstraintsChecker.exitCache();
+            }
+        }
+
+        /** This is only an optimization, so any problems are left to the regular checks. */
+        private void checkNamesInBatch() {
+            List<PrismObject<? extends ObjectType>> objects = new ArrayList<>();
+            for (PrismObject<?> object : batch) {
+                if (object.asObjectable() instanceof ObjectType) {
+                    //noinspection unchecked
+                    objects.add((PrismObject<? extends ObjectType>) object);
+                }
+            }
+            try {
+                FocusConstraintsChecker.checkNamesInBatch(objects, repository, prismContext, parentResult);
+            } catch (Exception e) {
+                LoggingUtils.logExceptionAsWarning(LOGGER, "Couldn't check names of {} objects in batch", e, objects.size());
+            }
+        }
+
+        private boolean importObject(PrismObject<?> object) {
+            OperationResult objectResult = parentResult.createSubresult(OperationConstants.IMPORT_OBJECT);
+            objectResult.addContext("objectNumber", ++index);
+            importParsedObject(object, objectResult, options, task);
+            objectResult.computeStatusIfUnknown();
+            objectResult.cleanupResult();
+            parentResult.summarize();
+
+            if (objectResult.isAcceptable()) {
+                successes++;
+            } else {
+                errors++;
+            }
+            return shouldContinue();
+        }
+
+        private boolean shouldContinue() {
+            return stopAfterErrors == 0 || errors < stopAfterErrors;
+        }
+    }
+
     @NotNull
     private <T extends Objectable> EventResult importParsedObject(PrismObject<T> prismObjectObjectable,
             OperationResult objectResult, ImportOptionsType options, Task task) {
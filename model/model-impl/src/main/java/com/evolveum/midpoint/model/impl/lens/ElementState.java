@@ -95,6 +95,9 @@ class ElementState<O extends ObjectType> implements Serializable, Cloneable {
      *
      * It is used as an "old state" for resource object mappings (in constructions or resources),
      * persona mappings, notifications, policy rules, and so on.
+     *
+     * When set by the context loader, it is frozen, so it is shared by the clones of the state
+     * instead of being copied. (It is only read; any attempt to modify it in place fails.)
      */
     private PrismObject<O> oldObject;
 
@@ -202,16 +205,25 @@ class ElementState<O extends ObjectType> implements Serializable, Cloneable {
         this.currentObjectAdjuster = other.currentObjectAdjuster;
         this.objectDefinitionRefiner = other.objectDefinitionRefiner;
         this.oid = other.oid;
-        this.oldObject = CloneUtil.clone(other.oldObject);
-        this.currentObject = CloneUtil.clone(other.currentObject);
-        this.primaryDelta = CloneUtil.clone(other.primaryDelta);
-        this.secondaryDelta = CloneUtil.clone(other.secondaryDelta);
+        // Immutable (frozen) values can be safely shared; they are replaced, not modified, when changed.
+        this.oldObject = cloneIfMutable(other.oldObject);
+        this.currentObject = cloneIfMutable(other.currentObject);
+        this.primaryDelta = cloneIfMutable(other.primaryDelta);
+        this.secondaryDelta = cloneIfMutable(other.secondaryDelta);
         this.fresh = other.fresh;
         this.wasPrimaryDeltaExecuted = other.wasPrimaryDeltaExecuted;
         // computed components and validity flags do not need to be copied
         this.archivedSecondaryDeltas = other.archivedSecondaryDeltas.clone();
     }
 
+    private static <O extends ObjectType> PrismObject<O> cloneIfMutable(PrismObject<O> object) {
+        return object != null && object.isImmutable() ? object : CloneUtil.clone(object);
+    }
+
+    private static <O extends ObjectType> ObjectDelta<O> cloneIfMutable(ObjectDelta<O> delta) {
+        return delta != null && delta.isImmutable() ? delta : CloneUtil.clone(delta);
+    }
+
     //region Type and definition
     @NotNull Class<O> getObjectTypeClass() {
         return objectTypeClass;
@@ -669,14 +681,16 @@ class ElementState<O extends ObjectType> implements Serializable, Cloneable {
     }
 
     /**
-     * Sets both current and (if needed) also the old object.
+     * Sets both current and (if needed) also the old object. The old object is frozen, see {@link #oldObject}.
      *
      * Should be used only by the context loader.
      */
     void setCurrentAndOptionallyOld(@NotNull PrismObject<O> object, boolean setAlsoOld) {
         setCurrentObject(object.cloneIfImmutable());
         if (setAlsoOld) {
-            setOldObject(object.clone());
+            PrismObject<O> oldObject = object.clone();
+            oldObject.freeze();
+            setOldObject(oldObject);
         }
     }
 
@@ -838,11 +852,15 @@ class ElementState<O extends ObjectType> implements Serializable, Cloneable {
         archivedSecondaryDeltas.checkEncrypted("secondary deltas");
     }
 
+    /** The consumer may modify the objects: the frozen old object is replaced by its (mutable) clone first. */
     void forEachObject(Consumer<PrismObject<O>> consumer) {
         if (currentObject != null) {
             consumer.accept(currentObject);
         }
         if (oldObject != null) {
+            if (oldObject.isImmutable()) {
+                setOldObject(oldObject.clone());
+            }
             consumer.accept(oldObject);
         }
         if (newObject != null) {
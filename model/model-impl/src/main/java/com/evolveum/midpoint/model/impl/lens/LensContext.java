@@ -12,6 +12,7 @@ import static com.evolveum.midpoint.util.MiscUtil.stateCheck;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -106,7 +107,8 @@ public class LensContext<F extends ObjectType> implements ModelContext<F>, Clone
     // For use with personas
     private String ownerOid;
 
-    private transient PrismObject<UserType> cachedOwner;
+    /** Volatile because the owner can be resolved by concurrently computed projections. */
+    private transient volatile PrismObject<UserType> cachedOwner;
 
     /** Focus template explicitly set from the outside, typically from the synchronization policy. */
     private String explicitFocusTemplateOid;
@@ -233,8 +235,11 @@ public class LensContext<F extends ObjectType> implements ModelContext<F>, Clone
 
     /**
      * Current values of sequences used during the clockwork.
+     *
+     * Projections can be computed concurrently, so new values are obtained under the lock on this map,
+     * see {@link #getOrAllocateSequenceCounter(String, SequenceCounterAllocator)}.
      */
-    private final Map<String, Long> sequences = new HashMap<>();
+    private final Map<String, Long> sequences = new ConcurrentHashMap<>();
 
     /**
      * Moved from ProjectionValuesProcessor TODO consider if necessary to
@@ -1020,9 +1025,9 @@ public class LensContext<F extends ObjectType> implements ModelContext<F>, Clone
         return new LensProjectionContext(this, key);
     }
 
-    private Map<String, ResourceType> getResourceCache() {
+    private synchronized Map<String, ResourceType> getResourceCache() {
         if (resourceCache == null) {
-            resourceCache = new HashMap<>();
+            resourceCache = new ConcurrentHashMap<>(); // projections can be computed concurrently
         }
         return resourceCache;
     }
@@ -1034,7 +1039,7 @@ public class LensContext<F extends ObjectType> implements ModelContext<F>, Clone
      * @see LensContext#rememberResource(ResourceType)
      */
     public ResourceType getResource(String resourceOid) {
-        return getResourceCache().get(resourceOid);
+        return resourceOid != null ? getResourceCache().get(resourceOid) : null;
     }
 
     /**
@@ -1085,7 +1090,7 @@ public class LensContext<F extends ObjectType> implements ModelContext<F>, Clone
         clone.isFresh = this.isFresh;
         clone.isRequestAuthorized = this.isRequestAuthorized;
         clone.resourceCache = resourceCache != null ?
-                new HashMap<>(resourceCache) : null;
+                new ConcurrentHashMap<>(resourceCache) : null;
         clone.explicitFocusTemplateOid = this.explicitFocusTemplateOid;
         clone.projectionWave = this.projectionWave;
         if (options != null) {
@@ -1530,7 +1535,7 @@ public class LensContext<F extends ObjectType> implements ModelContext<F>, Clone
     }
 
     @Override
-    public void reportProgress(ProgressInformation progress) {
+    public synchronized void reportProgress(ProgressInformation progress) {
         if (progressListeners == null) {
             return;
         }
@@ -1571,13 +1576,42 @@ public class LensContext<F extends ObjectType> implements ModelContext<F>, Clone
         sequences.put(sequenceOid, counter);
     }
 
+    /**
+     * Returns the value of the sequence counter for this clockwork run. If there is none, it is obtained from the allocator
+     * and stored. This is atomic, so concurrently computed projections using the same sequence get the same value.
+     */
+    public long getOrAllocateSequenceCounter(@NotNull String sequenceOid, @NotNull SequenceCounterAllocator allocator)
+            throws ObjectNotFoundException, SchemaException {
+        Long existing = sequences.get(sequenceOid);
+        if (existing != null) {
+            return existing;
+        }
+        synchronized (sequences) {
+            existing = sequences.get(sequenceOid);
+            if (existing != null) {
+                return existing;
+            }
+            long fresh = allocator.allocate(sequenceOid);
+            sequences.put(sequenceOid, fresh);
+            return fresh;
+        }
+    }
+
+    /** Obtains a fresh value of a sequence, typically by advancing it in the repository. */
+    @FunctionalInterface
+    public interface SequenceCounterAllocator {
+        long allocate(String sequenceOid) throws ObjectNotFoundException, SchemaException;
+    }
+
     @NotNull
     public List<LensProjectionContext> getConflictingProjectionContexts() {
         return conflictingProjectionContexts;
     }
 
     public void addConflictingProjectionContext(@NotNull LensProjectionContext conflictingContext) {
-        conflictingProjectionContexts.add(conflictingContext);
+        synchronized (conflictingProjectionContexts) { // projections can be computed concurrently
+            conflictingProjectionContexts.add(conflictingContext);
+        }
     }
 
     public void clearConflictingProjectionContexts() {
@@ -38,7 +38,34 @@ class ConditionEvaluator {
         this.ctx = evaluationContext;
     }
 
-    ConditionState computeConditionState(MappingType condition, ObjectType source, String description, Object loggingDesc,
+    /**
+     * @param conditionHolder Object in which the condition is defined. Used to cache the state of focus-independent conditions.
+     * @param conditionItem Description of the condition within the holder (unique in the holder).
+     */
+    ConditionState computeConditionState(MappingType condition, ObjectType conditionHolder, String conditionItem,
+            ObjectType source, String description, Object loggingDesc, OperationResult result)
+            throws SchemaException, CommunicationException, ObjectNotFoundException, ConfigurationException,
+            SecurityViolationException, ExpressionEvaluationException {
+        if (condition == null) {
+            return ConditionState.allTrue();
+        }
+        FocusIndependentEvaluationCache cache = ctx.ae.beans.focusIndependentEvaluationCache;
+        FocusIndependentEvaluationCache.Key key = cache.createKey(conditionHolder, conditionItem, ctx);
+        if (key != null) {
+            ConditionState cached = cache.getConditionState(key);
+            if (cached != null) {
+                LOGGER.trace("Using cached state of focus-independent condition {}: {}", key, cached);
+                return cached;
+            }
+        }
+        ConditionState state = computeConditionState(condition, source, description, loggingDesc, result);
+        if (key != null) {
+            cache.recordConditionState(key, condition, state);
+        }
+        return state;
+    }
+
+    private ConditionState computeConditionState(MappingType condition, ObjectType source, String description, Object loggingDesc,
             OperationResult result)
             throws SchemaException, CommunicationException, ObjectNotFoundException, ConfigurationException,
             SecurityViolationException, ExpressionEvaluationException {
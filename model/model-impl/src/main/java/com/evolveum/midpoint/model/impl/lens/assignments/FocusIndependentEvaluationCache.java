@@ -0,0 +1,450 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.impl.lens.assignments;
+
+import static org.apache.commons.lang3.BooleanUtils.isTrue;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.xml.bind.JAXBElement;
+import javax.xml.namespace.QName;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.VisibleForTesting;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.CacheInvalidationContext;
+import com.evolveum.midpoint.model.common.expression.script.groovy.GroovyScriptAnalyzer;
+import com.evolveum.midpoint.model.common.expression.script.groovy.GroovyScriptEvaluator;
+import com.evolveum.midpoint.model.impl.lens.LensFocusContext;
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.query.ObjectFilter;
+import com.evolveum.midpoint.repo.api.Cache;
+import com.evolveum.midpoint.repo.api.CacheInvalidationEventSpecification;
+import com.evolveum.midpoint.repo.api.CacheRegistry;
+import com.evolveum.midpoint.repo.common.expression.ExpressionUtil;
+import com.evolveum.midpoint.schema.SchemaConstantsGenerated;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+import com.evolveum.prism.xml.ns._public.query_3.SearchFilterType;
+
+/**
+ * Node-wide cache of those parts of role evaluation that do not depend on the focus. Shared by all clockwork operations.
+ *
+ * Currently, it covers:
+ *
+ * 1. States of conditions (in roles, and in assignments/inducements of roles) that refer to no variables at all.
+ * This is determined by static analysis of the condition: it must have no sources, and its expression evaluators must
+ * be literal values, constants, or Groovy scripts that refer to no variables, functions nor classes
+ * (see {@link GroovyScriptAnalyzer}). In practice, these are constant conditions (e.g. a role disabled by `false`).
+ * 2. Targets of inducements (and assignments) in roles that are given by a filter without expressions,
+ * if the targets are abstract roles (roles, orgs, services, archetypes).
+ *
+ * Entries are keyed by the OID and the version of the holding role, so a changed role is never served from the cache.
+ * The entries of changed roles (and the filter targets of changed role types) are removed on invalidation.
+ *
+ * Changes of abstract roles are not invalidated clusterwide by default. The version in the key protects the conditions
+ * (a changed role is re-read from the repository with a new version), but not the filter targets: a role created
+ * or changed on another node could match the filter without us knowing. Therefore, the targets expire after
+ * {@link #TARGETS_TIME_TO_LIVE}.
+ * As everything cached here depends only on abstract roles, the cache listens only to their changes.
+ * The entries are indexed by the holder OID and by the target type, so an invalidation touches only the affected entries.
+ *
+ * Not everything that was originally planned is cached here: the closure of inducements, the evaluated constructions,
+ * and the evaluated policy rules are not. Their evaluated forms are bound to the particular focus (and lens context),
+ * so they would have to be split into focus-independent and focus-dependent parts first. Only the conditions and targets
+ * they depend on are cached.
+ *
+ * Must be enabled by `roleManagement/focusIndependentEvaluationCaching` in the system configuration.
+ */
+@Component
+public class FocusIndependentEvaluationCache implements Cache {
+
+    private static final Trace LOGGER = TraceManager.getTrace(FocusIndependentEvaluationCache.class);
+    private static final Trace LOGGER_CONTENT = TraceManager.getTrace(FocusIndependentEvaluationCache.class.getName() + ".content");
+
+    /** When exceeded, the respective map is cleared. This is a safety net; the number of role conditions is limited. */
+    private static final int MAX_ENTRIES = 100_000;
+
+    /**
+     * How long the filter targets are kept (in milliseconds). Limits the staleness caused by changes on other nodes
+     * that are not propagated to this one.
+     */
+    private static final long TARGETS_TIME_TO_LIVE = 60_000L;
+
+    private static final Collection<CacheInvalidationEventSpecification> EVENT_SPECIFICATIONS =
+            CacheInvalidationEventSpecification.setOf(AbstractRoleType.class);
+
+    @Autowired private CacheRegistry cacheRegistry;
+    @Autowired private PrismContext prismContext;
+
+    /** Values are empty for conditions that are not focus-independent. */
+    @NotNull private final Map<Key, Optional<ConditionState>> conditionStates = new ConcurrentHashMap<>();
+
+    /** Values are null-free; targets that cannot be cached are marked by {@link TargetsEntry#NOT_CACHEABLE}. */
+    @NotNull private final Map<Key, TargetsEntry> targets = new ConcurrentHashMap<>();
+
+    /** Keys of all entries (conditions and targets) in given holder role, to be removed when the role changes. */
+    @NotNull private final Map<String, Set<Key>> keysByOid = new ConcurrentHashMap<>();
+
+    /** Keys of cacheable targets of given type, to be removed when any object of the type changes. */
+    @NotNull private final Map<Class<?>, Set<Key>> keysByTargetClass = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented on invalidation of any object of given type (and on the invalidation of everything),
+     * to avoid caching targets that were resolved before an invalidation.
+     */
+    @NotNull private final Map<Class<?>, AtomicLong> stamps = new ConcurrentHashMap<>();
+
+    /** Incremented on invalidation of everything. */
+    @NotNull private final AtomicLong globalStamp = new AtomicLong();
+
+    /** Source of the current time (in milliseconds). Replaceable for tests. */
+    @NotNull private volatile LongSupplier clock = System::currentTimeMillis;
+
+    @PostConstruct
+    public void register() {
+        cacheRegistry.registerCache(this);
+    }
+
+    @PreDestroy
+    public void unregister() {
+        cacheRegistry.unregisterCache(this);
+    }
+
+    /**
+     * Returns the key for given item (condition or assignment/inducement) in given holder, or null if the item
+     * cannot be cached.
+     */
+    @Nullable Key createKey(@Nullable ObjectType holder, @Nullable String itemDescription, @NotNull EvaluationContext<?> ctx) {
+        if (itemDescription == null || !isEnabled(ctx) || !(holder instanceof AbstractRoleType)) {
+            return null;
+        }
+        String oid = holder.getOid();
+        String version = holder.getVersion();
+        if (oid == null || version == null) {
+            return null;
+        }
+        // The focus itself can be in the process of change, so its version does not determine its content.
+        LensFocusContext<?> focusContext = ctx.ae.lensContext.getFocusContext();
+        if (focusContext != null && oid.equals(focusContext.getOid())) {
+            return null;
+        }
+        return new Key(oid, version, itemDescription);
+    }
+
+    private boolean isEnabled(@NotNull EvaluationContext<?> ctx) {
+        PrismObject<SystemConfigurationType> systemConfiguration = ctx.ae.systemConfiguration;
+        RoleManagementConfigurationType roleManagement =
+                systemConfiguration != null ? systemConfiguration.asObjectable().getRoleManagement() : null;
+        return roleManagement != null && isTrue(roleManagement.isFocusIndependentEvaluationCaching());
+    }
+
+    /** Returns the cached state of focus-independent condition, or null if there is none. */
+    @Nullable ConditionState getConditionState(@NotNull Key key) {
+        Optional<ConditionState> cached = conditionStates.get(key);
+        return cached != null ? cached.orElse(null) : null;
+    }
+
+    /** Records the state of a condition, if the condition is focus-independent. */
+    void recordConditionState(@NotNull Key key, @NotNull MappingType condition, @NotNull ConditionState state) {
+        if (conditionStates.containsKey(key)) {
+            return;
+        }
+        boolean focusIndependent = isFocusIndependent(condition);
+        LOGGER.trace("Condition {} is focus-independent: {}", key, focusIndependent);
+        checkSize(conditionStates);
+        conditionStates.put(key, focusIndependent ? Optional.of(state) : Optional.empty());
+        indexByOid(key);
+    }
+
+    /** Returns the cached (immutable) targets, or null if there are none (or they have expired). */
+    @Nullable List<PrismObject<? extends ObjectType>> getTargets(@NotNull Key key) {
+        TargetsEntry entry = targets.get(key);
+        if (entry == null) {
+            return null;
+        } else if (entry.isExpired(clock.getAsLong())) {
+            LOGGER.trace("Targets of {} have expired", key);
+            targets.remove(key, entry);
+            return null;
+        } else {
+            return entry.targets;
+        }
+    }
+
+    /**
+     * To be obtained before resolving the targets, and provided to {@link #recordTargets(Key, ObjectReferenceType, List, long)}.
+     * It changes whenever an object of the target type is invalidated.
+     */
+    long getInvalidationStamp(@NotNull ObjectReferenceType targetRef) {
+        Class<?> targetClass = getCacheableTargetClass(targetRef);
+        return targetClass != null ? getStamp(targetClass) : globalStamp.get();
+    }
+
+    private long getStamp(@NotNull Class<?> targetClass) {
+        // Both are only incremented, so the sum changes whenever any of them does.
+        return globalStamp.get() + stamps.computeIfAbsent(targetClass, c -> new AtomicLong()).get();
+    }
+
+    /**
+     * Records the targets of a reference, if they are determined by a filter without expressions.
+     *
+     * @param invalidationStamp Value of {@link #getInvalidationStamp(ObjectReferenceType)} before the targets were resolved.
+     */
+    void recordTargets(@NotNull Key key, @NotNull ObjectReferenceType targetRef,
+            @NotNull List<PrismObject<? extends ObjectType>> resolved, long invalidationStamp) {
+        if (targets.containsKey(key)) {
+            return;
+        }
+        TargetsEntry entry = createTargetsEntry(targetRef, resolved);
+        LOGGER.trace("Targets of {} are cacheable: {}", key, entry != TargetsEntry.NOT_CACHEABLE);
+        checkSize(targets);
+        targets.put(key, entry);
+        indexByOid(key);
+        if (entry.targetClass != null) {
+            keysByTargetClass.computeIfAbsent(entry.targetClass, c -> ConcurrentHashMap.newKeySet()).add(key);
+            if (getStamp(entry.targetClass) != invalidationStamp) {
+                // Something might have changed while the targets were being resolved.
+                targets.remove(key, entry);
+            }
+        }
+    }
+
+    private void indexByOid(@NotNull Key key) {
+        keysByOid.computeIfAbsent(key.oid, oid -> ConcurrentHashMap.newKeySet()).add(key);
+    }
+
+    /** Returns the class of the targets, if it is a type whose changes we listen to. */
+    private @Nullable Class<?> getCacheableTargetClass(@NotNull ObjectReferenceType targetRef) {
+        QName typeName = targetRef.getType();
+        if (typeName == null) {
+            return null;
+        }
+        Class<?> targetClass = prismContext.getSchemaRegistry().determineCompileTimeClass(typeName);
+        return targetClass != null && AbstractRoleType.class.isAssignableFrom(targetClass) ? targetClass : null;
+    }
+
+    private @NotNull TargetsEntry createTargetsEntry(@NotNull ObjectReferenceType targetRef,
+            @NotNull List<PrismObject<? extends ObjectType>> resolved) {
+        SearchFilterType filterBean = targetRef.getFilter();
+        if (targetRef.getOid() != null || filterBean == null
+                || !resolved.stream().allMatch(PrismObject::isImmutable)) {
+            return TargetsEntry.NOT_CACHEABLE;
+        }
+        try {
+            //noinspection unchecked
+            Class<? extends ObjectType> targetClass = (Class<? extends ObjectType>) getCacheableTargetClass(targetRef);
+            if (targetClass == null) {
+                return TargetsEntry.NOT_CACHEABLE;
+            }
+            ObjectFilter filter = prismContext.getQueryConverter().parseFilter(filterBean, targetClass);
+            if (ExpressionUtil.hasExpressions(filter)) {
+                return TargetsEntry.NOT_CACHEABLE;
+            }
+            return new TargetsEntry(targetClass, List.copyOf(resolved), clock.getAsLong() + TARGETS_TIME_TO_LIVE);
+        } catch (SchemaException | RuntimeException e) {
+            LOGGER.debug("Couldn't analyze target filter in {}, not caching the targets: {}", targetRef, e.getMessage(), e);
+            return TargetsEntry.NOT_CACHEABLE;
+        }
+    }
+
+    private void checkSize(Map<?, ?> map) {
+        if (map.size() >= MAX_ENTRIES) {
+            LOGGER.debug("Focus-independent evaluation cache is full ({} entries), clearing it", map.size());
+            map.clear();
+            // The indices can contain keys of entries that no longer exist; this is harmless, but they should not grow forever.
+            if (keysByOid.size() >= MAX_ENTRIES) {
+                keysByOid.clear();
+            }
+        }
+    }
+
+    /** Static analysis: Can the condition value depend on anything else than the condition itself? */
+    private boolean isFocusIndependent(@NotNull MappingType condition) {
+        if (!condition.getSource().isEmpty()
+                || !condition.getChannel().isEmpty()
+                || !condition.getExceptChannel().isEmpty()
+                || condition.getCondition() != null
+                || condition.getTimeFrom() != null
+                || condition.getTimeTo() != null) {
+            return false;
+        }
+        ExpressionType expression = condition.getExpression();
+        if (expression == null
+                || expression.getExpressionEvaluator().isEmpty()
+                || !expression.getVariable().isEmpty()
+                || expression.getRunAsRef() != null) {
+            return false;
+        }
+        for (JAXBElement<?> evaluator : expression.getExpressionEvaluator()) {
+            if (!isFocusIndependent(evaluator)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isFocusIndependent(@NotNull JAXBElement<?> evaluator) {
+        QName name = evaluator.getName();
+        if (SchemaConstantsGenerated.C_VALUE.equals(name) || SchemaConstantsGenerated.C_CONST.equals(name)) {
+            return true;
+        } else if (SchemaConstantsGenerated.C_SCRIPT.equals(name)
+                && evaluator.getValue() instanceof ScriptExpressionEvaluatorType) {
+            ScriptExpressionEvaluatorType script = (ScriptExpressionEvaluatorType) evaluator.getValue();
+            if (script.getLanguage() != null && !GroovyScriptEvaluator.LANGUAGE_URL.equals(script.getLanguage())
+                    || script.getCode() == null) {
+                return false;
+            }
+            Set<String> references = GroovyScriptAnalyzer.getExternalReferences(script.getCode());
+            LOGGER.trace("External references in condition script: {}", references);
+            return references != null && references.isEmpty();
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public Collection<CacheInvalidationEventSpecification> getEventSpecifications() {
+        return EVENT_SPECIFICATIONS;
+    }
+
+    @Override
+    public void invalidate(Class<?> type, String oid, CacheInvalidationContext context) {
+        if (type == null || oid == null && AbstractRoleType.class.isAssignableFrom(type)) {
+            globalStamp.incrementAndGet();
+            conditionStates.clear();
+            targets.clear();
+            keysByOid.clear();
+            keysByTargetClass.clear();
+            return;
+        }
+        if (!AbstractRoleType.class.isAssignableFrom(type)) {
+            return;
+        }
+        // Targets of a filter can change when any object of the target type changes.
+        stamps.forEach((targetClass, stamp) -> {
+            if (isRelated(targetClass, type)) {
+                stamp.incrementAndGet();
+            }
+        });
+        // Not using removeAll on the key sets, as it iterates through the whole map.
+        keysByTargetClass.entrySet().removeIf(e -> {
+            if (isRelated(e.getKey(), type)) {
+                e.getValue().forEach(targets::remove);
+                return true;
+            } else {
+                return false;
+            }
+        });
+        Set<Key> keysOfRole = keysByOid.remove(oid);
+        if (keysOfRole != null) {
+            keysOfRole.forEach(key -> {
+                conditionStates.remove(key);
+                targets.remove(key);
+            });
+        }
+    }
+
+    private static boolean isRelated(@NotNull Class<?> targetClass, @NotNull Class<?> type) {
+        return targetClass.isAssignableFrom(type) || type.isAssignableFrom(targetClass);
+    }
+
+    @Override
+    public @NotNull Collection<SingleCacheStateInformationType> getStateInformation() {
+        return Collections.singleton(new SingleCacheStateInformationType()
+                .name(FocusIndependentEvaluationCache.class.getName())
+                .size(conditionStates.size())
+                .secondarySize(targets.size()));
+    }
+
+    @Override
+    public void dumpContent() {
+        if (LOGGER_CONTENT.isInfoEnabled()) {
+            conditionStates.forEach((k, v) -> LOGGER_CONTENT.info("Cached condition state: {}: {}", k, v));
+            targets.forEach((k, v) -> LOGGER_CONTENT.info("Cached targets: {}: {}", k, v));
+        }
+    }
+
+    @VisibleForTesting
+    void setClock(@NotNull LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /** Identifies a condition or an assignment/inducement in a specific version of a role. */
+    static class Key {
+
+        @NotNull private final String oid;
+        @NotNull private final String version;
+        @NotNull private final String item;
+
+        @VisibleForTesting
+        Key(@NotNull String oid, @NotNull String version, @NotNull String item) {
+            this.oid = oid;
+            this.version = version;
+            this.item = item;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return oid.equals(key.oid) && version.equals(key.version) && item.equals(key.item);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(oid, version, item);
+        }
+
+        @Override
+        public String toString() {
+            return oid + ":" + version + ":" + item;
+        }
+    }
+
+    private static class TargetsEntry {
+
+        private static final TargetsEntry NOT_CACHEABLE = new TargetsEntry(null, null, Long.MAX_VALUE);
+
+        @Nullable private final Class<?> targetClass;
+        @Nullable private final List<PrismObject<? extends ObjectType>> targets;
+
+        /** When the targets stop being valid. */
+        private final long expiration;
+
+        private TargetsEntry(@Nullable Class<?> targetClass, @Nullable List<PrismObject<? extends ObjectType>> targets,
+                long expiration) {
+            this.targetClass = targetClass;
+            this.targets = targets;
+            this.expiration = expiration;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiration;
+        }
+
+        @Override
+        public String toString() {
+            return targets != null ? targetClass.getSimpleName() + ": " + targets : "(not cacheable)";
+        }
+    }
+}
@@ -246,12 +246,20 @@ public class PathSegmentEvaluation<AH extends AssignmentHolderType> extends Abst
         return targetsEvaluation != null ? targetsEvaluation.targets : emptyList();
     }
 
+    /** Identifies the condition in the source object, for the purposes of caching. Null if that's not possible. */
+    private String getConditionItemDescription() {
+        String assignmentItem = Util.getAssignmentItemDescription(segment);
+        return assignmentItem != null ? assignmentItem + "/condition" : null;
+    }
+
     private ConditionState determineAssignmentConditionState()
             throws SchemaException, ExpressionEvaluationException, ObjectNotFoundException, SecurityViolationException,
             ConfigurationException, CommunicationException {
         return ctx.conditionEvaluator.computeConditionState(
                 segment.assignment.getCondition(),
                 segment.source,
+                getConditionItemDescription(),
+                segment.source,
                 "condition in assignment in " + segment.sourceDescription,
                 FocusTypeUtil.dumpAssignmentLazily(segment.assignment),
                 result);
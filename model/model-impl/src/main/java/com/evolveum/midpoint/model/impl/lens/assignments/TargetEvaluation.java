@@ -210,6 +210,8 @@ public class TargetEvaluation<AH extends AssignmentHolderType> extends AbstractE
         AssignmentHolderType source = segment.source;
         return ctx.conditionEvaluator.computeConditionState(
                 condition,
+                target,
+                "condition",
                 source,
                 "condition in " + segment.getTargetDescription(), target,
                 result);
@@ -207,9 +207,29 @@ class TargetsEvaluation<AH extends AssignmentHolderType> extends AbstractEvaluat
             OperationResult result) throws SchemaException, ObjectNotFoundException, ExpressionEvaluationException,
             CommunicationException, ConfigurationException, SecurityViolationException {
         ObjectReferenceType targetRef = segment.assignment.getTargetRef();
+        FocusIndependentEvaluationCache cache = ctx.ae.beans.focusIndependentEvaluationCache;
+        FocusIndependentEvaluationCache.Key key = targetRef.getOid() == null ?
+                cache.createKey(segment.source, getTargetRefItemDescription(segment), ctx) : null;
+        if (key != null) {
+            List<PrismObject<? extends ObjectType>> cached = cache.getTargets(key);
+            if (cached != null) {
+                LOGGER.trace("Using cached targets of {}: {}", key, cached);
+                return cached;
+            }
+        }
+        long invalidationStamp = key != null ? cache.getInvalidationStamp(targetRef) : 0;
         ReferenceResolver.FilterEvaluator filterEvaluator = createFilterEvaluator(segment, ctx);
-        return ctx.ae.referenceResolver.resolve(targetRef, createReadOnlyCollection(), REPOSITORY,
-                filterEvaluator, ctx.task, result);
+        List<PrismObject<? extends ObjectType>> resolved = ctx.ae.referenceResolver.resolve(
+                targetRef, createReadOnlyCollection(), REPOSITORY, filterEvaluator, ctx.task, result);
+        if (key != null) {
+            cache.recordTargets(key, targetRef, resolved, invalidationStamp);
+        }
+        return resolved;
+    }
+
+    private String getTargetRefItemDescription(AssignmentPathSegmentImpl segment) {
+        String assignmentItem = Util.getAssignmentItemDescription(segment);
+        return assignmentItem != null ? assignmentItem + "/targetRef" : null;
     }
 
     @NotNull
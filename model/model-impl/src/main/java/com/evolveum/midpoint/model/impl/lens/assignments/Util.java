@@ -79,6 +79,19 @@ class Util {
         return !segment.isArchetypeHierarchy() && (segment.direct || segment.isMatchingOrder || segment.source instanceof UserType);
     }
 
+    /**
+     * Identifies the assignment/inducement of the segment within its source object, e.g. `inducement/5`.
+     * Null if the assignment/inducement has no ID.
+     */
+    @Nullable
+    static String getAssignmentItemDescription(@NotNull AssignmentPathSegmentImpl segment) {
+        Long id = segment.assignment.getId();
+        if (id == null) {
+            return null;
+        }
+        return (segment.isAssignment() ? "assignment/" : "inducement/") + id;
+    }
+
     static AssignmentType getAssignment(
             ItemDeltaItem<PrismContainerValue<AssignmentType>, PrismContainerDefinition<AssignmentType>> assignmentIdi,
             boolean evaluateOld) {
@@ -905,13 +905,14 @@ class DeltaExecution<O extends ObjectType, E extends ObjectType> {
 
     @Nullable
     private PrismObject<O> getFocus() {
-        PrismObject<O> focus;
-        if (context.getFocusContext() != null) {
-            focus = context.getFocusContext().getObjectAny();
-        } else {
-            focus = null;
+        LensFocusContext<O> focusContext = context.getFocusContext();
+        if (focusContext == null) {
+            return null;
+        }
+        // Projections can be executed concurrently, and links are updated under this lock (see ProjectionChangeExecution).
+        synchronized (focusContext) {
+            return focusContext.getObjectAny();
         }
-        return focus;
     }
 
     private PrismObject<ShadowType> getShadow(LensProjectionContext projectionCtx, PrismObject<E> fromProvisioning) {
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.impl.lens.executor;
+
+import static com.evolveum.midpoint.model.impl.lens.ChangeExecutor.OPERATION_EXECUTE_PROJECTION;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.jetbrains.annotations.NotNull;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.evolveum.midpoint.model.impl.ModelBeans;
+import com.evolveum.midpoint.model.impl.lens.LensContext;
+import com.evolveum.midpoint.model.impl.lens.LensProjectionContext;
+import com.evolveum.midpoint.repo.cache.RepositoryCache;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.util.exception.*;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+
+/**
+ * Executes changes of projections (in the current wave) concurrently, using {@link ProjectionExecutionPool}.
+ *
+ * Projections are grouped by resource. Groups are executed concurrently, while projections in a group are executed
+ * sequentially in their original order. So e.g. higher-order contexts are executed after the lower-order ones,
+ * and a resource gets at most one operation from this clockwork run at a time. Waves are kept, as this is called
+ * for each execution wave separately. The first group is executed in the current thread.
+ *
+ * Each projection has its own {@link ProjectionChangeExecution}, with its own error handling. The results are
+ * created under a detached result in the worker thread, and moved to the parent result in the original order
+ * after all the groups finish. If more projections fail with an exception, the first one (in the original order)
+ * is thrown. After a projection fails, no further projections are started (in any group); the ones being executed
+ * at that time are finished.
+ *
+ * The workers have their own thread-local repository caches. So the caches of the current thread are cleared after
+ * the workers finish, as they could miss the invalidations caused by the workers' updates.
+ */
+public class ParallelProjectionsChangeExecution<O extends ObjectType> {
+
+    /** For the time being we keep the parent logger name. */
+    private static final Trace LOGGER = TraceManager.getTrace(ProjectionChangeExecution.class);
+
+    private static final String OP_EXECUTE_GROUP = OPERATION_EXECUTE_PROJECTION + ".group";
+
+    @NotNull private final LensContext<O> context;
+    @NotNull private final Task task;
+    @NotNull private final ModelBeans b;
+    private final int threads;
+
+    private boolean restartRequested;
+
+    /** Set when any projection fails. No new projections are started after that. */
+    private volatile boolean failed;
+
+    public ParallelProjectionsChangeExecution(@NotNull LensContext<O> context, @NotNull Task task,
+            @NotNull ModelBeans modelBeans, int threads) {
+        this.context = context;
+        this.task = task;
+        this.b = modelBeans;
+        this.threads = threads;
+    }
+
+    /** Can the projections be executed concurrently in the current thread? */
+    public static boolean isApplicable(int threads) {
+        return threads > 1 && !ProjectionExecutionPool.isPoolThread();
+    }
+
+    public void execute(OperationResult result)
+            throws ObjectNotFoundException, SchemaException, CommunicationException, ConfigurationException,
+            SecurityViolationException, PolicyViolationException, ExpressionEvaluationException, ObjectAlreadyExistsException {
+
+        List<Group> groups = createGroups();
+        LOGGER.trace("Executing {} projection context(s) in {} group(s)", context.getProjectionContexts().size(), groups.size());
+        if (groups.size() == 1) {
+            groups.get(0).executeInCurrentThread(result);
+            rethrowIfNeeded(groups);
+            return;
+        }
+
+        ExecutorService executor = b.projectionExecutionPool.getExecutor(threads);
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+        List<Future<?>> futures = new ArrayList<>();
+        for (Group group : groups.subList(1, groups.size())) {
+            futures.add(executor.submit(() -> group.executeInWorkerThread(securityContext)));
+        }
+        try {
+            groups.get(0).executeInCurrentThread(result);
+        } finally {
+            waitForCompletion(futures);
+            RepositoryCache.clearLocalCaches();
+            for (Group group : groups.subList(1, groups.size())) {
+                group.moveResults(result);
+            }
+        }
+        rethrowIfNeeded(groups);
+    }
+
+    private List<Group> createGroups() {
+        Map<Object, Group> groups = new LinkedHashMap<>();
+        for (LensProjectionContext projCtx : context.getProjectionContexts()) {
+            // Contexts without resource are put into their own groups.
+            String resourceOid = projCtx.getResourceOid();
+            groups.computeIfAbsent(resourceOid != null ? resourceOid : projCtx, k -> new Group())
+                    .projectionContexts.add(projCtx);
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    private void waitForCompletion(List<Future<?>> futures) {
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    // We must not continue until the workers finish, as they work with our context.
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    // Should not occur, as the group catches everything.
+                    LOGGER.error("Unexpected exception in projection execution: {}", e.getMessage(), e);
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void rethrowIfNeeded(List<Group> groups)
+            throws ObjectNotFoundException, SchemaException, CommunicationException, ConfigurationException,
+            SecurityViolationException, PolicyViolationException, ExpressionEvaluationException, ObjectAlreadyExistsException {
+        for (Group group : groups) {
+            restartRequested = restartRequested || group.restartRequested;
+        }
+        Throwable t = groups.stream()
+                .map(group -> group.exception)
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(null);
+        if (t == null) {
+            return;
+        }
+        if (t instanceof ObjectNotFoundException) {
+            throw (ObjectNotFoundException) t;
+        } else if (t instanceof SchemaException) {
+            throw (SchemaException) t;
+        } else if (t instanceof CommunicationException) {
+            throw (CommunicationException) t;
+        } else if (t instanceof ConfigurationException) {
+            throw (ConfigurationException) t;
+        } else if (t instanceof SecurityViolationException) {
+            throw (SecurityViolationException) t;
+        } else if (t instanceof PolicyViolationException) {
+            throw (PolicyViolationException) t;
+        } else if (t instanceof ExpressionEvaluationException) {
+            throw (ExpressionEvaluationException) t;
+        } else if (t instanceof ObjectAlreadyExistsException) {
+            throw (ObjectAlreadyExistsException) t;
+        } else if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else {
+            throw new SystemException(t.getMessage(), t);
+        }
+    }
+
+    public boolean isRestartRequested() {
+        return restartRequested;
+    }
+
+    /** Projections on the same resource, executed sequentially. */
+    private class Group {
+
+        @NotNull private final List<LensProjectionContext> projectionContexts = new ArrayList<>();
+
+        /** Used only when executed in a worker thread. */
+        private OperationResult detachedResult;
+
+        private boolean restartRequested;
+        private Throwable exception;
+
+        private void executeInCurrentThread(OperationResult result) {
+            try {
+                for (LensProjectionContext projCtx : projectionContexts) {
+                    if (failed) {
+                        LOGGER.trace("Not executing {} because other projection has failed", projCtx);
+                        return;
+                    }
+                    context.checkAbortRequested();
+                    ProjectionChangeExecution<O> execution = new ProjectionChangeExecution<>(context, projCtx, task, b);
+                    execution.execute(result);
+                    restartRequested = restartRequested || execution.isRestartRequested();
+                }
+            } catch (Throwable t) {
+                exception = t;
+                failed = true;
+            }
+        }
+
+        private void executeInWorkerThread(SecurityContext securityContext) {
+            detachedResult = new OperationResult(OP_EXECUTE_GROUP);
+            SecurityContextHolder.setContext(securityContext);
+            RepositoryCache.enterLocalCaches(b.cacheConfigurationManager);
+            try {
+                executeInCurrentThread(detachedResult);
+            } finally {
+                RepositoryCache.exitLocalCaches();
+                SecurityContextHolder.clearContext();
+            }
+        }
+
+        private void moveResults(OperationResult parentResult) {
+            if (detachedResult != null) {
+                for (OperationResult subresult : detachedResult.getSubresults()) {
+                    parentResult.addSubresult(subresult);
+                }
+            }
+        }
+    }
+}
@@ -336,8 +336,11 @@ public class ProjectionChangeExecution<O extends ObjectType> {
             return;
         }
 
-        //noinspection unchecked
-        new LinkUpdater<>(context, (LensFocusContext<? extends FocusType>) focusContext, projCtx, shadowLivenessState, task, b)
-                .updateLinks(result);
+        // The focus is shared among projections that may be executed concurrently, see ParallelProjectionsChangeExecution.
+        synchronized (focusContext) {
+            //noinspection unchecked
+            new LinkUpdater<>(context, (LensFocusContext<? extends FocusType>) focusContext, projCtx, shadowLivenessState, task, b)
+                    .updateLinks(result);
+        }
     }
 }
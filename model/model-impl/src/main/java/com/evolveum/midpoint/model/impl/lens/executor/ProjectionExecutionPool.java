@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.impl.lens.executor;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+
+import org.jetbrains.annotations.NotNull;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+/**
+ * Bounded pools of threads used to execute changes of independent projections concurrently, and to compute
+ * independent projections concurrently (in projector).
+ *
+ * There is a separate executor for each of these purposes, sized by `internals/projectionExecutionThreads`
+ * and `internals/projectionComputationThreads`, respectively; each is resized when its value changes.
+ * (A shared executor would be resized back and forth if the values differed.) Tasks above the limit wait in the queue.
+ *
+ * Changes executed (or projections computed) in the threads of any of the pools are never parallelized again
+ * (e.g. when a nested clockwork run is started from a hook or script), as waiting for a pool from within a pool
+ * could lead to a deadlock.
+ */
+@Component
+public class ProjectionExecutionPool {
+
+    private static final Trace LOGGER = TraceManager.getTrace(ProjectionExecutionPool.class);
+
+    private static final ThreadLocal<Boolean> POOL_THREAD = ThreadLocal.withInitial(() -> false);
+
+    private final Pool executionPool = new Pool("execution");
+    private final Pool computationPool = new Pool("computation");
+
+    /** Is the current thread a worker of any of the pools? */
+    public static boolean isPoolThread() {
+        return POOL_THREAD.get();
+    }
+
+    /** Returns the executor for projection changes execution, resized to given number of threads if needed. */
+    public @NotNull ExecutorService getExecutor(int threads) {
+        return executionPool.getExecutor(threads);
+    }
+
+    /** Returns the executor for projections computation, resized to given number of threads if needed. */
+    public @NotNull ExecutorService getComputationExecutor(int threads) {
+        return computationPool.getExecutor(threads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executionPool.shutdown();
+        computationPool.shutdown();
+    }
+
+    /** A single resizable executor. */
+    private static class Pool {
+
+        @NotNull private final String purpose;
+
+        private final AtomicInteger threadCounter = new AtomicInteger();
+
+        /** Created on first use. Guarded by `this`. */
+        private ThreadPoolExecutor executor;
+
+        private Pool(@NotNull String purpose) {
+            this.purpose = purpose;
+        }
+
+        synchronized @NotNull ExecutorService getExecutor(int threads) {
+            if (executor == null) {
+                LOGGER.debug("Creating projection {} pool with {} threads", purpose, threads);
+                executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(), this::newThread);
+                executor.allowCoreThreadTimeOut(true);
+            } else if (executor.getMaximumPoolSize() != threads) {
+                LOGGER.debug("Resizing projection {} pool from {} to {} threads",
+                        purpose, executor.getMaximumPoolSize(), threads);
+                if (threads > executor.getMaximumPoolSize()) {
+                    executor.setMaximumPoolSize(threads);
+                    executor.setCorePoolSize(threads);
+                } else {
+                    executor.setCorePoolSize(threads);
+                    executor.setMaximumPoolSize(threads);
+                }
+            }
+            return executor;
+        }
+
+        private Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(() -> {
+                POOL_THREAD.set(true);
+                runnable.run();
+            }, "midpoint-projection-" + purpose + "-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+        synchronized void shutdown() {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+    }
+}
@@ -293,6 +293,17 @@ public class DependencyProcessor {
         return resultCtx;
     }
 
+    /**
+     * Returns true if the projection does not depend on any other projection, no other projection depends on it,
+     * and it is not a higher-order context. The computation of such projection is not influenced by the others
+     * (and vice versa), so it can be carried out e.g. concurrently with them.
+     */
+    public boolean isIndependent(LensProjectionContext projContext) throws SchemaException, ConfigurationException {
+        return projContext.getOrder() == 0
+                && projContext.getDependencies().isEmpty()
+                && findReverseDependencies(projContext).isEmpty();
+    }
+
     /**
      * Returns all contexts that depend on provided `targetContext`:
      */
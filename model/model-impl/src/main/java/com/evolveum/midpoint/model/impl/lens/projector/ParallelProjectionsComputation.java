@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.impl.lens.projector;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.jetbrains.annotations.NotNull;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.evolveum.midpoint.model.impl.ModelBeans;
+import com.evolveum.midpoint.model.impl.lens.ConflictDetectedException;
+import com.evolveum.midpoint.model.impl.lens.LensContext;
+import com.evolveum.midpoint.model.impl.lens.LensFocusContext;
+import com.evolveum.midpoint.model.impl.lens.LensProjectionContext;
+import com.evolveum.midpoint.model.impl.lens.executor.ProjectionExecutionPool;
+import com.evolveum.midpoint.repo.cache.RepositoryCache;
+import com.evolveum.midpoint.schema.internals.InternalsConfig;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.util.exception.*;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ProjectorComponentTraceType;
+
+/**
+ * Computes projections (in the current wave) concurrently, using {@link ProjectionExecutionPool}.
+ *
+ * Only projections that are independent of other projections (see {@link DependencyProcessor#isIndependent(LensProjectionContext)})
+ * are computed concurrently. They are grouped by resource; groups are computed concurrently, while projections
+ * in a group are computed sequentially in their original order. All other projections - the dependent ones, and the ones
+ * on the same resource as some dependent one - form the first group. The first group is computed in the current thread.
+ *
+ * Each projection has its own detached result; these are moved to the parent result in the original order of projections
+ * after all the groups finish. Conflicting projection contexts found during the computation are ordered by the groups
+ * they come from. So the outcome does not depend on the timing of the threads. If more projections fail with an exception,
+ * the first one (in the original order) is thrown.
+ *
+ * The computation reads the focus context from multiple threads. Therefore, its lazily computed state is computed
+ * before the threads are started. The shared state of the lens context that is written during the computation
+ * (resource cache, conflicting contexts, sequence values, cached owner) is thread-safe.
+ *
+ * The workers have their own thread-local repository caches. Although the computation rarely writes to the repository
+ * (e.g. when advancing sequences), the caches of the current thread are cleared after the workers finish, as they could
+ * miss the invalidations.
+ */
+class ParallelProjectionsComputation<F extends ObjectType> {
+
+    /** For the time being we keep the parent logger name. */
+    private static final Trace LOGGER = TraceManager.getTrace(Projector.class);
+
+    private static final String OP_COMPUTE_PROJECTION = Projector.class.getName() + ".computeProjection";
+
+    @NotNull private final LensContext<F> context;
+    @NotNull private final ProjectionComputer computer;
+    @NotNull private final DependencyProcessor dependencyProcessor;
+    @NotNull private final ModelBeans b;
+    private final int threads;
+
+    /** Projections with their detached results, in the original order. Not modified after the groups are created. */
+    @NotNull private final Map<LensProjectionContext, OperationResult> detachedResults = new LinkedHashMap<>();
+
+    /** Exceptions thrown when computing projections. Each one stops the computation of its group. */
+    @NotNull private final Map<LensProjectionContext, Throwable> exceptions = new ConcurrentHashMap<>();
+
+    ParallelProjectionsComputation(@NotNull LensContext<F> context, @NotNull ProjectionComputer computer,
+            @NotNull DependencyProcessor dependencyProcessor, @NotNull ModelBeans modelBeans, int threads) {
+        this.context = context;
+        this.computer = computer;
+        this.dependencyProcessor = dependencyProcessor;
+        this.b = modelBeans;
+        this.threads = threads;
+    }
+
+    /** Can the projections be computed concurrently in the current thread? */
+    static boolean isApplicable(int threads, OperationResult result) {
+        return threads > 1
+                && !ProjectionExecutionPool.isPoolThread()
+                && !InternalsConfig.consistencyChecks // these check the whole context, while other threads are modifying it
+                && !result.isTracingAny(ProjectorComponentTraceType.class); // traces dump the whole context
+    }
+
+    void compute(OperationResult result)
+            throws SchemaException, ObjectNotFoundException, CommunicationException, ConfigurationException,
+            SecurityViolationException, PolicyViolationException, ExpressionEvaluationException, ObjectAlreadyExistsException,
+            ConflictDetectedException {
+
+        List<Group> groups = createGroups();
+        LOGGER.trace("Computing {} projection context(s) in {} group(s)", detachedResults.size(), groups.size());
+        if (groups.size() <= 1) {
+            groups.forEach(Group::computeInCurrentThread);
+        } else {
+            prepareFocusContext();
+            int conflictingBefore = context.getConflictingProjectionContexts().size();
+            ExecutorService executor = b.projectionExecutionPool.getComputationExecutor(threads);
+            SecurityContext securityContext = SecurityContextHolder.getContext();
+            List<Future<?>> futures = new ArrayList<>();
+            for (Group group : groups.subList(1, groups.size())) {
+                futures.add(executor.submit(() -> group.computeInWorkerThread(securityContext)));
+            }
+            try {
+                groups.get(0).computeInCurrentThread();
+            } finally {
+                waitForCompletion(futures);
+                RepositoryCache.clearLocalCaches();
+                sortConflictingContexts(conflictingBefore, groups);
+            }
+        }
+        moveResults(result);
+        rethrowIfNeeded();
+    }
+
+    private List<Group> createGroups() throws SchemaException, ConfigurationException {
+        Collection<LensProjectionContext> projectionContexts = context.getProjectionContexts();
+        Set<String> independentContextsResources = new HashSet<>();
+        Set<String> dependentContextsResources = new HashSet<>();
+        Set<LensProjectionContext> independentContexts = new HashSet<>();
+        for (LensProjectionContext projCtx : projectionContexts) {
+            String resourceOid = projCtx.getResourceOid();
+            if (resourceOid != null && dependencyProcessor.isIndependent(projCtx)) {
+                independentContexts.add(projCtx);
+                independentContextsResources.add(resourceOid);
+            } else if (resourceOid != null) {
+                dependentContextsResources.add(resourceOid);
+            }
+        }
+        independentContextsResources.removeAll(dependentContextsResources);
+
+        Group mainGroup = new Group();
+        Map<String, Group> groups = new LinkedHashMap<>();
+        for (LensProjectionContext projCtx : projectionContexts) {
+            detachedResults.put(projCtx, new OperationResult(OP_COMPUTE_PROJECTION));
+            String resourceOid = projCtx.getResourceOid();
+            if (independentContexts.contains(projCtx) && independentContextsResources.contains(resourceOid)) {
+                groups.computeIfAbsent(resourceOid, k -> new Group())
+                        .projectionContexts.add(projCtx);
+            } else {
+                mainGroup.projectionContexts.add(projCtx);
+            }
+        }
+        List<Group> rv = new ArrayList<>();
+        if (!mainGroup.projectionContexts.isEmpty()) {
+            rv.add(mainGroup);
+        }
+        rv.addAll(groups.values());
+        return rv;
+    }
+
+    /** Computes the lazily-evaluated parts of the focus context state, so the worker threads only read them. */
+    private void prepareFocusContext() {
+        LensFocusContext<F> focusContext = context.getFocusContext();
+        if (focusContext != null) {
+            focusContext.getObjectDefinition();
+            focusContext.getOid();
+            focusContext.getObjectNew();
+            focusContext.getCurrentDelta();
+            focusContext.getSummaryDelta();
+        }
+    }
+
+    private void waitForCompletion(List<Future<?>> futures) {
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    // We must not continue until the workers finish, as they work with our context.
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    // Should not occur, as the group catches everything.
+                    LOGGER.error("Unexpected exception in projection computation: {}", e.getMessage(), e);
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Conflicting contexts added by concurrently computed groups are sorted by the groups (stable sort). */
+    private void sortConflictingContexts(int conflictingBefore, List<Group> groups) {
+        List<LensProjectionContext> conflicting = context.getConflictingProjectionContexts();
+        if (conflicting.size() - conflictingBefore < 2) {
+            return;
+        }
+        Map<String, Integer> groupIndexByResource = new HashMap<>();
+        for (int i = groups.size() - 1; i >= 0; i--) {
+            for (LensProjectionContext projCtx : groups.get(i).projectionContexts) {
+                groupIndexByResource.put(projCtx.getResourceOid(), i);
+            }
+        }
+        conflicting.subList(conflictingBefore, conflicting.size())
+                .sort(Comparator.comparingInt(projCtx -> groupIndexByResource.getOrDefault(projCtx.getResourceOid(), 0)));
+    }
+
+    private void moveResults(OperationResult parentResult) {
+        for (OperationResult detachedResult : detachedResults.values()) {
+            for (OperationResult subresult : detachedResult.getSubresults()) {
+                parentResult.addSubresult(subresult);
+            }
+        }
+    }
+
+    private void rethrowIfNeeded()
+            throws SchemaException, ObjectNotFoundException, CommunicationException, ConfigurationException,
+            SecurityViolationException, PolicyViolationException, ExpressionEvaluationException, ObjectAlreadyExistsException,
+            ConflictDetectedException {
+        Throwable t = detachedResults.keySet().stream()
+                .map(exceptions::get)
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(null);
+        if (t == null) {
+            return;
+        }
+        if (t instanceof ObjectNotFoundException) {
+            throw (ObjectNotFoundException) t;
+        } else if (t instanceof SchemaException) {
+            throw (SchemaException) t;
+        } else if (t instanceof CommunicationException) {
+            throw (CommunicationException) t;
+        } else if (t instanceof ConfigurationException) {
+            throw (ConfigurationException) t;
+        } else if (t instanceof SecurityViolationException) {
+            throw (SecurityViolationException) t;
+        } else if (t instanceof PolicyViolationException) {
+            throw (PolicyViolationException) t;
+        } else if (t instanceof ExpressionEvaluationException) {
+            throw (ExpressionEvaluationException) t;
+        } else if (t instanceof ObjectAlreadyExistsException) {
+            throw (ObjectAlreadyExistsException) t;
+        } else if (t instanceof ConflictDetectedException) {
+            throw (ConflictDetectedException) t;
+        } else if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else {
+            throw new SystemException(t.getMessage(), t);
+        }
+    }
+
+    /** Computation of a single projection, i.e. calling the projector components for it. */
+    @FunctionalInterface
+    interface ProjectionComputer {
+
+        void compute(LensProjectionContext projectionContext, OperationResult result)
+                throws SchemaException, ObjectNotFoundException, CommunicationException, ConfigurationException,
+                SecurityViolationException, PolicyViolationException, ExpressionEvaluationException,
+                ObjectAlreadyExistsException, ConflictDetectedException;
+    }
+
+    /** Projections computed sequentially. */
+    private class Group {
+
+        @NotNull private final List<LensProjectionContext> projectionContexts = new ArrayList<>();
+
+        private void computeInCurrentThread() {
+            for (LensProjectionContext projCtx : projectionContexts) {
+                try {
+                    computer.compute(projCtx, detachedResults.get(projCtx));
+                } catch (Throwable t) {
+                    exceptions.put(projCtx, t);
+                    return;
+                }
+            }
+        }
+
+        private void computeInWorkerThread(SecurityContext securityContext) {
+            SecurityContextHolder.setContext(securityContext);
+            RepositoryCache.enterLocalCaches(b.cacheConfigurationManager);
+            try {
+                computeInCurrentThread();
+            } finally {
+                RepositoryCache.exitLocalCaches();
+                SecurityContextHolder.clearContext();
+            }
+        }
+    }
+}
@@ -24,6 +24,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.evolveum.midpoint.common.Clock;
+import com.evolveum.midpoint.model.impl.ModelBeans;
 import com.evolveum.midpoint.model.api.ProgressInformation;
 import com.evolveum.midpoint.model.api.context.SynchronizationPolicyDecision;
 import com.evolveum.midpoint.model.impl.lens.ClockworkMedic;
@@ -71,6 +72,7 @@ public class Projector {
     @Autowired private ObjectTemplateProcessor objectTemplateProcessor;
     @Autowired private Clock clock;
     @Autowired private ClockworkMedic medic;
+    @Autowired private ModelBeans beans;
 
     private static final Trace LOGGER = TraceManager.getTrace(Projector.class);
 
@@ -197,12 +199,20 @@ public class Projector {
                 dependencyProcessor.sortProjectionsToWaves(context, task, result);
 
                 // In the future we may want the ability to select only some projections to process.
-                for (LensProjectionContext projectionContext : context.getProjectionContexts()) {
-                    medic.partialExecute(Components.PROJECTION,
-                            (result1) -> projectProjection(context, projectionContext,
-                                    partialProcessingOptions, now, activityDescription, task, result1),
-                            partialProcessingOptions::getProjection,
-                            Projector.class, context, projectionContext, result);
+                int threads = getProjectionComputationThreads(context);
+                if (ParallelProjectionsComputation.isApplicable(threads, result)) {
+                    new ParallelProjectionsComputation<>(
+                            context,
+                            (projectionContext, result1) -> projectProjectionComponent(
+                                    context, projectionContext, partialProcessingOptions, now, activityDescription, task,
+                                    result1),
+                            dependencyProcessor, beans, threads)
+                            .compute(result);
+                } else {
+                    for (LensProjectionContext projectionContext : context.getProjectionContexts()) {
+                        projectProjectionComponent(
+                                context, projectionContext, partialProcessingOptions, now, activityDescription, task, result);
+                    }
                 }
 
                 // If there exists some conflicting projection contexts, add them to the context so they will be recomputed
@@ -246,6 +256,25 @@ public class Projector {
         }
     }
 
+    private <F extends ObjectType> void projectProjectionComponent(LensContext<F> context,
+            LensProjectionContext projectionContext, PartialProcessingOptionsType partialProcessingOptions,
+            XMLGregorianCalendar now, String activityDescription, Task task, OperationResult result)
+            throws SchemaException, ObjectNotFoundException, CommunicationException, ConfigurationException,
+            SecurityViolationException, PolicyViolationException, ExpressionEvaluationException, ObjectAlreadyExistsException,
+            ConflictDetectedException {
+        medic.partialExecute(Components.PROJECTION,
+                (result1) -> projectProjection(context, projectionContext,
+                        partialProcessingOptions, now, activityDescription, task, result1),
+                partialProcessingOptions::getProjection,
+                Projector.class, context, projectionContext, result);
+    }
+
+    private int getProjectionComputationThreads(LensContext<?> context) {
+        InternalsConfigurationType internals = context.getInternalsConfiguration();
+        Integer threads = internals != null ? internals.getProjectionComputationThreads() : null;
+        return threads != null ? threads : 0;
+    }
+
     private <F extends ObjectType> void projectProjection(LensContext<F> context, LensProjectionContext projectionContext,
             PartialProcessingOptionsType partialProcessingOptions,
             XMLGregorianCalendar now, String activityDescription, Task task, OperationResult parentResult)
@@ -9,21 +9,16 @@ package com.evolveum.midpoint.model.impl.lens.projector.focus;
 
 import com.evolveum.midpoint.model.impl.lens.LensContext;
 import com.evolveum.midpoint.model.impl.lens.LensFocusContext;
-import com.evolveum.midpoint.model.impl.lens.LensUtil;
+import com.evolveum.midpoint.model.impl.lens.projector.focus.AutoAssignRoleCache.AutoAssignRoleSpecification;
 import com.evolveum.midpoint.model.impl.lens.projector.mappings.AutoassignRoleMappingEvaluationRequest;
 import com.evolveum.midpoint.model.impl.lens.projector.mappings.FocalMappingEvaluationRequest;
-import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.PrismObject;
-import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.repo.api.RepositoryService;
-import com.evolveum.midpoint.schema.ResultHandler;
-import com.evolveum.midpoint.schema.constants.SchemaConstants;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.util.exception.*;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
-import com.evolveum.prism.xml.ns._public.types_3.ItemPathType;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -31,12 +26,12 @@ import org.springframework.stereotype.Component;
 
 import java.util.List;
 
-import static com.evolveum.midpoint.schema.GetOperationOptions.createReadOnlyCollection;
-
 import static org.apache.commons.lang3.BooleanUtils.isTrue;
 
 /**
  * Collects auto-assignment mappings from auto-assignable roles.
+ *
+ * The roles are taken from {@link AutoAssignRoleCache}.
  */
 @Component
 public class AutoAssignMappingCollector {
@@ -44,7 +39,7 @@ public class AutoAssignMappingCollector {
     private static final Trace LOGGER = TraceManager.getTrace(ObjectTemplateProcessor.class);
 
     @Autowired @Qualifier("cacheRepositoryService") private RepositoryService cacheRepositoryService;
-    @Autowired private PrismContext prismContext;
+    @Autowired private AutoAssignRoleCache autoAssignRoleCache;
 
     <AH extends AssignmentHolderType>
     void collectAutoassignMappings(LensContext<AH> context,
@@ -54,47 +49,30 @@ public class AutoAssignMappingCollector {
             return;
         }
 
-        ObjectQuery query = prismContext
-                .queryFor(AbstractRoleType.class)
-                .item(SchemaConstants.PATH_AUTOASSIGN_ENABLED)
-                .eq(true)
-                .build();
-
-        ResultHandler<AbstractRoleType> handler = (role, objectResult) -> {
-            AutoassignSpecificationType autoassign = role.asObjectable().getAutoassign();
-            if (autoassign == null) {
-                return true;
-            }
-            if (!isTrue(autoassign.isEnabled())) {
-                return true;
-            }
-            FocalAutoassignSpecificationType focalAutoassignSpec = autoassign.getFocus();
-            if (focalAutoassignSpec == null) {
-                return true;
-            }
-
-            if (!isApplicableFor(focalAutoassignSpec.getSelector(), context.getFocusContext(), objectResult)) {
-                return true;
+        LensFocusContext<AH> focusContext = context.getFocusContext();
+        for (AutoAssignRoleSpecification specification : autoAssignRoleCache.getSpecifications(result)) {
+            if (!isApplicableFor(specification, focusContext, result)) {
+                continue;
             }
-
-            for (AutoassignMappingType autoMapping: focalAutoassignSpec.getMapping()) {
-                AutoassignMappingType mapping =
-                        LensUtil.setMappingTarget(autoMapping, new ItemPathType(SchemaConstants.PATH_ASSIGNMENT));
-                mappings.add(new AutoassignRoleMappingEvaluationRequest(mapping, role.asObjectable()));
-                LOGGER.trace("Collected autoassign mapping {} from {}", mapping.getName(), role);
+            for (AutoassignMappingType mapping : specification.getMappings()) {
+                mappings.add(new AutoassignRoleMappingEvaluationRequest(mapping, specification.getRole()));
+                LOGGER.trace("Collected autoassign mapping {} from {}", mapping.getName(), specification.getRole());
             }
-            return true;
-        };
-        cacheRepositoryService.searchObjectsIterative(AbstractRoleType.class, query, handler,
-                createReadOnlyCollection(), true, result);
+        }
     }
 
-    private <AH extends AssignmentHolderType> boolean isApplicableFor(ObjectSelectorType selector, LensFocusContext<AH> focusContext, OperationResult result) {
+    private <AH extends AssignmentHolderType> boolean isApplicableFor(AutoAssignRoleSpecification specification,
+            LensFocusContext<AH> focusContext, OperationResult result) {
+        ObjectSelectorType selector = specification.getSelector();
         if (selector == null) {
             return true;
         }
+        PrismObject<AH> focus = focusContext.getObjectAny();
+        if (focus != null && !specification.isTypeApplicable(focus)) {
+            return false;
+        }
         try {
-            return cacheRepositoryService.selectorMatches(selector, focusContext.getObjectAny(), null, LOGGER, "");
+            return cacheRepositoryService.selectorMatches(selector, focus, null, LOGGER, "");
         } catch (SchemaException | SecurityViolationException | ExpressionEvaluationException | CommunicationException | ObjectNotFoundException | ConfigurationException e) {
             LOGGER.error("Failed to evaluate selector constraints, selector {}, focusContext {}\nReason: {}", selector, focusContext, e.getMessage(), e);
             result.recordFatalError("Failed to evaluate selector constrains, selector: " + selector + ", focusContext: " + focusContext + "\nReason: " + e.getMessage(), e);
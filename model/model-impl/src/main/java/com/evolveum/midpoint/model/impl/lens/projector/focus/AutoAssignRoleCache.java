@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.impl.lens.projector.focus;
+
+import static org.apache.commons.lang3.BooleanUtils.isTrue;
+
+import static com.evolveum.midpoint.schema.GetOperationOptions.createReadOnlyCollection;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.xml.namespace.QName;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.VisibleForTesting;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.CacheInvalidationContext;
+import com.evolveum.midpoint.model.impl.lens.LensUtil;
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.repo.api.Cache;
+import com.evolveum.midpoint.repo.api.CacheInvalidationEventSpecification;
+import com.evolveum.midpoint.repo.api.CacheRegistry;
+import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.schema.constants.SchemaConstants;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+import com.evolveum.prism.xml.ns._public.types_3.ItemPathType;
+
+/**
+ * Node-wide index of auto-assignable roles, with their (immutable) auto-assignment mappings prepared for evaluation.
+ *
+ * The index is loaded from the repository when first needed. Then it is updated incrementally: when a role changes,
+ * only that role is re-read (at the next use of the index). A full reload is done only if the invalidation event
+ * does not specify the object, e.g. when all caches are cleared. As a safety net (e.g. for invalidation events that
+ * were lost), the whole index is reloaded also when it is older than {@link #DEFAULT_FULL_RELOAD_INTERVAL}.
+ *
+ * So, in steady state, collecting the auto-assignment mappings requires no repository access.
+ */
+@Component
+public class AutoAssignRoleCache implements Cache {
+
+    private static final Trace LOGGER = TraceManager.getTrace(AutoAssignRoleCache.class);
+    private static final Trace LOGGER_CONTENT = TraceManager.getTrace(AutoAssignRoleCache.class.getName() + ".content");
+
+    private static final Collection<CacheInvalidationEventSpecification> EVENT_SPECIFICATIONS =
+            CacheInvalidationEventSpecification.setOf(AbstractRoleType.class);
+
+    private static final long DEFAULT_FULL_RELOAD_INTERVAL = 600_000L;
+
+    @Autowired private CacheRegistry cacheRegistry;
+    @Autowired private PrismContext prismContext;
+    @Autowired @Qualifier("cacheRepositoryService") private RepositoryService cacheRepositoryService;
+
+    /**
+     * Roles are re-read from the raw repository, as the repository cache could still have the previous version
+     * at the time we are asked to refresh them.
+     */
+    @Autowired @Qualifier("repositoryService") private RepositoryService repositoryService;
+
+    /** Immutable. Indexed (and sorted) by role OID. Null if not loaded yet. Modified only under the lock on `this`. */
+    private volatile SortedMap<String, AutoAssignRoleSpecification> specifications;
+
+    /** Roles that were changed since the last update of {@link #specifications}. */
+    @NotNull private final Set<String> staleOids = ConcurrentHashMap.newKeySet();
+
+    /** Should the index be reloaded as a whole? */
+    private volatile boolean fullReloadNeeded = true;
+
+    /** When the index was fully reloaded. */
+    private volatile long lastFullReload;
+
+    /** After this time (in milliseconds) the index is reloaded as a whole, even if no invalidation event came. */
+    private volatile long fullReloadInterval = DEFAULT_FULL_RELOAD_INTERVAL;
+
+    @PostConstruct
+    public void register() {
+        cacheRegistry.registerCache(this);
+    }
+
+    @PreDestroy
+    public void unregister() {
+        cacheRegistry.unregisterCache(this);
+    }
+
+    /** Returns (up-to-date) specifications of all auto-assignable roles. */
+    @NotNull Collection<AutoAssignRoleSpecification> getSpecifications(@NotNull OperationResult result)
+            throws SchemaException {
+        SortedMap<String, AutoAssignRoleSpecification> current = specifications;
+        if (current != null && !fullReloadNeeded && staleOids.isEmpty() && !isExpired()) {
+            return current.values();
+        }
+        synchronized (this) {
+            if (fullReloadNeeded || specifications == null || isExpired()) {
+                reloadAll(result);
+            } else if (!staleOids.isEmpty()) {
+                refreshStale(result);
+            }
+            return specifications.values();
+        }
+    }
+
+    private boolean isExpired() {
+        return System.currentTimeMillis() - lastFullReload > fullReloadInterval;
+    }
+
+    private void reloadAll(OperationResult result) throws SchemaException {
+        // Clearing the flags before reading, so that invalidations arriving during the search are not lost.
+        fullReloadNeeded = false;
+        staleOids.clear();
+        long started = System.currentTimeMillis();
+        try {
+            SortedMap<String, AutoAssignRoleSpecification> loaded = new TreeMap<>();
+            ObjectQuery query = prismContext
+                    .queryFor(AbstractRoleType.class)
+                    .item(SchemaConstants.PATH_AUTOASSIGN_ENABLED)
+                    .eq(true)
+                    .build();
+            cacheRepositoryService.searchObjectsIterative(AbstractRoleType.class, query,
+                    (role, objectResult) -> {
+                        AutoAssignRoleSpecification specification = createSpecification(role.asObjectable());
+                        if (specification != null) {
+                            loaded.put(role.getOid(), specification);
+                        }
+                        return true;
+                    }, createReadOnlyCollection(), true, result);
+            specifications = Collections.unmodifiableSortedMap(loaded);
+            lastFullReload = started;
+            LOGGER.debug("Loaded {} auto-assignable role(s)", loaded.size());
+        } catch (Throwable t) {
+            fullReloadNeeded = true;
+            throw t;
+        }
+    }
+
+    /**
+     * Re-reads the roles that were changed. The OIDs are removed from {@link #staleOids} before reading, so that
+     * an invalidation arriving during the read is not lost. If anything fails, the updated index is not published,
+     * so all the OIDs are returned back, to be refreshed next time.
+     */
+    private void refreshStale(OperationResult result) throws SchemaException {
+        SortedMap<String, AutoAssignRoleSpecification> updated = new TreeMap<>(specifications);
+        List<String> oids = new ArrayList<>(staleOids);
+        staleOids.removeAll(oids);
+        try {
+            for (String oid : oids) {
+                AutoAssignRoleSpecification specification;
+                try {
+                    AbstractRoleType role = repositoryService
+                            .getObject(AbstractRoleType.class, oid, createReadOnlyCollection(), result)
+                            .asObjectable();
+                    specification = createSpecification(role);
+                } catch (ObjectNotFoundException e) {
+                    result.muteLastSubresultError();
+                    specification = null;
+                }
+                if (specification != null) {
+                    updated.put(oid, specification);
+                } else {
+                    updated.remove(oid);
+                }
+                LOGGER.trace("Refreshed auto-assignable role {}: {}", oid, specification);
+            }
+        } catch (Throwable t) {
+            staleOids.addAll(oids);
+            throw t;
+        }
+        specifications = Collections.unmodifiableSortedMap(updated);
+    }
+
+    @VisibleForTesting
+    void setFullReloadInterval(long fullReloadInterval) {
+        this.fullReloadInterval = fullReloadInterval;
+    }
+
+    @VisibleForTesting
+    boolean isStale(@NotNull String oid) {
+        return staleOids.contains(oid);
+    }
+
+    /** Returns null if the role is not auto-assignable to focal objects. */
+    private @Nullable AutoAssignRoleSpecification createSpecification(@NotNull AbstractRoleType role) {
+        AutoassignSpecificationType autoassign = role.getAutoassign();
+        if (autoassign == null || !isTrue(autoassign.isEnabled())) {
+            return null;
+        }
+        FocalAutoassignSpecificationType focalAutoassignSpec = autoassign.getFocus();
+        if (focalAutoassignSpec == null) {
+            return null;
+        }
+        role.asPrismObject().freeze(); // the specification is shared among threads
+        List<AutoassignMappingType> mappings = new ArrayList<>();
+        for (AutoassignMappingType autoMapping : focalAutoassignSpec.getMapping()) {
+            AutoassignMappingType mapping =
+                    LensUtil.setMappingTarget(autoMapping, new ItemPathType(SchemaConstants.PATH_ASSIGNMENT));
+            mapping.asPrismContainerValue().freeze(); // the original mapping is immutable, but the target could be added
+            mappings.add(mapping);
+        }
+        ObjectSelectorType selector = focalAutoassignSpec.getSelector();
+        return new AutoAssignRoleSpecification(role, selector, getSelectorClass(selector, role), mappings);
+    }
+
+    private @Nullable Class<?> getSelectorClass(@Nullable ObjectSelectorType selector, @NotNull AbstractRoleType role) {
+        QName type = selector != null ? selector.getType() : null;
+        if (type == null) {
+            return null;
+        }
+        Class<?> clazz = prismContext.getSchemaRegistry().determineCompileTimeClass(type);
+        if (clazz == null) {
+            LOGGER.warn("Unknown type {} in auto-assignment selector in {}", type, role);
+        }
+        return clazz;
+    }
+
+    @Override
+    public Collection<CacheInvalidationEventSpecification> getEventSpecifications() {
+        return EVENT_SPECIFICATIONS;
+    }
+
+    @Override
+    public void invalidate(Class<?> type, String oid, CacheInvalidationContext context) {
+        if (type == null || oid == null) {
+            if (type == null || AbstractRoleType.class.isAssignableFrom(type)) {
+                fullReloadNeeded = true;
+            }
+        } else if (AbstractRoleType.class.isAssignableFrom(type)) {
+            staleOids.add(oid);
+        }
+    }
+
+    @Override
+    public @NotNull Collection<SingleCacheStateInformationType> getStateInformation() {
+        SortedMap<String, AutoAssignRoleSpecification> current = specifications;
+        return Collections.singleton(new SingleCacheStateInformationType()
+                .name(AutoAssignRoleCache.class.getName())
+                .size(current != null ? current.size() : 0));
+    }
+
+    @Override
+    public void dumpContent() {
+        SortedMap<String, AutoAssignRoleSpecification> current = specifications;
+        if (LOGGER_CONTENT.isInfoEnabled() && current != null) {
+            current.forEach((oid, spec) -> LOGGER_CONTENT.info("Cached auto-assignable role: {}: {}", oid, spec));
+        }
+    }
+
+    /** Auto-assignment specification of a single role, prepared for evaluation. Immutable. */
+    static class AutoAssignRoleSpecification {
+
+        @NotNull private final AbstractRoleType role;
+        @Nullable private final ObjectSelectorType selector;
+
+        /** Class the focus has to be of (derived from the selector type), to avoid calling the selector matching if it's not. */
+        @Nullable private final Class<?> selectorClass;
+
+        /** Mappings with the target set to `assignment`. */
+        @NotNull private final List<AutoassignMappingType> mappings;
+
+        private AutoAssignRoleSpecification(@NotNull AbstractRoleType role, @Nullable ObjectSelectorType selector,
+                @Nullable Class<?> selectorClass, @NotNull List<AutoassignMappingType> mappings) {
+            this.role = role;
+            this.selector = selector;
+            this.selectorClass = selectorClass;
+            this.mappings = Collections.unmodifiableList(mappings);
+        }
+
+        @NotNull AbstractRoleType getRole() {
+            return role;
+        }
+
+        @Nullable ObjectSelectorType getSelector() {
+            return selector;
+        }
+
+        /** Quick check: false means that the selector cannot match the object. */
+        boolean isTypeApplicable(@NotNull PrismObject<?> object) {
+            Class<?> objectClass = object.getCompileTimeClass();
+            return selectorClass == null || objectClass == null || selectorClass.isAssignableFrom(objectClass);
+        }
+
+        @NotNull List<AutoassignMappingType> getMappings() {
+            return mappings;
+        }
+
+        @Override
+        public String toString() {
+            return role + ": " + mappings.size() + " mapping(s)" + (selector != null ? " (with selector)" : "");
+        }
+    }
+}
@@ -6,11 +6,11 @@
  */
 package com.evolveum.midpoint.model.impl.lens.projector.focus;
 
-import java.util.Collection;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.jetbrains.annotations.NotNull;
+
 import com.evolveum.midpoint.model.impl.lens.LensContext;
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.PrismObject;
@@ -20,6 +20,8 @@ import com.evolveum.midpoint.prism.PrismValue;
 import com.evolveum.midpoint.prism.PrismValueCollectionsUtil;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
 import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.prism.polystring.PolyStringNormalizer;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.schema.cache.CacheConfigurationManager;
@@ -53,6 +55,9 @@ public class FocusConstraintsChecker<AH extends AssignmentHolderType> {
     private static final Trace LOGGER = TraceManager.getTrace(FocusConstraintsChecker.class);
     private static final Trace PERFORMANCE_ADVISOR = TraceManager.getPerformanceAdvisorTrace();
 
+    /** We need to know only whether there is zero, one, or more objects with the value. */
+    private static final int MAX_CONFLICTING_OIDS = 2;
+
     private LensContext<AH> context;
     private PrismContext prismContext;
     private RepositoryService repositoryService;
@@ -113,12 +118,13 @@ public class FocusConstraintsChecker<AH extends AssignmentHolderType> {
             } else {
                 // Hardcode to name ... for now
                 PolyStringType name = objectNew.asObjectable().getName();
-                if (Cache.isOk(name, cacheConfigurationManager)) {
+                Class<AH> type = objectNew.getCompileTimeClass();
+                if (Cache.isOk(type, name, cacheConfigurationManager)) {
                     satisfiesConstraints = true;
                 } else {
                     satisfiesConstraints = checkPropertyUniqueness(objectNew, ObjectType.F_NAME, context, result);
                     if (satisfiesConstraints) {
-                        Cache.setOk(name);
+                        Cache.setOk(type, name);
                     }
                 }
             }
@@ -158,6 +164,13 @@ public class FocusConstraintsChecker<AH extends AssignmentHolderType> {
                 .build();
         }
 
+        // First we ask only for OIDs. Full objects are needed only if there is a conflict.
+        List<String> foundOids = repositoryService.searchObjectOids(objectClass, query, MAX_CONFLICTING_OIDS, result);
+        LOGGER.trace("Uniqueness check of {}, property {} resulted in OIDs {}", objectNew, propPath, foundOids);
+        if (foundOids.isEmpty() || foundOids.size() == 1 && foundOids.get(0).equals(oid)) {
+            return true;
+        }
+
         List<PrismObject<AH>> foundObjects = repositoryService.searchObjects(objectClass, query, createReadOnlyCollection(), result);
         LOGGER.trace("Uniqueness check of {}, property {} resulted in {} results, using query:\n{}",
                 objectNew, propPath, foundObjects.size(), query.debugDumpLazily());
@@ -184,6 +197,108 @@ public class FocusConstraintsChecker<AH extends AssignmentHolderType> {
         return match;
     }
 
+    /**
+     * Batched variant of the name uniqueness check, to be used before objects are added in bulk (e.g. when importing):
+     * checks names of all the objects by a single repository query per object type. Names that are not used by any
+     * existing object are marked as conflict-free in the cache of the current thread, so the regular checks for them
+     * are skipped. Colliding names are left to the regular (per-object) checks.
+     *
+     * Names occurring more than once among the objects of the same type are not marked, as the objects may conflict
+     * with each other. The cache must be entered by the caller, otherwise nothing is marked.
+     */
+    public static void checkNamesInBatch(@NotNull Collection<? extends PrismObject<? extends ObjectType>> objects,
+            @NotNull RepositoryService repositoryService, @NotNull PrismContext prismContext,
+            @NotNull OperationResult parentResult) throws SchemaException {
+        if (Cache.getCache() == null) {
+            return;
+        }
+        OperationResult result = parentResult.subresult(FocusConstraintsChecker.class.getName() + ".checkNamesInBatch")
+                .setMinor()
+                .build();
+        try {
+            PolyStringNormalizer normalizer = prismContext.getDefaultPolyStringNormalizer();
+            Map<Class<? extends ObjectType>, Map<String, Integer>> occurrencesByType = new HashMap<>();
+            Map<Class<? extends ObjectType>, List<PolyString>> namesByType = new HashMap<>();
+            for (PrismObject<? extends ObjectType> object : objects) {
+                PolyString name = object.getName();
+                Class<? extends ObjectType> type = object.getCompileTimeClass();
+                if (name == null || name.getOrig() == null || type == null) {
+                    continue;
+                }
+                // The parsed names need not be normalized yet; the "norm" part of the query would match nothing then.
+                String orig = name.getOrig();
+                String norm = normalizer.normalize(orig);
+                occurrencesByType.computeIfAbsent(type, k -> new HashMap<>())
+                        .merge(norm, 1, Integer::sum);
+                namesByType.computeIfAbsent(type, k -> new ArrayList<>())
+                        .add(new PolyString(orig, norm));
+            }
+            int conflictFree = 0;
+            for (Map.Entry<Class<? extends ObjectType>, List<PolyString>> entry : namesByType.entrySet()) {
+                Class<? extends ObjectType> type = entry.getKey();
+                Map<String, Integer> occurrences = occurrencesByType.get(type);
+                for (PolyString name : getConflictFreeNames(type, entry.getValue(), repositoryService, prismContext, result)) {
+                    if (occurrences.get(name.getNorm()) == 1) {
+                        Cache.setOk(type, new PolyStringType(name));
+                        conflictFree++;
+                    }
+                }
+            }
+            LOGGER.trace("Batched uniqueness check of {} object(s) found {} conflict-free name(s)", objects.size(), conflictFree);
+        } catch (Throwable t) {
+            result.recordFatalError(t);
+            throw t;
+        } finally {
+            result.computeStatusIfUnknown();
+        }
+    }
+
+    /**
+     * Returns the names (with norms computed) that are not used by existing objects of given type. First we ask only for OIDs of objects
+     * having any of the names; full objects are fetched only if there are some, in order to find out the colliding names.
+     */
+    private static List<PolyString> getConflictFreeNames(Class<? extends ObjectType> type, List<PolyString> names,
+            RepositoryService repositoryService, PrismContext prismContext, OperationResult result) throws SchemaException {
+        ObjectQuery query = prismContext.queryFor(type)
+                    .item(ObjectType.F_NAME)
+                    .eq(names.toArray())
+                    .matchingOrig()
+                .or()
+                    .item(ObjectType.F_NAME)
+                    .eq(names.toArray())
+                    .matchingNorm()
+                .build();
+        int maxSize = names.size() + 1;
+        List<String> foundOids = repositoryService.searchObjectOids(type, query, maxSize, result);
+        LOGGER.trace("Batched uniqueness check of {} name(s) of {} resulted in {} OID(s)",
+                names.size(), type.getSimpleName(), foundOids.size());
+        if (foundOids.isEmpty()) {
+            return names;
+        } else if (foundOids.size() >= maxSize) {
+            return List.of(); // There may be more colliding objects than we know of.
+        }
+
+        Set<String> usedOrigs = new HashSet<>();
+        Set<String> usedNorms = new HashSet<>();
+        ObjectQuery oidQuery = prismContext.queryFor(type)
+                .id(foundOids.toArray(new String[0]))
+                .build();
+        for (PrismObject<? extends ObjectType> found : repositoryService.searchObjects(type, oidQuery, createReadOnlyCollection(), result)) {
+            PolyString foundName = found.getName();
+            if (foundName != null) {
+                usedOrigs.add(foundName.getOrig());
+                usedNorms.add(foundName.getNorm());
+            }
+        }
+        List<PolyString> conflictFree = new ArrayList<>();
+        for (PolyString name : names) {
+            if (!usedOrigs.contains(name.getOrig()) && !usedNorms.contains(name.getNorm())) {
+                conflictFree.add(name);
+            }
+        }
+        return conflictFree;
+    }
+
     private void message(String message) {
         if (messageBuilder.length() != 0) {
             messageBuilder.append(", ");
@@ -233,9 +348,10 @@ public class FocusConstraintsChecker<AH extends AssignmentHolderType> {
 
         private static final Trace LOGGER_CONTENT = TraceManager.getTrace(Cache.class.getName() + ".content");
 
-        private final Set<String> conflictFreeNames = ConcurrentHashMap.newKeySet();
+        /** Conflict-free names (origs), with the object types for which they are conflict-free. */
+        private final Map<String, Set<Class<?>>> conflictFreeNames = new ConcurrentHashMap<>();
 
-        static boolean isOk(PolyStringType name, CacheConfigurationManager cacheConfigurationManager) {
+        static boolean isOk(Class<?> type, PolyStringType name, CacheConfigurationManager cacheConfigurationManager) {
             if (name == null) {
                 log("Null name", false);
                 return false;            // strange case
@@ -256,23 +372,25 @@ public class FocusConstraintsChecker<AH extends AssignmentHolderType> {
                 return false;
             }
 
-            if (cache.conflictFreeNames.contains(name.getOrig())) {
-                log("Cache HIT for {}", false, name);
+            Set<Class<?>> types = cache.conflictFreeNames.get(name.getOrig());
+            if (types != null && types.contains(type)) {
+                log("Cache HIT for {} ({})", false, name, type);
                 cache.registerHit();
                 collector.registerHit(Cache.class, FocusType.class, statisticsLevel);
                 return true;
             } else {
-                log("Cache MISS for {}", traceMiss, name);
+                log("Cache MISS for {} ({})", traceMiss, name, type);
                 cache.registerMiss();
                 collector.registerMiss(Cache.class, FocusType.class, statisticsLevel);
                 return false;
             }
         }
 
-        public static void setOk(PolyStringType name) {
+        public static void setOk(Class<?> type, PolyStringType name) {
             Cache cache = getCache();
-            if (name != null && cache != null) {
-                cache.conflictFreeNames.add(name.getOrig());
+            if (type != null && name != null && cache != null) {
+                cache.conflictFreeNames.computeIfAbsent(name.getOrig(), k -> ConcurrentHashMap.newKeySet())
+                        .add(type);
             }
         }
 
@@ -280,6 +398,7 @@ public class FocusConstraintsChecker<AH extends AssignmentHolderType> {
             return cacheInstances.get(Thread.currentThread());
         }
 
+        /** Removes the name for all object types, as the callers need not know the type of the (potential) conflict. */
         public static void remove(PolyStringType name) {
             Cache cache = getCache();
             if (name != null && cache != null) {
@@ -301,7 +420,8 @@ public class FocusConstraintsChecker<AH extends AssignmentHolderType> {
         @Override
         protected void dumpContent(String threadName) {
             if (LOGGER_CONTENT.isInfoEnabled()) {
-                conflictFreeNames.forEach(name -> LOGGER_CONTENT.info("Cached conflict-free name [{}]: {}", threadName, name));
+                conflictFreeNames.forEach((name, types) ->
+                        LOGGER_CONTENT.info("Cached conflict-free name [{}]: {} for {}", threadName, name, types));
             }
         }
 
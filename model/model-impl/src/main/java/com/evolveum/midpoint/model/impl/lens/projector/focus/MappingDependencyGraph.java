@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.impl.lens.projector.focus;
+
+import java.util.*;
+import javax.xml.bind.JAXBElement;
+import javax.xml.namespace.QName;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.model.common.expression.script.groovy.GroovyScriptAnalyzer;
+import com.evolveum.midpoint.model.common.expression.script.groovy.GroovyScriptEvaluator;
+import com.evolveum.midpoint.model.impl.lens.projector.mappings.FocalMappingEvaluationRequest;
+import com.evolveum.midpoint.model.impl.lens.projector.mappings.TemplateMappingEvaluationRequest;
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.schema.SchemaConstantsGenerated;
+import com.evolveum.midpoint.schema.constants.ExpressionConstants;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Dependencies of object template mappings on focus items: which items each mapping reads (sources) and which item
+ * it writes (target). Used to evaluate only the mappings that can be affected by the focus delta,
+ * see {@link ObjectTemplateType#isIncrementalMappingEvaluation()}.
+ *
+ * A mapping can be left out only if its output is fully determined by its declared sources, i.e. if it has no
+ * time constraints, and its expression and condition use nothing else than the source values (as far as we can tell
+ * from static analysis). Other mappings are always evaluated.
+ *
+ * Immutable. Computed for template mappings only, in the order in which they are collected from the templates;
+ * cached by {@link MappingDependencyGraphCache}.
+ */
+class MappingDependencyGraph {
+
+    private static final Trace LOGGER = TraceManager.getTrace(MappingDependencyGraph.class);
+
+    /**
+     * Variables that scripts can use besides the mapping sources, without being dependent on anything else.
+     *
+     * Function libraries (even `basic`) are not here, as some of their functions depend on time or on the environment,
+     * e.g. `basic.currentDateTime()`.
+     */
+    private static final Set<String> ALWAYS_AVAILABLE_VARIABLES = Set.of(
+            ExpressionConstants.VAR_INPUT);
+
+    @NotNull private final List<Node> nodes;
+
+    private MappingDependencyGraph(@NotNull List<Node> nodes) {
+        this.nodes = nodes;
+    }
+
+    static @NotNull MappingDependencyGraph create(
+            @NotNull List<? extends FocalMappingEvaluationRequest<?, ?>> templateRequests, @NotNull PrismContext prismContext) {
+        List<Node> nodes = new ArrayList<>(templateRequests.size());
+        for (FocalMappingEvaluationRequest<?, ?> request : templateRequests) {
+            nodes.add(Node.create(request, prismContext));
+        }
+        LOGGER.trace("Created dependency graph for {} mapping(s), {} of them can be skipped",
+                nodes.size(), nodes.stream().filter(n -> n.skippable).count());
+        return new MappingDependencyGraph(Collections.unmodifiableList(nodes));
+    }
+
+    int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Selects the requests that can be affected by changes of given items: the mappings whose sources or target
+     * overlap with the changed items, or with targets of other selected mappings (transitively), plus the mappings
+     * that cannot be skipped. Requests beyond the graph (e.g. auto-assignment mappings) are always selected.
+     *
+     * The original order of the requests is kept.
+     */
+    <R extends FocalMappingEvaluationRequest<?, ?>> @NotNull List<R> selectAffected(
+            @NotNull List<R> requests, @NotNull Collection<ItemPath> changedItems, @NotNull PrismContext prismContext) {
+        int size = requests.size();
+        boolean[] selected = new boolean[size];
+        List<ItemPath> changed = new ArrayList<>(changedItems);
+        for (int i = 0; i < size; i++) {
+            Node node = i < nodes.size() ? nodes.get(i) : Node.create(requests.get(i), prismContext);
+            if (!node.skippable) {
+                selected[i] = true;
+                addIfNotNull(changed, node.target);
+            }
+        }
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (int i = 0; i < nodes.size() && i < size; i++) {
+                Node node = nodes.get(i);
+                if (!selected[i] && node.isAffectedBy(changed)) {
+                    selected[i] = true;
+                    addIfNotNull(changed, node.target);
+                    progress = true;
+                }
+            }
+        }
+        List<R> rv = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (selected[i]) {
+                rv.add(requests.get(i));
+            } else {
+                LOGGER.trace("Skipping mapping not affected by the changes: {}", requests.get(i).shortDumpLazily());
+            }
+        }
+        return rv;
+    }
+
+    private static void addIfNotNull(List<ItemPath> paths, ItemPath path) {
+        if (path != null) {
+            paths.add(path);
+        }
+    }
+
+    private static boolean overlaps(ItemPath path1, ItemPath path2) {
+        return path1.isSubPathOrEquivalent(path2) || path2.isSubPathOrEquivalent(path1);
+    }
+
+    /** Dependencies of a single mapping. */
+    private static class Node {
+
+        /** Can the mapping be left out if its sources and target are not changed? */
+        private final boolean skippable;
+
+        /** Sources (as focus item paths without container IDs). Empty if not skippable. */
+        @NotNull private final List<ItemPath> sources;
+
+        /** Target (as focus item path without container IDs). Null if none or unknown. */
+        @Nullable private final ItemPath target;
+
+        private Node(boolean skippable, @NotNull List<ItemPath> sources, @Nullable ItemPath target) {
+            this.skippable = skippable;
+            this.sources = sources;
+            this.target = target;
+        }
+
+        static Node create(@NotNull FocalMappingEvaluationRequest<?, ?> request, @NotNull PrismContext prismContext) {
+            VariableBindingDefinitionType targetBean = request.getTarget();
+            ItemPath target = getTargetPath(targetBean, prismContext);
+            if (!(request instanceof TemplateMappingEvaluationRequest)) {
+                return new Node(false, List.of(), target);
+            }
+            MappingType mapping = request.getMapping();
+            if (target == null
+                    || mapping.getTimeFrom() != null
+                    || mapping.getTimeTo() != null
+                    || targetBean.getSet() != null
+                    || targetBean.getPredefined() != null) {
+                return new Node(false, List.of(), target);
+            }
+            List<ItemPath> sources = new ArrayList<>();
+            Set<String> sourceNames = new HashSet<>(ALWAYS_AVAILABLE_VARIABLES);
+            for (VariableBindingDefinitionType source : request.getSources()) {
+                ItemPath sourcePath = source.getPath() != null ?
+                        FocalMappingSetEvaluation.stripFocusVariableSegment(prismContext.toPath(source.getPath())) : null;
+                if (sourcePath == null || sourcePath.isEmpty() || sourcePath.startsWithVariable()) {
+                    return new Node(false, List.of(), target);
+                }
+                sources.add(sourcePath.namedSegmentsOnly());
+                QName name = source.getName() != null ? source.getName() : sourcePath.lastName();
+                if (name != null) {
+                    sourceNames.add(name.getLocalPart());
+                }
+            }
+            if (sources.isEmpty()
+                    || !usesSourcesOnly(mapping.getExpression(), true, sourceNames)
+                    || !usesSourcesOnly(mapping.getCondition(), false, sourceNames)) {
+                return new Node(false, List.of(), target);
+            }
+            return new Node(true, Collections.unmodifiableList(sources), target);
+        }
+
+        private static @Nullable ItemPath getTargetPath(VariableBindingDefinitionType target, PrismContext prismContext) {
+            if (target == null || target.getPath() == null) {
+                return null;
+            }
+            ItemPath path = FocalMappingSetEvaluation.stripFocusVariableSegment(prismContext.toPath(target.getPath()));
+            return path.startsWithVariable() ? null : path.namedSegmentsOnly();
+        }
+
+        /** Null expression means "as is" (for mappings) or "always true" (for conditions). */
+        private static boolean usesSourcesOnly(ExpressionType expression, boolean nullAllowed, Set<String> sourceNames) {
+            if (expression == null) {
+                return nullAllowed;
+            }
+            if (!expression.getVariable().isEmpty() || expression.getRunAsRef() != null) {
+                return false;
+            }
+            for (JAXBElement<?> evaluator : expression.getExpressionEvaluator()) {
+                if (!usesSourcesOnly(evaluator, sourceNames)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean usesSourcesOnly(JAXBElement<?> evaluator, Set<String> sourceNames) {
+            QName name = evaluator.getName();
+            if (SchemaConstantsGenerated.C_AS_IS.equals(name)
+                    || SchemaConstantsGenerated.C_VALUE.equals(name)
+                    || SchemaConstantsGenerated.C_CONST.equals(name)) {
+                return true;
+            } else if (SchemaConstantsGenerated.C_SCRIPT.equals(name)
+                    && evaluator.getValue() instanceof ScriptExpressionEvaluatorType) {
+                ScriptExpressionEvaluatorType script = (ScriptExpressionEvaluatorType) evaluator.getValue();
+                if (script.getLanguage() != null && !GroovyScriptEvaluator.LANGUAGE_URL.equals(script.getLanguage())
+                        || script.getCode() == null) {
+                    return false;
+                }
+                Set<String> references = GroovyScriptAnalyzer.getExternalReferences(script.getCode());
+                LOGGER.trace("External references in mapping script: {}", references);
+                return references != null && sourceNames.containsAll(references);
+            } else {
+                return false;
+            }
+        }
+
+        boolean isAffectedBy(List<ItemPath> changedItems) {
+            for (ItemPath changed : changedItems) {
+                if (target != null && overlaps(target, changed)) {
+                    return true;
+                }
+                for (ItemPath source : sources) {
+                    if (overlaps(source, changed)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.impl.lens.projector.focus;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.CacheInvalidationContext;
+import com.evolveum.midpoint.repo.api.Cache;
+import com.evolveum.midpoint.repo.api.CacheInvalidationEventSpecification;
+import com.evolveum.midpoint.repo.api.CacheRegistry;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectTemplateType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SingleCacheStateInformationType;
+
+/**
+ * Node-wide cache of {@link MappingDependencyGraph} instances.
+ *
+ * The key is the list of "OID:version" of the template and all its included templates, in the order in which
+ * their mappings were collected. So a change of any of the templates leads to a different key; the invalidation
+ * is there only to get rid of the obsolete entries.
+ */
+@Component
+public class MappingDependencyGraphCache implements Cache {
+
+    private static final Trace LOGGER = TraceManager.getTrace(MappingDependencyGraphCache.class);
+    private static final Trace LOGGER_CONTENT = TraceManager.getTrace(MappingDependencyGraphCache.class.getName() + ".content");
+
+    private static final Collection<CacheInvalidationEventSpecification> EVENT_SPECIFICATIONS =
+            CacheInvalidationEventSpecification.setOf(ObjectTemplateType.class);
+
+    @Autowired private CacheRegistry cacheRegistry;
+
+    @NotNull private final Map<List<String>, MappingDependencyGraph> graphs = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void register() {
+        cacheRegistry.registerCache(this);
+    }
+
+    @PreDestroy
+    public void unregister() {
+        cacheRegistry.unregisterCache(this);
+    }
+
+    @Nullable MappingDependencyGraph get(@NotNull List<String> key) {
+        return graphs.get(key);
+    }
+
+    void put(@NotNull List<String> key, @NotNull MappingDependencyGraph graph) {
+        graphs.put(key, graph);
+    }
+
+    @Override
+    public Collection<CacheInvalidationEventSpecification> getEventSpecifications() {
+        return EVENT_SPECIFICATIONS;
+    }
+
+    @Override
+    public void invalidate(Class<?> type, String oid, CacheInvalidationContext context) {
+        if (type == null || oid == null) {
+            if (type == null || ObjectTemplateType.class.isAssignableFrom(type)) {
+                LOGGER.trace("Clearing the cache");
+                graphs.clear();
+            }
+        } else if (ObjectTemplateType.class.isAssignableFrom(type)) {
+            String prefix = oid + ":";
+            graphs.keySet().removeIf(
+                    key -> key.stream().anyMatch(templateKey -> templateKey.startsWith(prefix)));
+        }
+    }
+
+    @Override
+    public @NotNull Collection<SingleCacheStateInformationType> getStateInformation() {
+        return Collections.singleton(new SingleCacheStateInformationType()
+                .name(MappingDependencyGraphCache.class.getName())
+                .size(graphs.size()));
+    }
+
+    @Override
+    public void dumpContent() {
+        if (LOGGER_CONTENT.isInfoEnabled()) {
+            graphs.forEach((key, graph) ->
+                    LOGGER_CONTENT.info("Cached dependency graph: {}: {} mapping(s)", key, graph.size()));
+        }
+    }
+}
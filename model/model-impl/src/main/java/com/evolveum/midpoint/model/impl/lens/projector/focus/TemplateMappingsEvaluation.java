@@ -7,6 +7,8 @@
 
 package com.evolveum.midpoint.model.impl.lens.projector.focus;
 
+import static org.apache.commons.lang3.BooleanUtils.isTrue;
+
 import static com.evolveum.midpoint.model.impl.lens.LensUtil.setMappingTarget;
 import static com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectTemplateMappingEvaluationPhaseType.BEFORE_ASSIGNMENTS;
 
@@ -19,6 +21,7 @@ import javax.xml.datatype.XMLGregorianCalendar;
 
 import org.jetbrains.annotations.NotNull;
 
+import com.evolveum.midpoint.model.api.ModelExecuteOptions;
 import com.evolveum.midpoint.model.common.mapping.MappingEvaluationEnvironment;
 import com.evolveum.midpoint.model.common.util.ObjectTemplateIncludeProcessor;
 import com.evolveum.midpoint.model.impl.ModelBeans;
@@ -139,6 +142,11 @@ public class TemplateMappingsEvaluation<F extends AssignmentHolderType, T extend
      */
     private final Function<ItemPath, Boolean> itemDeltaExistsProvider;
 
+    /**
+     * Is this the standard (focus) template? Incremental evaluation of mappings is not applied to persona templates.
+     */
+    private final boolean standardTemplate;
+
     //region Intermediary data
     /**
      * Collected item definitions from the template and all included templates.
@@ -152,6 +160,17 @@ public class TemplateMappingsEvaluation<F extends AssignmentHolderType, T extend
      * - collected auto-assignment mappings
      */
     private final List<FocalMappingEvaluationRequest<?, ?>> mappings = new ArrayList<>();
+
+    /**
+     * Number of mappings collected from the template(s). These are at the beginning of {@link #mappings}.
+     */
+    private int templateMappingsCount;
+
+    /**
+     * "OID:version" of the template and all included templates, in the order of mappings collection.
+     * Used as a key for {@link MappingDependencyGraphCache}. Null if some of the templates has no OID or version.
+     */
+    private List<String> templateKeys = new ArrayList<>();
     //endregion
 
     //region Results of the evaluation
@@ -174,6 +193,7 @@ public class TemplateMappingsEvaluation<F extends AssignmentHolderType, T extend
             TargetObjectSpecification<T> targetSpecification, ObjectDelta<T> targetAPrioriDelta,
             Function<ItemPath, Boolean> itemDeltaExistsProvider,
             PrismObjectDefinition<T> targetDefinition,
+            boolean standardTemplate,
             String parentContextDesc, XMLGregorianCalendar now, Task task, OperationResult result) {
         this.beans = beans;
         this.context = context;
@@ -187,6 +207,7 @@ public class TemplateMappingsEvaluation<F extends AssignmentHolderType, T extend
         this.targetAPrioriDelta = targetAPrioriDelta;
         this.itemDeltaExistsProvider = itemDeltaExistsProvider;
         this.targetDefinition = targetDefinition;
+        this.standardTemplate = standardTemplate;
         this.env = new MappingEvaluationEnvironment(getContextDescription(parentContextDesc), now, task);
         this.result = result;
     }
@@ -208,6 +229,7 @@ public class TemplateMappingsEvaluation<F extends AssignmentHolderType, T extend
                 focusContext.getCurrentDelta(),
                 context::primaryFocusItemDeltaExists,
                 focusContext.getObjectDefinition(),
+                true,
                 "focus " + focusContext.getObjectAny(),
                 now,
                 task,
@@ -235,6 +257,7 @@ public class TemplateMappingsEvaluation<F extends AssignmentHolderType, T extend
                 targetAPrioriDelta,
                 itemPath -> targetAPrioriDelta != null && targetAPrioriDelta.findItemDelta(itemPath) != null,
                 targetObject.getDefinition(),
+                false,
                 contextDescription,
                 now,
                 task,
@@ -257,7 +280,7 @@ public class TemplateMappingsEvaluation<F extends AssignmentHolderType, T extend
 
         mappingSetEvaluation = new FocalMappingSetEvaluationBuilder<F, T>()
                 .context(context)
-                .evaluationRequests(mappings)
+                .evaluationRequests(selectMappingsToEvaluate())
                 .phase(phase)
                 .focusOdo(focusOdo)
                 .targetSpecification(targetSpecification)
@@ -270,6 +293,67 @@ public class TemplateMappingsEvaluation<F extends AssignmentHolderType, T extend
         mappingSetEvaluation.evaluateMappingsToTriples();
     }
 
+    /**
+     * Selects the mappings that are to be evaluated. Normally, all of them. But if incremental evaluation is enabled
+     * (and applicable), only the ones that can be affected by the focus delta are selected.
+     *
+     * See {@link ObjectTemplateType#isIncrementalMappingEvaluation()} and {@link MappingDependencyGraph}.
+     */
+    private List<FocalMappingEvaluationRequest<?, ?>> selectMappingsToEvaluate() {
+        if (!isIncrementalEvaluationApplicable()) {
+            return mappings;
+        }
+        List<FocalMappingEvaluationRequest<?, ?>> selected =
+                getDependencyGraph().selectAffected(mappings, getChangedItems(), beans.prismContext);
+        LOGGER.debug("Incremental mapping evaluation: {} of {} mapping(s) selected for evaluation in {}",
+                selected.size(), mappings.size(), env.contextDescription);
+        return selected;
+    }
+
+    private boolean isIncrementalEvaluationApplicable() {
+        if (!standardTemplate || template == null || !isTrue(template.isIncrementalMappingEvaluation())) {
+            return false;
+        }
+        if (context.isDoReconciliationForAllProjections()
+                || ModelExecuteOptions.isReconcile(context.getOptions())
+                || ModelExecuteOptions.isReconcileFocus(context.getOptions())) {
+            LOGGER.trace("Reconciliation requested, all mappings will be evaluated");
+            return false;
+        }
+        ObjectDelta<F> focusDelta = focusOdo.getObjectDelta();
+        if (focusDelta != null && !focusDelta.isModify()) {
+            LOGGER.trace("Focus is being added or deleted, all mappings will be evaluated");
+            return false;
+        }
+        return true;
+    }
+
+    private MappingDependencyGraph getDependencyGraph() {
+        List<FocalMappingEvaluationRequest<?, ?>> templateMappings = mappings.subList(0, templateMappingsCount);
+        if (templateKeys == null) {
+            return MappingDependencyGraph.create(templateMappings, beans.prismContext);
+        }
+        MappingDependencyGraph cached = beans.mappingDependencyGraphCache.get(templateKeys);
+        if (cached != null && cached.size() == templateMappingsCount) {
+            return cached;
+        }
+        MappingDependencyGraph graph = MappingDependencyGraph.create(templateMappings, beans.prismContext);
+        beans.mappingDependencyGraphCache.put(List.copyOf(templateKeys), graph);
+        return graph;
+    }
+
+    private Collection<ItemPath> getChangedItems() {
+        ObjectDelta<F> focusDelta = focusOdo.getObjectDelta();
+        List<ItemPath> changedItems = new ArrayList<>();
+        if (focusDelta != null) {
+            for (ItemDelta<?, ?> modification : focusDelta.getModifications()) {
+                changedItems.add(modification.getPath().namedSegmentsOnly());
+            }
+        }
+        LOGGER.trace("Changed focus items: {}", changedItems);
+        return changedItems;
+    }
+
     private void consolidateToItemDeltas() throws ExpressionEvaluationException, SchemaException,
             ObjectNotFoundException, SecurityViolationException, CommunicationException, ConfigurationException {
         PathKeyedMap<DeltaSetTriple<ItemValueWithOrigin<?, ?>>> outputTripleMap = mappingSetEvaluation.getOutputTripleMap();
@@ -298,6 +382,7 @@ public class TemplateMappingsEvaluation<F extends AssignmentHolderType, T extend
             ConfigurationException, SecurityViolationException, ExpressionEvaluationException {
         collectItemDefinitionsFromTemplate();
         collectMappingsFromTemplate();
+        templateMappingsCount = mappings.size();
         beans.autoAssignMappingCollector.collectAutoassignMappings(context, mappings, result);
     }
 
@@ -334,6 +419,13 @@ public class TemplateMappingsEvaluation<F extends AssignmentHolderType, T extend
     }
 
     private void collectLocalMappings(ObjectTemplateType objectTemplate) throws ConfigurationException {
+        if (templateKeys != null) {
+            if (objectTemplate.getOid() != null && objectTemplate.getVersion() != null) {
+                templateKeys.add(objectTemplate.getOid() + ":" + objectTemplate.getVersion());
+            } else {
+                templateKeys = null; // we cannot reliably identify the template
+            }
+        }
         for (ObjectTemplateMappingType mapping: objectTemplate.getMapping()) {
             mappings.add(
                     new TemplateMappingEvaluationRequest(mapping, objectTemplate));
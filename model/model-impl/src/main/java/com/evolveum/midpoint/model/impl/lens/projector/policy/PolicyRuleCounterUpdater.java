@@ -23,6 +23,8 @@ import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.AssignmentHolderType;
 
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ExecutionModeType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.PolicyThresholdType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.WaterMarkType;
 
 import org.springframework.stereotype.Component;
 
@@ -97,12 +99,25 @@ public class PolicyRuleCounterUpdater implements ProjectorProcessor {
                 executionSupport.getActivityExecutionMode() == ExecutionModeType.FULL ?
                         FULL_EXECUTION_MODE_POLICY_RULES : PREVIEW_MODE_POLICY_RULES;
 
+        Map<String, Integer> countersThresholds = new HashMap<>();
+        rulesByIdentifier.forEach((id, rule) -> countersThresholds.put(id, getThresholdCount(rule)));
+
         Map<String, Integer> currentValues =
-                executionSupport.incrementCounters(group, rulesByIdentifier.keySet(), result);
+                executionSupport.incrementCounters(group, countersThresholds, result);
 
         currentValues.forEach((id, value) -> {
             rulesByIdentifier.get(id).setCount(value);
             focusContext.setPolicyRuleCounter(id, value);
         });
     }
+
+    /**
+     * Returns the counter value at which the rule threshold is reached, or null if it cannot be determined.
+     * Must be kept in sync with {@link PolicyRuleSuspendTaskExecutor}.
+     */
+    private Integer getThresholdCount(EvaluatedPolicyRule rule) {
+        PolicyThresholdType threshold = rule.getPolicyThreshold();
+        WaterMarkType lowWaterMark = threshold != null ? threshold.getLowWaterMark() : null;
+        return lowWaterMark != null ? lowWaterMark.getCount() : null;
+    }
 }
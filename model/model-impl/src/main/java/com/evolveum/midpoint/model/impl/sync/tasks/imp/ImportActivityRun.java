@@ -95,6 +95,11 @@ public final class ImportActivityRun
         return processingScope.createItemDefinitionProvider();
     }
 
+    @Override
+    public ResourceSearchPartitioningType getSearchPartitioning() {
+        return getWorkDefinition().getResourceObjectSetSpecification().getSearchPartitioning();
+    }
+
     @Override
     public boolean processItem(@NotNull ShadowType object,
             @NotNull ItemProcessingRequest<ShadowType> request, RunningTask workerTask, OperationResult result)
@@ -26,6 +26,7 @@ import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.task.api.RunningTask;
 import com.evolveum.midpoint.util.exception.CommonException;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.FetchErrorReportingMethodType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceSearchPartitioningType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
 
 /**
@@ -82,6 +83,11 @@ public final class ResourceObjectsReconciliationActivityRun
         return processingScope.createItemDefinitionProvider();
     }
 
+    @Override
+    public ResourceSearchPartitioningType getSearchPartitioning() {
+        return getWorkDefinition().getResourceObjectSetSpecification().getSearchPartitioning();
+    }
+
     @Override
     public boolean processItem(@NotNull ShadowType object,
             @NotNull ItemProcessingRequest<ShadowType> request, RunningTask workerTask, OperationResult result)
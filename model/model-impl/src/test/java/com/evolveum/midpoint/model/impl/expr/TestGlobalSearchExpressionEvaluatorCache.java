@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.expr;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.model.common.expression.evaluator.caching.GlobalSearchExpressionEvaluatorCache;
+import com.evolveum.midpoint.model.common.expression.evaluator.caching.GlobalSearchQueryKey;
+import com.evolveum.midpoint.model.impl.AbstractInternalModelIntegrationTest;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.schema.cache.CacheConfigurationManager;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Tests the hits, invalidation, and the protection against storing outdated results
+ * in {@link GlobalSearchExpressionEvaluatorCache}.
+ */
+@ContextConfiguration(locations = { "classpath:ctx-model-test-main.xml" })
+@DirtiesContext(classMode = ClassMode.AFTER_CLASS)
+public class TestGlobalSearchExpressionEvaluatorCache extends AbstractInternalModelIntegrationTest {
+
+    private static final String ROLE_ONE_OID = "0a3f8e5c-7b1d-4e2a-9c6f-1d2e3f4a5b01";
+    private static final String ROLE_TWO_OID = "0a3f8e5c-7b1d-4e2a-9c6f-1d2e3f4a5b02";
+    private static final String ROLE_ONE_NAME = "cached-one";
+
+    @Autowired private GlobalSearchExpressionEvaluatorCache globalCache;
+    @Autowired private CacheConfigurationManager cacheConfigurationManager;
+
+    @Override
+    public void initSystem(Task initTask, OperationResult initResult) throws Exception {
+        super.initSystem(initTask, initResult);
+
+        cacheConfigurationManager.applyCachingConfiguration(
+                new SystemConfigurationType()
+                        .internals(new InternalsConfigurationType()
+                                .caching(new CachingConfigurationType()
+                                        .profile(new CachingProfileType()
+                                                .global(true)
+                                                .globalSearchExpressionEvaluatorCache(new CacheSettingsType()
+                                                        .maxSize(100)
+                                                        .objectTypeSettings(new CacheObjectTypeSettingsType()
+                                                                .objectType(RoleType.COMPLEX_TYPE)
+                                                                .timeToLive(600)))))));
+
+        repositoryService.addObject(
+                new RoleType().oid(ROLE_ONE_OID).name(ROLE_ONE_NAME).asPrismObject(), null, initResult);
+    }
+
+    /** A stored result is returned for an equivalent query. */
+    @Test
+    public void test100PutAndGet() throws Exception {
+        given();
+        GlobalSearchQueryKey key = createKey();
+        long stamp = globalCache.getStamp(key);
+
+        when();
+        globalCache.put(key, createQuery(), List.of(ROLE_ONE_OID), stamp);
+
+        then();
+        assertThat(globalCache.get(createKey())).as("cached OIDs").containsExactly(ROLE_ONE_OID);
+    }
+
+    /** Changes of unrelated objects (other types, or roles not matching the filter) keep the entry. */
+    @Test
+    public void test110UnrelatedChanges() throws Exception {
+        given();
+        OperationResult result = getTestOperationResult();
+
+        when();
+        repositoryService.modifyObject(UserType.class, USER_JACK_OID,
+                deltaFor(UserType.class)
+                        .item(UserType.F_DESCRIPTION).replace("changed")
+                        .asItemDeltas(),
+                result);
+        repositoryService.addObject(
+                new RoleType().oid(ROLE_TWO_OID).name("not-cached").asPrismObject(), null, result);
+
+        then();
+        assertThat(globalCache.get(createKey())).as("cached OIDs").containsExactly(ROLE_ONE_OID);
+    }
+
+    /** A change of a role in the result removes the entry. */
+    @Test
+    public void test120CachedRoleChanged() throws Exception {
+        given();
+        OperationResult result = getTestOperationResult();
+
+        when();
+        repositoryService.modifyObject(RoleType.class, ROLE_ONE_OID,
+                deltaFor(RoleType.class)
+                        .item(RoleType.F_DESCRIPTION).replace("changed")
+                        .asItemDeltas(),
+                result);
+
+        then();
+        assertThat(globalCache.get(createKey())).as("cached OIDs").isNull();
+    }
+
+    /** A result computed before a related invalidation is not stored. */
+    @Test
+    public void test130InvalidationDuringSearch() throws Exception {
+        given();
+        GlobalSearchQueryKey key = createKey();
+        long stamp = globalCache.getStamp(key);
+
+        when();
+        globalCache.invalidate(AbstractRoleType.class, ROLE_TWO_OID, null);
+        globalCache.put(key, createQuery(), List.of(ROLE_ONE_OID), stamp);
+
+        then();
+        assertThat(globalCache.get(key)).as("cached OIDs").isNull();
+    }
+
+    /** An invalidation of an unrelated type does not prevent storing the result. */
+    @Test
+    public void test140UnrelatedInvalidationDuringSearch() throws Exception {
+        given();
+        GlobalSearchQueryKey key = createKey();
+        long stamp = globalCache.getStamp(key);
+
+        when();
+        globalCache.invalidate(UserType.class, USER_JACK_OID, null);
+        globalCache.put(key, createQuery(), List.of(ROLE_ONE_OID), stamp);
+
+        then();
+        assertThat(globalCache.get(key)).as("cached OIDs").containsExactly(ROLE_ONE_OID);
+    }
+
+    /** Invalidation without the type clears everything. */
+    @Test
+    public void test150FullInvalidation() throws Exception {
+        given();
+        GlobalSearchQueryKey key = createKey();
+        assertThat(globalCache.get(key)).as("cached OIDs before").isNotNull();
+
+        when();
+        globalCache.invalidate(null, null, null);
+
+        then();
+        assertThat(globalCache.get(key)).as("cached OIDs after").isNull();
+        assertThat(globalCache.getStateInformation())
+                .singleElement()
+                .extracting(SingleCacheStateInformationType::getSize)
+                .isEqualTo(0);
+    }
+
+    private GlobalSearchQueryKey createKey() {
+        GlobalSearchQueryKey key = globalCache.createKey(
+                getClass(), RoleType.class, createQuery(), ObjectSearchStrategyType.IN_REPOSITORY);
+        assertThat(key).as("key").isNotNull();
+        return key;
+    }
+
+    private ObjectQuery createQuery() {
+        return prismContext.queryFor(RoleType.class)
+                .item(RoleType.F_NAME).eqPoly(ROLE_ONE_NAME)
+                .build();
+    }
+}
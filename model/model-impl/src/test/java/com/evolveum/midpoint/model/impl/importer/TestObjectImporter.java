@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.importer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.model.impl.AbstractInternalModelIntegrationTest;
+import com.evolveum.midpoint.model.impl.lens.projector.focus.FocusConstraintsChecker;
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.schema.result.OperationConstants;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ImportOptionsType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ModelExecuteOptionsType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+
+/**
+ * Tests the batched import of non-XML data by {@link ObjectImporter}: the names are checked in batches
+ * of the configured size, the objects are imported in their original order, and the import stops after
+ * the configured number of errors.
+ */
+@ContextConfiguration(locations = { "classpath:ctx-model-test-main.xml" })
+@DirtiesContext(classMode = ClassMode.AFTER_CLASS)
+public class TestObjectImporter extends AbstractInternalModelIntegrationTest {
+
+    private static final String OPERATION_CHECK_NAMES_IN_BATCH =
+            FocusConstraintsChecker.class.getName() + ".checkNamesInBatch";
+
+    private static final String EXISTING_USER_NAME = "import-existing";
+
+    @Override
+    public void initSystem(Task initTask, OperationResult initResult) throws Exception {
+        super.initSystem(initTask, initResult);
+        repositoryService.addObject(new UserType().name(EXISTING_USER_NAME).asPrismObject(), null, initResult);
+    }
+
+    /** Five users in batches of two: there are three batched checks, and all the users are imported. */
+    @Test
+    public void test100ImportInBatches() throws Exception {
+        given();
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+        List<PrismObject<?>> users = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            users.add(new UserType().name("import-100-" + i).asPrismObject());
+        }
+
+        when();
+        modelService.importObjectsFromStream(
+                toJson(users), PrismContext.LANG_JSON, createOptions(2, null), task, result);
+
+        then();
+        assertSuccess(result);
+        assertThat(result.findSubresultsDeeply(OPERATION_CHECK_NAMES_IN_BATCH)).as("batched checks").hasSize(3);
+        for (int i = 0; i < 5; i++) {
+            assertThat(findUserByUsername("import-100-" + i)).as("user " + i).isNotNull();
+        }
+    }
+
+    /**
+     * Two versions of the same user (the same OID) in a single batch: the later one wins,
+     * so the objects are imported in their original order.
+     */
+    @Test
+    public void test110ImportOrder() throws Exception {
+        given();
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+        String oid = "0e8d2a54-6b1c-4f3e-9a7d-5c2b1e0f4a31";
+        List<PrismObject<?>> users = List.of(
+                new UserType().oid(oid).name("import-110-first").asPrismObject(),
+                new UserType().oid(oid).name("import-110-second").asPrismObject());
+        ImportOptionsType options = createOptions(10, null)
+                .overwrite(true);
+
+        when();
+        modelService.importObjectsFromStream(toJson(users), PrismContext.LANG_JSON, options, task, result);
+
+        then();
+        assertSuccess(result);
+        assertThat(result.findSubresultsDeeply(OPERATION_CHECK_NAMES_IN_BATCH)).as("batched checks").hasSize(1);
+        assertThat(getUser(oid).getName().getOrig()).as("name of imported user").isEqualTo("import-110-second");
+    }
+
+    /**
+     * The second user collides with the existing one (it is not marked as conflict-free by the batched check,
+     * so the regular check finds the conflict). With `stopAfterErrors` of 1, the rest of the batch is not imported.
+     */
+    @Test
+    public void test120StopAfterErrors() throws Exception {
+        given();
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+        List<PrismObject<?>> users = List.of(
+                new UserType().name("import-120-a").asPrismObject(),
+                new UserType().name(EXISTING_USER_NAME.toUpperCase()).asPrismObject(),
+                new UserType().name("import-120-b").asPrismObject());
+
+        when();
+        modelService.importObjectsFromStream(
+                toJson(users), PrismContext.LANG_JSON, createOptions(10, 1), task, result);
+
+        then();
+        assertThat(result.isAcceptable()).as("result acceptable").isFalse();
+        assertThat(result.findSubresultsDeeply(OperationConstants.IMPORT_OBJECT)).as("imported objects").hasSize(2);
+        assertThat(findUserByUsername("import-120-a")).as("first user").isNotNull();
+        assertThat(findUserByUsername("import-120-b")).as("third user").isNull();
+    }
+
+    /** Batch size of 1 turns the batching off. */
+    @Test
+    public void test130NoBatching() throws Exception {
+        given();
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+        List<PrismObject<?>> users = List.of(
+                new UserType().name("import-130-a").asPrismObject(),
+                new UserType().name("import-130-b").asPrismObject());
+
+        when();
+        modelService.importObjectsFromStream(
+                toJson(users), PrismContext.LANG_JSON, createOptions(1, null), task, result);
+
+        then();
+        assertSuccess(result);
+        assertThat(result.findSubresultsDeeply(OPERATION_CHECK_NAMES_IN_BATCH)).as("batched checks").isEmpty();
+        assertThat(findUserByUsername("import-130-b")).as("second user").isNotNull();
+    }
+
+    /** Non-raw import, so the objects go through the clockwork (and its uniqueness check). */
+    private ImportOptionsType createOptions(int batchSize, Integer stopAfterErrors) {
+        return new ImportOptionsType()
+                .modelExecutionOptions(new ModelExecuteOptionsType().raw(false))
+                .batchSize(batchSize)
+                .stopAfterErrors(stopAfterErrors);
+    }
+
+    private InputStream toJson(List<PrismObject<?>> objects) throws Exception {
+        String serialized = prismContext.jsonSerializer().serializeObjects(objects);
+        return new ByteArrayInputStream(serialized.getBytes(StandardCharsets.UTF_8));
+    }
+}
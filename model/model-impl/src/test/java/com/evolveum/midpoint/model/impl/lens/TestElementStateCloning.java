@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.lens;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.model.impl.AbstractInternalModelIntegrationTest;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+
+/**
+ * Tests the cloning of {@link ElementState} (via {@link LensContext#clone()}): the frozen old object is shared
+ * by the clones, while the mutable current object is copied.
+ */
+@ContextConfiguration(locations = { "classpath:ctx-model-test-main.xml" })
+@DirtiesContext(classMode = ClassMode.AFTER_CLASS)
+public class TestElementStateCloning extends AbstractInternalModelIntegrationTest {
+
+    private static final String USER_OID = "5c1e9a7d-3b2f-4d6e-8a0c-9f4b2e7d1a63";
+
+    /** The old object set by the context loader is frozen and not copied when the context is cloned. */
+    @Test
+    public void test100OldObjectShared() {
+        given();
+        LensContext<UserType> context = createUserLensContext();
+        LensFocusContext<UserType> focusContext = fillContextWithFocus(context, createUser());
+        PrismObject<UserType> oldObject = focusContext.getObjectOld();
+        assertThat(oldObject).as("old object").isNotNull();
+        assertThat(oldObject.isImmutable()).as("old object frozen").isTrue();
+
+        when();
+        LensContext<UserType> clone = context.clone();
+
+        then();
+        LensFocusContext<UserType> cloneFocusContext = clone.getFocusContext();
+        assertThat(cloneFocusContext.getObjectOld()).as("old object in clone").isSameAs(oldObject);
+        assertThat(cloneFocusContext.getObjectCurrent()).as("current object in clone")
+                .isNotSameAs(focusContext.getObjectCurrent())
+                .isEqualTo(focusContext.getObjectCurrent());
+    }
+
+    /** The objects handed out for modification are not the shared ones; the original context is not affected. */
+    @Test
+    public void test110ModificationDoesNotAffectOriginal() {
+        given();
+        LensContext<UserType> context = createUserLensContext();
+        LensFocusContext<UserType> focusContext = fillContextWithFocus(context, createUser());
+        PrismObject<UserType> oldObject = focusContext.getObjectOld();
+        LensContext<UserType> clone = context.clone();
+
+        when();
+        clone.getFocusContext().forEachObject(object -> object.asObjectable().setDescription("modified"));
+
+        then();
+        PrismObject<UserType> cloneOldObject = clone.getFocusContext().getObjectOld();
+        assertThat(cloneOldObject).as("old object in clone").isNotSameAs(oldObject);
+        assertThat(cloneOldObject.asObjectable().getDescription()).as("description in clone").isEqualTo("modified");
+        assertThat(focusContext.getObjectOld()).as("old object in original").isSameAs(oldObject);
+        assertThat(oldObject.asObjectable().getDescription()).as("description in original").isNull();
+        assertThat(focusContext.getObjectCurrent().asObjectable().getDescription())
+                .as("current description in original").isNull();
+    }
+
+    private PrismObject<UserType> createUser() {
+        return new UserType()
+                .oid(USER_OID)
+                .name("cloning")
+                .asPrismObject();
+    }
+}
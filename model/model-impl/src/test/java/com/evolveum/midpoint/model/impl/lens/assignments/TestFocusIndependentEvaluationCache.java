@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.lens.assignments;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.model.impl.AbstractInternalModelIntegrationTest;
+import com.evolveum.midpoint.model.impl.lens.assignments.FocusIndependentEvaluationCache.Key;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.query.ObjectFilter;
+import com.evolveum.midpoint.repo.api.CacheInvalidationEventSpecification;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Tests the recording and invalidation of {@link FocusIndependentEvaluationCache} entries.
+ * The keys are created directly, so the role evaluation itself is not involved.
+ */
+@ContextConfiguration(locations = { "classpath:ctx-model-test-main.xml" })
+@DirtiesContext(classMode = ClassMode.AFTER_CLASS)
+public class TestFocusIndependentEvaluationCache extends AbstractInternalModelIntegrationTest {
+
+    private static final String ROLE_1_OID = "3e0c7a52-1c1d-4f5a-9a3b-6f3c1b2a0001";
+    private static final String ROLE_2_OID = "3e0c7a52-1c1d-4f5a-9a3b-6f3c1b2a0002";
+    private static final String TARGET_OID = "3e0c7a52-1c1d-4f5a-9a3b-6f3c1b2a0003";
+
+    @Autowired private FocusIndependentEvaluationCache cache;
+
+    /** The cache must not listen to changes of other objects than (abstract) roles. */
+    @Test
+    public void test100EventSpecifications() {
+        assertThat(cache.getEventSpecifications())
+                .extracting(CacheInvalidationEventSpecification::getObjectType)
+                .containsExactly(AbstractRoleType.class);
+    }
+
+    /** Only conditions that refer to nothing outside themselves are cached. */
+    @Test
+    public void test110ConditionStates() {
+        Key independent = new Key(ROLE_1_OID, "1", "condition");
+        Key dependent = new Key(ROLE_1_OID, "1", "inducement[1]/condition");
+
+        when();
+        cache.recordConditionState(independent, createCondition("1 + 1 == 2"), ConditionState.allTrue());
+        cache.recordConditionState(dependent, createCondition("focus.name != null"), ConditionState.allTrue());
+
+        then();
+        assertThat(cache.getConditionState(independent)).as("independent condition state").isNotNull();
+        assertThat(cache.getConditionState(dependent)).as("dependent condition state").isNull();
+    }
+
+    /** Changes of other roles or other object types keep the entries; a change of the holder removes them. */
+    @Test
+    public void test120ConditionInvalidation() {
+        Key key1 = new Key(ROLE_1_OID, "1", "condition");
+        Key key2 = new Key(ROLE_2_OID, "5", "condition");
+        cache.recordConditionState(key1, createCondition("true"), ConditionState.allTrue());
+        cache.recordConditionState(key2, createCondition("true"), ConditionState.allTrue());
+
+        when("unrelated changes");
+        cache.invalidate(UserType.class, ROLE_1_OID, null);
+        cache.invalidate(RoleType.class, TARGET_OID, null);
+
+        then("unrelated changes");
+        assertThat(cache.getConditionState(key1)).as("state in role 1").isNotNull();
+        assertThat(cache.getConditionState(key2)).as("state in role 2").isNotNull();
+
+        when("role 1 change");
+        cache.invalidate(RoleType.class, ROLE_1_OID, null);
+
+        then("role 1 change");
+        assertThat(cache.getConditionState(key1)).as("state in role 1").isNull();
+        assertThat(cache.getConditionState(key2)).as("state in role 2").isNotNull();
+
+        when("everything invalidated");
+        cache.invalidate(null, null, null);
+
+        then("everything invalidated");
+        assertThat(cache.getConditionState(key2)).as("state in role 2").isNull();
+    }
+
+    /** Filter targets are invalidated by the changes of objects of related types only. */
+    @Test
+    public void test130TargetsInvalidation() throws Exception {
+        Key key = new Key(ROLE_1_OID, "1", "inducement[1]/targetRef");
+        ObjectReferenceType targetRef = createFilterRef(RoleType.class);
+
+        cache.recordTargets(key, targetRef, createTargets(), cache.getInvalidationStamp(targetRef));
+        assertThat(cache.getTargets(key)).as("cached targets").hasSize(1);
+
+        when("unrelated change");
+        cache.invalidate(OrgType.class, TARGET_OID, null);
+
+        then("unrelated change");
+        assertThat(cache.getTargets(key)).as("targets after org change").hasSize(1);
+
+        when("related change");
+        cache.invalidate(AbstractRoleType.class, TARGET_OID, null);
+
+        then("related change");
+        assertThat(cache.getTargets(key)).as("targets after role change").isNull();
+    }
+
+    /** Targets resolved before an invalidation of their type must not be cached. */
+    @Test
+    public void test140TargetsResolvedBeforeInvalidation() throws Exception {
+        Key key = new Key(ROLE_1_OID, "2", "inducement[1]/targetRef");
+        ObjectReferenceType targetRef = createFilterRef(RoleType.class);
+
+        when();
+        long stamp = cache.getInvalidationStamp(targetRef);
+        cache.invalidate(RoleType.class, TARGET_OID, null); // as if it came during the resolution
+        cache.recordTargets(key, targetRef, createTargets(), stamp);
+
+        then();
+        assertThat(cache.getTargets(key)).as("cached targets").isNull();
+    }
+
+    /** Targets of other types than abstract roles are not cached, as we do not listen to their changes. */
+    @Test
+    public void test150NonRoleTargets() throws Exception {
+        Key key = new Key(ROLE_1_OID, "3", "assignment[1]/targetRef");
+        ObjectReferenceType targetRef = createFilterRef(UserType.class);
+
+        when();
+        cache.recordTargets(key, targetRef, List.of(), cache.getInvalidationStamp(targetRef));
+
+        then();
+        assertThat(cache.getTargets(key)).as("cached targets").isNull();
+    }
+
+    /** Filter targets expire, as changes of the roles on other nodes may not be propagated here. */
+    @Test
+    public void test160TargetsExpiration() throws Exception {
+        given();
+        AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+        cache.setClock(clock::get);
+        Key key = new Key(ROLE_1_OID, "4", "inducement[1]/targetRef");
+        ObjectReferenceType targetRef = createFilterRef(RoleType.class);
+        Key conditionKey = new Key(ROLE_1_OID, "4", "condition");
+
+        try {
+            when();
+            cache.recordTargets(key, targetRef, createTargets(), cache.getInvalidationStamp(targetRef));
+            cache.recordConditionState(conditionKey, createCondition("true"), ConditionState.allTrue());
+
+            then("targets are cached for a minute");
+            clock.addAndGet(59_000L);
+            assertThat(cache.getTargets(key)).as("cached targets").hasSize(1);
+
+            clock.addAndGet(1_000L);
+            assertThat(cache.getTargets(key)).as("expired targets").isNull();
+            assertThat(cache.getConditionState(conditionKey)).as("condition state").isNotNull();
+        } finally {
+            cache.setClock(System::currentTimeMillis);
+        }
+    }
+
+    private MappingType createCondition(String code) {
+        return new MappingType()
+                .expression(new ExpressionType()
+                        .expressionEvaluator(new ObjectFactory().createScript(new ScriptExpressionEvaluatorType()
+                                .code(code))));
+    }
+
+    private ObjectReferenceType createFilterRef(Class<? extends ObjectType> type) throws Exception {
+        ObjectFilter filter = prismContext.queryFor(type)
+                .item(ObjectType.F_NAME).eqPoly("target")
+                .buildFilter();
+        return new ObjectReferenceType()
+                .type(prismContext.getSchemaRegistry().determineTypeForClass(type))
+                .filter(prismContext.getQueryConverter().createSearchFilterType(filter));
+    }
+
+    private List<PrismObject<? extends ObjectType>> createTargets() {
+        PrismObject<RoleType> target = new RoleType()
+                .oid(TARGET_OID)
+                .name("target")
+                .asPrismObject();
+        target.freeze();
+        return List.of(target);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.lens.projector.focus;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.model.impl.AbstractInternalModelIntegrationTest;
+import com.evolveum.midpoint.model.impl.lens.projector.focus.AutoAssignRoleCache.AutoAssignRoleSpecification;
+import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Tests the loading, invalidation and refreshing of {@link AutoAssignRoleCache}.
+ */
+@ContextConfiguration(locations = { "classpath:ctx-model-test-main.xml" })
+@DirtiesContext(classMode = ClassMode.AFTER_CLASS)
+public class TestAutoAssignRoleCache extends AbstractInternalModelIntegrationTest {
+
+    private static final String ROLE_AUTO_OID = "6c0d41e2-4b0a-4cd4-8d4b-8b1e7f0a3e01";
+    private static final String ROLE_OTHER_OID = "6c0d41e2-4b0a-4cd4-8d4b-8b1e7f0a3e02";
+
+    @Autowired private AutoAssignRoleCache autoAssignRoleCache;
+
+    /** The auto-assignable role is in the index (loaded as a whole), the other one is not. */
+    @Test
+    public void test100InitialLoad() throws Exception {
+        given();
+        OperationResult result = getTestOperationResult();
+        repositoryService.addObject(createRole(ROLE_AUTO_OID, "auto", true).asPrismObject(), null, result);
+        repositoryService.addObject(createRole(ROLE_OTHER_OID, "other", false).asPrismObject(), null, result);
+
+        when();
+        List<String> oids = getCachedOids(result);
+
+        then();
+        assertThat(oids).contains(ROLE_AUTO_OID).doesNotContain(ROLE_OTHER_OID);
+    }
+
+    /** Changes done via the repository cache are propagated by invalidation events, for the changed roles only. */
+    @Test
+    public void test110ChangeViaInvalidationEvent() throws Exception {
+        given();
+        OperationResult result = getTestOperationResult();
+
+        when();
+        repositoryService.modifyObject(RoleType.class, ROLE_AUTO_OID, setAutoassignEnabled(false), result);
+        repositoryService.modifyObject(RoleType.class, ROLE_OTHER_OID, setAutoassignEnabled(true), result);
+
+        then();
+        assertThat(autoAssignRoleCache.isStale(ROLE_AUTO_OID)).as("auto role stale").isTrue();
+        assertThat(autoAssignRoleCache.isStale(ROLE_OTHER_OID)).as("other role stale").isTrue();
+        assertThat(getCachedOids(result)).contains(ROLE_OTHER_OID).doesNotContain(ROLE_AUTO_OID);
+        assertThat(autoAssignRoleCache.isStale(ROLE_AUTO_OID)).as("auto role stale after refresh").isFalse();
+        assertThat(autoAssignRoleCache.isStale(ROLE_OTHER_OID)).as("other role stale after refresh").isFalse();
+    }
+
+    /** A change without an invalidation event is not seen until the role is invalidated explicitly. */
+    @Test
+    public void test120ChangeWithoutEvent() throws Exception {
+        given();
+        OperationResult result = getTestOperationResult();
+        plainRepositoryService.modifyObject(RoleType.class, ROLE_AUTO_OID, setAutoassignEnabled(true), result);
+        assertThat(getCachedOids(result)).as("before invalidation").doesNotContain(ROLE_AUTO_OID);
+
+        when();
+        autoAssignRoleCache.invalidate(RoleType.class, ROLE_AUTO_OID, null);
+
+        then();
+        assertThat(getCachedOids(result)).as("after invalidation").contains(ROLE_AUTO_OID, ROLE_OTHER_OID);
+    }
+
+    /** Deleted role disappears from the index. */
+    @Test
+    public void test130DeleteRole() throws Exception {
+        given();
+        OperationResult result = getTestOperationResult();
+
+        when();
+        repositoryService.deleteObject(RoleType.class, ROLE_OTHER_OID, result);
+
+        then();
+        assertThat(getCachedOids(result)).contains(ROLE_AUTO_OID).doesNotContain(ROLE_OTHER_OID);
+    }
+
+    /** Invalidation without the OID (e.g. clearing all caches) causes full reload. */
+    @Test
+    public void test140FullInvalidation() throws Exception {
+        given();
+        OperationResult result = getTestOperationResult();
+        plainRepositoryService.modifyObject(RoleType.class, ROLE_AUTO_OID, setAutoassignEnabled(false), result);
+        assertThat(getCachedOids(result)).as("before invalidation").contains(ROLE_AUTO_OID);
+
+        when();
+        autoAssignRoleCache.invalidate(null, null, null);
+
+        then();
+        assertThat(getCachedOids(result)).as("after invalidation").doesNotContain(ROLE_AUTO_OID);
+    }
+
+    /** Changes without any invalidation are seen after the index expires. */
+    @Test
+    public void test150Expiration() throws Exception {
+        given();
+        OperationResult result = getTestOperationResult();
+        plainRepositoryService.modifyObject(RoleType.class, ROLE_AUTO_OID, setAutoassignEnabled(true), result);
+        assertThat(getCachedOids(result)).as("before expiration").doesNotContain(ROLE_AUTO_OID);
+
+        try {
+            when();
+            autoAssignRoleCache.setFullReloadInterval(0);
+            Thread.sleep(10);
+
+            then();
+            assertThat(getCachedOids(result)).as("after expiration").contains(ROLE_AUTO_OID);
+        } finally {
+            autoAssignRoleCache.setFullReloadInterval(600_000L);
+        }
+    }
+
+    private List<String> getCachedOids(OperationResult result) throws Exception {
+        Collection<AutoAssignRoleSpecification> specifications = autoAssignRoleCache.getSpecifications(result);
+        return specifications.stream()
+                .map(spec -> spec.getRole().getOid())
+                .collect(Collectors.toList());
+    }
+
+    private RoleType createRole(String oid, String name, boolean enabled) {
+        return new RoleType()
+                .oid(oid)
+                .name(name)
+                .autoassign(new AutoassignSpecificationType()
+                        .enabled(enabled)
+                        .focus(new FocalAutoassignSpecificationType()
+                                .mapping(new AutoassignMappingType()
+                                        .name(name + "-mapping"))));
+    }
+
+    private Collection<ItemDelta<?, ?>> setAutoassignEnabled(boolean enabled) throws Exception {
+        return deltaFor(RoleType.class)
+                .item(RoleType.F_AUTOASSIGN, AutoassignSpecificationType.F_ENABLED)
+                .replace(enabled)
+                .asItemDeltas();
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.lens.projector.focus;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.model.impl.AbstractInternalModelIntegrationTest;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.schema.cache.CacheConfigurationManager;
+import com.evolveum.midpoint.schema.cache.CacheType;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.RoleType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
+
+/**
+ * Tests the batched name uniqueness check in {@link FocusConstraintsChecker}, and the (type-aware) cache
+ * of conflict-free names it fills.
+ *
+ * The objects are created from plain strings, so their names are not normalized, just like the names of parsed objects.
+ */
+@ContextConfiguration(locations = { "classpath:ctx-model-test-main.xml" })
+@DirtiesContext(classMode = ClassMode.AFTER_CLASS)
+public class TestFocusConstraintsChecker extends AbstractInternalModelIntegrationTest {
+
+    private static final String EXISTING_USER_NAME = "existing-user";
+
+    @Autowired private CacheConfigurationManager cacheConfigurationManager;
+
+    /** Names of the repository methods called by {@link #createRecordingRepository()}. */
+    private final List<String> repositoryCalls = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void initSystem(Task initTask, OperationResult initResult) throws Exception {
+        super.initSystem(initTask, initResult);
+        repositoryService.addObject(new UserType().name(EXISTING_USER_NAME).asPrismObject(), null, initResult);
+    }
+
+    /** No name is used, so they are all marked as conflict-free; only the OIDs are searched for. */
+    @Test
+    public void test100ConflictFreeNames() throws Exception {
+        given();
+        OperationResult result = getTestOperationResult();
+        List<PrismObject<? extends ObjectType>> objects = List.of(
+                user("batch-100-a"),
+                user("batch-100-b"));
+
+        enterCache();
+        try {
+            when();
+            FocusConstraintsChecker.checkNamesInBatch(objects, createRecordingRepository(), prismContext, result);
+
+            then();
+            assertConflictFree(UserType.class, "batch-100-a", true);
+            assertConflictFree(UserType.class, "batch-100-b", true);
+            assertThat(repositoryCalls).as("repository calls").containsExactly("searchObjectOids");
+        } finally {
+            FocusConstraintsChecker.exitCache();
+        }
+    }
+
+    /**
+     * The name differing from the existing one only in the case collides with it (by norm), so it is not marked.
+     * The same name of a role is conflict-free, as there is no such role.
+     */
+    @Test
+    public void test110CollidingName() throws Exception {
+        given();
+        OperationResult result = getTestOperationResult();
+        String collidingName = "Existing-User";
+        List<PrismObject<? extends ObjectType>> objects = List.of(
+                user(collidingName),
+                user("batch-110"),
+                role(collidingName));
+
+        enterCache();
+        try {
+            when();
+            FocusConstraintsChecker.checkNamesInBatch(objects, createRecordingRepository(), prismContext, result);
+
+            then();
+            assertConflictFree(UserType.class, collidingName, false);
+            assertConflictFree(UserType.class, "batch-110", true);
+            assertConflictFree(RoleType.class, collidingName, true);
+            assertThat(repositoryCalls).as("repository calls").contains("searchObjectOids", "searchObjects");
+        } finally {
+            FocusConstraintsChecker.exitCache();
+        }
+    }
+
+    /** Names repeated among the objects of the same type are not marked, as the objects would conflict with each other. */
+    @Test
+    public void test120NamesRepeatedInBatch() throws Exception {
+        given();
+        OperationResult result = getTestOperationResult();
+        List<PrismObject<? extends ObjectType>> objects = List.of(
+                user("batch-120"),
+                user("Batch-120"),
+                user("batch-120-other"));
+
+        enterCache();
+        try {
+            when();
+            FocusConstraintsChecker.checkNamesInBatch(objects, createRecordingRepository(), prismContext, result);
+
+            then();
+            assertConflictFree(UserType.class, "batch-120", false);
+            assertConflictFree(UserType.class, "Batch-120", false);
+            assertConflictFree(UserType.class, "batch-120-other", true);
+        } finally {
+            FocusConstraintsChecker.exitCache();
+        }
+    }
+
+    /** Without the cache, the check has nowhere to put its results, so it does not go to the repository at all. */
+    @Test
+    public void test130NoCache() throws Exception {
+        given();
+        OperationResult result = getTestOperationResult();
+
+        when();
+        FocusConstraintsChecker.checkNamesInBatch(
+                List.of(user("batch-130")), createRecordingRepository(), prismContext, result);
+
+        then();
+        assertThat(repositoryCalls).as("repository calls").isEmpty();
+    }
+
+    /** The name removed from the cache (e.g. because it was just added) is removed for all object types. */
+    @Test
+    public void test140Remove() throws Exception {
+        given();
+        OperationResult result = getTestOperationResult();
+        String name = "batch-140";
+        enterCache();
+        try {
+            FocusConstraintsChecker.checkNamesInBatch(
+                    List.of(user(name), role(name)), createRecordingRepository(), prismContext, result);
+            assertConflictFree(UserType.class, name, true);
+
+            when();
+            FocusConstraintsChecker.clearCacheFor(new PolyStringType(name));
+
+            then();
+            assertConflictFree(UserType.class, name, false);
+            assertConflictFree(RoleType.class, name, false);
+        } finally {
+            FocusConstraintsChecker.exitCache();
+        }
+    }
+
+    private void enterCache() {
+        FocusConstraintsChecker.enterCache(
+                cacheConfigurationManager.getConfiguration(CacheType.LOCAL_FOCUS_CONSTRAINT_CHECKER_CACHE));
+    }
+
+    private void assertConflictFree(Class<? extends ObjectType> type, String name, boolean expected) {
+        assertThat(FocusConstraintsChecker.Cache.isOk(type, new PolyStringType(name), cacheConfigurationManager))
+                .as("conflict-free " + type.getSimpleName() + " name '" + name + "'")
+                .isEqualTo(expected);
+    }
+
+    private PrismObject<? extends ObjectType> user(String name) {
+        return new UserType().name(name).asPrismObject();
+    }
+
+    private PrismObject<? extends ObjectType> role(String name) {
+        return new RoleType().name(name).asPrismObject();
+    }
+
+    /** Delegates to the repository, recording the names of the methods called. */
+    private RepositoryService createRecordingRepository() {
+        repositoryCalls.clear();
+        return (RepositoryService) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { RepositoryService.class },
+                (proxy, method, args) -> {
+                    repositoryCalls.add(method.getName());
+                    try {
+                        return method.invoke(repositoryService, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.lens.projector.focus;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.model.api.ModelExecuteOptions;
+import com.evolveum.midpoint.model.impl.AbstractInternalModelIntegrationTest;
+import com.evolveum.midpoint.model.impl.lens.projector.mappings.FocalMappingEvaluationRequest;
+import com.evolveum.midpoint.model.impl.lens.projector.mappings.TemplateMappingEvaluationRequest;
+import com.evolveum.midpoint.prism.path.ItemName;
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+import com.evolveum.prism.xml.ns._public.types_3.ItemPathType;
+import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
+
+/**
+ * Tests the incremental evaluation of object template mappings: the selection of mappings by {@link MappingDependencyGraph},
+ * and its use by {@link TemplateMappingsEvaluation} when a user is modified.
+ */
+@ContextConfiguration(locations = { "classpath:ctx-model-test-main.xml" })
+@DirtiesContext(classMode = ClassMode.AFTER_CLASS)
+public class TestIncrementalMappingEvaluation extends AbstractInternalModelIntegrationTest {
+
+    private static final String TEMPLATE_OID = "1f6a3d2c-7b4e-4c8a-9e5d-2a1b0c9d8e71";
+    private static final String USER_OID = "1f6a3d2c-7b4e-4c8a-9e5d-2a1b0c9d8e72";
+
+    private static final String M_COST_CENTER = "givenName-to-costCenter";
+    private static final String M_LOCALITY = "costCenter-to-locality";
+    private static final String M_TITLE = "employeeNumber-to-title";
+    private static final String M_ORGANIZATION_STRONG_RANGE = "employeeNumber-to-organization";
+    private static final String M_ORGANIZATIONAL_UNIT_WEAK_RANGE = "employeeNumber-to-organizationalUnit";
+    private static final String M_FOREIGN_VARIABLE = "givenName-familyName-to-nickName";
+
+    /** Selected: directly affected mapping, the one depending on it (transitively), and the ones that cannot be skipped. */
+    @Test
+    public void test100SelectAffectedTransitively() {
+        given();
+        List<FocalMappingEvaluationRequest<?, ?>> requests = createRequests(createTemplate());
+        MappingDependencyGraph graph = MappingDependencyGraph.create(requests, prismContext);
+
+        when();
+        List<String> selected = getNames(graph.selectAffected(requests, List.of(UserType.F_GIVEN_NAME), prismContext));
+
+        then();
+        assertThat(selected).containsExactly(
+                M_COST_CENTER, M_LOCALITY, M_ORGANIZATION_STRONG_RANGE, M_ORGANIZATIONAL_UNIT_WEAK_RANGE,
+                M_FOREIGN_VARIABLE);
+    }
+
+    /** Mappings that do not depend on the changed item are skipped; the ones with ranges are always selected. */
+    @Test
+    public void test110SkipUnaffected() {
+        given();
+        List<FocalMappingEvaluationRequest<?, ?>> requests = createRequests(createTemplate());
+        MappingDependencyGraph graph = MappingDependencyGraph.create(requests, prismContext);
+
+        when();
+        List<String> noChange = getNames(graph.selectAffected(requests, List.of(), prismContext));
+        List<String> employeeNumberChange =
+                getNames(graph.selectAffected(requests, List.of(UserType.F_EMPLOYEE_NUMBER), prismContext));
+
+        then();
+        assertThat(noChange).containsExactly(
+                M_ORGANIZATION_STRONG_RANGE, M_ORGANIZATIONAL_UNIT_WEAK_RANGE, M_FOREIGN_VARIABLE);
+        assertThat(employeeNumberChange).containsExactly(
+                M_TITLE, M_ORGANIZATION_STRONG_RANGE, M_ORGANIZATIONAL_UNIT_WEAK_RANGE, M_FOREIGN_VARIABLE);
+    }
+
+    /** Requests beyond the graph (e.g. auto-assignment mappings) are always selected. */
+    @Test
+    public void test120RequestsBeyondGraph() {
+        given();
+        ObjectTemplateType template = createTemplate();
+        List<FocalMappingEvaluationRequest<?, ?>> requests = createRequests(template);
+        MappingDependencyGraph graph = MappingDependencyGraph.create(requests.subList(0, 2), prismContext);
+
+        when();
+        List<String> selected = getNames(graph.selectAffected(requests, List.of(UserType.F_GIVEN_NAME), prismContext));
+
+        then();
+        assertThat(selected).containsExactly(
+                M_COST_CENTER, M_LOCALITY, M_TITLE, M_ORGANIZATION_STRONG_RANGE, M_ORGANIZATIONAL_UNIT_WEAK_RANGE,
+                M_FOREIGN_VARIABLE);
+    }
+
+    /** Mappings using function libraries (here a time-dependent function) cannot be skipped. */
+    @Test
+    public void test130FunctionLibraryNotSkipped() {
+        given();
+        ObjectTemplateType template = new ObjectTemplateType()
+                .oid(TEMPLATE_OID)
+                .name("incremental-template-basic")
+                .incrementalMappingEvaluation(true);
+        template.getMapping().add(
+                mapping(M_TITLE, UserType.F_EMPLOYEE_NUMBER, UserType.F_TITLE,
+                        "employeeNumber + basic.currentDateTime()"));
+        List<FocalMappingEvaluationRequest<?, ?>> requests = createRequests(template);
+        MappingDependencyGraph graph = MappingDependencyGraph.create(requests, prismContext);
+
+        when();
+        List<String> selected = getNames(graph.selectAffected(requests, List.of(), prismContext));
+
+        then();
+        assertThat(selected).containsExactly(M_TITLE);
+    }
+
+    /**
+     * The user template is applied to a user modification: the strong mapping unaffected by the change is skipped
+     * (so the manually changed title is kept), while the strong mapping with a range is evaluated (so the foreign
+     * organization is removed). Reconciliation evaluates all the mappings.
+     */
+    @Test
+    public void test200ModifyUser() throws Exception {
+        given();
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+        repositoryService.addObject(createTemplate().asPrismObject(), null, result);
+        setDefaultUserTemplate(TEMPLATE_OID);
+        repositoryService.addObject(
+                new UserType()
+                        .oid(USER_OID)
+                        .name("incremental")
+                        .employeeNumber("1")
+                        .title("manual")
+                        .organization(new PolyStringType("foreign"))
+                        .asPrismObject(),
+                null, result);
+
+        when("given name is changed");
+        modifyUserReplace(USER_OID, UserType.F_GIVEN_NAME, task, result, PolyString.fromOrig("Jack"));
+
+        then("title is kept, organization range is applied, dependent mappings are evaluated");
+        assertSuccess(result);
+        UserType user = getUser(USER_OID).asObjectable();
+        assertThat(user.getTitle().getOrig()).as("title").isEqualTo("manual");
+        assertThat(getOrigs(user.getOrganization())).as("organization").containsExactly("O-1");
+        assertThat(user.getCostCenter()).as("cost center").isEqualTo("Jack-cc");
+        assertThat(user.getLocality().getOrig()).as("locality").isEqualTo("Jack-cc");
+
+        when("reconciliation is requested");
+        modifyUserReplace(USER_OID, UserType.F_GIVEN_NAME,
+                ModelExecuteOptions.create().reconcile(), task, result, PolyString.fromOrig("James"));
+
+        then("all mappings are evaluated");
+        assertSuccess(result);
+        assertThat(getUser(USER_OID).asObjectable().getTitle().getOrig()).as("title").isEqualTo("T-1");
+    }
+
+    private ObjectTemplateType createTemplate() {
+        ObjectTemplateType template = new ObjectTemplateType()
+                .oid(TEMPLATE_OID)
+                .name("incremental-template")
+                .incrementalMappingEvaluation(true);
+        template.getMapping().add(
+                mapping(M_COST_CENTER, UserType.F_GIVEN_NAME, UserType.F_COST_CENTER, "givenName + '-cc'"));
+        template.getMapping().add(
+                mapping(M_LOCALITY, UserType.F_COST_CENTER, UserType.F_LOCALITY, "costCenter"));
+        template.getMapping().add(
+                mapping(M_TITLE, UserType.F_EMPLOYEE_NUMBER, UserType.F_TITLE, "'T-' + employeeNumber")
+                        .strength(MappingStrengthType.STRONG));
+        ObjectTemplateMappingType organization =
+                mapping(M_ORGANIZATION_STRONG_RANGE, UserType.F_EMPLOYEE_NUMBER, UserType.F_ORGANIZATION, "'O-' + employeeNumber")
+                        .strength(MappingStrengthType.STRONG);
+        organization.getTarget().set(new ValueSetDefinitionType().predefined(ValueSetDefinitionPredefinedType.ALL));
+        template.getMapping().add(organization);
+        ObjectTemplateMappingType organizationalUnit =
+                mapping(M_ORGANIZATIONAL_UNIT_WEAK_RANGE, UserType.F_EMPLOYEE_NUMBER, UserType.F_ORGANIZATIONAL_UNIT, "'U-' + employeeNumber")
+                        .strength(MappingStrengthType.WEAK);
+        organizationalUnit.getTarget().set(new ValueSetDefinitionType().predefined(ValueSetDefinitionPredefinedType.ALL));
+        template.getMapping().add(organizationalUnit);
+        // familyName is not a source of the mapping, so the mapping cannot be skipped
+        template.getMapping().add(
+                mapping(M_FOREIGN_VARIABLE, UserType.F_GIVEN_NAME, UserType.F_NICK_NAME, "givenName + familyName"));
+        return template;
+    }
+
+    private ObjectTemplateMappingType mapping(String name, ItemName source, ItemName target, String code) {
+        return new ObjectTemplateMappingType()
+                .name(name)
+                .source(new VariableBindingDefinitionType().path(new ItemPathType(source)))
+                .target(new VariableBindingDefinitionType().path(new ItemPathType(target)))
+                .expression(new ExpressionType()
+                        .expressionEvaluator(new ObjectFactory().createScript(
+                                new ScriptExpressionEvaluatorType().code(code))));
+    }
+
+    private List<FocalMappingEvaluationRequest<?, ?>> createRequests(ObjectTemplateType template) {
+        List<FocalMappingEvaluationRequest<?, ?>> requests = new ArrayList<>();
+        for (ObjectTemplateMappingType mapping : template.getMapping()) {
+            requests.add(new TemplateMappingEvaluationRequest(mapping, template));
+        }
+        return requests;
+    }
+
+    private List<String> getNames(List<FocalMappingEvaluationRequest<?, ?>> requests) {
+        return requests.stream()
+                .map(request -> request.getMapping().getName())
+                .collect(Collectors.toList());
+    }
+
+    private List<String> getOrigs(List<PolyStringType> values) {
+        return values.stream()
+                .map(PolyStringType::getOrig)
+                .collect(Collectors.toList());
+    }
+}
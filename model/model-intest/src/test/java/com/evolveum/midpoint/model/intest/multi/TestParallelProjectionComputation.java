@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.intest.multi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.model.intest.AbstractEmptyModelIntegrationTest;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.test.DummyResourceContoller;
+import com.evolveum.midpoint.test.DummyTestResource;
+import com.evolveum.midpoint.test.TestResource;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Tests concurrent computation of projections on different resources (`internals/projectionComputationThreads`).
+ *
+ * Both resources take an attribute value from the same sequence. The value must be allocated only once
+ * per clockwork run, even if the projections are computed concurrently.
+ */
+@ContextConfiguration(locations = { "classpath:ctx-model-intest-test-main.xml" })
+@DirtiesContext(classMode = ClassMode.AFTER_CLASS)
+public class TestParallelProjectionComputation extends AbstractEmptyModelIntegrationTest {
+
+    public static final File TEST_DIR = new File("src/test/resources/multi-parallel");
+
+    private static final int THREADS = 4;
+    private static final int USERS = 5;
+
+    private static final TestResource<SequenceType> SEQUENCE_SHIP = new TestResource<>(TEST_DIR,
+            "sequence-ship.xml", "8a4e6bd2-0e7c-4b1a-9c5f-53f1d6a3c201");
+
+    private static final DummyTestResource RESOURCE_DUMMY_SEQ_ONE = new DummyTestResource(TEST_DIR,
+            "resource-dummy-seq-one.xml", "5d2b9f0e-6a61-4c36-9f0d-1d7c3a4b6e01", "seq-one",
+            DummyResourceContoller::extendSchemaPirate);
+    private static final DummyTestResource RESOURCE_DUMMY_SEQ_TWO = new DummyTestResource(TEST_DIR,
+            "resource-dummy-seq-two.xml", "5d2b9f0e-6a61-4c36-9f0d-1d7c3a4b6e02", "seq-two",
+            DummyResourceContoller::extendSchemaPirate);
+
+    @Override
+    public void initSystem(Task initTask, OperationResult initResult) throws Exception {
+        super.initSystem(initTask, initResult);
+
+        addObject(SEQUENCE_SHIP, initTask, initResult);
+        initDummyResource(RESOURCE_DUMMY_SEQ_ONE, initTask, initResult);
+        initDummyResource(RESOURCE_DUMMY_SEQ_TWO, initTask, initResult);
+        assertSuccess(modelService.testResource(RESOURCE_DUMMY_SEQ_ONE.oid, initTask, initResult));
+        assertSuccess(modelService.testResource(RESOURCE_DUMMY_SEQ_TWO.oid, initTask, initResult));
+
+        modifySystemObjectInRepo(SystemConfigurationType.class, SystemObjectsType.SYSTEM_CONFIGURATION.value(),
+                deltaFor(SystemConfigurationType.class)
+                        .item(SystemConfigurationType.F_INTERNALS, InternalsConfigurationType.F_PROJECTION_COMPUTATION_THREADS)
+                        .replace(THREADS)
+                        .asItemDeltas(),
+                initResult);
+    }
+
+    /**
+     * Assigns accounts on both resources to a couple of users. Each user must get the same sequence value
+     * on both resources, and the sequence must be advanced once per user.
+     */
+    @Test
+    public void test100AssignAccountsWithSequence() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        for (int i = 0; i < USERS; i++) {
+            String name = "user-" + i;
+            String userOid = addObject(new UserType()
+                    .name(name)
+                    .asPrismObject(), task, result);
+
+            ObjectDelta<UserType> delta =
+                    createAccountAssignmentUserDelta(userOid, RESOURCE_DUMMY_SEQ_ONE.oid, null, true);
+            delta.addModification(
+                    createAssignmentModification(RESOURCE_DUMMY_SEQ_TWO.oid, ShadowKindType.ACCOUNT, null, true));
+
+            when("user " + name);
+            executeChanges(delta, null, task, result);
+
+            then("user " + name);
+            assertSuccess(result);
+            assertUserAfter(userOid)
+                    .assertLiveLinks(2);
+
+            String shipOne = RESOURCE_DUMMY_SEQ_ONE.controller.getDummyResource().getAccountByUsername(name)
+                    .getAttributeValue(DummyResourceContoller.DUMMY_ACCOUNT_ATTRIBUTE_SHIP_NAME);
+            String shipTwo = RESOURCE_DUMMY_SEQ_TWO.controller.getDummyResource().getAccountByUsername(name)
+                    .getAttributeValue(DummyResourceContoller.DUMMY_ACCOUNT_ATTRIBUTE_SHIP_NAME);
+            assertThat(shipOne).as("ship on seq-one").isNotNull();
+            assertThat(shipTwo).as("ship on seq-two").isEqualTo(shipOne);
+
+            SequenceType sequence = getObjectViaRepo(SequenceType.class, SEQUENCE_SHIP.oid).asObjectable();
+            assertThat(sequence.getCounter()).as("sequence counter").isEqualTo((long) i + 1);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.intest.multi;
+
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.icf.dummy.resource.DummyResource;
+import com.evolveum.midpoint.model.intest.AbstractInitializedModelIntegrationTest;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.AssignmentPolicyEnforcementType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.InternalsConfigurationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowKindType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SystemConfigurationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SystemObjectsType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+
+/**
+ * Tests concurrent execution of projections on different resources (`internals/projectionExecutionThreads`).
+ *
+ * The concurrency is checked by blocking the operations on one resource, and waiting until the account
+ * on the other one is created. This would never happen if the projections were executed sequentially
+ * with the blocked resource being the first one. So each test blocks a different resource.
+ */
+@ContextConfiguration(locations = { "classpath:ctx-model-intest-test-main.xml" })
+@DirtiesContext(classMode = ClassMode.AFTER_CLASS)
+public class TestParallelProjectionExecution extends AbstractInitializedModelIntegrationTest {
+
+    private static final int THREADS = 4;
+    private static final long TIMEOUT = 30000L;
+
+    private static final String USER_ALICE_NAME = "alice";
+    private static final String USER_BOB_NAME = "bob";
+
+    @Override
+    public void initSystem(Task initTask, OperationResult initResult) throws Exception {
+        super.initSystem(initTask, initResult);
+        assumeAssignmentPolicy(AssignmentPolicyEnforcementType.RELATIVE);
+
+        modifySystemObjectInRepo(SystemConfigurationType.class, SystemObjectsType.SYSTEM_CONFIGURATION.value(),
+                deltaFor(SystemConfigurationType.class)
+                        .item(SystemConfigurationType.F_INTERNALS, InternalsConfigurationType.F_PROJECTION_EXECUTION_THREADS)
+                        .replace(THREADS)
+                        .asItemDeltas(),
+                initResult);
+    }
+
+    /**
+     * Assigns accounts on default and blue resources, while the blue one is blocked.
+     * The default account must be created nevertheless.
+     */
+    @Test
+    public void test100AssignTwoAccountsBlueBlocked() throws Exception {
+        String userOid = addObject(new UserType()
+                .name(USER_ALICE_NAME)
+                .fullName("Alice Cooper")
+                .asPrismObject());
+
+        executeWithBlockedResource(userOid, RESOURCE_DUMMY_BLUE_NAME, null, USER_ALICE_NAME);
+
+        assertUserAfter(userOid)
+                .assertLiveLinks(2);
+        assertDummyAccount(null, USER_ALICE_NAME, "Alice Cooper", true);
+        assertDummyAccount(RESOURCE_DUMMY_BLUE_NAME, USER_ALICE_NAME, "Alice Cooper", true);
+    }
+
+    /**
+     * As {@link #test100AssignTwoAccountsBlueBlocked()} but with the default resource blocked.
+     */
+    @Test
+    public void test110AssignTwoAccountsDefaultBlocked() throws Exception {
+        String userOid = addObject(new UserType()
+                .name(USER_BOB_NAME)
+                .fullName("Bob Marley")
+                .asPrismObject());
+
+        executeWithBlockedResource(userOid, null, RESOURCE_DUMMY_BLUE_NAME, USER_BOB_NAME);
+
+        assertUserAfter(userOid)
+                .assertLiveLinks(2);
+        assertDummyAccount(null, USER_BOB_NAME, "Bob Marley", true);
+        assertDummyAccount(RESOURCE_DUMMY_BLUE_NAME, USER_BOB_NAME, "Bob Marley", true);
+    }
+
+    /**
+     * Assigns accounts on the default and blue resource to the user, in a separate thread. The operations on
+     * the `blocked` resource are blocked until the account on the `free` one is created.
+     */
+    private void executeWithBlockedResource(String userOid, String blocked, String free, String accountName)
+            throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        ObjectDelta<UserType> delta = createAccountAssignmentUserDelta(userOid, RESOURCE_DUMMY_BLUE_OID, null, true);
+        delta.addModification(createAssignmentModification(RESOURCE_DUMMY_OID, ShadowKindType.ACCOUNT, null, true));
+
+        DummyResource blockedResource = getDummyResource(blocked);
+        AtomicReference<Throwable> exception = new AtomicReference<>();
+        OperationResult subresult = result.createSubresult("executor");
+
+        when();
+        blockedResource.setBlockOperations(true);
+        Thread executor = new Thread(() -> {
+            try {
+                login(userAdministrator.clone());
+                modelService.executeChanges(Collections.singletonList(delta), null, task, subresult);
+            } catch (Throwable t) {
+                exception.set(t);
+            }
+        });
+        boolean createdWhileBlocked;
+        try {
+            executor.start();
+            createdWhileBlocked = waitForAccount(free, accountName);
+        } finally {
+            blockedResource.unblockAll();
+        }
+        executor.join(TIMEOUT);
+
+        then();
+        assertTrue("Account on " + free + " was not created while " + blocked + " was blocked", createdWhileBlocked);
+        assertNull("Unexpected exception: " + exception.get(), exception.get());
+        subresult.computeStatus();
+        assertSuccess(subresult);
+        assertNotNull("No account on " + blocked, getDummyAccount(blocked, accountName));
+    }
+
+    private boolean waitForAccount(String resourceName, String accountName) throws Exception {
+        long start = System.currentTimeMillis();
+        while (System.currentTimeMillis() - start < TIMEOUT) {
+            if (getDummyAccount(resourceName, accountName) != null) {
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
+
+    /**
+     * Deletes both accounts (concurrently, without blocking); the links must be removed from the user.
+     */
+    @Test
+    public void test200UnassignAccounts() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        PrismObject<UserType> alice = findUserByUsername(USER_ALICE_NAME);
+
+        when();
+        unassignAllReplace(alice.getOid(), task, result);
+
+        then();
+        assertSuccess(result);
+        assertUserAfter(alice.getOid())
+                .assertLiveLinks(0);
+        assertNoDummyAccount(null, USER_ALICE_NAME);
+        assertNoDummyAccount(RESOURCE_DUMMY_BLUE_NAME, USER_ALICE_NAME);
+    }
+}
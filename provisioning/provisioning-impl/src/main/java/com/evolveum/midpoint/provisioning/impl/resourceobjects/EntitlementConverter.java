@@ -6,8 +6,10 @@
  */
 package com.evolveum.midpoint.provisioning.impl.resourceobjects;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.xml.namespace.QName;
@@ -26,6 +28,7 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -40,8 +43,10 @@ import com.evolveum.midpoint.provisioning.util.ProvisioningUtil;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.util.ResourceTypeUtil;
 import com.evolveum.midpoint.schema.util.ShadowUtil;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.resource.capabilities_3.PagedSearchCapabilityType;
 import com.evolveum.midpoint.xml.ns._public.resource.capabilities_3.ReadCapabilityType;
 
 import static com.evolveum.midpoint.schema.util.ObjectTypeUtil.asObjectable;
@@ -61,6 +66,8 @@ class EntitlementConverter {
 
     private static final Trace LOGGER = TraceManager.getTrace(EntitlementConverter.class);
 
+    private static final String OP_BUILD_ENTITLEMENT_INDEX = EntitlementConverter.class.getName() + ".buildEntitlementIndex";
+
     @Autowired private ResourceObjectReferenceResolver resourceObjectReferenceResolver;
     @Autowired private DelineationProcessor delineationProcessor;
     @Autowired private PrismContext prismContext;
@@ -73,11 +80,13 @@ class EntitlementConverter {
 
     /**
      * Creates an associations container (`association`) based on the relevant resource object attribute values.
-     * Note that for "object to subject" entitlements this involves a search operation.
+     * Note that for "object to subject" entitlements this involves a search operation, unless the answer can be
+     * provided by the `entitlementIndex`.
      */
     void postProcessEntitlementsRead(
             PrismObject<ShadowType> resourceObject,
             ProvisioningContext subjectCtx,
+            @Nullable EntitlementIndex entitlementIndex,
             OperationResult result)
             throws SchemaException, CommunicationException, ObjectNotFoundException, ConfigurationException,
             SecurityViolationException, ExpressionEvaluationException {
@@ -119,8 +128,10 @@ class EntitlementConverter {
                                 associationContainer,
                                 resourceObject,
                                 associationDef,
+                                entitlementIntent,
                                 subjectCtx,
                                 entitlementCtx,
+                                entitlementIndex,
                                 result);
                     }
                 } else {
@@ -200,13 +211,18 @@ class EntitlementConverter {
     /**
      * Creates values in `associationContainer`. It searches for entitlements having the "association" (referencing) attribute
      * value - e.g. `ri:members` - containing the value in subject "value" (referenced) attribute - e.g. `ri:dn`.
+     *
+     * If the association is marked for bulk prefetch and the index is provided, the entitlements are taken from the index
+     * (that is built if needed).
      */
     private <S extends ShadowType, T> void postProcessReadEntitlementToSubject(
             PrismContainer<ShadowAssociationType> associationContainer,
             PrismObject<S> resourceObject,
             ResourceAssociationDefinition associationDef,
+            String entitlementIntent,
             ProvisioningContext subjectCtx,
             ProvisioningContext entitlementCtx,
+            @Nullable EntitlementIndex entitlementIndex,
             OperationResult result)
             throws SchemaException, CommunicationException, ObjectNotFoundException, ConfigurationException,
             SecurityViolationException, ExpressionEvaluationException {
@@ -250,12 +266,143 @@ class EntitlementConverter {
         ResourceAttributeDefinition<T> referencedAttrDef = referencedAttr.getDefinition();
         PrismPropertyValue<T> referencedAttrValue = referencedAttr.getAnyValue();
 
+        if (entitlementIndex != null && Boolean.TRUE.equals(associationDef.getDefinitionBean().isBulkPrefetch())) {
+            EntitlementIndex.Entry indexEntry = entitlementIndex.getEntry(
+                    associationName, associationDef.getKind(), entitlementIntent, referencingAttrName);
+            if (indexEntry.shouldUse()
+                    && ensureIndexBuilt(indexEntry, referencingAttrDef, associationDef, entitlementCtx, result)) {
+                Object normalizedValue =
+                        getRealNormalizedConvertedValue(referencedAttrValue, referencedAttrDef, referencingAttrDef, associationDef);
+                for (Collection<ResourceAttribute<?>> identifiers : indexEntry.get(normalizedValue)) {
+                    createAssociationValueFromIdentifiers(associationContainer, identifiers, associationName, entitlementDef);
+                }
+                LOGGER.trace("Resolved entitlement-to-subject association {} for {} using the index",
+                        associationName, ShadowUtil.getHumanReadableNameLazily(resourceObject));
+                return;
+            }
+        }
+
         ObjectQuery query = createEntitlementQuery(referencedAttrValue, referencedAttrDef, referencingAttrDef, associationDef);
 
         executeSearchForEntitlements(
                 associationContainer, resourceObject, query, associationName, subjectCtx, entitlementCtx, result);
     }
 
+    /**
+     * Builds the index entry, if not built yet.
+     *
+     * @return false if the index could not be built, so the entitlements have to be searched for individually
+     */
+    private boolean ensureIndexBuilt(
+            EntitlementIndex.Entry indexEntry,
+            ResourceAttributeDefinition<?> referencingAttrDef,
+            ResourceAssociationDefinition associationDef,
+            ProvisioningContext entitlementCtx,
+            OperationResult parentResult) {
+        synchronized (indexEntry) {
+            if (indexEntry.isBuilt()) {
+                return true;
+            }
+            OperationResult result = parentResult.subresult(OP_BUILD_ENTITLEMENT_INDEX)
+                    .addParam("association", associationDef.getName())
+                    .build();
+            try {
+                indexEntry.setBuilt(
+                        buildEntitlementIndex(referencingAttrDef, associationDef, entitlementCtx, result));
+                return true;
+            } catch (CommonException | RuntimeException e) {
+                LoggingUtils.logUnexpectedException(LOGGER, "Couldn't build the index for association {}, entitlements "
+                        + "will be searched for each subject individually", e, associationDef.getName());
+                result.recordFatalError(e);
+                indexEntry.setUnavailable();
+                return false;
+            } finally {
+                result.close();
+                if (!result.isSuccess()) {
+                    parentResult.muteLastSubresultError();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads all the entitlements (of given type) and indexes their identifiers by the normalized values of their referencing
+     * ("association") attribute, e.g. `ri:members`.
+     */
+    private <TA> Map<Object, List<Collection<ResourceAttribute<?>>>> buildEntitlementIndex(
+            ResourceAttributeDefinition<TA> referencingAttrDef,
+            ResourceAssociationDefinition associationDef,
+            ProvisioningContext entitlementCtx,
+            OperationResult result)
+            throws SchemaException, ConfigurationException, ObjectNotFoundException, CommunicationException,
+            ExpressionEvaluationException, SecurityViolationException {
+
+        ResourceObjectDefinition entitlementDef = entitlementCtx.getObjectDefinitionRequired();
+        QName referencingAttrName = referencingAttrDef.getItemName();
+        MatchingRule<TA> matchingRule =
+                matchingRuleRegistry.getMatchingRule(associationDef.getMatchingRule(), referencingAttrDef.getTypeName());
+
+        QueryWithConstraints queryWithConstraints =
+                delineationProcessor.determineQueryWithConstraints(entitlementCtx, null, result);
+
+        Map<Object, List<Collection<ResourceAttribute<?>>>> index = new HashMap<>();
+        UcfObjectHandler handler = (ucfObject, lResult) -> {
+            PrismObject<ShadowType> entitlement = ucfObject.getResourceObject();
+            ResourceAttributeContainer attributesContainer = ShadowUtil.getAttributesContainer(entitlement);
+            ResourceAttribute<TA> referencingAttr =
+                    attributesContainer != null ? attributesContainer.findAttribute(referencingAttrName) : null;
+            if (referencingAttr == null || referencingAttr.isEmpty()) {
+                return true;
+            }
+            Collection<ResourceAttribute<?>> identifiers = getFrozenIdentifiers(entitlement);
+            try {
+                for (TA value : referencingAttr.getRealValues()) {
+                    List<Collection<ResourceAttribute<?>>> entitlements =
+                            index.computeIfAbsent(matchingRule.normalize(value), k -> new ArrayList<>(1));
+                    if (entitlements.isEmpty() || entitlements.get(entitlements.size() - 1) != identifiers) {
+                        entitlements.add(identifiers);
+                    }
+                }
+            } catch (SchemaException e) {
+                throw new TunnelException(e);
+            }
+            return true;
+        };
+
+        ConnectorInstance connector = entitlementCtx.getConnector(ReadCapabilityType.class, result);
+        try {
+            LOGGER.debug("Building index of entitlements for association {} in {}", associationDef.getName(), entitlementCtx);
+            connector.search(
+                    entitlementDef,
+                    queryWithConstraints.query,
+                    handler,
+                    entitlementCtx.createAttributesToReturn(),
+                    entitlementCtx.getEnabledCapability(PagedSearchCapabilityType.class),
+                    queryWithConstraints.constraints,
+                    UcfFetchErrorReportingMethod.EXCEPTION,
+                    entitlementCtx.getUcfExecutionContext(),
+                    result);
+        } catch (GenericFrameworkException e) {
+            throw new GenericConnectorException("Generic error in the connector " + connector + ". Reason: "
+                    + e.getMessage(), e);
+        } catch (TunnelException e) {
+            throw (SchemaException) e.getCause();
+        }
+        LOGGER.debug("Built index of entitlements for association {}: {} distinct values",
+                associationDef.getName(), index.size());
+        return index;
+    }
+
+    private @NotNull Collection<ResourceAttribute<?>> getFrozenIdentifiers(PrismObject<ShadowType> entitlement) {
+        List<ResourceAttribute<?>> identifiers = new ArrayList<>();
+        for (ResourceAttribute<?> identifier : emptyIfNull(ShadowUtil.getAllIdentifiers(entitlement))) {
+            ResourceAttribute<?> clone = identifier.clone();
+            clone.freeze();
+            identifiers.add(clone);
+        }
+        return identifiers;
+    }
+
     /**
      * Executes the search for entitlements using the prepared query.
      */
@@ -349,6 +496,25 @@ class EntitlementConverter {
         return associationContainerValue;
     }
 
+    /**
+     * Creates association value from (all) known identifiers of the target object; and inserts it into `associationContainer`.
+     * The identifiers are cloned.
+     */
+    private void createAssociationValueFromIdentifiers(
+            PrismContainer<ShadowAssociationType> associationContainer,
+            Collection<ResourceAttribute<?>> identifiers,
+            QName associationName,
+            ResourceObjectDefinition entitlementDef) throws SchemaException {
+
+        PrismContainerValue<ShadowAssociationType> associationContainerValue = associationContainer.createNewValue();
+        associationContainerValue.asContainerable().setName(associationName);
+        ResourceAttributeContainer identifiersContainer = ObjectFactory.createResourceAttributeContainer(
+                ShadowAssociationType.F_IDENTIFIERS, entitlementDef.toResourceAttributeContainerDefinition());
+        identifiersContainer.getValue().addAll(
+                Item.cloneCollection(identifiers));
+        associationContainerValue.add(identifiersContainer);
+    }
+
     /**
      * Creates association value from resolved target object; and inserts it into `associationContainer`.
      *
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.impl.resourceobjects;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.namespace.QName;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.schema.processor.ResourceAttribute;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowKindType;
+
+/**
+ * Index of "object to subject" associations (e.g. LDAP group memberships) for a single search for subjects,
+ * e.g. for accounts during reconciliation or import.
+ *
+ * Instead of searching for entitlements of each subject separately, all the entitlements of given type are read once,
+ * and the values of their referencing ("association") attribute, e.g. `ri:members`, are indexed. Subject lookups
+ * are then answered from the index.
+ *
+ * It is used only for associations marked with `bulkPrefetch`, because the values are matched in midPoint
+ * (using the association matching rule) instead of on the resource. The index is built only after a number
+ * of subjects asked for given association, so that small searches (e.g. in GUI) do not read all the entitlements.
+ *
+ * To keep the memory footprint reasonable, only the (frozen) identifiers of the entitlements are kept in the index.
+ * The repository shadows of the entitlements are then looked up by these identifiers, just like when the association
+ * values are created from the identifiers found in the subject.
+ */
+class EntitlementIndex {
+
+    /** How many subjects have to ask for the association before the index is built. */
+    static final int DEFAULT_BUILD_THRESHOLD = 100;
+
+    @NotNull private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    private final int buildThreshold;
+
+    EntitlementIndex() {
+        this(DEFAULT_BUILD_THRESHOLD);
+    }
+
+    EntitlementIndex(int buildThreshold) {
+        this.buildThreshold = buildThreshold;
+    }
+
+    @NotNull Entry getEntry(@NotNull QName associationName, ShadowKindType entitlementKind, String entitlementIntent,
+            @NotNull QName referencingAttrName) {
+        return entries.computeIfAbsent(
+                new Key(associationName, entitlementKind, entitlementIntent, referencingAttrName),
+                k -> new Entry());
+    }
+
+    /** Index for a single association (and entitlement type). */
+    class Entry {
+
+        private final AtomicInteger requests = new AtomicInteger();
+
+        /** Normalized referencing attribute value -> identifiers of entitlements having it. Null if not built (yet). */
+        private volatile Map<Object, List<Collection<ResourceAttribute<?>>>> index;
+
+        /** True if the building failed; the individual searches are used then. */
+        private volatile boolean unavailable;
+
+        /** Returns true if the index should be used for the current request (and it is either built or should be). */
+        boolean shouldUse() {
+            if (unavailable) {
+                return false;
+            }
+            return index != null || requests.incrementAndGet() > buildThreshold;
+        }
+
+        boolean isBuilt() {
+            return index != null;
+        }
+
+        void setBuilt(@NotNull Map<Object, List<Collection<ResourceAttribute<?>>>> index) {
+            this.index = index;
+        }
+
+        void setUnavailable() {
+            unavailable = true;
+        }
+
+        /**
+         * Returns the identifiers of entitlements whose referencing attribute contains given (normalized) value.
+         * The identifiers are frozen, so they have to be cloned before use.
+         */
+        @NotNull List<Collection<ResourceAttribute<?>>> get(@NotNull Object normalizedValue) {
+            Map<Object, List<Collection<ResourceAttribute<?>>>> index = this.index;
+            assert index != null;
+            return index.getOrDefault(normalizedValue, List.of());
+        }
+    }
+
+    private static class Key {
+
+        @NotNull private final QName associationName;
+        private final ShadowKindType entitlementKind;
+        private final String entitlementIntent;
+        @NotNull private final QName referencingAttrName;
+
+        private Key(@NotNull QName associationName, ShadowKindType entitlementKind, String entitlementIntent,
+                @NotNull QName referencingAttrName) {
+            this.associationName = associationName;
+            this.entitlementKind = entitlementKind;
+            this.entitlementIntent = entitlementIntent;
+            this.referencingAttrName = referencingAttrName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return associationName.equals(key.associationName)
+                    && entitlementKind == key.entitlementKind
+                    && Objects.equals(entitlementIntent, key.entitlementIntent)
+                    && referencingAttrName.equals(key.referencingAttrName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(associationName, entitlementKind, entitlementIntent, referencingAttrName);
+        }
+    }
+}
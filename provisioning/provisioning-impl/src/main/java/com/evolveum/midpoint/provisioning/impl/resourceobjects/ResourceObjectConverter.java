@@ -1699,6 +1699,17 @@ public class ResourceObjectConverter {
     void postProcessResourceObjectRead(ProvisioningContext ctx, PrismObject<ShadowType> resourceObject,
             boolean fetchAssociations, OperationResult result) throws SchemaException, CommunicationException,
             ObjectNotFoundException, ConfigurationException, SecurityViolationException, ExpressionEvaluationException {
+        postProcessResourceObjectRead(ctx, resourceObject, fetchAssociations, null, result);
+    }
+
+    /**
+     * As {@link #postProcessResourceObjectRead(ProvisioningContext, PrismObject, boolean, OperationResult)},
+     * but the "object to subject" associations may be resolved using provided index.
+     */
+    void postProcessResourceObjectRead(ProvisioningContext ctx, PrismObject<ShadowType> resourceObject,
+            boolean fetchAssociations, @Nullable EntitlementIndex entitlementIndex, OperationResult result)
+            throws SchemaException, CommunicationException, ObjectNotFoundException, ConfigurationException,
+            SecurityViolationException, ExpressionEvaluationException {
         if (resourceObject == null) {
             return;
         }
@@ -1715,7 +1726,7 @@ public class ResourceObjectConverter {
 
         // Entitlements
         if (fetchAssociations) {
-            entitlementConverter.postProcessEntitlementsRead(resourceObject, ctx, result);
+            entitlementConverter.postProcessEntitlementsRead(resourceObject, ctx, entitlementIndex, result);
         }
     }
 
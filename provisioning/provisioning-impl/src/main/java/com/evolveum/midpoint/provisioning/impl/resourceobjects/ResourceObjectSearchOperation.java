@@ -58,6 +58,9 @@ class ResourceObjectSearchOperation {
 
     private final AtomicInteger objectCounter = new AtomicInteger(0);
 
+    /** Index of "object to subject" associations marked for bulk prefetch; lives as long as this search. */
+    @NotNull private final EntitlementIndex entitlementIndex = new EntitlementIndex();
+
     ResourceObjectSearchOperation(
             @NotNull ProvisioningContext ctx,
             @NotNull ResourceObjectHandler resultHandler,
@@ -164,7 +167,7 @@ class ResourceObjectSearchOperation {
 
     private boolean handleObjectFound(UcfObjectFound ucfObject, OperationResult parentResult) {
         ResourceObjectFound objectFound =
-                new ResourceObjectFound(ucfObject, beans.resourceObjectConverter, ctx, fetchAssociations);
+                new ResourceObjectFound(ucfObject, beans.resourceObjectConverter, ctx, fetchAssociations, entitlementIndex);
 
         // in order to utilize the cache right from the beginning...
         RepositoryCache.enterLocalCaches(beans.cacheConfigurationManager);
@@ -11,6 +11,8 @@ import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.repo.api.Cache;
 import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.repo.api.CacheRegistry;
+import com.evolveum.midpoint.repo.api.SystemConfigurationChangeDispatcher;
+import com.evolveum.midpoint.repo.api.SystemConfigurationChangeListener;
 import com.evolveum.midpoint.schema.internals.InternalMonitor;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.util.caching.CachePerformanceCollector;
@@ -18,12 +20,16 @@ import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
 import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.CachingConfigurationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.InternalsConfigurationType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.SingleCacheStateInformationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SystemConfigurationType;
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.SetMultimap;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
@@ -50,35 +56,48 @@ import static com.evolveum.midpoint.util.caching.CacheConfiguration.StatisticsLe
  * The cache deals with concrete resources, i.e. _not_ the abstract ones. So, when an abstract resource is invalidated,
  * all concrete ones that inherit from it should be invalidated as well.
  *
+ * Reading is lock-free: cached entries are immutable, and they are replaced atomically. Only the writers (putting
+ * and invalidation) are synchronized, because they have to keep {@link #dependencyMap} consistent with the cache.
+ *
+ * When the resource version is checked against the repository in {@link #getIfLatest(String, boolean, OperationResult)},
+ * the check is skipped if it was successfully done within the last {@link #freshnessWindow} milliseconds.
+ * In that period we rely solely on the invalidation events. The window is zero (i.e. disabled) by default.
+ *
  * @author Radovan Semancik
  */
 @Component
-public class ResourceCache implements Cache {
+public class ResourceCache implements Cache, SystemConfigurationChangeListener {
 
     private static final Trace LOGGER = TraceManager.getTrace(ResourceCache.class);
     private static final Trace LOGGER_CONTENT = TraceManager.getTrace(ResourceCache.class.getName() + ".content");
 
     @Autowired private CacheRegistry cacheRegistry;
+    @Autowired private SystemConfigurationChangeDispatcher systemConfigurationChangeDispatcher;
     @Autowired @Qualifier("cacheRepositoryService")
     private RepositoryService repositoryService;
 
     @PostConstruct
     public void register() {
         cacheRegistry.registerCache(this);
+        systemConfigurationChangeDispatcher.registerListener(this);
     }
 
     @PreDestroy
     public void unregister() {
         cacheRegistry.unregisterCache(this);
+        systemConfigurationChangeDispatcher.unregisterListener(this);
     }
 
     /**
      * Note that prism objects in this map are always not null and immutable.
      * And they must remain immutable after getting them from the cache.
      *
-     * As for ConcurrentHashMap: Although we use synchronization whenever possible, let's be extra cautious here.
+     * Read without synchronization; entries are never modified, only replaced or removed (atomically).
      */
-    private final Map<String, PrismObject<ResourceType>> cache = new ConcurrentHashMap<>();
+    private final Map<String, CachedResource> cache = new ConcurrentHashMap<>();
+
+    /** See the class-level description. In milliseconds. */
+    private volatile long freshnessWindow;
 
     /**
      * `K -> V` means that (concrete) resource `V` depends on (concrete or abstract) resource `K`.
@@ -103,18 +122,20 @@ public class ResourceCache implements Cache {
 
         updateDependencies(oid, ancestorsOids);
 
-        PrismObject<ResourceType> cachedResource = cache.get(oid);
-        if (cachedResource == null) {
-            LOGGER.debug("Caching(new): {}", resource);
-            cache.put(oid, resource.asPrismObject().createImmutableClone());
-        } else if (compareVersion(resource.getVersion(), cachedResource.getVersion())) {
-            LOGGER.debug("Caching fizzle, resource already cached: {}", resource);
-            // We already have equivalent resource, nothing to do
-            //  TODO is this correct? What if the resource being put here is newer than the existing one (although having the same version)?
-        } else {
-            LOGGER.debug("Caching(replace): {}", resource);
-            cache.put(oid, resource.asPrismObject().createImmutableClone());
-        }
+        cache.compute(oid, (key, cachedResource) -> {
+            if (cachedResource == null) {
+                LOGGER.debug("Caching(new): {}", resource);
+                return new CachedResource(resource.asPrismObject().createImmutableClone());
+            } else if (compareVersion(version, cachedResource.getVersion())) {
+                LOGGER.debug("Caching fizzle, resource already cached: {}", resource);
+                // We already have equivalent resource, nothing to do
+                //  TODO is this correct? What if the resource being put here is newer than the existing one (although having the same version)?
+                return cachedResource;
+            } else {
+                LOGGER.debug("Caching(replace): {}", resource);
+                return new CachedResource(resource.asPrismObject().createImmutableClone());
+            }
+        });
     }
 
     /**
@@ -141,11 +162,16 @@ public class ResourceCache implements Cache {
     /**
      * Gets a resource if it has specified version. If it has not, purges it from the cache (even if it exists there).
      */
-    synchronized PrismObject<ResourceType> get(@NotNull String oid, String requestedVersion, boolean readOnly) {
+    PrismObject<ResourceType> get(@NotNull String oid, String requestedVersion, boolean readOnly) {
+        return get(oid, cache.get(oid), requestedVersion, readOnly);
+    }
+
+    /** Lock-free implementation of {@link #get(String, String, boolean)} working with already obtained cache entry. */
+    private PrismObject<ResourceType> get(
+            @NotNull String oid, @Nullable CachedResource cachedResource, String requestedVersion, boolean readOnly) {
         InternalMonitor.getResourceCacheStats().recordRequest();
 
         PrismObject<ResourceType> resourceToReturn;
-        PrismObject<ResourceType> cachedResource = cache.get(oid);
         if (cachedResource == null) {
             LOGGER.debug("MISS(not cached) for {} (get)", oid);
             resourceToReturn = null;
@@ -153,25 +179,46 @@ public class ResourceCache implements Cache {
             LOGGER.debug("MISS(wrong version) for {} (req={}, actual={})", oid, requestedVersion, cachedResource.getVersion());
             LOGGER.trace("Cached resource version {} does not match requested resource version {}, purging from cache",
                     cachedResource.getVersion(), requestedVersion);
-            invalidateSingle(oid);
+            invalidateIfStillCached(oid, cachedResource);
             resourceToReturn = null;
-        } else if (readOnly) {
-            cachedResource.checkImmutable();
-            LOGGER.trace("HIT(read only) for {} (v{})", cachedResource, cachedResource.getVersion());
-            resourceToReturn = cachedResource;
         } else {
-            LOGGER.debug("HIT(returning clone) for {} (v{})", cachedResource, cachedResource.getVersion());
-            resourceToReturn = cachedResource.clone();
+            resourceToReturn = toReturn(cachedResource, readOnly);
         }
 
-        if (resourceToReturn != null) {
+        recordHitOrMiss(resourceToReturn != null);
+        return resourceToReturn;
+    }
+
+    private PrismObject<ResourceType> toReturn(@NotNull CachedResource cachedResource, boolean readOnly) {
+        PrismObject<ResourceType> resource = cachedResource.resource;
+        if (readOnly) {
+            resource.checkImmutable();
+            LOGGER.trace("HIT(read only) for {} (v{})", resource, resource.getVersion());
+            return resource;
+        } else {
+            LOGGER.debug("HIT(returning clone) for {} (v{})", resource, resource.getVersion());
+            return resource.clone();
+        }
+    }
+
+    private void recordHitOrMiss(boolean hit) {
+        if (hit) {
             CachePerformanceCollector.INSTANCE.registerHit(ResourceCache.class, ResourceType.class, PER_CACHE);
             InternalMonitor.getResourceCacheStats().recordHit();
         } else {
             CachePerformanceCollector.INSTANCE.registerMiss(ResourceCache.class, ResourceType.class, PER_CACHE);
             InternalMonitor.getResourceCacheStats().recordMiss();
         }
-        return resourceToReturn;
+    }
+
+    /**
+     * Invalidates the resource (with descendants), unless the entry was replaced in the meanwhile - e.g. by a newer version.
+     * The check is done under the lock, so no concurrently put entry is removed.
+     */
+    private synchronized void invalidateIfStillCached(@NotNull String oid, @NotNull CachedResource expected) {
+        if (cache.get(oid) == expected) {
+            invalidateSingle(oid);
+        }
     }
 
     /**
@@ -179,13 +226,29 @@ public class ResourceCache implements Cache {
      *
      * This requires a cooperation with the repository cache. Therefore this method is NOT synchronized
      * and has operation result as its parameter.
+     *
+     * If the version was checked within the {@link #freshnessWindow}, the repository is not contacted at all.
      */
     PrismObject<ResourceType> getIfLatest(@NotNull String oid, boolean readonly, OperationResult parentResult)
             throws SchemaException, ObjectNotFoundException {
         // First let's check if the cache contains given resource. If not, we can avoid getting version from the repo.
-        if (contains(oid)) {
+        CachedResource cachedResource = cache.get(oid);
+        if (cachedResource != null) {
+            long window = freshnessWindow;
+            if (window > 0 && System.currentTimeMillis() - cachedResource.lastVersionCheck < window) {
+                LOGGER.trace("Skipping version check for {} as it was checked recently", oid);
+                InternalMonitor.getResourceCacheStats().recordRequest();
+                PrismObject<ResourceType> resourceToReturn = toReturn(cachedResource, readonly);
+                recordHitOrMiss(true);
+                return resourceToReturn;
+            }
             String version = repositoryService.getVersion(ResourceType.class, oid, parentResult);
-            return get(oid, version, readonly);
+            PrismObject<ResourceType> resource = get(oid, cachedResource, version, readonly);
+            if (resource != null && window > 0) {
+                // If the entry was replaced or removed in the meanwhile, we simply do not record the check.
+                cache.replace(oid, cachedResource, cachedResource.withVersionChecked());
+            }
+            return resource;
         } else {
             LOGGER.debug("MISS(not cached) for {} (getIfLatest)", oid);
             CachePerformanceCollector.INSTANCE.registerMiss(ResourceCache.class, ResourceType.class, PER_CACHE);
@@ -194,18 +257,14 @@ public class ResourceCache implements Cache {
         }
     }
 
-    private synchronized boolean contains(@NotNull String oid) {
-        return cache.containsKey(oid);
-    }
-
     /**
      * Returns currently cached version. FOR DIAGNOSTICS ONLY.
      */
-    synchronized String getVersion(String oid) {
+    String getVersion(String oid) {
         if (oid == null) {
             return null;
         }
-        PrismObject<ResourceType> cachedResource = cache.get(oid);
+        CachedResource cachedResource = cache.get(oid);
         if (cachedResource == null) {
             return null;
         }
@@ -252,7 +311,7 @@ public class ResourceCache implements Cache {
 
     @NotNull
     @Override
-    public synchronized Collection<SingleCacheStateInformationType> getStateInformation() {
+    public Collection<SingleCacheStateInformationType> getStateInformation() {
         return Collections.singleton(
                 new SingleCacheStateInformationType()
                         .name(ResourceCache.class.getName())
@@ -263,8 +322,47 @@ public class ResourceCache implements Cache {
     @Override
     public void dumpContent() {
         if (LOGGER_CONTENT.isInfoEnabled()) {
-            cache.forEach((oid, resource) -> LOGGER_CONTENT.info("Cached resource: {}: {} (version: {})",
-                    oid, resource, resource.getVersion()));
+            cache.forEach((oid, cachedResource) -> LOGGER_CONTENT.info("Cached resource: {}: {} (version: {})",
+                    oid, cachedResource.resource, cachedResource.getVersion()));
+        }
+    }
+
+    @Override
+    public void update(@Nullable SystemConfigurationType value) {
+        InternalsConfigurationType internals = value != null ? value.getInternals() : null;
+        CachingConfigurationType caching = internals != null ? internals.getCaching() : null;
+        Long window = caching != null ? caching.getResourceCacheFreshnessWindow() : null;
+        freshnessWindow = window != null ? Math.max(0, window) : 0;
+    }
+
+    /** Immutable cache entry. */
+    private static class CachedResource {
+
+        /** Immutable resource object. */
+        @NotNull private final PrismObject<ResourceType> resource;
+
+        /**
+         * When was the version of the resource last known to be the current one. Zero for newly put entries: the resource
+         * could have been read before a concurrent modification (and its invalidation), so the first
+         * {@link #getIfLatest(String, boolean, OperationResult)} has to check the version in the repository.
+         */
+        private final long lastVersionCheck;
+
+        private CachedResource(@NotNull PrismObject<ResourceType> resource) {
+            this(resource, 0);
+        }
+
+        private CachedResource(@NotNull PrismObject<ResourceType> resource, long lastVersionCheck) {
+            this.resource = resource;
+            this.lastVersionCheck = lastVersionCheck;
+        }
+
+        String getVersion() {
+            return resource.getVersion();
+        }
+
+        CachedResource withVersionChecked() {
+            return new CachedResource(resource, System.currentTimeMillis());
         }
     }
 }
@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.impl.shadows;
+
+import static com.evolveum.midpoint.util.caching.CacheConfiguration.StatisticsLevel.PER_CACHE;
+
+import java.util.*;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.xml.namespace.QName;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.CacheInvalidationContext;
+import com.evolveum.midpoint.prism.Item;
+import com.evolveum.midpoint.prism.PrismContainer;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.PrismValue;
+import com.evolveum.midpoint.repo.api.CacheRegistry;
+import com.evolveum.midpoint.repo.api.DeleteObjectResult;
+import com.evolveum.midpoint.repo.api.ModifyObjectResult;
+import com.evolveum.midpoint.repo.api.RepositoryOperationResult;
+import com.evolveum.midpoint.repo.cache.handlers.AddObjectResult;
+import com.evolveum.midpoint.repo.cache.invalidation.RepositoryCacheInvalidationDetails;
+import com.evolveum.midpoint.schema.cache.CacheConfigurationManager;
+import com.evolveum.midpoint.schema.cache.CacheType;
+import com.evolveum.midpoint.schema.util.ShadowUtil;
+import com.evolveum.midpoint.util.caching.CacheConfiguration;
+import com.evolveum.midpoint.util.caching.CacheConfiguration.CacheObjectTypeConfiguration;
+import com.evolveum.midpoint.util.caching.CachePerformanceCollector;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SingleCacheStateInformationType;
+
+/**
+ * Remembers identifier values for which there was no live shadow in the repository, as found by {@link ConstraintsChecker}.
+ * Unlike {@link ConstraintsChecker.Cache} it is not bound to a thread and an operation, so e.g. bulk creation of accounts
+ * does not need to query the repository for each identifier.
+ *
+ * Entries are keyed by (resource OID, object class, attribute name, value). Shadows added or modified on this node
+ * invalidate the entries for their attribute values. Other events (e.g. ones coming from other nodes, without the details)
+ * clear the whole cache. Because shadow changes are not invalidated clusterwide by default, a shadow created on another
+ * node may be unnoticed until the entry expires. Therefore, the cache is disabled unless it is explicitly enabled
+ * by `globalAbsentShadowIdentifiersCache` in the caching profile (with settings for `ShadowType`), and the entries
+ * expire after the time-to-live given there.
+ */
+@Component
+class AbsentIdentifiersCache implements com.evolveum.midpoint.repo.api.Cache {
+
+    private static final Trace LOGGER = TraceManager.getTrace(AbsentIdentifiersCache.class);
+    private static final Trace LOGGER_CONTENT = TraceManager.getTrace(AbsentIdentifiersCache.class.getName() + ".content");
+
+    private static final long MAX_SIZE = 10000;
+
+    /** In seconds. */
+    private static final long DEFAULT_TIME_TO_LIVE = 60;
+
+    @Autowired private CacheRegistry cacheRegistry;
+    @Autowired private CacheConfigurationManager cacheConfigurationManager;
+
+    /** Values are the expiration times of the entries. */
+    @NotNull private final Cache<Key, Long> cache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_SIZE)
+            .build();
+
+    /**
+     * Incremented on each invalidation. Entries are not put into the cache if there was an invalidation
+     * since the repository was queried, as the query result may be outdated. Guarded by `this`.
+     */
+    private long invalidationCount;
+
+    @PostConstruct
+    public void register() {
+        cacheRegistry.registerCache(this);
+    }
+
+    @PreDestroy
+    public void unregister() {
+        cacheRegistry.unregisterCache(this);
+    }
+
+    /** Returns a stamp to be used when the result of the repository query is put into the cache. */
+    synchronized long getStamp() {
+        return invalidationCount;
+    }
+
+    /**
+     * Returns the time to live of the entries (in milliseconds), or null if the cache is not enabled
+     * by the caching configuration.
+     */
+    private @Nullable Long getTimeToLive() {
+        CacheConfiguration configuration =
+                cacheConfigurationManager.getConfiguration(CacheType.GLOBAL_ABSENT_SHADOW_IDENTIFIERS_CACHE);
+        CacheObjectTypeConfiguration typeConfiguration =
+                configuration != null ? configuration.getForObjectType(ShadowType.class) : null;
+        if (typeConfiguration == null
+                || configuration.getMaxSize() != null && configuration.getMaxSize() <= 0) {
+            return null;
+        }
+        long seconds = typeConfiguration.getEffectiveTimeToLive() != null ?
+                typeConfiguration.getEffectiveTimeToLive() : DEFAULT_TIME_TO_LIVE;
+        return seconds > 0 ? seconds * 1000L : null;
+    }
+
+    /** Are all the values known to be absent? Always false if the cache is not enabled. */
+    boolean areAbsent(@NotNull String resourceOid, @NotNull QName objectClassName, @NotNull QName attributeName,
+            @NotNull Collection<?> realValues) {
+        if (getTimeToLive() == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        boolean absent = !realValues.isEmpty()
+                && realValues.stream().allMatch(
+                        value -> isAbsent(new Key(resourceOid, objectClassName, attributeName, value), now));
+        if (absent) {
+            CachePerformanceCollector.INSTANCE.registerHit(AbsentIdentifiersCache.class, ShadowType.class, PER_CACHE);
+        } else {
+            CachePerformanceCollector.INSTANCE.registerMiss(AbsentIdentifiersCache.class, ShadowType.class, PER_CACHE);
+        }
+        return absent;
+    }
+
+    private boolean isAbsent(@NotNull Key key, long now) {
+        Long expiration = cache.getIfPresent(key);
+        if (expiration == null) {
+            return false;
+        } else if (expiration <= now) {
+            cache.asMap().remove(key, expiration);
+            return false;
+        } else {
+            return true;
+        }
+    }
+
+    /**
+     * Records the values as absent, unless there was an invalidation since the stamp was taken,
+     * or the cache is not enabled.
+     */
+    synchronized void setAbsent(long stamp, @NotNull String resourceOid, @NotNull QName objectClassName,
+            @NotNull QName attributeName, @NotNull Collection<?> realValues) {
+        Long timeToLive = getTimeToLive();
+        if (timeToLive == null) {
+            return;
+        }
+        if (stamp != invalidationCount) {
+            LOGGER.trace("Not caching absence of {} values {} because of intervening invalidation", attributeName, realValues);
+            return;
+        }
+        long expiration = System.currentTimeMillis() + timeToLive;
+        for (Object realValue : realValues) {
+            cache.put(new Key(resourceOid, objectClassName, attributeName, realValue), expiration);
+        }
+    }
+
+    @Override
+    public synchronized void invalidate(Class<?> type, String oid, CacheInvalidationContext context) {
+        if (type != null && !type.isAssignableFrom(ShadowType.class)) {
+            return;
+        }
+        invalidationCount++;
+        RepositoryOperationResult operationResult = getOperationResult(context);
+        if (operationResult instanceof DeleteObjectResult) {
+            // Deletion of a shadow cannot make an absent value present.
+            return;
+        }
+        PrismObject<?> shadow = getShadow(operationResult);
+        if (type == null || shadow == null || !ShadowType.class.equals(shadow.getCompileTimeClass())) {
+            LOGGER.trace("Invalidating the whole cache (type: {}, oid: {})", type, oid);
+            cache.invalidateAll();
+        } else {
+            //noinspection unchecked
+            invalidateForShadow(((PrismObject<ShadowType>) shadow).asObjectable());
+        }
+    }
+
+    private RepositoryOperationResult getOperationResult(CacheInvalidationContext context) {
+        if (context != null && context.getDetails() instanceof RepositoryCacheInvalidationDetails) {
+            return ((RepositoryCacheInvalidationDetails) context.getDetails()).getResult();
+        } else {
+            return null;
+        }
+    }
+
+    private @Nullable PrismObject<?> getShadow(RepositoryOperationResult operationResult) {
+        if (operationResult instanceof AddObjectResult) {
+            return ((AddObjectResult<?>) operationResult).getObject();
+        } else if (operationResult instanceof ModifyObjectResult) {
+            return ((ModifyObjectResult<?>) operationResult).getObjectAfter();
+        } else {
+            return null;
+        }
+    }
+
+    /** Removes entries for all attribute values of the shadow. Guarded by `this`. */
+    private void invalidateForShadow(@NotNull ShadowType shadow) {
+        String resourceOid = ShadowUtil.getResourceOid(shadow);
+        QName objectClassName = shadow.getObjectClass();
+        PrismContainer<?> attributes = shadow.asPrismObject().findContainer(ShadowType.F_ATTRIBUTES);
+        if (resourceOid == null || objectClassName == null) {
+            LOGGER.trace("No resource OID or object class in {}, invalidating the whole cache", shadow);
+            cache.invalidateAll();
+            return;
+        }
+        if (attributes == null || attributes.isEmpty()) {
+            return;
+        }
+        for (Item<?, ?> attribute : attributes.getValue().getItems()) {
+            for (PrismValue value : attribute.getValues()) {
+                cache.invalidate(new Key(resourceOid, objectClassName, attribute.getElementName(), value.getRealValue()));
+            }
+        }
+    }
+
+    @Override
+    public @NotNull Collection<SingleCacheStateInformationType> getStateInformation() {
+        return Collections.singleton(
+                new SingleCacheStateInformationType()
+                        .name(AbsentIdentifiersCache.class.getName())
+                        .size((int) cache.size()));
+    }
+
+    @Override
+    public void dumpContent() {
+        if (LOGGER_CONTENT.isInfoEnabled()) {
+            cache.asMap().keySet().forEach(key -> LOGGER_CONTENT.info("Cached absent identifier: {}", key));
+        }
+    }
+
+    /**
+     * Values are compared using their string representation. (Values in the repository are normalized,
+     * but their Java types may differ.) A spurious match may only cause an unnecessary invalidation.
+     */
+    private static class Key {
+
+        @NotNull private final String resourceOid;
+        @NotNull private final QName objectClassName;
+        @NotNull private final QName attributeName;
+        @NotNull private final String value;
+
+        private Key(@NotNull String resourceOid, @NotNull QName objectClassName, @NotNull QName attributeName,
+                Object value) {
+            this.resourceOid = resourceOid;
+            this.objectClassName = objectClassName;
+            this.attributeName = attributeName;
+            this.value = String.valueOf(value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return resourceOid.equals(key.resourceOid)
+                    && objectClassName.equals(key.objectClassName)
+                    && attributeName.equals(key.attributeName)
+                    && value.equals(key.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(resourceOid, objectClassName, attributeName, value);
+        }
+
+        @Override
+        public String toString() {
+            return resourceOid + ":" + objectClassName.getLocalPart() + ":" + attributeName.getLocalPart() + "=" + value;
+        }
+    }
+}
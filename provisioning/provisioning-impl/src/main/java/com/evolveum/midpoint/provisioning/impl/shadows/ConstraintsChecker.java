@@ -54,6 +54,9 @@ public class ConstraintsChecker {
 
     private static final ConcurrentHashMap<Thread, Cache> CACHE_INSTANCES = new ConcurrentHashMap<>();
 
+    /** We need to know only whether there is zero, one, or more conflicting shadows. */
+    private static final int MAX_CONFLICTING_OIDS = 2;
+
     private ProvisioningContext provisioningContext;
     private final StringBuilder messageBuilder = new StringBuilder();
     private PrismObject<ShadowType> shadowObject;
@@ -188,6 +191,52 @@ public class ConstraintsChecker {
             return true;
         }
 
+        // Values as they are stored in the repository; this is how the absent identifiers cache is keyed.
+        Collection<?> normalizedValues = getNormalizedRealValues(identifier, resourceObjectDefinition);
+        AbsentIdentifiersCache absentIdentifiersCache = shadowsLocalBeans.absentIdentifiersCache;
+        if (useCache && absentIdentifiersCache.areAbsent(
+                resourceType.getOid(),
+                resourceObjectDefinition.getObjectClassName(),
+                identifier.getDefinition().getItemName(),
+                normalizedValues)) {
+            LOGGER.trace("Uniqueness check of {} skipped, as the values are known to be absent", identifier);
+            return true;
+        }
+
+        // First we ask only for OIDs. Full shadows are needed only if there is a conflict.
+        long stamp = absentIdentifiersCache.getStamp();
+        List<String> matchingOids =
+                shadowsLocalBeans.shadowFinder.searchShadowOids(provisioningContext, query, MAX_CONFLICTING_OIDS, result);
+        LOGGER.trace("Uniqueness check of {} resulted in OIDs: {}", identifier, matchingOids);
+        if (matchingOids.isEmpty()) {
+            if (useCache) {
+                absentIdentifiersCache.setAbsent(
+                        stamp,
+                        resourceType.getOid(),
+                        resourceObjectDefinition.getObjectClassName(),
+                        identifier.getDefinition().getItemName(),
+                        normalizedValues);
+                Cache.setOk(
+                        resourceType.getOid(),
+                        shadowOid,
+                        resourceObjectDefinition.getTypeName(),
+                        identifier.getDefinition().getItemName(),
+                        identifier.getValues());
+            }
+            return true;
+        }
+        if (matchingOids.size() == 1 && matchingOids.get(0).equals(shadowOid)) {
+            if (useCache) {
+                Cache.setOk(
+                        resourceType.getOid(),
+                        shadowOid,
+                        resourceObjectDefinition.getTypeName(),
+                        identifier.getDefinition().getItemName(),
+                        identifier.getValues());
+            }
+            return true;
+        }
+
         // Note that we should not call repository service directly here. The query values need to be normalized according to
         // attribute matching rules.
         List<PrismObject<ShadowType>> matchingObjects =
@@ -247,6 +296,15 @@ public class ConstraintsChecker {
         return unique;
     }
 
+    private Collection<?> getNormalizedRealValues(PrismProperty<?> identifier, ResourceObjectDefinition definition)
+            throws SchemaException {
+        List<Object> realValues = new ArrayList<>();
+        for (PrismPropertyValue<?> value : ShadowsNormalizationUtil.getNormalizedValues(identifier, definition)) {
+            realValues.add(value.getRealValue());
+        }
+        return realValues;
+    }
+
     private void message(String message) {
         if (messageBuilder.length() != 0) {
             messageBuilder.append(", ");
@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.impl.shadows;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.xml.datatype.Duration;
+import javax.xml.namespace.QName;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.common.Clock;
+import com.evolveum.midpoint.prism.PrismProperty;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.provisioning.impl.ProvisioningContext;
+import com.evolveum.midpoint.schema.constants.SchemaConstants;
+import com.evolveum.midpoint.schema.util.ResourceTypeUtil;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Limits the retries of pending operations, per resource.
+ *
+ * Shadow refresh and reconciliation tasks retry the pending operations shadow by shadow, possibly in many worker
+ * threads (and tasks). This class makes sure that they do not overload a resource:
+ *
+ * 1. At most `maxConcurrentRetries` shadows of a resource are retried concurrently. It defaults to the connector
+ * pool size, as more concurrent operations would wait for the connector instances anyway.
+ * 2. At most `maxRetriesPerSecond` shadows of a resource are retried per second.
+ * 3. Optionally (if `unavailableBackoffInterval` is set), if the resource is known to be down, only a single shadow
+ * is retried after `unavailableBackoffInterval`, and the retries of the other shadows are skipped (without counting
+ * them as attempts). If the resource is still down, the interval is doubled, up to `maxUnavailableBackoffInterval`.
+ * The backoff is over when an operation gets through, or when the resource is marked as being up again.
+ *
+ * A retry waits for a free slot at most `maxWait`; then it is skipped as well. The permits are reentrant:
+ * a thread that already holds a permit for a resource (e.g. because of a nested refresh) gets another one immediately.
+ *
+ * The state is kept in memory, so it is not shared among cluster nodes.
+ */
+@Component
+public class PendingOperationRetryThrottle {
+
+    private static final Trace LOGGER = TraceManager.getTrace(PendingOperationRetryThrottle.class);
+
+    private static final long DEFAULT_MAX_WAIT = 60_000L;
+    private static final long DEFAULT_MAX_UNAVAILABLE_BACKOFF_INTERVAL = 1_800_000L;
+
+    private static final ItemPath PATH_POOL_MAX_OBJECTS = ItemPath.create(
+            ResourceType.F_CONNECTOR_CONFIGURATION,
+            new QName(SchemaConstants.NS_ICF_CONFIGURATION, "connectorPoolConfiguration"),
+            new QName(SchemaConstants.NS_ICF_CONFIGURATION, "maxObjects"));
+
+    @Autowired private Clock clock;
+
+    /** Keyed by resource OID. */
+    @NotNull private final Map<String, ResourceState> states = new ConcurrentHashMap<>();
+
+    /** OIDs of resources for which the current thread holds a (non-nested) permit. */
+    @NotNull private final ThreadLocal<Set<String>> heldPermits = ThreadLocal.withInitial(HashSet::new);
+
+    /**
+     * Waits until a shadow on the resource can be retried.
+     *
+     * @return The permit that has to be closed after the retry, or null if the retry should be skipped now.
+     */
+    @Nullable Permit acquire(@NotNull ProvisioningContext ctx) {
+        return acquire(ctx.getResource());
+    }
+
+    @VisibleForTesting
+    @Nullable Permit acquire(@NotNull ResourceType resource) {
+        String resourceOid = resource.getOid();
+        ResourceState state = states.computeIfAbsent(resourceOid, oid -> new ResourceState());
+        if (heldPermits.get().contains(resourceOid)) {
+            LOGGER.trace("Permit for {} is already held by this thread, not waiting for another one", resourceOid);
+            return new Permit(state, resourceOid, false, true, 0);
+        }
+        ResourceConsistencyType consistency = resource.getConsistency();
+        OperationRetryThrottlingType config = consistency != null ? consistency.getOperationRetryThrottling() : null;
+        Duration backoffInterval = config != null ? config.getUnavailableBackoffInterval() : null;
+        boolean down = backoffInterval != null
+                && ResourceTypeUtil.getLastAvailabilityStatus(resource) == AvailabilityStatusType.DOWN;
+        try {
+            Permit permit = state.acquire(
+                    resourceOid,
+                    down,
+                    getMaxConcurrentRetries(config, resource),
+                    config != null ? config.getMaxRetriesPerSecond() : null,
+                    toMillis(config != null ? config.getMaxWait() : null, DEFAULT_MAX_WAIT),
+                    toMillis(backoffInterval, 0),
+                    toMillis(config != null ? config.getMaxUnavailableBackoffInterval() : null,
+                            DEFAULT_MAX_UNAVAILABLE_BACKOFF_INTERVAL));
+            if (permit != null) {
+                heldPermits.get().add(resourceOid);
+            }
+            return permit;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.debug("Interrupted while waiting for the retry of pending operations on {}", resource);
+            return null;
+        }
+    }
+
+    /**
+     * Records that the resource was found to be unavailable. The backoff interval is started (or prolonged).
+     */
+    public void recordUnavailable(@NotNull String resourceOid) {
+        states.computeIfAbsent(resourceOid, oid -> new ResourceState())
+                .recordUnavailable(resourceOid);
+    }
+
+    /** Zero means "unlimited". */
+    private int getMaxConcurrentRetries(@Nullable OperationRetryThrottlingType config, @NotNull ResourceType resource) {
+        if (config != null && config.getMaxConcurrentRetries() != null) {
+            return Math.max(0, config.getMaxConcurrentRetries());
+        }
+        PrismProperty<?> maxObjects = resource.asPrismObject().findProperty(PATH_POOL_MAX_OBJECTS);
+        Object value = maxObjects != null ? maxObjects.getRealValue() : null;
+        if (value instanceof Number) {
+            return Math.max(0, ((Number) value).intValue());
+        } else if (value != null) {
+            try {
+                return Math.max(0, Integer.parseInt(value.toString().trim()));
+            } catch (NumberFormatException e) {
+                LOGGER.debug("Couldn't parse connector pool maxObjects value '{}' in {}", value, resource);
+            }
+        }
+        return 0;
+    }
+
+    private static long toMillis(@Nullable Duration duration, long defaultValue) {
+        return duration != null ? Math.max(0, duration.getTimeInMillis(new Date())) : defaultValue;
+    }
+
+    /** Throttling state for a single resource. */
+    private class ResourceState {
+
+        /** Shadows being retried right now. */
+        private int running;
+
+        /** When (in {@link System#nanoTime()} terms) the next retry can be started, if the rate is limited. */
+        private long nextSlot;
+
+        /** Number of consecutive unavailability observations. Zero if not in the backoff mode. */
+        private int failures;
+
+        /** When the next probe can be started, if the resource is down. */
+        private long nextProbe;
+
+        /** Is a probe (a retry on a resource that is down) being executed? */
+        private boolean probing;
+
+        private long backoffInterval;
+        private long maxBackoffInterval = DEFAULT_MAX_UNAVAILABLE_BACKOFF_INTERVAL;
+
+        /**
+         * @param down True if the resource is down and the backoff is enabled.
+         * @return null if the retry should be skipped (because of the backoff or the wait timeout)
+         */
+        private Permit acquire(String resourceOid, boolean down, int maxConcurrent, Double maxPerSecond, long maxWait,
+                long backoffInterval, long maxBackoffInterval) throws InterruptedException {
+            long waitNanos;
+            Permit permit;
+            synchronized (this) {
+                this.backoffInterval = backoffInterval;
+                this.maxBackoffInterval = maxBackoffInterval;
+                if (down) {
+                    long now = clock.currentTimeMillis();
+                    if (probing || now < nextProbe) {
+                        LOGGER.trace("Resource {} is down, skipping the retry (next probe at {})", resourceOid, nextProbe);
+                        return null;
+                    }
+                    LOGGER.debug("Resource {} is down, trying a single retry to check its availability", resourceOid);
+                    probing = true;
+                    permit = new Permit(this, resourceOid, true, false, failures);
+                } else {
+                    if (failures > 0) {
+                        LOGGER.debug("Resource {} is no longer down, ending the retry backoff", resourceOid);
+                        resetBackoff();
+                    }
+                    permit = new Permit(this, resourceOid, false, false, failures);
+                }
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWait);
+                while (maxConcurrent > 0 && running >= maxConcurrent) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        LOGGER.debug("Waited {} ms for a retry slot on {} in vain, skipping the retry", maxWait, resourceOid);
+                        if (permit.probe) {
+                            probing = false;
+                        }
+                        return null;
+                    }
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    } catch (InterruptedException e) {
+                        if (permit.probe) {
+                            probing = false;
+                        }
+                        throw e;
+                    }
+                }
+                running++;
+                if (maxPerSecond != null && maxPerSecond > 0) {
+                    long now = System.nanoTime();
+                    long slot = Math.max(now, nextSlot);
+                    nextSlot = slot + (long) (TimeUnit.SECONDS.toNanos(1) / maxPerSecond);
+                    waitNanos = slot - now;
+                } else {
+                    waitNanos = 0;
+                }
+            }
+            if (waitNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    release(permit);
+                    throw e;
+                }
+            }
+            return permit;
+        }
+
+        private synchronized void release(@NotNull Permit permit) {
+            running--;
+            if (permit.probe) {
+                probing = false;
+                if (failures == permit.failuresAtStart) {
+                    // The resource was not marked as unavailable during the retry, so the operation got through.
+                    resetBackoff();
+                }
+            }
+            notifyAll();
+        }
+
+        private synchronized void recordUnavailable(String resourceOid) {
+            failures++;
+            long interval = backoffInterval;
+            for (int i = 1; i < failures && interval < maxBackoffInterval; i++) {
+                interval *= 2;
+            }
+            interval = Math.min(interval, maxBackoffInterval);
+            nextProbe = clock.currentTimeMillis() + interval;
+            LOGGER.debug("Resource {} is unavailable ({} time(s) in a row), retries postponed for {} ms",
+                    resourceOid, failures, interval);
+        }
+
+        private void resetBackoff() {
+            failures = 0;
+            nextProbe = 0;
+        }
+    }
+
+    /** Permission to retry operations of a single shadow. To be closed by the thread that acquired it. */
+    class Permit implements AutoCloseable {
+
+        @NotNull private final ResourceState state;
+        @NotNull private final String resourceOid;
+        private final boolean probe;
+
+        /** Nested permit, i.e. one acquired by a thread already holding a permit; it is not counted. */
+        private final boolean nested;
+        private final int failuresAtStart;
+        private boolean closed;
+
+        private Permit(@NotNull ResourceState state, @NotNull String resourceOid, boolean probe, boolean nested,
+                int failuresAtStart) {
+            this.state = state;
+            this.resourceOid = resourceOid;
+            this.probe = probe;
+            this.nested = nested;
+            this.failuresAtStart = failuresAtStart;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                if (!nested) {
+                    heldPermits.get().remove(resourceOid);
+                    state.release(this);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.impl.shadows;
+
+import java.util.*;
+import javax.xml.namespace.QName;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.prism.PrismProperty;
+import com.evolveum.midpoint.provisioning.impl.ProvisioningContext;
+import com.evolveum.midpoint.provisioning.impl.resourceobjects.ResourceObjectFound;
+import com.evolveum.midpoint.provisioning.util.ProvisioningUtil;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.util.exception.CommonException;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+
+/**
+ * Live repository shadows looked up in advance for a batch of resource objects found by a search, so that
+ * {@link ShadowAcquisition} does not need to query the repository for each object separately.
+ *
+ * The lookup is done using a single query per object class (and auxiliary object classes). Its result for a particular
+ * object is used at most once; any later acquisition for the same identifier goes to the repository, as usual.
+ * Objects that were not looked up (e.g. flawed ones, the ones whose batch lookup failed, or the ones for which the lookup
+ * result is not certain) are acquired in the usual way as well.
+ *
+ * Creation of missing shadows, classification, and dead shadows handling is left to {@link ShadowAcquisition},
+ * i.e. it is done for each object individually.
+ */
+class PrefetchedShadows {
+
+    private static final Trace LOGGER = TraceManager.getTrace(PrefetchedShadows.class);
+
+    /** Result of the lookup: the live shadow, or null if there is none. Keyed by object class and identifier key. */
+    @NotNull private final Map<QName, Map<String, ShadowType>> lookupResults = new HashMap<>();
+
+    @NotNull private final ShadowsLocalBeans localBeans;
+
+    private PrefetchedShadows(@NotNull ShadowsLocalBeans localBeans) {
+        this.localBeans = localBeans;
+    }
+
+    /** Looks up live shadows for all (non-flawed) objects in the list. Errors are logged and the lookup is skipped. */
+    static @NotNull PrefetchedShadows prefetch(@NotNull ProvisioningContext ctx, @NotNull List<ResourceObjectFound> objects,
+            @NotNull ShadowsLocalBeans localBeans, @NotNull OperationResult result) {
+        PrefetchedShadows prefetchedShadows = new PrefetchedShadows(localBeans);
+        Map<List<QName>, Batch> batches = new LinkedHashMap<>();
+        for (ResourceObjectFound object : objects) {
+            ShadowType resourceObject = object.getResourceObject();
+            if (!object.getInitializationState().isOk() || resourceObject.getObjectClass() == null) {
+                continue;
+            }
+            try {
+                // The same way as ShadowedObjectFound does it before the acquisition, so the keys are computed the same way.
+                ProvisioningContext estimatedCtx = localBeans.shadowCaretaker.reapplyDefinitions(ctx, resourceObject);
+                PrismProperty<?> identifier = ProvisioningUtil.getSingleValuedPrimaryIdentifier(resourceObject);
+                if (identifier != null && identifier.size() == 1) {
+                    // The definition is determined by the object class and auxiliary object classes.
+                    List<QName> classes = new ArrayList<>();
+                    classes.add(resourceObject.getObjectClass());
+                    classes.addAll(resourceObject.getAuxiliaryObjectClass());
+                    batches.computeIfAbsent(classes, k -> new Batch(estimatedCtx, resourceObject.getObjectClass()))
+                            .identifiers.add(identifier);
+                }
+            } catch (CommonException | RuntimeException e) {
+                LoggingUtils.logUnexpectedException(LOGGER,
+                        "Couldn't prepare the shadow lookup for {}, it will be looked up individually", e, resourceObject);
+            }
+        }
+        for (Batch batch : batches.values()) {
+            try {
+                prefetchedShadows.prefetch(batch, result);
+            } catch (CommonException | RuntimeException e) {
+                LoggingUtils.logUnexpectedException(LOGGER,
+                        "Couldn't look up shadows for {} objects of {}, they will be looked up individually", e,
+                        batch.identifiers.size(), batch.objectClass);
+            }
+        }
+        return prefetchedShadows;
+    }
+
+    private void prefetch(Batch batch, OperationResult result) throws CommonException {
+        Map<String, ShadowType> batchResults = localBeans.shadowFinder.lookupLiveShadowsByPrimaryIds(
+                batch.ctx, batch.identifiers, batch.objectClass, result);
+        LOGGER.trace("Prefetched lookup results for {} out of {} objects of {}",
+                batchResults.size(), batch.identifiers.size(), batch.objectClass);
+        // Only the identifiers with known results are present, so the others will be looked up individually.
+        lookupResults.computeIfAbsent(batch.objectClass, k -> new HashMap<>())
+                .putAll(batchResults);
+    }
+
+    /**
+     * Returns the lookup result for given primary identifier, and forgets it.
+     *
+     * @return null if the identifier was not looked up; otherwise the lookup result (with null shadow if there's no live one)
+     */
+    @Nullable LookupResult take(@NotNull ProvisioningContext ctx, @NotNull QName objectClass,
+            @NotNull PrismProperty<?> primaryIdentifier) throws SchemaException {
+        Map<String, ShadowType> forClass = lookupResults.get(objectClass);
+        if (forClass == null || forClass.isEmpty()) {
+            return null;
+        }
+        String key = localBeans.shadowFinder.getPrimaryIdentifierKey(ctx, primaryIdentifier);
+        if (!forClass.containsKey(key)) {
+            return null;
+        }
+        return new LookupResult(forClass.remove(key));
+    }
+
+    /** Objects sharing the same definition, so their shadows can be looked up together. */
+    private static class Batch {
+
+        @NotNull private final ProvisioningContext ctx;
+        @NotNull private final QName objectClass;
+        @NotNull private final List<PrismProperty<?>> identifiers = new ArrayList<>();
+
+        private Batch(@NotNull ProvisioningContext ctx, @NotNull QName objectClass) {
+            this.ctx = ctx;
+            this.objectClass = objectClass;
+        }
+    }
+
+    static class LookupResult {
+
+        /** The live shadow found, or null if there is none. */
+        @Nullable final ShadowType liveShadow;
+
+        private LookupResult(@Nullable ShadowType liveShadow) {
+            this.liveShadow = liveShadow;
+        }
+    }
+}
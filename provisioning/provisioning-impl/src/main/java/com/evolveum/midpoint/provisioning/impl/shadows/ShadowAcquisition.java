@@ -22,6 +22,7 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectReferenceType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.xml.namespace.QName;
 
@@ -77,6 +78,9 @@ class ShadowAcquisition {
     /** Whether we want to skip the classification. It is used e.g. in emergency shadow creation. */
     private final boolean skipClassification;
 
+    /** Live shadows looked up in advance (if any). Used instead of the individual lookup, if applicable. */
+    @Nullable private final PrefetchedShadows prefetchedShadows;
+
     private final CommonBeans beans;
     private final ShadowsLocalBeans localBeans;
 
@@ -86,12 +90,14 @@ class ShadowAcquisition {
             @NotNull QName objectClass,
             @NotNull ResourceObjectSupplier resourceObjectSupplier,
             boolean skipClassification,
+            @Nullable PrefetchedShadows prefetchedShadows,
             CommonBeans commonBeans) {
         this.ctx = ctx;
         this.primaryIdentifier = primaryIdentifier;
         this.objectClass = objectClass;
         this.resourceObjectSupplier = resourceObjectSupplier;
         this.skipClassification = skipClassification;
+        this.prefetchedShadows = prefetchedShadows;
         this.beans = commonBeans;
         this.localBeans = commonBeans.shadowsFacade.getLocalBeans();
     }
@@ -143,8 +149,7 @@ class ShadowAcquisition {
     private @NotNull ShadowType obtainRepoShadow(OperationResult result)
             throws SchemaException, ConfigurationException, EncryptionException {
 
-        ShadowType existingLiveRepoShadow =
-                localBeans.shadowFinder.lookupLiveShadowByPrimaryId(ctx, primaryIdentifier, objectClass, result);
+        ShadowType existingLiveRepoShadow = lookupLiveShadow(result);
 
         if (existingLiveRepoShadow != null) {
             LOGGER.trace("Found live shadow object in the repository {}", shortDumpShadowLazily(existingLiveRepoShadow));
@@ -170,6 +175,17 @@ class ShadowAcquisition {
         }
     }
 
+    private ShadowType lookupLiveShadow(OperationResult result) throws SchemaException {
+        PrefetchedShadows.LookupResult prefetched =
+                prefetchedShadows != null ? prefetchedShadows.take(ctx, objectClass, primaryIdentifier) : null;
+        if (prefetched != null) {
+            LOGGER.trace("Using prefetched lookup result: {}", prefetched.liveShadow);
+            return prefetched.liveShadow;
+        } else {
+            return localBeans.shadowFinder.lookupLiveShadowByPrimaryId(ctx, primaryIdentifier, objectClass, result);
+        }
+    }
+
     private @NotNull ShadowType findConflictingShadow(
             ShadowType resourceObject, ObjectAlreadyExistsException e, OperationResult result)
             throws SchemaException {
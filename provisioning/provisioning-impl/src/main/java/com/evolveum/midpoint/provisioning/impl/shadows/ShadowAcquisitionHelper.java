@@ -12,6 +12,7 @@ import static java.util.Objects.requireNonNull;
 import javax.xml.namespace.QName;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -54,6 +55,18 @@ class ShadowAcquisitionHelper {
             ProvisioningContext ctx, ShadowType resourceObject, boolean skipClassification, OperationResult result)
             throws SchemaException, ConfigurationException, ObjectNotFoundException, SecurityViolationException,
             CommunicationException, GenericConnectorException, ExpressionEvaluationException, EncryptionException {
+        return acquireRepoShadow(ctx, resourceObject, skipClassification, null, result);
+    }
+
+    /**
+     * As {@link #acquireRepoShadow(ProvisioningContext, ShadowType, boolean, OperationResult)} but using live shadows
+     * looked up in advance, if available.
+     */
+    @NotNull ShadowType acquireRepoShadow(
+            ProvisioningContext ctx, ShadowType resourceObject, boolean skipClassification,
+            @Nullable PrefetchedShadows prefetchedShadows, OperationResult result)
+            throws SchemaException, ConfigurationException, ObjectNotFoundException, SecurityViolationException,
+            CommunicationException, GenericConnectorException, ExpressionEvaluationException, EncryptionException {
 
         PrismProperty<?> primaryIdentifier = requireNonNull(
                 ProvisioningUtil.getSingleValuedPrimaryIdentifier(resourceObject),
@@ -62,7 +75,8 @@ class ShadowAcquisitionHelper {
                 resourceObject.getObjectClass(),
                 () -> "No object class in " + ShadowUtil.shortDumpShadow(resourceObject));
 
-        return new ShadowAcquisition(ctx, primaryIdentifier, objectClass, () -> resourceObject, skipClassification, commonBeans)
+        return new ShadowAcquisition(
+                ctx, primaryIdentifier, objectClass, () -> resourceObject, skipClassification, prefetchedShadows, commonBeans)
                 .execute(result);
     }
 
@@ -72,7 +86,7 @@ class ShadowAcquisitionHelper {
             GenericConnectorException, ExpressionEvaluationException, EncryptionException, SecurityViolationException {
 
         return new ShadowAcquisition(
-                ctx, primaryIdentifier, objectClass, resourceObjectSupplier, false, commonBeans)
+                ctx, primaryIdentifier, objectClass, resourceObjectSupplier, false, null, commonBeans)
                 .execute(result);
     }
 }
@@ -85,6 +85,7 @@ class ShadowRefreshHelper {
     @Autowired private EventDispatcher operationListener;
     @Autowired private ProvisioningContextFactory ctxFactory;
     @Autowired private DefinitionsHelper definitionsHelper;
+    @Autowired private PendingOperationRetryThrottle retryThrottle;
 
     public @NotNull RefreshShadowOperation refreshShadow(
             ShadowType repoShadow, ProvisioningOperationOptions options, Task task, OperationResult result)
@@ -388,7 +389,8 @@ class ShadowRefreshHelper {
         Duration retryPeriod = ProvisioningUtil.getRetryPeriod(ctx);
         LOGGER.trace("Selecting operations to retry from {} one(s); retry period: {}", sortedOperations.size(), retryPeriod);
 
-        Collection<ObjectDeltaOperation<ShadowType>> executedDeltas = new ArrayList<>();
+        XMLGregorianCalendar now = clock.currentTimeXMLGregorianCalendar();
+        List<PendingOperationType> operationsToRetry = new ArrayList<>();
         for (PendingOperationType pendingOperation : sortedOperations) {
 
             if (!isRetryableOperation(pendingOperation)) {
@@ -396,8 +398,6 @@ class ShadowRefreshHelper {
                 continue;
             }
 
-            // We really want to get "now" here. Retrying operation may take some time. We want good timestamps that do not lie.
-            XMLGregorianCalendar now = clock.currentTimeXMLGregorianCalendar();
             if (!isAfterRetryPeriod(pendingOperation, retryPeriod, now)) {
                 if (pendingOperation.getType() != RETRY) { // TODO why this distinction?
                     LOGGER.trace(
@@ -409,29 +409,81 @@ class ShadowRefreshHelper {
                     continue;
                 }
             }
+            operationsToRetry.add(pendingOperation);
+        }
 
-            LOGGER.trace("Going to retry operation {} on {}", pendingOperation, repoShadow);
+        Collection<ObjectDeltaOperation<ShadowType>> executedDeltas = new ArrayList<>();
+        if (!operationsToRetry.isEmpty()) {
+            try (PendingOperationRetryThrottle.Permit permit = retryThrottle.acquire(ctx)) {
+                if (permit == null) {
+                    LOGGER.debug("Skipping retry of {} operation(s) on {} because of the retry throttling on {}",
+                            operationsToRetry.size(), repoShadow, ctx.getResource());
+                    retryResult.recordNotApplicable("Retry postponed because of the retry throttling");
+                } else {
+                    repoShadow = retrySelectedOperations(
+                            ctx, repoShadow, operationsToRetry, executedDeltas, retryResult, parentResult);
+                }
+            }
+        }
 
-            // Record attempt number and timestamp before the operation
-            // TODO: later use this as an optimistic lock to make sure that two threads won't retry the operation at the same time
+        RefreshShadowOperation rso = new RefreshShadowOperation(repoShadow);
+        rso.setExecutedDeltas(executedDeltas);
+        rso.setRefreshResult(retryResult);
+
+        LOGGER.trace("refreshShadowOperation {}", rso.debugDumpLazily());
+        return rso;
+    }
+
+    /**
+     * Retries given operations (of the same shadow) one after another.
+     *
+     * The attempt numbers and timestamps are recorded for all the operations before any of them is retried,
+     * by a single repository update.
+     *
+     * @return The current version of the repository shadow.
+     */
+    private ShadowType retrySelectedOperations(
+            ProvisioningContext ctx,
+            ShadowType repoShadow,
+            List<PendingOperationType> operationsToRetry,
+            Collection<ObjectDeltaOperation<ShadowType>> executedDeltas,
+            OperationResult retryResult,
+            OperationResult parentResult)
+            throws ObjectNotFoundException, SchemaException, ConfigurationException {
 
+        // Record attempt number and timestamp before the operation
+        // TODO: later use this as an optimistic lock to make sure that two threads won't retry the operation at the same time
+        // We really want to get "now" here (after waiting for the permit). We want good timestamps that do not lie.
+        XMLGregorianCalendar now = clock.currentTimeXMLGregorianCalendar();
+        List<ItemDelta<?, ?>> shadowDeltas = new ArrayList<>();
+        List<Integer> attemptNumbers = new ArrayList<>();
+        for (PendingOperationType pendingOperation : operationsToRetry) {
             // TODO: move to a better place
             ItemPath containerPath = pendingOperation.asPrismContainerValue().getPath();
 
             int attemptNumber = or0(pendingOperation.getAttemptNumber()) + 1; // "or0" is there just for sure (btw, default is 1)
-            List<ItemDelta<?, ?>> shadowDeltas = prismContext.deltaFor(ShadowType.class)
-                    .item(containerPath.append(PendingOperationType.F_ATTEMPT_NUMBER))
-                    .replace(attemptNumber)
-                    .item(containerPath.append(PendingOperationType.F_LAST_ATTEMPT_TIMESTAMP))
-                    .replace(now)
-                    .item(containerPath.append(PendingOperationType.F_RESULT_STATUS))
-                    .replace(OperationResultStatusType.IN_PROGRESS)
-                    .asItemDeltas();
-
-            shadowUpdater.executeRepoShadowModifications(ctx, repoShadow, shadowDeltas, parentResult);
+            shadowDeltas.addAll(
+                    prismContext.deltaFor(ShadowType.class)
+                            .item(containerPath.append(PendingOperationType.F_ATTEMPT_NUMBER))
+                            .replace(attemptNumber)
+                            .item(containerPath.append(PendingOperationType.F_LAST_ATTEMPT_TIMESTAMP))
+                            .replace(now)
+                            .item(containerPath.append(PendingOperationType.F_RESULT_STATUS))
+                            .replace(OperationResultStatusType.IN_PROGRESS)
+                            .asItemDeltas());
+            attemptNumbers.add(attemptNumber);
+        }
+
+        shadowUpdater.executeRepoShadowModifications(ctx, repoShadow, shadowDeltas, parentResult);
+
+        for (int i = 0; i < operationsToRetry.size(); i++) {
+            PendingOperationType pendingOperation = operationsToRetry.get(i);
+            int attemptNumber = attemptNumbers.get(i);
             // The pending operation should be updated as part of the above call
             assert pendingOperation.getAttemptNumber() == attemptNumber;
 
+            LOGGER.trace("Going to retry operation {} on {}", pendingOperation, repoShadow);
+
             ObjectDelta<ShadowType> pendingDelta = DeltaConvertor.createObjectDelta(pendingOperation.getDelta());
 
             LOGGER.debug("Retrying operation {} on {}, attempt #{}", pendingDelta, repoShadow, attemptNumber);
@@ -471,13 +523,7 @@ class ShadowRefreshHelper {
             objectDeltaOperation.setExecutionResult(result);
             executedDeltas.add(objectDeltaOperation);
         }
-
-        RefreshShadowOperation rso = new RefreshShadowOperation(repoShadow);
-        rso.setExecutedDeltas(executedDeltas);
-        rso.setRefreshResult(retryResult);
-
-        LOGGER.trace("refreshShadowOperation {}", rso.debugDumpLazily());
-        return rso;
+        return repoShadow;
     }
 
     private @NotNull ProvisioningOperationState<?> retryOperation(
@@ -24,6 +24,7 @@ import com.evolveum.midpoint.provisioning.impl.resourceobjects.ResourceObjectFou
 import com.evolveum.midpoint.provisioning.impl.resourceobjects.ResourceObjectHandler;
 import com.evolveum.midpoint.provisioning.util.DefinitionsUtil;
 import com.evolveum.midpoint.provisioning.util.ProvisioningUtil;
+import com.evolveum.midpoint.repo.cache.RepositoryCache;
 import com.evolveum.midpoint.schema.*;
 import com.evolveum.midpoint.schema.internals.InternalCounters;
 import com.evolveum.midpoint.schema.internals.InternalMonitor;
@@ -35,7 +36,9 @@ import com.evolveum.midpoint.util.exception.*;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.FetchErrorReportingMethodType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.InternalsConfigurationType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SystemConfigurationType;
 
 /**
  * Implements `search` and `count` operations.
@@ -44,6 +47,11 @@ class ShadowSearchLikeOperation {
 
     private static final Trace LOGGER = TraceManager.getTrace(ShadowSearchLikeOperation.class);
 
+    private static final String OP_PROCESS_OBJECT_FOUND = ShadowSearchLikeOperation.class.getName() + ".processObjectFound";
+
+    /** How many objects found on the resource have their shadows looked up at once, if not configured otherwise. */
+    private static final int DEFAULT_SHADOW_LOOKUP_BATCH_SIZE = 100;
+
     @NotNull private final ProvisioningContext ctx;
     @Nullable private final ObjectQuery query;
 
@@ -150,29 +158,136 @@ class ShadowSearchLikeOperation {
         // We need to record the fetch down here. Now it is certain that we are going to fetch from resource.
         InternalMonitor.recordCount(InternalCounters.SHADOW_FETCH_OPERATION_COUNT);
 
-        ResourceObjectHandler shadowHandler = (ResourceObjectFound objectFound, OperationResult lResult) -> {
+        ShadowingHandler shadowHandler = new ShadowingHandler(handler, ucfErrorReportingMethod, getShadowLookupBatchSize());
 
-            ShadowedObjectFound shadowedObjectFound = new ShadowedObjectFound(objectFound, localBeans, ctx);
-            shadowedObjectFound.initialize(ctx.getTask(), lResult);
-            ShadowType shadowedObject = shadowedObjectFound.getResultingObject(ucfErrorReportingMethod);
+        boolean fetchAssociations = SelectorOptions.hasToIncludePath(ShadowType.F_ASSOCIATION, options, true);
+        try {
+            SearchResultMetadata metadata;
+            try {
+                metadata = localBeans.resourceObjectConverter.searchResourceObjects(
+                        ctx, shadowHandler, createOnResourceQuery(), fetchAssociations, ucfErrorReportingMethod, result);
+            } catch (Throwable t) {
+                // Objects found before the failure of the search are processed just as if there was no batching.
+                // But the original exception is what the client should get.
+                try {
+                    shadowHandler.processRemaining(result);
+                } catch (Throwable t2) {
+                    t.addSuppressed(t2);
+                }
+                throw t;
+            }
+            shadowHandler.processRemaining(result);
+            return metadata;
+        } catch (TunnelException e) {
+            unwrapAndThrowSearchingTunnelException(e);
+            throw new AssertionError();
+        }
+    }
+
+    private int getShadowLookupBatchSize() {
+        SystemConfigurationType systemConfiguration = localBeans.resourceManager.getSystemConfiguration();
+        InternalsConfigurationType internals = systemConfiguration != null ? systemConfiguration.getInternals() : null;
+        Integer configured = internals != null ? internals.getShadowLookupBatchSize() : null;
+        return configured != null ? configured : DEFAULT_SHADOW_LOOKUP_BATCH_SIZE;
+    }
+
+    /**
+     * Shadows the objects found on the resource and passes them to the client's handler.
+     *
+     * The objects are collected into a window of `internals/shadowLookupBatchSize` objects
+     * (default {@link #DEFAULT_SHADOW_LOOKUP_BATCH_SIZE}). Their live shadows
+     * are then looked up using a single repository query (see {@link PrefetchedShadows}), and the objects are shadowed
+     * and passed to the client one by one, in the original order. Everything except for the lookup (i.e. shadow creation,
+     * classification, dead shadows handling, and error reporting) is done for each object individually, as before.
+     *
+     * Because the operation result provided by the resource object search is closed when the object is processed,
+     * each object gets its own subresult of the result that is open at the time of processing.
+     */
+    private class ShadowingHandler implements ResourceObjectHandler {
+
+        @NotNull private final ResultHandler<ShadowType> handler;
+        private final FetchErrorReportingMethodType ucfErrorReportingMethod;
+
+        /** Maximal number of objects in the window. Values of 1 or less mean no batching. */
+        private final int batchSize;
 
+        /** Objects found but not processed yet. */
+        @NotNull private final List<ResourceObjectFound> window = new ArrayList<>();
+
+        /** Set when the client's handler asked to stop (or failed). No more objects are processed after that. */
+        private boolean stopped;
+
+        private ShadowingHandler(
+                @NotNull ResultHandler<ShadowType> handler, FetchErrorReportingMethodType ucfErrorReportingMethod,
+                int batchSize) {
+            this.handler = handler;
+            this.ucfErrorReportingMethod = ucfErrorReportingMethod;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public boolean handle(ResourceObjectFound objectFound, OperationResult lResult) {
             try {
-                return handler.handle(shadowedObject.asPrismObject(), lResult);
+                if (stopped) {
+                    return false;
+                }
+                window.add(objectFound);
+                return window.size() < batchSize || processWindow(lResult);
             } catch (Throwable t) {
                 lResult.recordException(t);
                 throw t;
             } finally {
                 lResult.close();
             }
-        };
+        }
 
-        boolean fetchAssociations = SelectorOptions.hasToIncludePath(ShadowType.F_ASSOCIATION, options, true);
-        try {
-            return localBeans.resourceObjectConverter.searchResourceObjects(
-                    ctx, shadowHandler, createOnResourceQuery(), fetchAssociations, ucfErrorReportingMethod, result);
-        } catch (TunnelException e) {
-            unwrapAndThrowSearchingTunnelException(e);
-            throw new AssertionError();
+        /** Processes objects that did not fill the whole window. Called after the search is over. */
+        void processRemaining(OperationResult result) {
+            if (stopped || window.isEmpty()) {
+                return;
+            }
+            RepositoryCache.enterLocalCaches(localBeans.cacheConfigurationManager);
+            try {
+                processWindow(result);
+            } finally {
+                RepositoryCache.exitLocalCaches();
+            }
+        }
+
+        private boolean processWindow(OperationResult parentResult) {
+            List<ResourceObjectFound> objects = new ArrayList<>(window);
+            window.clear();
+
+            PrefetchedShadows prefetchedShadows =
+                    batchSize > 1 ? PrefetchedShadows.prefetch(ctx, objects, localBeans, parentResult) : null;
+
+            for (ResourceObjectFound objectFound : objects) {
+                OperationResult result = parentResult.subresult(OP_PROCESS_OBJECT_FOUND)
+                        .setMinor()
+                        .addArbitraryObjectAsParam("primaryIdentifierValue", objectFound.getPrimaryIdentifierValue())
+                        .build();
+                try {
+                    if (!processObject(objectFound, prefetchedShadows, result)) {
+                        stopped = true;
+                        return false;
+                    }
+                } catch (Throwable t) {
+                    stopped = true;
+                    result.recordException(t);
+                    throw t;
+                } finally {
+                    result.close();
+                }
+            }
+            return true;
+        }
+
+        private boolean processObject(
+                ResourceObjectFound objectFound, @Nullable PrefetchedShadows prefetchedShadows, OperationResult result) {
+            ShadowedObjectFound shadowedObjectFound = new ShadowedObjectFound(objectFound, localBeans, ctx, prefetchedShadows);
+            shadowedObjectFound.initialize(ctx.getTask(), result);
+            ShadowType shadowedObject = shadowedObjectFound.getResultingObject(ucfErrorReportingMethod);
+            return handler.handle(shadowedObject.asPrismObject(), result);
         }
     }
 
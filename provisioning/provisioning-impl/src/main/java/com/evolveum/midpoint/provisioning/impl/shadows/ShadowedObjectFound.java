@@ -15,6 +15,7 @@ import java.util.Objects;
 import com.google.common.base.MoreObjects;
 import org.apache.commons.collections4.CollectionUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import com.evolveum.midpoint.prism.crypto.EncryptionException;
 import com.evolveum.midpoint.prism.polystring.PolyString;
@@ -80,11 +81,12 @@ public class ShadowedObjectFound implements InitializableMixin {
     /** Information used to initialize this object. */
     @NotNull private final InitializationContext ictx;
 
-    ShadowedObjectFound(ResourceObjectFound resourceObjectFound, ShadowsLocalBeans localBeans, ProvisioningContext ctx) {
+    ShadowedObjectFound(ResourceObjectFound resourceObjectFound, ShadowsLocalBeans localBeans, ProvisioningContext ctx,
+            @Nullable PrefetchedShadows prefetchedShadows) {
         this.resourceObject = resourceObjectFound.getResourceObject();
         this.primaryIdentifierValue = resourceObjectFound.getPrimaryIdentifierValue();
         this.initializationState = InitializationState.fromPreviousState(resourceObjectFound.getInitializationState());
-        this.ictx = new InitializationContext(localBeans, ctx);
+        this.ictx = new InitializationContext(localBeans, ctx, prefetchedShadows);
     }
 
     @Override
@@ -158,7 +160,7 @@ public class ShadowedObjectFound implements InitializableMixin {
         // Now find or create repository shadow, along with its classification (maybe it is not a good idea to merge the two).
         try {
             return ictx.localBeans.shadowAcquisitionHelper
-                    .acquireRepoShadow(estimatedCtx, resourceObject, false, result);
+                    .acquireRepoShadow(estimatedCtx, resourceObject, false, ictx.prefetchedShadows, result);
         } catch (Exception e) {
             // No need to log stack trace now. It will be logged at the place where the exception is processed.
             LOGGER.error("Couldn't acquire shadow for {}. Creating shadow in emergency mode. Error: {}", resourceObject, getClassWithMessage(e));
@@ -303,9 +305,14 @@ public class ShadowedObjectFound implements InitializableMixin {
         private final ShadowsLocalBeans localBeans;
         private final ProvisioningContext ctx;
 
-        private InitializationContext(ShadowsLocalBeans localBeans, ProvisioningContext ctx) {
+        /** Live shadows looked up in advance for the current batch of objects (if any). */
+        @Nullable private final PrefetchedShadows prefetchedShadows;
+
+        private InitializationContext(
+                ShadowsLocalBeans localBeans, ProvisioningContext ctx, @Nullable PrefetchedShadows prefetchedShadows) {
             this.localBeans = localBeans;
             this.ctx = ctx;
+            this.prefetchedShadows = prefetchedShadows;
         }
     }
 }
@@ -73,4 +73,5 @@ class ShadowsLocalBeans {
     @Autowired EventDispatcher eventDispatcher;
 
     @Autowired CacheConfigurationManager cacheConfigurationManager;
+    @Autowired AbsentIdentifiersCache absentIdentifiersCache;
 }
@@ -47,6 +47,7 @@ public abstract class ErrorHandler {
 
     @Autowired protected EventDispatcher eventDispatcher;
     @Autowired private ResourceManager resourceManager;
+    @Autowired private PendingOperationRetryThrottle retryThrottle;
     @Autowired protected PrismContext prismContext;
 
     /**
@@ -120,6 +121,7 @@ public abstract class ErrorHandler {
             OperationResult result) throws ObjectNotFoundException {
         resourceManager.modifyResourceAvailabilityStatus(
                 ctx.getResourceOid(), AvailabilityStatusType.DOWN, changeReason, ctx.getTask(), result, false);
+        retryThrottle.recordUnavailable(ctx.getResourceOid());
     }
 
     boolean isOperationRetryEnabled(ResourceType resource) {
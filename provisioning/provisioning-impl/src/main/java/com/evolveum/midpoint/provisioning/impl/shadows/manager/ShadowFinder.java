@@ -14,8 +14,13 @@ import static java.util.Collections.emptyList;
 import static com.evolveum.midpoint.provisioning.util.ProvisioningUtil.selectLiveShadow;
 import static com.evolveum.midpoint.util.DebugUtil.lazy;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 import javax.xml.namespace.QName;
 
@@ -23,11 +28,13 @@ import com.evolveum.midpoint.schema.*;
 import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import com.evolveum.midpoint.prism.*;
+import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.prism.query.builder.S_FilterEntry;
 import com.evolveum.midpoint.provisioning.impl.ProvisioningContext;
@@ -86,6 +93,16 @@ public class ShadowFinder {
         return repositoryService.searchObjects(ShadowType.class, repoQuery, options, parentResult);
     }
 
+    /**
+     * Returns OIDs of (at most `maxSize`) shadows matching the query. No magic except for handling matching rules.
+     * No side effects. Not cached.
+     */
+    public @NotNull List<String> searchShadowOids(ProvisioningContext ctx, ObjectQuery query, int maxSize,
+            OperationResult result) throws SchemaException {
+        ObjectQuery repoQuery = normalizeQueryValues(query, ctx.getObjectDefinition());
+        return repositoryService.searchObjectOids(ShadowType.class, repoQuery, maxSize, result);
+    }
+
     /** Simply counts the shadows in repository. No magic except for handling matching rules. No side effects. */
     public int countShadows(ProvisioningContext ctx, ObjectQuery query, Collection<SelectorOptions<GetOperationOptions>> options,
             OperationResult result) throws SchemaException {
@@ -126,6 +143,83 @@ public class ShadowFinder {
         return asObjectable(liveShadow);
     }
 
+    /**
+     * Looks up live shadows for a batch of primary identifiers (having the same definition) using a single repository query.
+     * This is the batch variant of {@link #lookupLiveShadowByPrimaryId(ProvisioningContext, PrismProperty, QName,
+     * OperationResult)}: the query conditions are the same, except that the identifier is compared to all the values at once.
+     *
+     * The shadows found are assigned to the identifiers by their keys (see {@link #getPrimaryIdentifierKey(ProvisioningContext,
+     * PrismProperty)}), computed for the stored values in the same way as for the identifiers. If any shadow found cannot be
+     * assigned to an identifier this way, we cannot be sure about the others, so the result is empty.
+     *
+     * Side effects: none.
+     *
+     * @return Lookup results keyed by identifier key: the live shadow, or null if there is none. Identifiers for which
+     * the result could not be determined are not present in the map.
+     */
+    public @NotNull Map<String, ShadowType> lookupLiveShadowsByPrimaryIds(
+            ProvisioningContext ctx, Collection<PrismProperty<?>> primaryIdentifiers, QName objectClass, OperationResult result)
+            throws SchemaException {
+
+        if (primaryIdentifiers.isEmpty()) {
+            return Map.of();
+        }
+
+        Set<String> keys = new HashSet<>();
+        for (PrismProperty<?> primaryIdentifier : primaryIdentifiers) {
+            keys.add(getPrimaryIdentifierKey(ctx, primaryIdentifier));
+        }
+
+        ObjectQuery query = createQueryByPrimaryIds(ctx, primaryIdentifiers, objectClass);
+
+        LOGGER.trace("Searching for shadows by {} primary identifiers using query:\n{}",
+                primaryIdentifiers.size(), query.debugDumpLazily(1));
+        List<PrismObject<ShadowType>> shadowsFound = searchRepoShadows(query, zeroStalenessOptions(), result);
+        LOGGER.trace("Found {} shadows (live or dead)", shadowsFound.size());
+
+        ItemPath identifierPath = ItemPath.create(
+                ShadowType.F_ATTRIBUTES, primaryIdentifiers.iterator().next().getElementName());
+        Map<String, List<PrismObject<ShadowType>>> shadowsByKey = new HashMap<>();
+        for (PrismObject<ShadowType> shadowFound : shadowsFound) {
+            String key = getStoredIdentifierKey(ctx, shadowFound, identifierPath);
+            if (key == null || !keys.contains(key)) {
+                LOGGER.debug("Couldn't match {} to any of the {} primary identifiers looked up, ignoring the batch lookup result",
+                        shadowFound, keys.size());
+                return Map.of();
+            }
+            shadowsByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(shadowFound);
+        }
+
+        Map<String, ShadowType> lookupResults = new HashMap<>();
+        for (String key : keys) {
+            PrismObject<ShadowType> liveShadow = selectLiveShadow(shadowsByKey.getOrDefault(key, List.of()));
+            checkConsistency(liveShadow);
+            lookupResults.put(key, asObjectable(liveShadow));
+        }
+        return lookupResults;
+    }
+
+    /**
+     * Returns the key of the (single-valued) primary identifier in a lookup result of
+     * {@link #lookupLiveShadowsByPrimaryIds(ProvisioningContext, Collection, QName, OperationResult)}.
+     */
+    public @NotNull String getPrimaryIdentifierKey(ProvisioningContext ctx, PrismProperty<?> primaryIdentifier)
+            throws SchemaException {
+        List<? extends PrismPropertyValue<?>> normalizedValues =
+                getNormalizedValues(primaryIdentifier, ctx.getObjectDefinitionRequired());
+        return String.valueOf(normalizedValues.get(0).getRealValue());
+    }
+
+    /** Stored values are normalized already, but we normalize them again to get the keys in exactly the same way. */
+    private @Nullable String getStoredIdentifierKey(
+            ProvisioningContext ctx, PrismObject<ShadowType> shadow, ItemPath identifierPath) throws SchemaException {
+        PrismProperty<?> identifier = shadow.findProperty(identifierPath);
+        if (identifier == null || identifier.size() != 1) {
+            return null;
+        }
+        return getPrimaryIdentifierKey(ctx, identifier);
+    }
+
     /** Side effects: none. */
     private List<PrismObject<ShadowType>> searchShadowsByPrimaryIds(ProvisioningContext ctx,
             Collection<ResourceAttribute<?>> identifiers, OperationResult result)
@@ -266,6 +360,26 @@ public class ShadowFinder {
         }
     }
 
+    private @NotNull ObjectQuery createQueryByPrimaryIds(@NotNull ProvisioningContext ctx,
+            @NotNull Collection<PrismProperty<?>> identifiers, @NotNull QName objectClass) throws SchemaException {
+        try {
+            // No matching rules here, see createQueryByPrimaryId.
+            PrismPropertyDefinition<?> def = identifiers.iterator().next().getDefinition();
+            List<PrismPropertyValue<?>> normalizedValues = new ArrayList<>();
+            for (PrismProperty<?> identifier : identifiers) {
+                normalizedValues.addAll(getNormalizedValues(identifier, ctx.getObjectDefinitionRequired()));
+            }
+            return prismContext.queryFor(ShadowType.class)
+                    .itemWithDef(def, ShadowType.F_ATTRIBUTES, def.getItemName())
+                    .eq(normalizedValues)
+                    .and().item(ShadowType.F_OBJECT_CLASS).eq(objectClass)
+                    .and().item(ShadowType.F_RESOURCE_REF).ref(ctx.getResourceOid())
+                    .build();
+        } catch (SchemaException e) {
+            throw new SchemaException("Schema error while creating search filter: " + e.getMessage(), e);
+        }
+    }
+
     private @NotNull ObjectQuery createQueryByPrimaryIdValue(ProvisioningContext ctx, String primaryIdentifierValue) {
         return prismContext.queryFor(ShadowType.class)
                 .item(ShadowType.F_PRIMARY_IDENTIFIER_VALUE).eq(primaryIdentifierValue)
@@ -64,7 +64,7 @@ public abstract class TestAsyncProvisioning extends AbstractProvisioningIntegrat
 
     protected PrismObject<ResourceType> resource;
 
-    private String jackAccountOid;
+    protected String jackAccountOid;
 
     protected boolean isUsingConfirmations() {
         return false;
@@ -135,9 +135,18 @@ public abstract class TestAsyncProvisioningArtemis extends TestAsyncProvisioning
         embeddedBroker.stop();
     }
 
+    /**
+     * How long to wait for a message to arrive. Zero means the message should be already there
+     * (i.e. it is sent synchronously with the provisioning operation).
+     */
+    protected long getReceiveTimeout() {
+        return 0;
+    }
+
     @Override
     protected String getRequest() throws JMSException {
-        Message msg = consumer.receiveNoWait();
+        long timeout = getReceiveTimeout();
+        Message msg = timeout > 0 ? consumer.receive(timeout) : consumer.receiveNoWait();
         displayValue("Message received", msg);
         if (msg instanceof TextMessage) {
             String text = ((TextMessage) msg).getText();
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.impl.async.provisioning;
+
+import java.io.File;
+
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.PendingOperationExecutionStatusType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+
+/**
+ * Uses Artemis broker with midPoint using Core API to access it.
+ * The requests are sent from the outbox, i.e. asynchronously with the provisioning operations.
+ *
+ * The operations are in progress until the requests are sent; this is found out when the shadow is refreshed.
+ */
+public class TestAsyncProvisioningArtemisCoreOutbox extends TestAsyncProvisioningArtemis {
+
+    private static final File RESOURCE_ARTEMIS_CORE_OUTBOX_FILE =
+            new File(TEST_DIR, "resource-async-provisioning-artemis-core-outbox.xml");
+
+    private static final long REFRESH_TIMEOUT = 10000;
+
+    @Override
+    protected File getResourceFile() {
+        return RESOURCE_ARTEMIS_CORE_OUTBOX_FILE;
+    }
+
+    @Override
+    protected long getReceiveTimeout() {
+        return 10000;
+    }
+
+    /** The operations behave as if confirmed by the target: they are in progress until the requests leave the outbox. */
+    @Override
+    protected boolean isUsingConfirmations() {
+        return true;
+    }
+
+    /**
+     * All the requests were sent (and received, see the previous tests). So the pending operations
+     * must be completed by the refresh, and the shadow must be dead.
+     */
+    @Test
+    public void test140RefreshShadow() throws Exception {
+        given();
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        when();
+        long start = System.currentTimeMillis();
+        PrismObject<ShadowType> shadow;
+        do {
+            // The sender thread records the outcome after the request is acknowledged by the broker, so we may need to wait.
+            shadow = repositoryService.getObject(ShadowType.class, jackAccountOid, null, result);
+            provisioningService.refreshShadow(shadow, null, task, result);
+            shadow = repositoryService.getObject(ShadowType.class, jackAccountOid, null, result);
+        } while (hasUnfinishedOperation(shadow.asObjectable()) && System.currentTimeMillis() - start < REFRESH_TIMEOUT);
+
+        then();
+        assertRepoShadow(jackAccountOid)
+                .assertDead()
+                .pendingOperations()
+                    .assertNoUnfinishedOperations();
+    }
+
+    private boolean hasUnfinishedOperation(ShadowType shadow) {
+        return shadow.getPendingOperation().stream()
+                .anyMatch(operation -> operation.getExecutionStatus() != PendingOperationExecutionStatusType.COMPLETED);
+    }
+}
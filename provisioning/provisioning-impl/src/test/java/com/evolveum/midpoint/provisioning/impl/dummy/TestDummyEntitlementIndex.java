@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.provisioning.impl.dummy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import static com.evolveum.midpoint.schema.constants.SchemaConstants.RI_ACCOUNT_OBJECT_CLASS;
+import static com.evolveum.midpoint.schema.constants.SchemaConstants.RI_GROUP_OBJECT_CLASS;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.icf.dummy.resource.DummyAccount;
+import com.evolveum.icf.dummy.resource.DummyGroup;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.provisioning.impl.resourceobjects.EntitlementConverter;
+import com.evolveum.midpoint.schema.internals.InternalCounters;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.util.ObjectQueryUtil;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectReferenceType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowAssociationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+
+/**
+ * Tests the resolution of "object to subject" associations from the per-search entitlement index
+ * (associations marked with `bulkPrefetch`).
+ *
+ * There are more accounts than the index build threshold, so the first accounts get their groups by individual searches,
+ * and the rest of them from the index. The associations must be the same in both cases.
+ */
+@ContextConfiguration(locations = "classpath:ctx-provisioning-test-main.xml")
+@DirtiesContext
+public class TestDummyEntitlementIndex extends AbstractDummyTest {
+
+    private static final File RESOURCE_DUMMY_FILE = new File(TEST_DIR_DUMMY, "dummy-entitlement-index/resource-dummy.xml");
+
+    private static final String OPERATION_BUILD_ENTITLEMENT_INDEX =
+            EntitlementConverter.class.getName() + ".buildEntitlementIndex";
+
+    private static final int BUILD_THRESHOLD = 100; // EntitlementIndex.DEFAULT_BUILD_THRESHOLD
+    private static final int ACCOUNTS = 130;
+    private static final String ACCOUNT_NAME_PREFIX = "idx-";
+    private static final List<String> GROUP_NAMES = List.of("idx-red", "idx-green", "idx-blue");
+
+    /** Group name to shadow OID. */
+    private final Map<String, String> groupOids = new HashMap<>();
+
+    @Override
+    protected File getResourceDummyFile() {
+        return RESOURCE_DUMMY_FILE;
+    }
+
+    @Override
+    public void initSystem(Task initTask, OperationResult initResult) throws Exception {
+        super.initSystem(initTask, initResult);
+        Map<String, DummyGroup> groups = new HashMap<>();
+        for (String name : GROUP_NAMES) {
+            DummyGroup group = new DummyGroup(name);
+            dummyResource.addGroup(group);
+            groups.put(name, group);
+        }
+        for (int i = 0; i < ACCOUNTS; i++) {
+            String accountName = getAccountName(i);
+            dummyResource.addAccount(new DummyAccount(accountName));
+            for (String groupName : getExpectedGroups(i)) {
+                groups.get(groupName).addMember(accountName);
+            }
+        }
+    }
+
+    /** Creates the group shadows, so that the association values can be checked by shadow OIDs. */
+    @Test
+    public void test100SearchGroups() throws Exception {
+        given();
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        when();
+        provisioningService.searchObjects(ShadowType.class,
+                        ObjectQueryUtil.createResourceAndObjectClassQuery(RESOURCE_DUMMY_OID, RI_GROUP_OBJECT_CLASS),
+                        null, task, result)
+                .forEach(group -> groupOids.put(group.getName().getOrig(), group.getOid()));
+
+        then();
+        assertSuccess(result);
+        assertThat(groupOids).as("group shadows").containsKeys(GROUP_NAMES.toArray(new String[0]));
+    }
+
+    /**
+     * A search for all accounts: the index is built once (after the threshold is reached), and the associations
+     * of all accounts are correct. The accounts after the threshold cause no entitlement searches.
+     */
+    @Test
+    public void test110SearchAccounts() throws Exception {
+        given();
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+        rememberCounter(InternalCounters.CONNECTOR_OPERATION_COUNT);
+
+        when();
+        Map<String, Set<String>> found = new HashMap<>();
+        provisioningService.searchObjectsIterative(ShadowType.class,
+                ObjectQueryUtil.createResourceAndObjectClassQuery(RESOURCE_DUMMY_OID, RI_ACCOUNT_OBJECT_CLASS), null,
+                (object, lResult) -> {
+                    found.put(object.getName().getOrig(), getGroupOids(object));
+                    return true;
+                }, task, result);
+
+        then();
+        assertSuccess(result);
+        assertThat(result.findSubresultsDeeply(OPERATION_BUILD_ENTITLEMENT_INDEX))
+                .as("index builds")
+                .hasSize(1);
+        // The search for accounts, individual entitlement searches up to the threshold, and the index build.
+        // (The daemon account asks for the association as well.)
+        assertCounterIncrement(InternalCounters.CONNECTOR_OPERATION_COUNT, 1 + BUILD_THRESHOLD + 1);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            assertThat(found.get(getAccountName(i)))
+                    .as("groups of " + getAccountName(i))
+                    .isEqualTo(getExpectedGroupOids(i));
+        }
+    }
+
+    /** Getting a single account does not build the index; the associations are the same as from the index. */
+    @Test
+    public void test120GetAccount() throws Exception {
+        given();
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+        int index = ACCOUNTS - 1;
+        String oid = findAccountShadowOid(getAccountName(index), result);
+
+        when();
+        PrismObject<ShadowType> account = provisioningService.getObject(ShadowType.class, oid, null, task, result);
+
+        then();
+        assertSuccess(result);
+        assertThat(result.findSubresultsDeeply(OPERATION_BUILD_ENTITLEMENT_INDEX))
+                .as("index builds")
+                .isEmpty();
+        assertThat(getGroupOids(account)).as("groups").isEqualTo(getExpectedGroupOids(index));
+    }
+
+    private String findAccountShadowOid(String name, OperationResult result) throws Exception {
+        List<PrismObject<ShadowType>> shadows = repositoryService.searchObjects(ShadowType.class,
+                ObjectQueryUtil.createResourceAndObjectClassQuery(RESOURCE_DUMMY_OID, RI_ACCOUNT_OBJECT_CLASS),
+                null, result);
+        return shadows.stream()
+                .filter(shadow -> name.equals(shadow.getName().getOrig()))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No shadow for " + name))
+                .getOid();
+    }
+
+    private Set<String> getGroupOids(PrismObject<ShadowType> account) {
+        return account.asObjectable().getAssociation().stream()
+                .filter(association -> ASSOCIATION_GROUP_NAME.equals(association.getName()))
+                .map(ShadowAssociationType::getShadowRef)
+                .map(ObjectReferenceType::getOid)
+                .collect(Collectors.toSet());
+    }
+
+    private Set<String> getExpectedGroupOids(int i) {
+        Set<String> oids = new HashSet<>();
+        for (String groupName : getExpectedGroups(i)) {
+            oids.add(groupOids.get(groupName));
+        }
+        return oids;
+    }
+
+    private static String getAccountName(int i) {
+        return String.format("%s%03d", ACCOUNT_NAME_PREFIX, i);
+    }
+
+    /** Every account is in one group; even ones are in another one as well; every tenth one is in no group. */
+    private static Set<String> getExpectedGroups(int i) {
+        if (i % 10 == 0) {
+            return Set.of();
+        } else if (i % 2 == 0) {
+            return Set.of(GROUP_NAMES.get(i % 3), GROUP_NAMES.get((i + 1) % 3));
+        } else {
+            return Set.of(GROUP_NAMES.get(i % 3));
+        }
+    }
+}
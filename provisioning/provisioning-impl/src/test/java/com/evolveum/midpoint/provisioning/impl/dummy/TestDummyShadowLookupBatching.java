@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.provisioning.impl.dummy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import static com.evolveum.midpoint.schema.constants.SchemaConstants.RI_ACCOUNT_OBJECT_CLASS;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.icf.dummy.resource.DummyAccount;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.repo.api.SystemConfigurationChangeListener;
+import com.evolveum.midpoint.schema.ResultHandler;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.util.ObjectQueryUtil;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.InternalsConfigurationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SystemConfigurationType;
+
+/**
+ * Tests the batched lookup of repository shadows for objects found by a resource search
+ * (`internals/shadowLookupBatchSize`).
+ *
+ * Uses the case-ignoring resource, so the identifiers found on the resource differ from the stored (normalized) ones.
+ * The number of accounts is not a multiple of the batch size, so the last (incomplete) batch is exercised as well.
+ */
+@ContextConfiguration(locations = "classpath:ctx-provisioning-test-main.xml")
+@DirtiesContext
+public class TestDummyShadowLookupBatching extends AbstractDummyTest {
+
+    private static final File RESOURCE_DUMMY_FILE = new File(TEST_DIR_DUMMY, "dummy-case-ignore/resource-dummy.xml");
+
+    private static final int BATCH_SIZE = 3;
+    private static final List<String> ACCOUNT_NAMES =
+            List.of("Alpha", "BRAVO", "charlie", "DeLtA", "Echo", "foxTROT", "Golf");
+
+    /** Account name (lowercase) to shadow OID, as found by the first search. */
+    private final Map<String, String> shadowOids = new HashMap<>();
+
+    @Override
+    protected File getResourceDummyFile() {
+        return RESOURCE_DUMMY_FILE;
+    }
+
+    @Override
+    public void initSystem(Task initTask, OperationResult initResult) throws Exception {
+        super.initSystem(initTask, initResult);
+        for (String name : ACCOUNT_NAMES) {
+            dummyResource.addAccount(new DummyAccount(name));
+        }
+    }
+
+    /** The first search creates the shadows. */
+    @Test
+    public void test100FirstSearch() throws Exception {
+        given();
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+        setBatchSize(BATCH_SIZE);
+
+        when();
+        Map<String, String> found = searchAllAccounts(task, result);
+
+        then();
+        assertSuccess(result);
+        assertThat(found).as("accounts found").hasSize(ACCOUNT_NAMES.size() + 1); // + daemon
+        shadowOids.putAll(found);
+        assertThat(countRepoShadows(result)).as("repo shadows").isEqualTo(found.size());
+    }
+
+    /** The second search finds the shadows by the batched lookup; no new shadows are created. */
+    @Test
+    public void test110SecondSearch() throws Exception {
+        given();
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+        setBatchSize(BATCH_SIZE);
+
+        when();
+        Map<String, String> found = searchAllAccounts(task, result);
+
+        then();
+        assertSuccess(result);
+        assertThat(found).as("accounts found").isEqualTo(shadowOids);
+        assertThat(countRepoShadows(result)).as("repo shadows").isEqualTo(shadowOids.size());
+    }
+
+    /** Without batching, the very same shadows are found. */
+    @Test
+    public void test120SearchWithoutBatching() throws Exception {
+        given();
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+        setBatchSize(1);
+
+        when();
+        Map<String, String> found = searchAllAccounts(task, result);
+
+        then();
+        assertSuccess(result);
+        assertThat(found).as("accounts found").isEqualTo(shadowOids);
+        assertThat(countRepoShadows(result)).as("repo shadows").isEqualTo(shadowOids.size());
+    }
+
+    /** A failure of the client's handler is what the client gets, and no more objects are passed to the handler. */
+    @Test
+    public void test130HandlerFailure() throws Exception {
+        given();
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+        setBatchSize(BATCH_SIZE);
+        AtomicInteger invocations = new AtomicInteger();
+        ResultHandler<ShadowType> handler = (object, lResult) -> {
+            if (invocations.incrementAndGet() == 2) {
+                throw new IllegalStateException("Handler failure (expected)");
+            }
+            return true;
+        };
+
+        when();
+        assertThatThrownBy(
+                () -> provisioningService.searchObjectsIterative(
+                        ShadowType.class, getAccountsQuery(), null, handler, task, result))
+                .hasStackTraceContaining("Handler failure (expected)");
+
+        then();
+        assertThat(invocations.get()).as("handler invocations").isEqualTo(2);
+    }
+
+    private Map<String, String> searchAllAccounts(Task task, OperationResult result) throws Exception {
+        Map<String, String> found = new HashMap<>();
+        provisioningService.searchObjectsIterative(ShadowType.class, getAccountsQuery(), null,
+                (object, lResult) -> {
+                    String previous = found.put(object.getName().getOrig().toLowerCase(), object.getOid());
+                    assertThat(previous).as("duplicate object for " + object).isNull();
+                    return true;
+                }, task, result);
+        return found;
+    }
+
+    private int countRepoShadows(OperationResult result) throws Exception {
+        return repositoryService.countObjects(ShadowType.class, getAccountsQuery(), null, result);
+    }
+
+    private ObjectQuery getAccountsQuery() {
+        return ObjectQueryUtil.createResourceAndObjectClassQuery(RESOURCE_DUMMY_OID, RI_ACCOUNT_OBJECT_CLASS);
+    }
+
+    private void setBatchSize(int size) {
+        ((SystemConfigurationChangeListener) provisioningService).update(
+                new SystemConfigurationType()
+                        .internals(new InternalsConfigurationType()
+                                .shadowLookupBatchSize(size)));
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.provisioning.impl.resources;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.provisioning.impl.AbstractProvisioningIntegrationTest;
+import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.util.exception.CommonException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Tests {@link ResourceCache}: detection of stale versions (immediately, or after the freshness window),
+ * and the invalidation of the entries.
+ *
+ * Changes done via the plain repository do not emit invalidation events, so they simulate changes done on other nodes.
+ * Each test uses its own resource(s), so the entries of the tests do not interfere.
+ */
+public class TestResourceCache extends AbstractProvisioningIntegrationTest {
+
+    private static final long FRESHNESS_WINDOW = 2000;
+
+    @Autowired private ResourceCache resourceCache;
+
+    @Autowired @Qualifier("repositoryService") // we want repo implementation, not cache
+    private RepositoryService plainRepositoryService;
+
+    @AfterMethod
+    public void resetFreshnessWindow() {
+        setFreshnessWindow(0);
+    }
+
+    /** Without the freshness window, the version is checked on each access; a stale entry is purged. */
+    @Test
+    public void test100StaleVersionDetected() throws Exception {
+        given();
+        OperationResult result = getTestOperationResult();
+        String oid = addAndCacheResource(List.of(), result);
+        assertThat(resourceCache.getIfLatest(oid, true, result)).as("resource before change").isNotNull();
+
+        when();
+        modifyInRepository(oid, result);
+        PrismObject<ResourceType> resource = resourceCache.getIfLatest(oid, true, result);
+
+        then();
+        assertThat(resource).as("resource after change").isNull();
+        assertThat(resourceCache.getVersion(oid)).as("cached version").isNull();
+    }
+
+    /**
+     * Within the freshness window (counted from the last version check), the version is not checked;
+     * after it elapses, the stale entry is detected.
+     */
+    @Test
+    public void test110StaleVersionDetectedAfterFreshnessWindow() throws Exception {
+        given();
+        OperationResult result = getTestOperationResult();
+        setFreshnessWindow(FRESHNESS_WINDOW);
+        String oid = addAndCacheResource(List.of(), result);
+        String cachedVersion = resourceCache.getVersion(oid);
+        assertThat(resourceCache.getIfLatest(oid, true, result)).as("resource after version check").isNotNull();
+
+        when("resource is changed without invalidation, and is read within the window");
+        modifyInRepository(oid, result);
+        PrismObject<ResourceType> withinWindow = resourceCache.getIfLatest(oid, true, result);
+
+        then("the cached version is returned");
+        assertThat(withinWindow).as("resource within the window").isNotNull();
+        assertThat(withinWindow.getVersion()).as("version within the window").isEqualTo(cachedVersion);
+
+        when("the window elapses");
+        Thread.sleep(FRESHNESS_WINDOW + 100);
+        PrismObject<ResourceType> afterWindow = resourceCache.getIfLatest(oid, true, result);
+
+        then("the stale entry is detected and purged");
+        assertThat(afterWindow).as("resource after the window").isNull();
+        assertThat(resourceCache.getVersion(oid)).as("cached version").isNull();
+    }
+
+    /**
+     * A resource that was changed after being read but before being put into the cache is not served without
+     * the version check, even within the freshness window.
+     */
+    @Test
+    public void test115StaleVersionDetectedOnFirstAccess() throws Exception {
+        given();
+        OperationResult result = getTestOperationResult();
+        setFreshnessWindow(FRESHNESS_WINDOW);
+        String oid = addAndCacheResource(List.of(), result);
+
+        when();
+        modifyInRepository(oid, result);
+        PrismObject<ResourceType> resource = resourceCache.getIfLatest(oid, true, result);
+
+        then();
+        assertThat(resource).as("resource after change").isNull();
+        assertThat(resourceCache.getVersion(oid)).as("cached version").isNull();
+    }
+
+    /** Invalidation removes the entry (even within the freshness window), along with the entries depending on it. */
+    @Test
+    public void test120Invalidation() throws Exception {
+        given();
+        OperationResult result = getTestOperationResult();
+        setFreshnessWindow(FRESHNESS_WINDOW);
+        String templateOid = addAndCacheResource(List.of(), result);
+        String concreteOid = addAndCacheResource(List.of(templateOid), result);
+        String otherOid = addAndCacheResource(List.of(), result);
+
+        when("other object type is invalidated");
+        resourceCache.invalidate(UserType.class, templateOid, null);
+
+        then("the entries are kept");
+        assertThat(resourceCache.getVersion(templateOid)).as("template version").isNotNull();
+        assertThat(resourceCache.getVersion(concreteOid)).as("concrete resource version").isNotNull();
+
+        when("template is invalidated");
+        resourceCache.invalidate(ResourceType.class, templateOid, null);
+
+        then("the template and the resource inheriting from it are removed");
+        assertThat(resourceCache.getVersion(templateOid)).as("template version").isNull();
+        assertThat(resourceCache.getVersion(concreteOid)).as("concrete resource version").isNull();
+        assertThat(resourceCache.getIfLatest(concreteOid, true, result)).as("concrete resource").isNull();
+        assertThat(resourceCache.getVersion(otherOid)).as("other resource version").isNotNull();
+
+        when("resource is changed via cache repository");
+        repositoryService.modifyObject(ResourceType.class, otherOid,
+                prismContext.deltaFor(ResourceType.class)
+                        .item(ResourceType.F_DESCRIPTION).replace("changed")
+                        .asItemDeltas(),
+                result);
+
+        then("it is removed as well");
+        assertThat(resourceCache.getVersion(otherOid)).as("other resource version").isNull();
+        assertThat(resourceCache.getIfLatest(otherOid, true, result)).as("other resource").isNull();
+    }
+
+    /** Invalidation without OID clears the whole cache. */
+    @Test
+    public void test130InvalidationWithoutOid() throws Exception {
+        given();
+        OperationResult result = getTestOperationResult();
+        String oid1 = addAndCacheResource(List.of(), result);
+        String oid2 = addAndCacheResource(List.of(), result);
+
+        when();
+        resourceCache.invalidate(ResourceType.class, null, null);
+
+        then();
+        assertThat(resourceCache.getVersion(oid1)).as("version of resource 1").isNull();
+        assertThat(resourceCache.getVersion(oid2)).as("version of resource 2").isNull();
+    }
+
+    /** Adds a new resource to the repository and puts it into the cache. Returns its OID. */
+    private String addAndCacheResource(Collection<String> ancestorsOids, OperationResult result)
+            throws CommonException {
+        String oid = UUID.randomUUID().toString();
+        plainRepositoryService.addObject(
+                new ResourceType()
+                        .oid(oid)
+                        .name("resource-" + oid)
+                        .asPrismObject(),
+                null, result);
+        ResourceType resource = plainRepositoryService.getObject(ResourceType.class, oid, null, result).asObjectable();
+        resourceCache.put(resource, ancestorsOids);
+        assertThat(resourceCache.getVersion(oid)).as("cached version").isEqualTo(resource.getVersion());
+        return oid;
+    }
+
+    /** Changes the resource without emitting the invalidation event. */
+    private void modifyInRepository(String oid, OperationResult result) throws CommonException {
+        plainRepositoryService.modifyObject(ResourceType.class, oid,
+                prismContext.deltaFor(ResourceType.class)
+                        .item(ResourceType.F_DESCRIPTION).replace("changed")
+                        .asItemDeltas(),
+                result);
+    }
+
+    private void setFreshnessWindow(long window) {
+        resourceCache.update(
+                new SystemConfigurationType()
+                        .internals(new InternalsConfigurationType()
+                                .caching(new CachingConfigurationType()
+                                        .resourceCacheFreshnessWindow(window))));
+    }
+}
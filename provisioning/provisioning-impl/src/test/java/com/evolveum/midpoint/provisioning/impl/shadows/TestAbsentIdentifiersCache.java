@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.provisioning.impl.shadows;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.UUID;
+import javax.xml.namespace.QName;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.prism.PrismContainer;
+import com.evolveum.midpoint.prism.PrismProperty;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.provisioning.impl.AbstractProvisioningIntegrationTest;
+import com.evolveum.midpoint.schema.cache.CacheConfigurationManager;
+import com.evolveum.midpoint.schema.constants.MidPointConstants;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.util.DOMUtil;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Tests {@link AbsentIdentifiersCache}: the absent values are remembered, and the shadow changes done via repository
+ * invalidate the entries for their attribute values (or the whole cache, if the details are not known).
+ *
+ * The cache is disabled by default; it is enabled for these tests (except for the first one).
+ * Each test uses its own resource OID, so the entries of the tests do not interfere.
+ */
+public class TestAbsentIdentifiersCache extends AbstractProvisioningIntegrationTest {
+
+    private static final QName OBJECT_CLASS = new QName(MidPointConstants.NS_RI, "AccountObjectClass");
+    private static final QName ATTR_UID = new QName(MidPointConstants.NS_RI, "uid");
+
+    private static final int TIME_TO_LIVE = 600;
+
+    @Autowired private AbsentIdentifiersCache absentIdentifiersCache;
+    @Autowired private CacheConfigurationManager cacheConfigurationManager;
+
+    @Override
+    public void initSystem(Task initTask, OperationResult initResult) throws Exception {
+        super.initSystem(initTask, initResult);
+        applyCacheConfiguration(TIME_TO_LIVE);
+    }
+
+    /** Without the explicit configuration, nothing is cached. */
+    @Test
+    public void test010DisabledByDefault() throws Exception {
+        given();
+        cacheConfigurationManager.applyCachingConfiguration(new SystemConfigurationType());
+        String resourceOid = UUID.randomUUID().toString();
+
+        try {
+            when();
+            setAbsent(resourceOid, "jack");
+
+            then();
+            assertAbsent(resourceOid, "jack", false);
+        } finally {
+            applyCacheConfiguration(TIME_TO_LIVE);
+        }
+    }
+
+    /** Adding a shadow invalidates the entry for its identifier value; other values are still known to be absent. */
+    @Test
+    public void test100ShadowAdded() throws Exception {
+        given();
+        OperationResult result = getTestOperationResult();
+        String resourceOid = UUID.randomUUID().toString();
+        setAbsent(resourceOid, "jack", "will");
+        assertAbsent(resourceOid, "jack", true);
+        assertAbsent(resourceOid, "will", true);
+
+        when();
+        repositoryService.addObject(createShadow(resourceOid, "jack").asPrismObject(), null, result);
+
+        then();
+        assertAbsent(resourceOid, "jack", false);
+        assertAbsent(resourceOid, "will", true);
+    }
+
+    /** Modifying a shadow invalidates the entry for the new value of its identifier. */
+    @Test
+    public void test110ShadowModified() throws Exception {
+        given();
+        OperationResult result = getTestOperationResult();
+        String resourceOid = UUID.randomUUID().toString();
+        String shadowOid = repositoryService.addObject(createShadow(resourceOid, "elaine").asPrismObject(), null, result);
+        setAbsent(resourceOid, "elaine2", "guybrush");
+
+        when();
+        PrismProperty<String> uid = createUidProperty("elaine2");
+        repositoryService.modifyObject(ShadowType.class, shadowOid,
+                prismContext.deltaFor(ShadowType.class)
+                        .item(ItemPath.create(ShadowType.F_ATTRIBUTES, ATTR_UID), uid.getDefinition())
+                        .replace("elaine2")
+                        .asItemDeltas(),
+                result);
+
+        then();
+        assertAbsent(resourceOid, "elaine2", false);
+        assertAbsent(resourceOid, "guybrush", true);
+    }
+
+    /** Deleting a shadow cannot make an absent value present, so the entries are kept. */
+    @Test
+    public void test120ShadowDeleted() throws Exception {
+        given();
+        OperationResult result = getTestOperationResult();
+        String resourceOid = UUID.randomUUID().toString();
+        String shadowOid = repositoryService.addObject(createShadow(resourceOid, "carla").asPrismObject(), null, result);
+        setAbsent(resourceOid, "carla");
+
+        when();
+        repositoryService.deleteObject(ShadowType.class, shadowOid, result);
+
+        then();
+        assertAbsent(resourceOid, "carla", true);
+    }
+
+    /**
+     * Invalidation of a shadow without the details (e.g. coming from another node) clears the whole cache;
+     * invalidation of other object types is ignored. Values found absent before an invalidation are not cached.
+     */
+    @Test
+    public void test130InvalidationWithoutDetails() {
+        given();
+        String resourceOid = UUID.randomUUID().toString();
+        setAbsent(resourceOid, "stan");
+
+        when("other type is invalidated");
+        absentIdentifiersCache.invalidate(UserType.class, UUID.randomUUID().toString(), null);
+
+        then("the entries are kept");
+        assertAbsent(resourceOid, "stan", true);
+
+        when("shadow is invalidated without details");
+        long stamp = absentIdentifiersCache.getStamp();
+        absentIdentifiersCache.invalidate(ShadowType.class, UUID.randomUUID().toString(), null);
+        absentIdentifiersCache.setAbsent(stamp, resourceOid, OBJECT_CLASS, ATTR_UID, List.of("largo"));
+
+        then("the cache is cleared, and the stale result is not cached");
+        assertAbsent(resourceOid, "stan", false);
+        assertAbsent(resourceOid, "largo", false);
+    }
+
+    /** Entries expire after the configured time-to-live. */
+    @Test
+    public void test140Expiration() throws Exception {
+        given();
+        applyCacheConfiguration(1);
+        String resourceOid = UUID.randomUUID().toString();
+
+        try {
+            when();
+            setAbsent(resourceOid, "bob");
+
+            then();
+            assertAbsent(resourceOid, "bob", true);
+            Thread.sleep(1100);
+            assertAbsent(resourceOid, "bob", false);
+        } finally {
+            applyCacheConfiguration(TIME_TO_LIVE);
+        }
+    }
+
+    private void applyCacheConfiguration(int timeToLive) {
+        cacheConfigurationManager.applyCachingConfiguration(
+                new SystemConfigurationType()
+                        .internals(new InternalsConfigurationType()
+                                .caching(new CachingConfigurationType()
+                                        .profile(new CachingProfileType()
+                                                .global(true)
+                                                .globalAbsentShadowIdentifiersCache(new CacheSettingsType()
+                                                        .objectTypeSettings(new CacheObjectTypeSettingsType()
+                                                                .objectType(ShadowType.COMPLEX_TYPE)
+                                                                .timeToLive(timeToLive)))))));
+    }
+
+    private void setAbsent(String resourceOid, String... values) {
+        absentIdentifiersCache.setAbsent(
+                absentIdentifiersCache.getStamp(), resourceOid, OBJECT_CLASS, ATTR_UID, List.of(values));
+    }
+
+    private void assertAbsent(String resourceOid, String value, boolean expected) {
+        assertThat(absentIdentifiersCache.areAbsent(resourceOid, OBJECT_CLASS, ATTR_UID, List.of(value)))
+                .as("value '" + value + "' known to be absent")
+                .isEqualTo(expected);
+    }
+
+    private ShadowType createShadow(String resourceOid, String uid) throws SchemaException {
+        ShadowType shadow = new ShadowType()
+                .name(uid)
+                .resourceRef(resourceOid, ResourceType.COMPLEX_TYPE)
+                .objectClass(OBJECT_CLASS)
+                .kind(ShadowKindType.ACCOUNT)
+                .intent("default");
+        PrismContainer<?> attributes = shadow.asPrismObject().findOrCreateContainer(ShadowType.F_ATTRIBUTES);
+        attributes.getValue().add(createUidProperty(uid));
+        return shadow;
+    }
+
+    private PrismProperty<String> createUidProperty(String value) throws SchemaException {
+        PrismProperty<String> uid = prismContext.definitionFactory()
+                .<String>createPropertyDefinition(ATTR_UID, DOMUtil.XSD_STRING)
+                .instantiate();
+        uid.setRealValue(value);
+        return uid;
+    }
+}
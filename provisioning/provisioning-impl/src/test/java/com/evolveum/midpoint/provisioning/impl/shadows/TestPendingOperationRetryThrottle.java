@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.provisioning.impl.shadows;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
+import com.evolveum.midpoint.provisioning.impl.AbstractProvisioningIntegrationTest;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Tests {@link PendingOperationRetryThrottle}: the concurrency limit, the bounded waiting, the reentrancy,
+ * and the (opt-in) backoff for unavailable resources.
+ *
+ * Each test uses its own resource OID, as the throttle keeps its state per resource.
+ */
+public class TestPendingOperationRetryThrottle extends AbstractProvisioningIntegrationTest {
+
+    private static final long THREAD_TIMEOUT = 10000;
+
+    @Autowired private PendingOperationRetryThrottle throttle;
+
+    /**
+     * With one concurrent retry allowed, a retry in another thread waits for the first one to finish.
+     * The same thread gets a (nested) permit immediately.
+     */
+    @Test
+    public void test100ConcurrencyLimitAndReentrancy() throws Exception {
+        given();
+        ResourceType resource = createResource(
+                new OperationRetryThrottlingType()
+                        .maxConcurrentRetries(1)
+                        .maxWait(XmlTypeConverter.createDuration("PT10S")),
+                null);
+
+        when("first permit and a nested one are acquired");
+        PendingOperationRetryThrottle.Permit first = throttle.acquire(resource);
+        PendingOperationRetryThrottle.Permit nested = throttle.acquire(resource);
+
+        then("both are granted");
+        assertThat(first).as("first permit").isNotNull();
+        assertThat(nested).as("nested permit").isNotNull();
+        nested.close();
+
+        when("other thread asks for a permit");
+        AtomicReference<PendingOperationRetryThrottle.Permit> other = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            PendingOperationRetryThrottle.Permit permit = throttle.acquire(resource);
+            other.set(permit);
+            if (permit != null) {
+                permit.close();
+            }
+        });
+        thread.start();
+        Thread.sleep(300);
+
+        then("it waits until the first permit is released");
+        assertThat(thread.isAlive()).as("other thread waiting").isTrue();
+        first.close();
+        thread.join(THREAD_TIMEOUT);
+        assertThat(thread.isAlive()).as("other thread waiting").isFalse();
+        assertThat(other.get()).as("permit in other thread").isNotNull();
+    }
+
+    /** When no slot gets free within `maxWait`, the retry is skipped. */
+    @Test
+    public void test110BoundedWait() throws Exception {
+        given();
+        ResourceType resource = createResource(
+                new OperationRetryThrottlingType()
+                        .maxConcurrentRetries(1)
+                        .maxWait(XmlTypeConverter.createDuration("PT0.3S")),
+                null);
+        PendingOperationRetryThrottle.Permit first = throttle.acquire(resource);
+        assertThat(first).as("first permit").isNotNull();
+
+        when();
+        AtomicReference<PendingOperationRetryThrottle.Permit> other = new AtomicReference<>();
+        Thread thread = new Thread(() -> other.set(throttle.acquire(resource)));
+        thread.start();
+        thread.join(THREAD_TIMEOUT);
+
+        then();
+        assertThat(thread.isAlive()).as("other thread waiting").isFalse();
+        assertThat(other.get()).as("permit in other thread").isNull();
+        first.close();
+    }
+
+    /** Without `unavailableBackoffInterval`, the retries on a resource that is down are not skipped. */
+    @Test
+    public void test120NoBackoffByDefault() {
+        given();
+        ResourceType resource = createResource(new OperationRetryThrottlingType(), AvailabilityStatusType.DOWN);
+        throttle.recordUnavailable(resource.getOid());
+
+        when();
+        PendingOperationRetryThrottle.Permit first = throttle.acquire(resource);
+        closeIfNotNull(first);
+        PendingOperationRetryThrottle.Permit second = throttle.acquire(resource);
+        closeIfNotNull(second);
+
+        then();
+        assertThat(first).as("first permit").isNotNull();
+        assertThat(second).as("second permit").isNotNull();
+    }
+
+    /**
+     * With `unavailableBackoffInterval`, a failed probe on a resource that is down postpones the retries
+     * until the interval elapses. A successful probe ends the backoff.
+     */
+    @Test
+    public void test130BackoffWhenEnabled() {
+        given();
+        ResourceType resource = createResource(
+                new OperationRetryThrottlingType()
+                        .unavailableBackoffInterval(XmlTypeConverter.createDuration("PT1M")),
+                AvailabilityStatusType.DOWN);
+
+        try {
+            when("probe fails");
+            PendingOperationRetryThrottle.Permit probe = throttle.acquire(resource);
+            assertThat(probe).as("probe permit").isNotNull();
+            throttle.recordUnavailable(resource.getOid());
+            probe.close();
+
+            then("retries are skipped");
+            assertThat(throttle.acquire(resource)).as("permit during backoff").isNull();
+
+            when("backoff interval elapses and the probe succeeds");
+            clock.overrideDuration("PT2M");
+            PendingOperationRetryThrottle.Permit secondProbe = throttle.acquire(resource);
+            assertThat(secondProbe).as("second probe permit").isNotNull();
+            secondProbe.close();
+
+            then("the backoff is over");
+            resource.getOperationalState().setLastAvailabilityStatus(AvailabilityStatusType.UP);
+            PendingOperationRetryThrottle.Permit permit = throttle.acquire(resource);
+            assertThat(permit).as("permit after backoff").isNotNull();
+            permit.close();
+        } finally {
+            clock.resetOverride();
+        }
+    }
+
+    private ResourceType createResource(OperationRetryThrottlingType throttling, AvailabilityStatusType status) {
+        String oid = UUID.randomUUID().toString();
+        ResourceType resource = new ResourceType()
+                .oid(oid)
+                .name("resource-" + oid)
+                .consistency(new ResourceConsistencyType()
+                        .operationRetryThrottling(throttling));
+        if (status != null) {
+            resource.operationalState(new OperationalStateType()
+                    .lastAvailabilityStatus(status));
+        }
+        return resource;
+    }
+
+    private void closeIfNotNull(@Nullable PendingOperationRetryThrottle.Permit permit) {
+        if (permit != null) {
+            permit.close();
+        }
+    }
+}
@@ -15,9 +15,12 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.atomic.AtomicReference;
 
 import com.evolveum.midpoint.prism.PrismProperty;
+import com.evolveum.midpoint.prism.path.ItemName;
 import com.evolveum.midpoint.provisioning.ucf.api.async.AsyncProvisioningRequest;
 
 import com.evolveum.midpoint.schema.result.OperationResultStatus;
@@ -41,6 +44,7 @@ import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.schema.SearchResultMetadata;
 import com.evolveum.midpoint.schema.internals.InternalMonitor;
 import com.evolveum.midpoint.schema.processor.*;
+import com.evolveum.midpoint.schema.result.AsynchronousOperationQueryable;
 import com.evolveum.midpoint.schema.result.AsynchronousOperationResult;
 import com.evolveum.midpoint.schema.result.AsynchronousOperationReturnValue;
 import com.evolveum.midpoint.schema.result.OperationResult;
@@ -49,8 +53,10 @@ import com.evolveum.midpoint.security.api.SecurityContextManager;
 import com.evolveum.midpoint.security.api.SecurityContextManagerAware;
 import com.evolveum.midpoint.task.api.TaskManager;
 import com.evolveum.midpoint.task.api.TaskManagerAware;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.AsyncProvisioningOutboxType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ExpressionType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.PendingOperationTypeType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.PredefinedOperationRequestTransformationType;
@@ -64,7 +70,7 @@ import com.evolveum.midpoint.xml.ns._public.resource.capabilities_3.*;
 @SuppressWarnings("DefaultAnnotationParam")
 @ManagedConnector(type="AsyncProvisioningConnector", version="1.0.0")
 public class AsyncProvisioningConnectorInstance extends AbstractManagedConnectorInstance implements UcfExpressionEvaluatorAware,
-        SecurityContextManagerAware, TaskManagerAware, RepositoryAware {
+        SecurityContextManagerAware, TaskManagerAware, RepositoryAware, AsynchronousOperationQueryable {
 
     @SuppressWarnings("unused")
     private static final Trace LOGGER = TraceManager.getTrace(AsyncProvisioningConnectorInstance.class);
@@ -74,6 +80,17 @@ public class AsyncProvisioningConnectorInstance extends AbstractManagedConnector
     /** Always holds immutable collection. */
     private final AtomicReference<List<AsyncProvisioningTarget>> targetsReference = new AtomicReference<>(emptyList());
 
+    /**
+     * Outbox for the requests, if configured. Created on connect, stopped on disconnect.
+     */
+    private volatile AsyncProvisioningOutbox outbox;
+
+    /**
+     * Requests that were not sent from the outbox before it was stopped. They are sent when the connector
+     * instance is connected again (e.g. after reconfiguration). If it is disposed instead, they are given up.
+     */
+    @NotNull private List<AsyncProvisioningOutbox.Entry> unsentRequests = emptyList();
+
     private final TargetManager targetManager = new TargetManager(this);
     private final OperationRequestTransformer transformer = new OperationRequestTransformer(this);
 
@@ -144,13 +161,57 @@ public class AsyncProvisioningConnectorInstance extends AbstractManagedConnector
         List<AsyncProvisioningTarget> newTargets = createNewTargets();
         newTargets.forEach(AsyncProvisioningTarget::connect);
         targetsReference.set(newTargets);
+        startOutbox(result);
+    }
+
+    private void startOutbox(OperationResult result) {
+        AsyncProvisioningOutboxType outboxConfiguration = configuration.getOutbox();
+        if (outboxConfiguration != null) {
+            AsyncProvisioningOutbox newOutbox =
+                    new AsyncProvisioningOutbox(outboxConfiguration, this::sendRequest, String.valueOf(getInstanceName()));
+            newOutbox.start(unsentRequests);
+            outbox = newOutbox;
+        } else {
+            for (AsyncProvisioningOutbox.Entry unsent : unsentRequests) {
+                try {
+                    sendRequest(unsent.getRequest(), result);
+                    AsyncProvisioningOutbox.recordOutcome(unsent, OperationResultStatus.SUCCESS);
+                } catch (RuntimeException e) {
+                    LoggingUtils.logUnexpectedException(LOGGER, "Couldn't send request left in the outbox, giving it up: {}",
+                            e, unsent.getRequest());
+                    result.muteLastSubresultError();
+                    AsyncProvisioningOutbox.recordOutcome(unsent, OperationResultStatus.FATAL_ERROR);
+                }
+            }
+        }
+        unsentRequests = emptyList();
     }
 
     @Override
     protected void disconnect(OperationResult result) {
+        AsyncProvisioningOutbox existingOutbox = outbox;
+        if (existingOutbox != null) {
+            // Must be stopped before the targets are disconnected, as it sends the remaining requests.
+            outbox = null;
+            unsentRequests = existingOutbox.stop();
+            if (!unsentRequests.isEmpty()) {
+                LOGGER.warn("{} request(s) could not be sent from the outbox of {}. They will be sent if the connector "
+                        + "is connected again, otherwise the operations will be marked as failed.", unsentRequests.size(), this);
+            }
+        }
         targetsReference.get().forEach(AsyncProvisioningTarget::disconnect);
     }
 
+    @Override
+    public void dispose() {
+        super.dispose();
+        // The instance will not be connected again, so the requests left unsent will never be sent.
+        for (AsyncProvisioningOutbox.Entry unsent : unsentRequests) {
+            AsyncProvisioningOutbox.recordOutcome(unsent, OperationResultStatus.FATAL_ERROR);
+        }
+        unsentRequests = emptyList();
+    }
+
     @Override
     public void test(OperationResult parentResult) {
         OperationResult result = parentResult.createSubresult(OP_TEST);
@@ -237,10 +298,19 @@ public class AsyncProvisioningConnectorInstance extends AbstractManagedConnector
     private <X> AsynchronousOperationReturnValue<X> createAndSendRequest(OperationRequested operation, Task task,
             OperationResult result) {
         AsyncProvisioningRequest request = transformer.transformOperationRequested(operation, task, result);
-        String asyncOperationReference = sendRequest(request, result);
+        AsyncProvisioningOutbox outbox = this.outbox;
+        String outboxReference = outbox != null ? createOutboxReference() : null;
+        String asyncOperationReference;
+        if (outbox != null && outbox.offer(request, getOrderingKey(operation), outboxReference)) {
+            // The request is not sent yet, so the operation is in progress until it is (see queryOperationStatus).
+            asyncOperationReference = outboxReference;
+        } else {
+            asyncOperationReference = sendRequest(request, result);
+            outboxReference = null;
+        }
 
         AsynchronousOperationReturnValue<X> ret = new AsynchronousOperationReturnValue<>();
-        if (configuration.isOperationExecutionConfirmation()) {
+        if (configuration.isOperationExecutionConfirmation() || outboxReference != null) {
             ret.setOperationType(PendingOperationTypeType.ASYNCHRONOUS);
             result.setInProgress();
             result.setAsynchronousOperationReference(asyncOperationReference);
@@ -251,6 +321,52 @@ public class AsyncProvisioningConnectorInstance extends AbstractManagedConnector
         return ret;
     }
 
+    /**
+     * The reference of a request put into the outbox. It contains the node identifier, because the outboxes are node-local:
+     * only the node that created the request knows its delivery status.
+     */
+    private String createOutboxReference() {
+        return AsyncProvisioningOutbox.REFERENCE_PREFIX + getLocalNodeId() + ":" + UUID.randomUUID();
+    }
+
+    private String getLocalNodeId() {
+        return taskManager != null ? taskManager.getNodeId() : "";
+    }
+
+    /**
+     * Provides the delivery status of requests put into the outbox. Other operations (confirmed by the target) are not
+     * known here, so null (no change) is returned for them. The same holds for requests created by other nodes.
+     *
+     * A request created on this node that is not known (anymore) is considered to be lost, e.g. because the node was
+     * restarted before it was sent; so the operation is failed. This can occur also if the outcome was already asked for,
+     * or forgotten because too many outcomes were waiting to be asked for; so the request may be sent twice, if the
+     * operation is retried then. But it is never lost without notice.
+     */
+    @Override
+    public OperationResultStatus queryOperationStatus(String asynchronousOperationReference, OperationResult parentResult) {
+        if (asynchronousOperationReference == null
+                || !asynchronousOperationReference.startsWith(AsyncProvisioningOutbox.REFERENCE_PREFIX + getLocalNodeId() + ":")) {
+            return null;
+        }
+        OperationResultStatus status = AsyncProvisioningOutbox.getDeliveryStatus(asynchronousOperationReference);
+        if (status != null) {
+            return status;
+        } else {
+            LOGGER.warn("Asynchronous provisioning request {} is not known in {}. It was probably lost (e.g. by node restart). "
+                    + "Marking the operation as failed.", asynchronousOperationReference, this);
+            return OperationResultStatus.FATAL_ERROR;
+        }
+    }
+
+    /**
+     * Requests for the same resource object should be sent in the order they were created.
+     * The identifiers of the object are used to recognize that.
+     */
+    private Object getOrderingKey(OperationRequested operation) {
+        Map<ItemName, Collection<?>> primaryIdentifiers = operation.getPrimaryIdentifiersValueMap();
+        return !primaryIdentifiers.isEmpty() ? primaryIdentifiers : operation.getSecondaryIdentifiersValueMap();
+    }
+
     private String sendRequest(AsyncProvisioningRequest request, OperationResult result) {
         List<AsyncProvisioningTarget> targets = targetsReference.get();
         if (targets.isEmpty()) {
@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.ucf.impl.builtin.async.provisioning;
+
+import java.util.*;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.datatype.Duration;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.provisioning.ucf.api.async.AsyncProvisioningRequest;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.result.OperationResultStatus;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.AsyncProvisioningOutboxType;
+
+/**
+ * Holds asynchronous provisioning requests that are to be sent to the targets, and sends them using dedicated threads.
+ * This way the provisioning operations do not wait for the broker, and they do not fail when the broker is
+ * temporarily unavailable.
+ *
+ * Requests are distributed into lanes (one per sender thread) according to their ordering key, i.e. the identifiers
+ * of the resource object. Each lane is processed sequentially: a request that cannot be sent is retried (after
+ * `retryInterval`) before any other request of the lane is sent. Hence, the requests for the same object are sent
+ * in the order in which they were created. After `maxAttempts` unsuccessful attempts the request is given up.
+ *
+ * The provisioning operation is not reported as successful when the request is put into the outbox. It is in progress
+ * (with the request reference as the asynchronous operation reference), so it is kept as a pending operation in the shadow,
+ * i.e. in the repository. Its final state is determined when the shadow is refreshed, see {@link #getDeliveryStatus(String)}:
+ * success if the request was sent, fatal error if it was given up - or if it is not known at all, e.g. because the node
+ * was restarted. So a request is never lost silently: the operation either succeeds or fails (and can be retried).
+ *
+ * The outbox itself is not persistent. When stopped (i.e. when the connector instance is reconfigured or disposed), it tries
+ * to send the remaining requests during `shutdownTimeout`, and returns those it was not able to send.
+ */
+class AsyncProvisioningOutbox {
+
+    private static final Trace LOGGER = TraceManager.getTrace(AsyncProvisioningOutbox.class);
+
+    private static final String OP_SEND_BATCH = AsyncProvisioningOutbox.class.getName() + ".sendBatch";
+
+    private static final String THREAD_NAME_PREFIX = "midpoint-async-provisioning-outbox-";
+
+    private static final int DEFAULT_THREADS = 1;
+    private static final int DEFAULT_CAPACITY = 10000;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final int DEFAULT_MAX_ATTEMPTS = 10;
+    private static final long DEFAULT_RETRY_INTERVAL = 10000L;
+    private static final long DEFAULT_SHUTDOWN_TIMEOUT = 10000L;
+
+    /** How long does an idle sender thread wait for a request before checking the state of the outbox. */
+    private static final long POLL_INTERVAL = 1000L;
+
+    /** Prefix of asynchronous operation references of the requests put into an outbox. */
+    static final String REFERENCE_PREFIX = "outbox:";
+
+    /** How many outcomes of requests (not yet asked for) are kept. The oldest ones are forgotten. */
+    private static final int MAX_OUTCOMES = 100000;
+
+    /** Requests waiting in any outbox on this node, or left unsent by a stopped one; indexed by the reference. */
+    private static final Map<String, Entry> WAITING = new ConcurrentHashMap<>();
+
+    /** Outcomes of requests that left the outboxes (sent or given up), indexed by the reference. */
+    private static final Map<String, OperationResultStatus> OUTCOMES = Collections.synchronizedMap(
+            new LinkedHashMap<>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, OperationResultStatus> eldest) {
+                    return size() > MAX_OUTCOMES;
+                }
+            });
+
+    /** Sends the request to the target(s). Throws an exception if the request could not be sent. */
+    interface Sender {
+        String send(@NotNull AsyncProvisioningRequest request, @NotNull OperationResult result);
+    }
+
+    @NotNull private final Sender sender;
+    @NotNull private final String name;
+
+    private final int capacity;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long retryInterval;
+    private final long shutdownTimeout;
+
+    @NotNull private final List<Lane> lanes = new ArrayList<>();
+
+    /** Number of requests in the outbox, including the ones being sent. */
+    @NotNull private final AtomicInteger size = new AtomicInteger();
+
+    /** True if no more requests are accepted. Guarded by `this`. */
+    private boolean stopping;
+
+    /** When the sender threads should give up, if stopping. Zero if not stopping. */
+    private volatile long stopDeadline;
+
+    AsyncProvisioningOutbox(@NotNull AsyncProvisioningOutboxType configuration, @NotNull Sender sender, @NotNull String name) {
+        this.sender = sender;
+        this.name = name;
+        this.capacity = Math.max(1, Objects.requireNonNullElse(configuration.getCapacity(), DEFAULT_CAPACITY));
+        this.batchSize = Math.max(1, Objects.requireNonNullElse(configuration.getBatchSize(), DEFAULT_BATCH_SIZE));
+        this.maxAttempts = Math.max(1, Objects.requireNonNullElse(configuration.getMaxAttempts(), DEFAULT_MAX_ATTEMPTS));
+        this.retryInterval = toMillis(configuration.getRetryInterval(), DEFAULT_RETRY_INTERVAL);
+        this.shutdownTimeout = toMillis(configuration.getShutdownTimeout(), DEFAULT_SHUTDOWN_TIMEOUT);
+        int threads = Math.max(1, Objects.requireNonNullElse(configuration.getThreads(), DEFAULT_THREADS));
+        for (int i = 0; i < threads; i++) {
+            lanes.add(new Lane(i));
+        }
+    }
+
+    private static long toMillis(@Nullable Duration duration, long defaultValue) {
+        return duration != null ? Math.max(0, duration.getTimeInMillis(new Date())) : defaultValue;
+    }
+
+    /**
+     * Starts the sender threads.
+     *
+     * @param unsentEntries Entries left over from the previous outbox (of the same connector instance). They are sent first.
+     */
+    void start(@NotNull List<Entry> unsentEntries) {
+        for (Entry entry : unsentEntries) {
+            getLane(entry.orderingKey).queue.add(entry);
+            size.incrementAndGet();
+        }
+        lanes.forEach(Lane::start);
+        LOGGER.debug("Started outbox for {} with {} sender thread(s), {} request(s) taken over",
+                name, lanes.size(), unsentEntries.size());
+    }
+
+    /**
+     * Puts the request into the outbox.
+     *
+     * @param orderingKey Requests with equal keys are sent in the order in which they were put into the outbox.
+     * @param reference Unique reference of the request, used to ask for its delivery status later.
+     * @return false if the outbox is being stopped, so the request has to be sent in other way
+     */
+    synchronized boolean offer(
+            @NotNull AsyncProvisioningRequest request, @Nullable Object orderingKey, @NotNull String reference) {
+        if (stopping) {
+            return false;
+        }
+        if (size.get() >= capacity) {
+            throw new SystemException("Asynchronous provisioning outbox for " + name + " is full ("
+                    + capacity + " requests)");
+        }
+        size.incrementAndGet();
+        Entry entry = new Entry(request, orderingKey, reference);
+        WAITING.put(reference, entry);
+        getLane(orderingKey).queue.add(entry);
+        return true;
+    }
+
+    /**
+     * Returns the delivery status of the request with given reference: in progress if it is waiting in an outbox,
+     * success if it was sent, fatal error if it was given up. Null if the request is not known on this node
+     * (e.g. because the node was restarted, or the outcome was asked for already, or it was forgotten).
+     *
+     * The final outcome is returned only once, as the pending operation is then completed.
+     */
+    static @Nullable OperationResultStatus getDeliveryStatus(@NotNull String reference) {
+        // WAITING must be checked first, as the entries are put into OUTCOMES before they are removed from WAITING.
+        if (WAITING.containsKey(reference)) {
+            return OperationResultStatus.IN_PROGRESS;
+        } else {
+            return OUTCOMES.remove(reference);
+        }
+    }
+
+    /** Records the outcome of sending the entry, and forgets the entry itself. */
+    static void recordOutcome(@NotNull Entry entry, @NotNull OperationResultStatus status) {
+        OUTCOMES.put(entry.reference, status);
+        WAITING.remove(entry.reference);
+    }
+
+    /**
+     * Stops accepting the requests, waits (at most `shutdownTimeout`) for the remaining ones to be sent,
+     * and stops the sender threads.
+     *
+     * @return Entries that were not sent.
+     */
+    @NotNull List<Entry> stop() {
+        synchronized (this) {
+            stopping = true;
+            stopDeadline = System.currentTimeMillis() + shutdownTimeout;
+            notifyAll();
+        }
+        for (Lane lane : lanes) {
+            lane.join();
+        }
+        List<Entry> unsent = new ArrayList<>();
+        for (Lane lane : lanes) {
+            lane.queue.drainTo(unsent);
+        }
+        LOGGER.debug("Stopped outbox for {}, {} request(s) not sent", name, unsent.size());
+        return unsent;
+    }
+
+    /** Number of requests waiting in the outbox (or being sent). */
+    int size() {
+        return size.get();
+    }
+
+    private @NotNull Lane getLane(@Nullable Object orderingKey) {
+        int index = orderingKey != null ? Math.floorMod(orderingKey.hashCode(), lanes.size()) : 0;
+        return lanes.get(index);
+    }
+
+    private boolean isPastStopDeadline() {
+        long deadline = stopDeadline;
+        return deadline != 0 && System.currentTimeMillis() >= deadline;
+    }
+
+    /**
+     * Waits before next attempt to send a request.
+     *
+     * @return false if the sending should be given up (because the outbox is stopping and the time is out)
+     */
+    private boolean waitBeforeRetry() {
+        long retryAt = System.currentTimeMillis() + retryInterval;
+        synchronized (this) {
+            while (true) {
+                long now = System.currentTimeMillis();
+                long deadline = stopDeadline;
+                if (deadline != 0 && now >= deadline) {
+                    return false;
+                } else if (now >= retryAt) {
+                    return true;
+                }
+                long waitTime = deadline != 0 ? Math.min(retryAt, deadline) - now : retryAt - now;
+                try {
+                    wait(waitTime);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+    }
+
+    /** A request waiting in the outbox. */
+    static class Entry {
+
+        @NotNull private final AsyncProvisioningRequest request;
+        @Nullable private final Object orderingKey;
+        @NotNull private final String reference;
+        private int attempts;
+
+        private Entry(@NotNull AsyncProvisioningRequest request, @Nullable Object orderingKey, @NotNull String reference) {
+            this.request = request;
+            this.orderingKey = orderingKey;
+            this.reference = reference;
+        }
+
+        @NotNull AsyncProvisioningRequest getRequest() {
+            return request;
+        }
+    }
+
+    /** Requests processed by a single sender thread. */
+    private class Lane implements Runnable {
+
+        @NotNull private final BlockingDeque<Entry> queue = new LinkedBlockingDeque<>();
+        @NotNull private final Thread thread;
+
+        private Lane(int index) {
+            thread = new Thread(this, THREAD_NAME_PREFIX + name + "-" + index);
+            thread.setDaemon(true);
+        }
+
+        private void start() {
+            thread.start();
+        }
+
+        private void join() {
+            try {
+                // The thread should finish by the deadline; the additional time is for the request being sent.
+                thread.join(shutdownTimeout + retryInterval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (thread.isAlive()) {
+                LOGGER.warn("Outbox sender thread {} did not finish in time", thread.getName());
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!isPastStopDeadline() && !Thread.currentThread().isInterrupted()) {
+                    Entry first = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        if (stopDeadline != 0) {
+                            break; // stopping and nothing more to send
+                        } else {
+                            continue;
+                        }
+                    }
+                    List<Entry> batch = new ArrayList<>();
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    sendBatch(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                LoggingUtils.logUnexpectedException(LOGGER, "Unexpected exception in outbox sender thread {}", t,
+                        Thread.currentThread().getName());
+            }
+        }
+
+        private void sendBatch(List<Entry> batch) {
+            OperationResult result = new OperationResult(OP_SEND_BATCH);
+            result.addParam("size", batch.size());
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    if (!sendWithRetries(batch.get(i), result)) {
+                        // Returning the rest of the batch to the queue, keeping the order.
+                        List<Entry> rest = batch.subList(i, batch.size());
+                        for (int j = rest.size() - 1; j >= 0; j--) {
+                            queue.addFirst(rest.get(j));
+                        }
+                        return;
+                    }
+                }
+            } finally {
+                result.computeStatusIfUnknown();
+                LOGGER.trace("Sent batch of {} request(s) from the outbox for {}: {}", batch.size(), name, result.getStatus());
+            }
+        }
+
+        /** Returns false if the entry was not processed (and should be kept in the outbox). */
+        private boolean sendWithRetries(Entry entry, OperationResult result) {
+            while (true) {
+                entry.attempts++;
+                try {
+                    sender.send(entry.request, result);
+                    recordOutcome(entry, OperationResultStatus.SUCCESS);
+                    size.decrementAndGet();
+                    return true;
+                } catch (Throwable t) {
+                    result.muteLastSubresultError();
+                    if (entry.attempts >= maxAttempts) {
+                        LoggingUtils.logUnexpectedException(LOGGER,
+                                "Couldn't send asynchronous provisioning request for {} after {} attempts, giving it up "
+                                        + "(the operation will be marked as failed): {}",
+                                t, name, entry.attempts, entry.request);
+                        recordOutcome(entry, OperationResultStatus.FATAL_ERROR);
+                        size.decrementAndGet();
+                        return true;
+                    }
+                    LOGGER.warn("Couldn't send asynchronous provisioning request for {} (attempt {} of {}), will retry in {} ms: {}",
+                            name, entry.attempts, maxAttempts, retryInterval, t.getMessage());
+                    if (!waitBeforeRetry()) {
+                        return false;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -50,6 +50,12 @@ public class ConnectorConfiguration {
      */
     private boolean operationExecutionConfirmation;
 
+    /**
+     * If present, the requests are not sent during the provisioning operation, but put into the outbox
+     * and sent by dedicated threads. See {@link AsyncProvisioningOutbox}.
+     */
+    private AsyncProvisioningOutboxType outbox;
+
     @ConfigurationItem
     public AsyncProvisioningTargetsType getTargets() {
         return targets;
@@ -86,10 +92,23 @@ public class ConnectorConfiguration {
         this.operationExecutionConfirmation = operationExecutionConfirmation;
     }
 
+    @ConfigurationItem
+    public AsyncProvisioningOutboxType getOutbox() {
+        return outbox;
+    }
+
+    public void setOutbox(AsyncProvisioningOutboxType outbox) {
+        this.outbox = outbox;
+    }
+
     public void validate() {
         if (getAllTargets().isEmpty()) {
             throw new IllegalStateException("No asynchronous provisioning targets were configured");
         }
+        if (outbox != null && operationExecutionConfirmation) {
+            // The asynchronous operation reference (message ID) is not known until the request is sent.
+            throw new IllegalStateException("Outbox cannot be used together with operation execution confirmations");
+        }
     }
 
     /**
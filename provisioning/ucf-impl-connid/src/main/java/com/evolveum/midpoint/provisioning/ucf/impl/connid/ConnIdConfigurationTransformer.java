@@ -66,6 +66,9 @@ public class ConnIdConfigurationTransformer {
     private Protector protector;
     private ConnectorConfigurationOptions options;
 
+    /** Lower bound for adaptive sizing of the connector pool; null if the adaptive sizing is not enabled. */
+    private Integer adaptivePoolMinObjects;
+
     public ConnIdConfigurationTransformer(
             ConnectorType connectorType, ConnectorInfo cinfo, Protector protector, ConnectorConfigurationOptions options) {
         this.connectorType = connectorType;
@@ -274,6 +277,8 @@ public class ConnIdConfigurationTransformer {
             @NotNull ObjectPoolConfiguration connectorPoolConfiguration,
             PrismContainer<?> connectorPoolContainer) throws SchemaException {
 
+        boolean adaptiveSizing = false;
+        int adaptiveMinObjects = 1;
         if (connectorPoolContainer != null) {
             for (PrismProperty prismProperty : connectorPoolContainer.getValue().getProperties()) {
                 QName propertyQName = prismProperty.getElementName();
@@ -297,6 +302,12 @@ public class ConnIdConfigurationTransformer {
                     } else if (ConnectorFactoryConnIdImpl.CONNECTOR_SCHEMA_CONNECTOR_POOL_CONFIGURATION_MAX_IDLE_TIME_MILLIS
                             .equals(subelementName)) {
                         connectorPoolConfiguration.setMaxIdleTimeMillis(parseLong(prismProperty));
+                    } else if (ConnectorFactoryConnIdImpl.CONNECTOR_SCHEMA_CONNECTOR_POOL_CONFIGURATION_ADAPTIVE_SIZING
+                            .equals(subelementName)) {
+                        adaptiveSizing = parseBoolean(prismProperty);
+                    } else if (ConnectorFactoryConnIdImpl.CONNECTOR_SCHEMA_CONNECTOR_POOL_CONFIGURATION_ADAPTIVE_MIN_OBJECTS
+                            .equals(subelementName)) {
+                        adaptiveMinObjects = parseInt(prismProperty);
                     } else {
                         throw new SchemaException(
                                 "Unexpected element "
@@ -316,6 +327,15 @@ public class ConnIdConfigurationTransformer {
         if (options != null && options.isDoNotCache()) {
             connectorPoolConfiguration.setMinIdle(0); // TODO but does this really work?
         }
+        adaptivePoolMinObjects = adaptiveSizing ? adaptiveMinObjects : null;
+    }
+
+    /**
+     * Lower bound for adaptive sizing of the connector pool, as found by the last
+     * {@link #transformConnectorConfiguration(PrismContainerValue)} call. Null if the adaptive sizing is not enabled.
+     */
+    public Integer getAdaptivePoolMinObjects() {
+        return adaptivePoolMinObjects;
     }
 
     private void transformConnectorTimeoutsConfiguration(APIConfiguration apiConfig,
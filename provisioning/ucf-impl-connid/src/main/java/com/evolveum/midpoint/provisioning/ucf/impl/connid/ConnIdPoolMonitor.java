@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.provisioning.ucf.impl.connid;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
+import org.identityconnectors.framework.api.APIConfiguration;
+import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.schema.reporting.ConnIdOperation;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ConnectorPoolStatisticsType;
+
+/**
+ * Monitors (and optionally adaptively limits) the use of the pool of local ConnId connector instances.
+ *
+ * ConnId provides no hook for the borrowing of connector instances, and the pool size cannot be changed after the pool
+ * is created. Therefore, the operations are admitted through a gate (a semaphore) of at most `maxObjects` permits,
+ * so that the waiting for a free connector instance happens here, where it can be measured. As the gate is never larger
+ * than the pool, an admitted operation finds a free connector instance in the pool without waiting.
+ *
+ * In the adaptive mode the gate starts at `adaptiveMinObjects`. As the ConnId pool creates the instances lazily,
+ * the number of instances grows only when the gate grows: it is increased (up to `maxObjects`) when the operations
+ * have to wait, and decreased when the instances are not fully used. The size is reconsidered when an operation
+ * finishes, and also by the waiting operations themselves (once per adjustment interval), so that the gate can grow
+ * even if all the admitted operations take long (e.g. a long search holding the only permit).
+ *
+ * An operation that is not admitted within `maxWait` fails with {@link OperationTimeoutException}, see
+ * {@link #checkAdmitted(ConnIdOperation)}. It does not proceed to ConnId, as it would wait there once more.
+ *
+ * Nested operations (ones started by a thread that already executes an operation on this connector instance,
+ * e.g. from within a search handler) are not gated, to avoid self-deadlock.
+ *
+ * The statistics are based solely on what is observed here (ConnId does not provide the pool statistics via its API).
+ * The statistics of each operation are attached to its {@link ConnIdOperation}, from where they get into the task
+ * provisioning statistics.
+ */
+class ConnIdPoolMonitor {
+
+    private static final Trace LOGGER = TraceManager.getTrace(ConnIdPoolMonitor.class);
+
+    /** How often is the gate size reconsidered (in adaptive mode). */
+    private static final long DEFAULT_ADJUSTMENT_INTERVAL = 10000L;
+
+    /** Gate size is increased if more than this fraction of operations had to wait during the interval. */
+    private static final double WAITING_THRESHOLD = 0.1;
+
+    /** Minimal time between the checks of the gate size done by a waiting operation (in adaptive mode). */
+    private static final long MIN_WAIT_SLICE = 10L;
+
+    @NotNull private final String instanceName;
+
+    /** Null if the pool size is not limited. */
+    @Nullable private final ResizableSemaphore gate;
+    private final long maxWait;
+    private final int minSize;
+    private final int maxSize;
+    private final boolean adaptive;
+    private final long adjustmentInterval;
+
+    /** Current size of the gate. Modified only under `this` lock. */
+    private volatile int size;
+
+    @NotNull private final Map<ConnIdOperation, Borrowing> borrowings = new ConcurrentHashMap<>();
+    @NotNull private final ThreadLocal<int[]> nestingDepth = ThreadLocal.withInitial(() -> new int[1]);
+
+    /** Number of connector instances currently used by gated operations. */
+    @NotNull private final AtomicInteger inUse = new AtomicInteger();
+
+    /** Number of operations currently waiting to be admitted. */
+    @NotNull private final AtomicInteger waiting = new AtomicInteger();
+
+    /** Maximum of {@link #inUse} ever reached. The pool must have created at least this number of instances. */
+    @NotNull private final AtomicInteger maxInUse = new AtomicInteger();
+
+    @NotNull private final AtomicInteger intervalBorrows = new AtomicInteger();
+    @NotNull private final AtomicInteger intervalWaits = new AtomicInteger();
+    @NotNull private final AtomicInteger intervalPeakInUse = new AtomicInteger();
+    private volatile long intervalStart = System.currentTimeMillis();
+
+    ConnIdPoolMonitor(@NotNull String instanceName, int maxObjects, long maxWait, @Nullable Integer adaptiveMinObjects,
+            long adjustmentInterval) {
+        this.instanceName = instanceName;
+        this.maxWait = maxWait;
+        this.maxSize = maxObjects;
+        this.adaptive = adaptiveMinObjects != null && maxObjects > 0;
+        this.minSize = adaptive ? Math.max(1, Math.min(adaptiveMinObjects, maxObjects)) : maxObjects;
+        this.adjustmentInterval = adjustmentInterval;
+        this.size = minSize;
+        this.gate = maxObjects > 0 ? new ResizableSemaphore(minSize) : null;
+    }
+
+    /**
+     * Creates the monitor for a configured connector whose instances are pooled locally.
+     *
+     * @param adaptiveMinObjects Lower bound for the adaptive sizing; null if the adaptive sizing is not enabled.
+     */
+    static @Nullable ConnIdPoolMonitor create(@NotNull APIConfiguration apiConfig, @NotNull String instanceName,
+            @Nullable Integer adaptiveMinObjects) {
+        if (!apiConfig.isConnectorPoolingSupported()) {
+            return null;
+        }
+        ObjectPoolConfiguration poolConfiguration = apiConfig.getConnectorPoolConfiguration();
+        return new ConnIdPoolMonitor(instanceName, poolConfiguration.getMaxObjects(), poolConfiguration.getMaxWait(),
+                adaptiveMinObjects, DEFAULT_ADJUSTMENT_INTERVAL);
+    }
+
+    /** Called when the operation is started, before the connector instance is borrowed from the pool. */
+    void acquire(@NotNull ConnIdOperation operation) {
+        int[] depth = nestingDepth.get();
+        boolean nested = depth[0]++ > 0;
+        long start = System.currentTimeMillis();
+        boolean waited = false;
+        boolean gated = false;
+        boolean timedOut = false;
+        intervalBorrows.incrementAndGet();
+        if (gate != null && !nested) {
+            if (gate.tryAcquire()) {
+                gated = true;
+            } else {
+                waited = true;
+                intervalWaits.incrementAndGet();
+                gated = waitForAdmission(start);
+                if (!gated) {
+                    LOGGER.debug("Timed out waiting for a connector instance of {} ({} ms)", instanceName, maxWait);
+                    timedOut = true;
+                }
+            }
+        }
+        boolean created = false;
+        if (gated) {
+            int current = inUse.incrementAndGet();
+            intervalPeakInUse.accumulateAndGet(current, Math::max);
+            created = current > maxInUse.getAndAccumulate(current, Math::max);
+        }
+        borrowings.put(operation, new Borrowing(System.currentTimeMillis() - start, waited, timedOut, gated, created));
+    }
+
+    /**
+     * Waits for a permit, at most until `maxWait` from the start. In the adaptive mode, the size of the gate is
+     * reconsidered after each slice of waiting, as the operations holding the permits may not finish (and adjust the size) in the meanwhile.
+     *
+     * @return true if the permit was acquired
+     */
+    private boolean waitForAdmission(long start) {
+        assert gate != null;
+        waiting.incrementAndGet();
+        try {
+            long deadline = start + maxWait;
+            for (;;) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                long slice = adaptive ? Math.min(remaining, Math.max(MIN_WAIT_SLICE, adjustmentInterval)) : remaining;
+                if (gate.tryAcquire(slice, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+                if (adaptive) {
+                    adjustSizeIfNeeded();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Throws {@link OperationTimeoutException} if the operation was not admitted in time. To be called just before
+     * the operation is passed to ConnId.
+     */
+    void checkAdmitted(@NotNull ConnIdOperation operation) {
+        Borrowing borrowing = borrowings.get(operation);
+        if (borrowing != null && borrowing.timedOut) {
+            throw new OperationTimeoutException("Timed out waiting for a connector instance of " + instanceName
+                    + " (" + maxWait + " ms)");
+        }
+    }
+
+    /**
+     * Called when the operation is finished. Records the statistics into the operation.
+     * May be called more than once for the same operation; only the first call has an effect.
+     */
+    void release(@NotNull ConnIdOperation operation) {
+        Borrowing borrowing = borrowings.remove(operation);
+        if (borrowing == null) {
+            return;
+        }
+        int[] depth = nestingDepth.get();
+        if (depth[0] > 0) {
+            depth[0]--;
+        }
+        int active;
+        if (borrowing.gated) {
+            active = inUse.decrementAndGet();
+            //noinspection ConstantConditions
+            gate.release();
+        } else {
+            active = inUse.get();
+        }
+
+        ConnectorPoolStatisticsType bean = new ConnectorPoolStatisticsType()
+                .borrowCount(1)
+                .waitCount(borrowing.waited ? 1 : 0)
+                .timeoutCount(borrowing.timedOut ? 1 : 0)
+                .totalWaitTime(borrowing.waitTime)
+                .maxWaitTime(borrowing.waitTime)
+                .createdCount(borrowing.created ? 1 : 0)
+                .creationTime(borrowing.created ? System.currentTimeMillis() - borrowing.startTimestamp : 0L)
+                .maxActive(maxInUse.get())
+                .lastActive(active);
+        if (gate != null) {
+            bean.lastSize(size);
+        }
+        operation.setConnectorPoolStatistics(bean);
+
+        if (adaptive) {
+            adjustSizeIfNeeded();
+        }
+    }
+
+    private void adjustSizeIfNeeded() {
+        if (System.currentTimeMillis() - intervalStart < adjustmentInterval) {
+            return;
+        }
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (now - intervalStart < adjustmentInterval) {
+                return;
+            }
+            intervalStart = now;
+            int borrows = intervalBorrows.getAndSet(0);
+            int waits = intervalWaits.getAndSet(0);
+            int peakInUse = intervalPeakInUse.getAndSet(inUse.get());
+            int waitingNow = waiting.get();
+            if (borrows == 0 && waitingNow == 0) {
+                return;
+            }
+            assert gate != null;
+            // Operations waiting for the whole interval (with no new ones coming) indicate that the gate is too small
+            // as well; without this, they would wait until the operations holding the permits finish.
+            if ((waits > borrows * WAITING_THRESHOLD || borrows == 0) && size < maxSize) {
+                int increment = Math.min(maxSize - size, Math.max(1, size / 2));
+                size += increment;
+                gate.release(increment);
+                LOGGER.debug("Connector pool of {}: {} of {} operations waited ({} waiting now), increasing size to {}",
+                        instanceName, waits, borrows, waitingNow, size);
+            } else if (waits == 0 && waitingNow == 0 && peakInUse < size && size > minSize) {
+                size--;
+                gate.reducePermits(1);
+                LOGGER.debug("Connector pool of {}: at most {} instances used, decreasing size to {}",
+                        instanceName, peakInUse, size);
+            }
+        }
+    }
+
+    /** Current size of the gate, i.e. the number of connector instances that can be used concurrently. */
+    int getSize() {
+        return size;
+    }
+
+    private static class Borrowing {
+
+        private final long startTimestamp = System.currentTimeMillis();
+        private final long waitTime;
+        private final boolean waited;
+        private final boolean timedOut;
+        private final boolean gated;
+        private final boolean created;
+
+        private Borrowing(long waitTime, boolean waited, boolean timedOut, boolean gated, boolean created) {
+            this.waitTime = waitTime;
+            this.waited = waited;
+            this.timedOut = timedOut;
+            this.gated = gated;
+            this.created = created;
+        }
+    }
+
+    /** Semaphore whose permits can be taken away, even if they are currently in use. */
+    private static class ResizableSemaphore extends Semaphore {
+
+        private ResizableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
@@ -93,6 +93,8 @@ public class ConnectorFactoryConnIdImpl implements ConnectorFactory {
     public static final String CONNECTOR_SCHEMA_CONNECTOR_POOL_CONFIGURATION_MAX_OBJECTS = "maxObjects";
     public static final String CONNECTOR_SCHEMA_CONNECTOR_POOL_CONFIGURATION_MAX_WAIT = "maxWait";
     public static final String CONNECTOR_SCHEMA_CONNECTOR_POOL_CONFIGURATION_MAX_IDLE_TIME_MILLIS = "maxIdleTimeMillis";
+    public static final String CONNECTOR_SCHEMA_CONNECTOR_POOL_CONFIGURATION_ADAPTIVE_SIZING = "adaptiveSizing";
+    public static final String CONNECTOR_SCHEMA_CONNECTOR_POOL_CONFIGURATION_ADAPTIVE_MIN_OBJECTS = "adaptiveMinObjects";
 
     public static final String CONNECTOR_SCHEMA_PRODUCER_BUFFER_SIZE_XML_ELEMENT_NAME = "producerBufferSize";
     public static final QName CONNECTOR_SCHEMA_PRODUCER_BUFFER_SIZE_ELEMENT = new QName(SchemaConstants.NS_ICF_CONFIGURATION,
@@ -104,6 +104,9 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
     private final PrismSchema connectorSchema;
     private APIConfiguration apiConfig = null;
 
+    /** Monitors the use of the connector pool. Null if the connector is not pooled locally (or not configured yet). */
+    private volatile ConnIdPoolMonitor poolMonitor;
+
     private final Protector protector;
     final ConnIdNameMapper connIdNameMapper;
     final ConnIdConvertor connIdConvertor;
@@ -210,6 +213,9 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
 
             // Create new connector instance using the transformed configuration
             connIdConnectorFacade = ConnectorFacadeFactory.getInstance().newInstance(apiConfig);
+            poolMonitor = connectorInfo instanceof LocalConnectorInfoImpl ?
+                    ConnIdPoolMonitor.create(apiConfig, getHumanReadableName(), configTransformer.getAdaptivePoolMinObjects()) :
+                    null;
 
             if (oldConnIdConnectorFacade != null) {
                 // Make sure old connector instance is disposed. We do not want to waste resources.
@@ -559,6 +565,7 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
 
         ConnectorObject co;
         try {
+            checkPoolAdmission(operation);
             // Invoke the ConnId connector
             co = connIdConnectorFacade.getObject(icfObjectClass, uid, options);
             recordIcfOperationEnd(reporter, operation, null);
@@ -801,6 +808,7 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
 
         Uid uid;
         try {
+            checkPoolAdmission(operation);
 
             LOGGER.trace("Calling ConnId create for {}", operation);
             uid = connIdConnectorFacade.create(icfObjectClass, attributes, options);
@@ -990,6 +998,7 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
             LOGGER.trace("Invoking ICF update(), objectclass={}, uid={}, operation id={}, attributes delta: {}",
                     objClass, uid, getIdentifier(operation), lazy(() -> dumpAttributesDelta(attributesDelta)));
             try {
+                checkPoolAdmission(operation);
                 knownExecutedChanges =
                         emptyIfNull(connIdConnectorFacade.updateDelta(objClass, uid, attributesDelta, connIdOptions));
 
@@ -1151,6 +1160,7 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
                     objClass, uid, getIdentifier(operation), lazy(() -> dumpAttributes(attributesToAdd)));
 
             try {
+                checkPoolAdmission(operation);
                 uid = connIdConnectorFacade.addAttributeValues(objClass, uid, attributesToAdd, connIdOptions);
                 recordIcfOperationEnd(reporter, operation, null);
 
@@ -1209,6 +1219,7 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
                     objClass, uid, getIdentifier(operation), lazy(() -> dumpAttributes(attributesToUpdate)));
 
             try {
+                checkPoolAdmission(operation);
                 uid = connIdConnectorFacade.update(objClass, uid, attributesToUpdate, connIdOptions);
                 recordIcfOperationEnd(reporter, operation, null);
 
@@ -1268,6 +1279,7 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
                     objClass, uid, getIdentifier(operation), lazy(() -> dumpAttributes(attributesToRemove)));
 
             try {
+                checkPoolAdmission(operation);
                 uid = connIdConnectorFacade.removeAttributeValues(objClass, uid, attributesToRemove, connIdOptions);
                 recordIcfOperationEnd(reporter, operation, null);
                 connIdResult.recordSuccess();
@@ -1448,6 +1460,7 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
 
         LOGGER.trace("Invoking ConnId delete operation: {}", operation);
         try {
+            checkPoolAdmission(operation);
 
             connIdConnectorFacade.delete(objClass, uid, new OperationOptionsBuilder().build());
             recordIcfOperationEnd(ctx, operation, null);
@@ -1506,6 +1519,7 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
         ConnIdOperation operation = recordIcfOperationStart(ctx, ProvisioningOperation.ICF_GET_LATEST_SYNC_TOKEN, objectDefinition);
         LOGGER.trace("Invoking ConnId getLatestSyncToken operation: {}", operation);
         try {
+            checkPoolAdmission(operation);
             syncToken = connIdConnectorFacade.getLatestSyncToken(icfObjectClass);
             recordIcfOperationEnd(ctx, operation, null);
             icfResult.recordSuccess();
@@ -1658,6 +1672,7 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
                 LOGGER.trace("Invoking ConnId sync operation: {}", operation);
                 SyncToken finalToken;
                 try {
+                    checkPoolAdmission(operation);
                     finalToken = connIdConnectorFacade.sync(requestConnIdObjectClass, initialToken, syncHandler, options);
                     // Note that finalToken value is not quite reliable. The SyncApiOp documentation is not clear on its semantics;
                     // it is only from SyncTokenResultsHandler (SPI) documentation and SyncImpl class that we know this value is
@@ -1872,6 +1887,7 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
         ConnIdOperation operation = recordIcfOperationStart(ctx, ProvisioningOperation.ICF_SEARCH, objectDefinition);
 
         try {
+            checkPoolAdmission(operation);
 
             Filter filter = convertFilterToIcf(query, objectDefinition);
             final Holder<Integer> fetched = new Holder<>(0);
@@ -2131,6 +2147,7 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
         Object output = null;
 
         try {
+            checkPoolAdmission(operation);
 
             LOGGER.trace("Running script ({}): {}", icfOpName, operation);
 
@@ -2235,7 +2252,13 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
     private @Nullable ConnIdOperation recordIcfOperationStart(UcfExecutionContext reporter, ProvisioningOperation operation,
             ResourceObjectDefinition objectDefinition, Uid uid) {
         if (reporter != null) {
-            return reporter.recordIcfOperationStart(operation, objectDefinition, uid != null ? uid.getUidValue() : null);
+            ConnIdOperation connIdOperation =
+                    reporter.recordIcfOperationStart(operation, objectDefinition, uid != null ? uid.getUidValue() : null);
+            ConnIdPoolMonitor monitor = poolMonitor;
+            if (monitor != null && connIdOperation != null) {
+                monitor.acquire(connIdOperation);
+            }
+            return connIdOperation;
         } else {
             LOGGER.warn("Couldn't record ConnId operation start as reporter is null.");
             return null;
@@ -2263,7 +2286,22 @@ public class ConnectorInstanceConnIdImpl implements ConnectorInstance {
         }
     }
 
+    /**
+     * Fails the operation if no connector instance could be obtained from the pool in time.
+     * Called at the beginning of the operation's `try` block, so the failure is processed like any other ConnId exception.
+     */
+    void checkPoolAdmission(ConnIdOperation operation) {
+        ConnIdPoolMonitor monitor = poolMonitor;
+        if (monitor != null && operation != null) {
+            monitor.checkAdmitted(operation);
+        }
+    }
+
     void recordIcfOperationEnd(UcfExecutionContext reporter, ConnIdOperation operation, Throwable ex) {
+        ConnIdPoolMonitor monitor = poolMonitor;
+        if (monitor != null && operation != null) {
+            monitor.release(operation);
+        }
         if (reporter != null) {
             reporter.recordIcfOperationEnd(operation, ex);
         } else {
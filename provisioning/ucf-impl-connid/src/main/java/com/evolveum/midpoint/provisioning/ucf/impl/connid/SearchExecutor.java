@@ -217,6 +217,7 @@ class SearchExecutor {
         ConnIdOperation operation = recordIcfOperationStart();
 
         try {
+            connectorInstance.checkPoolAdmission(operation);
             LOGGER.trace("Executing ConnId search operation: {}", operation);
             connIdSearchResult = connectorInstance.getConnIdConnectorFacade()
                     .search(
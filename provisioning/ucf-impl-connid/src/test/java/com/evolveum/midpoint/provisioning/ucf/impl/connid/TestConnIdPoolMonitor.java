@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.provisioning.ucf.impl.connid;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.schema.reporting.ConnIdOperation;
+import com.evolveum.midpoint.schema.statistics.ProvisioningOperation;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ConnectorPoolStatisticsType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectReferenceType;
+
+/**
+ * Tests the gating, the statistics, and the adaptive sizing of {@link ConnIdPoolMonitor}.
+ *
+ * Operations in the same thread are nested ones, so concurrent (top-level) operations are run in separate threads.
+ */
+public class TestConnIdPoolMonitor extends AbstractUnitTest {
+
+    private static final String INSTANCE_NAME = "test-connector";
+
+    /** Failure in a thread started by {@link #startInOtherThread(Runnable)}. */
+    private volatile Throwable failure;
+
+    /** The statistics of operations that do not wait. */
+    @Test
+    public void test100Statistics() {
+        given();
+        ConnIdPoolMonitor monitor = new ConnIdPoolMonitor(INSTANCE_NAME, 2, 1000, null, 0);
+        ConnIdOperation first = createOperation();
+        ConnIdOperation second = createOperation();
+
+        when();
+        monitor.acquire(first);
+        runInOtherThread(() -> monitor.acquire(second));
+        monitor.release(first);
+
+        then();
+        ConnectorPoolStatisticsType statistics = first.getConnectorPoolStatistics();
+        assertThat(statistics).as("statistics").isNotNull();
+        assertThat(statistics.getBorrowCount()).as("borrows").isEqualTo(1);
+        assertThat(statistics.getWaitCount()).as("waits").isEqualTo(0);
+        assertThat(statistics.getTimeoutCount()).as("timeouts").isEqualTo(0);
+        assertThat(statistics.getCreatedCount()).as("created").isEqualTo(1);
+        assertThat(statistics.getMaxActive()).as("max active").isEqualTo(2);
+        assertThat(statistics.getLastActive()).as("last active").isEqualTo(1);
+        assertThat(statistics.getLastSize()).as("last size").isEqualTo(2);
+
+        runInOtherThread(() -> monitor.release(second));
+        assertThat(second.getConnectorPoolStatistics().getCreatedCount()).as("created (second)").isEqualTo(1);
+    }
+
+    /** An operation that is not admitted in time fails without being passed to ConnId. */
+    @Test
+    public void test110Timeout() {
+        given();
+        long maxWait = 200;
+        ConnIdPoolMonitor monitor = new ConnIdPoolMonitor(INSTANCE_NAME, 1, maxWait, null, 0);
+        ConnIdOperation first = createOperation();
+        ConnIdOperation second = createOperation();
+        monitor.acquire(first);
+        monitor.checkAdmitted(first);
+
+        when();
+        runInOtherThread(() -> {
+            monitor.acquire(second);
+            assertThatThrownBy(() -> monitor.checkAdmitted(second))
+                    .isInstanceOf(OperationTimeoutException.class)
+                    .hasMessageContaining(INSTANCE_NAME);
+            monitor.release(second);
+        });
+
+        then();
+        ConnectorPoolStatisticsType statistics = second.getConnectorPoolStatistics();
+        assertThat(statistics.getWaitCount()).as("waits").isEqualTo(1);
+        assertThat(statistics.getTimeoutCount()).as("timeouts").isEqualTo(1);
+        assertThat(statistics.getTotalWaitTime()).as("wait time").isGreaterThanOrEqualTo(maxWait - 10);
+        assertThat(statistics.getCreatedCount()).as("created").isEqualTo(0);
+
+        monitor.release(first);
+    }
+
+    /** Nested operations are not gated, so they do not wait for the instance held by the outer operation. */
+    @Test
+    public void test120NestedOperation() {
+        given();
+        ConnIdPoolMonitor monitor = new ConnIdPoolMonitor(INSTANCE_NAME, 1, 1000, null, 0);
+        ConnIdOperation outer = createOperation();
+        ConnIdOperation nested = createOperation();
+
+        when();
+        monitor.acquire(outer);
+        monitor.acquire(nested);
+        monitor.checkAdmitted(nested);
+        monitor.release(nested);
+        monitor.release(outer);
+
+        then();
+        assertThat(nested.getConnectorPoolStatistics().getWaitCount()).as("waits (nested)").isEqualTo(0);
+        assertThat(outer.getConnectorPoolStatistics().getWaitCount()).as("waits (outer)").isEqualTo(0);
+        assertThat(outer.getConnectorPoolStatistics().getLastActive()).as("last active").isEqualTo(0);
+    }
+
+    /**
+     * In the adaptive mode, the size starts at the minimum, grows when the operations wait,
+     * and shrinks when the instances are not fully used. The size is reconsidered at the end of the first operation
+     * after the adjustment interval elapsed.
+     */
+    @Test
+    public void test130AdaptiveSizing() throws Exception {
+        given();
+        long interval = 500;
+        ConnIdPoolMonitor monitor = new ConnIdPoolMonitor(INSTANCE_NAME, 4, 10000, 1, interval);
+        assertThat(monitor.getSize()).as("initial size").isEqualTo(1);
+        ConnIdOperation first = createOperation();
+        ConnIdOperation second = createOperation();
+
+        when("the second operation has to wait");
+        monitor.acquire(first);
+        Thread secondThread = startInOtherThread(() -> {
+            monitor.acquire(second);
+            monitor.checkAdmitted(second);
+            monitor.release(second);
+        });
+        Thread.sleep(100);
+        monitor.release(first);
+        secondThread.join(10000);
+        assertThat(failure).as("failure in other thread").isNull();
+        Thread.sleep(interval);
+        runOperation(monitor);
+
+        then("the size is increased");
+        assertThat(second.getConnectorPoolStatistics().getWaitCount()).as("waits").isEqualTo(1);
+        assertThat(monitor.getSize()).as("size after waiting").isEqualTo(2);
+
+        when("operations run without waiting");
+        Thread.sleep(interval);
+        ConnIdOperation last = runOperation(monitor);
+
+        then("the size is decreased");
+        assertThat(monitor.getSize()).as("size after no waiting").isEqualTo(1);
+        assertThat(last.getConnectorPoolStatistics().getLastSize()).as("last size").isEqualTo(1);
+    }
+
+    /**
+     * In the adaptive mode, the operations waiting behind a long operation (holding the only permit) are admitted
+     * after the adjustment interval, not when the long operation finishes (or `maxWait` elapses).
+     */
+    @Test
+    public void test140AdaptiveSizingWithLongOperation() throws Exception {
+        given();
+        long interval = 200;
+        ConnIdPoolMonitor monitor = new ConnIdPoolMonitor(INSTANCE_NAME, 4, 10000, 1, interval);
+        ConnIdOperation longOperation = createOperation();
+        monitor.acquire(longOperation);
+        monitor.checkAdmitted(longOperation);
+
+        when("other operations are started while the long one holds the permit");
+        ConnIdOperation second = createOperation();
+        ConnIdOperation third = createOperation();
+        Thread secondThread = startInOtherThread(() -> runOperation(monitor, second));
+        Thread thirdThread = startInOtherThread(() -> runOperation(monitor, third));
+        secondThread.join(5000);
+        thirdThread.join(5000);
+
+        then("they are admitted while the long operation is still running");
+        assertThat(failure).as("failure in other thread").isNull();
+        assertThat(secondThread.isAlive()).as("second operation running").isFalse();
+        assertThat(thirdThread.isAlive()).as("third operation running").isFalse();
+        for (ConnIdOperation operation : new ConnIdOperation[] { second, third }) {
+            ConnectorPoolStatisticsType statistics = operation.getConnectorPoolStatistics();
+            assertThat(statistics.getTimeoutCount()).as("timeouts").isEqualTo(0);
+            assertThat(statistics.getTotalWaitTime()).as("wait time").isLessThan(5000);
+        }
+        assertThat(monitor.getSize()).as("size").isGreaterThanOrEqualTo(2);
+
+        monitor.release(longOperation);
+    }
+
+    private ConnIdOperation runOperation(ConnIdPoolMonitor monitor) {
+        return runOperation(monitor, createOperation());
+    }
+
+    private ConnIdOperation runOperation(ConnIdPoolMonitor monitor, ConnIdOperation operation) {
+        monitor.acquire(operation);
+        monitor.checkAdmitted(operation);
+        monitor.release(operation);
+        return operation;
+    }
+
+    private ConnIdOperation createOperation() {
+        return ConnIdOperation.ConnIdOperationBuilder.aConnIdOperation()
+                .withIdentifier(INSTANCE_NAME)
+                .withOperation(ProvisioningOperation.ICF_GET)
+                .withResourceRef(new ObjectReferenceType().oid("7a3c1f9e-2d4b-4e6a-8c5d-0b1a2f3e4d5c"))
+                .build();
+    }
+
+    /** A new thread is used each time, as the monitor keeps the nesting depth in a thread-local variable. */
+    private void runInOtherThread(Runnable runnable) {
+        try {
+            startInOtherThread(runnable).join(10000);
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        assertThat(failure).as("failure in other thread").isNull();
+    }
+
+    private Thread startInOtherThread(Runnable runnable) {
+        Thread thread = new Thread(() -> {
+            try {
+                runnable.run();
+            } catch (Throwable t) {
+                failure = t;
+            }
+        });
+        thread.start();
+        return thread;
+    }
+}
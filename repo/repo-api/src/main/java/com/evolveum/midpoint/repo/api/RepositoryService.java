@@ -7,6 +7,8 @@
 package com.evolveum.midpoint.repo.api;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import com.evolveum.midpoint.prism.PrismConstants;
 
@@ -131,6 +133,7 @@ public interface RepositoryService {
     String OP_GET_OBJECT = "getObject";
     String OP_SEARCH_SHADOW_OWNER = "searchShadowOwner";
     String OP_SEARCH_OBJECTS = "searchObjects";
+    String OP_SEARCH_OBJECT_OIDS = "searchObjectOids";
     String OP_SEARCH_OBJECTS_ITERATIVE = "searchObjectsIterative";
     String OP_SEARCH_OBJECTS_ITERATIVE_PAGE = "searchObjectsIterativePage";
     String OP_SEARCH_CONTAINERS = "searchContainers";
@@ -398,6 +401,25 @@ public interface RepositoryService {
             Collection<SelectorOptions<GetOperationOptions>> options,
             OperationResult parentResult) throws SchemaException;
 
+    /**
+     * Returns OIDs of objects that match specified criteria, at most `maxSize` of them.
+     * Paging (if present in the query) is ignored. The ordering of the results is not significant.
+     *
+     * Meant for existence and uniqueness checks, where the objects themselves are not needed.
+     * The default implementation retrieves whole objects; implementations should select only the OIDs.
+     * There is no caching of the results.
+     */
+    @Experimental
+    default @NotNull <T extends ObjectType> List<String> searchObjectOids(
+            @NotNull Class<T> type, ObjectQuery query, int maxSize, @NotNull OperationResult parentResult)
+            throws SchemaException {
+        ObjectQuery limitedQuery = query != null ? query.clone() : PrismContext.get().queryFactory().createQuery();
+        limitedQuery.setPaging(PrismContext.get().queryFactory().createPaging(0, maxSize));
+        return searchObjects(type, limitedQuery, null, parentResult).stream()
+                .map(PrismObject::getOid)
+                .collect(Collectors.toList());
+    }
+
     /**
      * Search for objects in the repository in an iterative fashion.
      *
@@ -90,6 +90,15 @@ public class RepositoryCache implements RepositoryService, Cache {
         LocalRepoCacheCollection.exit();
     }
 
+    /**
+     * Clears thread-local caches of the current thread. To be called after other threads modified the repository
+     * in the context of the current operation (e.g. when executing projections concurrently), because the invalidations
+     * done by them do not reach the local caches of this thread.
+     */
+    public static void clearLocalCaches() {
+        LocalRepoCacheCollection.clearCurrentThread();
+    }
+
     //region --- GET, SEARCH and COUNT operations ------------------------------------------------------------------
 
     @NotNull
@@ -133,6 +142,12 @@ public class RepositoryCache implements RepositoryService, Cache {
         return searchOpHandler.countObjects(type, query, options, parentResult);
     }
 
+    @Override
+    public @NotNull <T extends ObjectType> List<String> searchObjectOids(@NotNull Class<T> type, ObjectQuery query,
+            int maxSize, @NotNull OperationResult parentResult) throws SchemaException {
+        return searchOpHandler.searchObjectOids(type, query, maxSize, parentResult);
+    }
+
     @Override
     public <T extends Containerable> int countContainers(Class<T> type, ObjectQuery query,
             Collection<SelectorOptions<GetOperationOptions>> options, OperationResult parentResult) {
@@ -15,6 +15,7 @@ import static com.evolveum.midpoint.schema.SelectorOptions.findRootOptions;
 import static com.evolveum.midpoint.schema.util.TraceUtil.isAtLeastMinimal;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.jetbrains.annotations.NotNull;
 import org.springframework.stereotype.Component;
@@ -46,6 +47,7 @@ public class SearchOpHandler extends CachedOpHandler {
     private static final String OP_SEARCH_SHADOW_OWNER = CLASS_NAME_WITH_DOT + "searchShadowOwner";
     private static final String OP_COUNT_CONTAINERS = CLASS_NAME_WITH_DOT + "countContainers";
     private static final String OP_COUNT_OBJECTS = CLASS_NAME_WITH_DOT + "countObjects";
+    private static final String OP_SEARCH_OBJECT_OIDS = CLASS_NAME_WITH_DOT + "searchObjectOids";
 
     /**
      * Queries resulting in more objects will not be cached "as such" - although individual objects/versions can be cached.
@@ -399,4 +401,27 @@ public class SearchOpHandler extends CachedOpHandler {
             result.computeStatusIfUnknown();
         }
     }
+
+    public @NotNull <T extends ObjectType> List<String> searchObjectOids(
+            @NotNull Class<T> type, ObjectQuery query, int maxSize, @NotNull OperationResult parentResult)
+            throws SchemaException {
+        // Not cached: these are meant to be cheap existence checks that need current data.
+        OperationResult result = parentResult.subresult(OP_SEARCH_OBJECT_OIDS)
+                .addQualifier(type.getSimpleName())
+                .addParam("type", type)
+                .addParam("query", query)
+                .addParam("maxSize", maxSize)
+                .build();
+        MonitoringUtil.log("Cache: PASS searchObjectOids ({})", false, type.getSimpleName());
+        Long startTime = repoOpStart();
+        try {
+            return repositoryService.searchObjectOids(type, query, maxSize, result);
+        } catch (Throwable t) {
+            result.recordFatalError(t);
+            throw t;
+        } finally {
+            repoOpEnd(startTime);
+            result.computeStatusIfUnknown();
+        }
+    }
 }
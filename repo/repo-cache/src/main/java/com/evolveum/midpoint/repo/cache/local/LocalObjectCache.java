@@ -43,6 +43,10 @@ public class LocalObjectCache extends AbstractThreadLocalCache {
         data.remove(oid);
     }
 
+    public void clear() {
+        data.clear();
+    }
+
     @Override
     public String description() {
         return "O:" + data.size();
@@ -48,6 +48,10 @@ public class LocalQueryCache extends AbstractThreadLocalCache {
         data.remove(key);
     }
 
+    public void clear() {
+        data.clear();
+    }
+
     @Override
     public String description() {
         return "Q:" + data.size();
@@ -81,6 +81,25 @@ public class LocalRepoCacheCollection {
         LocalQueryCache.exit(LOCAL_QUERY_CACHE_INSTANCE, LOGGER);
     }
 
+    /**
+     * Clears the caches of the current thread (if entered). Used when the repository was updated by other threads
+     * on behalf of the current one, so the invalidations did not reach our caches.
+     */
+    public static void clearCurrentThread() {
+        LocalObjectCache objectCache = getLocalObjectCache();
+        if (objectCache != null) {
+            objectCache.clear();
+        }
+        LocalVersionCache versionCache = getLocalVersionCache();
+        if (versionCache != null) {
+            versionCache.clear();
+        }
+        LocalQueryCache queryCache = getLocalQueryCache();
+        if (queryCache != null) {
+            queryCache.clear();
+        }
+    }
+
     public static boolean exists() {
         return LocalObjectCache.exists(LOCAL_OBJECT_CACHE_INSTANCE) ||
                 LocalVersionCache.exists(LOCAL_VERSION_CACHE_INSTANCE) ||
@@ -40,6 +40,10 @@ public class LocalVersionCache extends AbstractThreadLocalCache {
         data.remove(oid);
     }
 
+    public void clear() {
+        data.clear();
+    }
+
     @Override
     public String description() {
         return "V:" + data.size();
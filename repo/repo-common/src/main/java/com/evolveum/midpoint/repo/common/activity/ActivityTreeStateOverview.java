@@ -416,6 +416,7 @@ public class ActivityTreeStateOverview {
         try {
             beans.plainRepositoryService.modifyObjectDynamically(TaskType.class, rootTask.getOid(), null,
                     modificationsSupplier, null, result);
+            beans.taskManager.recordTaskWrite();
         } catch (ObjectAlreadyExistsException e) {
             throw new SystemException("Unexpected ObjectAlreadyExistsException: " + e.getMessage(), e);
         }
@@ -264,6 +264,7 @@ public class TaskActivityManager {
                     .item(TaskType.F_ACTIVITY_STATE).replace()
                     .asItemDeltas();
             plainRepositoryService.modifyObject(TaskType.class, taskOid, modifications, result);
+            taskManager.recordTaskWrite();
             LOGGER.info("Deleted complete task activity state in {}", taskOid);
         } catch (CommonException e) {
             LoggingUtils.logUnexpectedException(LOGGER, "Couldn't delete activity state in {}", e, taskOid);
@@ -305,6 +306,7 @@ public class TaskActivityManager {
                         .asItemDeltas();
             }
             plainRepositoryService.modifyObject(TaskType.class, task.getOid(), itemDeltas, result);
+            taskManager.recordTaskWrite();
             LOGGER.info("Deleted activity state for '{}' in {}", activityPath, task);
         } catch (CommonException e) {
             LoggingUtils.logUnexpectedException(LOGGER, "Couldn't delete state for activity path '{}' in {}", e, activityPath, task);
@@ -330,6 +332,7 @@ public class TaskActivityManager {
                                 .asItemDeltas());
             }
             plainRepositoryService.modifyObject(TaskType.class, task.getOid(), itemDeltas, result);
+            taskManager.recordTaskWrite();
             LOGGER.info("Purged activity state for '{}' in {}", activityPath, task);
         } catch (CommonException e) {
             LoggingUtils.logUnexpectedException(LOGGER, "Couldn't delete state for activity path '{}' in {}", e, activityPath, task);
@@ -76,6 +76,10 @@ public class ActivityDistributionDefinition implements DebugDumpable, Cloneable
         return or0(bean.getWorkerThreads());
     }
 
+    public WorkerThreadsAutoScalingDefinitionType getWorkerThreadsAutoScaling() {
+        return bean.getWorkerThreadsAutoScaling();
+    }
+
     void applyChangeTailoring(@NotNull ActivityTailoringType tailoring) {
         if (tailoring.getDistribution() != null) {
             bean = TailoringUtil.getTailoredBean(bean, tailoring.getDistribution());
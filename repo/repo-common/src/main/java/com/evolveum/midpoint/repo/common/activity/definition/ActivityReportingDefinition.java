@@ -171,6 +171,7 @@ public class ActivityReportingDefinition implements DebugDumpable, Cloneable {
                 + "profiling: " + (bean.getProfiling() != null ? "present" : "absent")
                 + "reports: " + size(bean.getReports()) + " item(s), "
                 + "state overview: " + size(bean.getStateOverview()) + " item(s), "
+                + "counters: " + size(bean.getCounters()) + " item(s), "
                 + "item counting: " + size(bean.getItemCounting()) + " item(s)";
     }
 
@@ -235,6 +236,17 @@ public class ActivityReportingDefinition implements DebugDumpable, Cloneable {
                 bean.getStateOverview().getProgressUpdateMode() : null;
     }
 
+    /** How often should be accumulated counter increments written to the repository? Null means "immediately". */
+    public @Nullable Long getCountersFlushInterval() {
+        return bean.getCounters() != null ?
+                bean.getCounters().getFlushInterval() : null;
+    }
+
+    public @Nullable Integer getCountersThresholdMargin() {
+        return bean.getCounters() != null ?
+                bean.getCounters().getThresholdMargin() : null;
+    }
+
     /** How should be bucket completion logged? (none/brief/full) */
     public @NotNull ActivityEventLoggingOptionType getBucketCompletionLogging() {
         ActivityLoggingOptionsType logging = bean.getLogging();
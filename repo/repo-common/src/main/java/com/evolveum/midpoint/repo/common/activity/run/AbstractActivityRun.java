@@ -26,6 +26,7 @@ import com.evolveum.midpoint.repo.common.activity.definition.ActivityDefinition;
 
 import com.evolveum.midpoint.repo.common.activity.definition.ActivityReportingDefinition;
 import com.evolveum.midpoint.repo.common.activity.run.state.ActivityStateDefinition;
+import com.evolveum.midpoint.repo.common.activity.run.state.counters.CountersAccumulator;
 import com.evolveum.midpoint.repo.common.activity.run.task.ActivityBasedTaskRun;
 
 import com.evolveum.midpoint.schema.statistics.DummyOperationImpl;
@@ -34,6 +35,8 @@ import com.evolveum.midpoint.schema.statistics.Operation;
 
 import com.evolveum.midpoint.util.logging.LoggingUtils;
 
+import com.google.common.base.MoreObjects;
+
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -93,6 +96,8 @@ public abstract class AbstractActivityRun<
 
     private static final Trace LOGGER = TraceManager.getTrace(AbstractActivityRun.class);
 
+    private static final int DEFAULT_COUNTERS_THRESHOLD_MARGIN = 100;
+
     /**
      * The task run in context of which this activity run takes place.
      */
@@ -123,6 +128,14 @@ public abstract class AbstractActivityRun<
      */
     private ActivityState activityStateForCounters;
 
+    /**
+     * Accumulates increments of counters in {@link #activityStateForCounters}. Present only if the accumulation is
+     * configured, see {@link ActivityReportingDefinition#getCountersFlushInterval()}.
+     *
+     * Lazily evaluated. Guarded by {@link #activityStateForCountersLock}.
+     */
+    private CountersAccumulator countersAccumulator;
+
     private final Object activityStateForCountersLock = new Object();
 
     /** When did this run start? */
@@ -294,6 +307,8 @@ public abstract class AbstractActivityRun<
     private void updateAndCloseActivityState(ActivityRunResult runResult, OperationResult result)
             throws ActivityRunException {
 
+        flushCounters(result);
+
         activityState.updateProgressAndStatisticsNoCommit();
 
         completeRunResult(runResult);
@@ -499,12 +514,60 @@ public abstract class AbstractActivityRun<
     public Map<String, Integer> incrementCounters(@NotNull CountersGroup counterGroup,
             @NotNull Collection<String> countersIdentifiers, @NotNull OperationResult result)
             throws SchemaException, ObjectNotFoundException, ObjectAlreadyExistsException {
+        return getActivityStateForCounters(result)
+                .incrementCounters(counterGroup, countersIdentifiers, result);
+    }
+
+    @Override
+    public Map<String, Integer> incrementCounters(@NotNull CountersGroup counterGroup,
+            @NotNull Map<String, Integer> countersThresholds, @NotNull OperationResult result)
+            throws SchemaException, ObjectNotFoundException, ObjectAlreadyExistsException {
+        ActivityState stateForCounters = getActivityStateForCounters(result);
+        CountersAccumulator accumulator;
+        synchronized (activityStateForCountersLock) {
+            if (countersAccumulator == null) {
+                Long flushInterval = activity.getReportingDefinition().getCountersFlushInterval();
+                if (flushInterval != null && flushInterval > 0) {
+                    countersAccumulator = new CountersAccumulator(
+                            stateForCounters,
+                            flushInterval,
+                            MoreObjects.firstNonNull(
+                                    activity.getReportingDefinition().getCountersThresholdMargin(),
+                                    DEFAULT_COUNTERS_THRESHOLD_MARGIN));
+                }
+            }
+            accumulator = countersAccumulator;
+        }
+        if (accumulator != null) {
+            return accumulator.increment(counterGroup, countersThresholds, result);
+        } else {
+            return stateForCounters.incrementCounters(counterGroup, countersThresholds.keySet(), result);
+        }
+    }
+
+    private @NotNull ActivityState getActivityStateForCounters(@NotNull OperationResult result)
+            throws SchemaException, ObjectNotFoundException {
         synchronized (activityStateForCountersLock) {
             if (activityStateForCounters == null) {
                 activityStateForCounters = determineActivityStateForCounters(result);
             }
+            return activityStateForCounters;
+        }
+    }
+
+    /** Writes counter increments accumulated (if any) to the repository. */
+    private void flushCounters(OperationResult result) throws ActivityRunException {
+        CountersAccumulator accumulator;
+        synchronized (activityStateForCountersLock) {
+            accumulator = countersAccumulator;
+        }
+        if (accumulator != null) {
+            try {
+                accumulator.flush(result);
+            } catch (CommonException e) {
+                throw new ActivityRunException("Couldn't flush activity counters", FATAL_ERROR, PERMANENT_ERROR, e);
+            }
         }
-        return activityStateForCounters.incrementCounters(counterGroup, countersIdentifiers, result);
     }
 
     protected @NotNull ActivityState determineActivityStateForCounters(@NotNull OperationResult result)
@@ -22,6 +22,7 @@ import com.evolveum.midpoint.repo.common.activity.run.buckets.segmentation.Bucke
 import com.evolveum.midpoint.repo.common.util.OperationExecutionRecorderForTasks;
 import com.evolveum.midpoint.schema.SchemaService;
 import com.evolveum.midpoint.schema.cache.CacheConfigurationManager;
+import com.evolveum.midpoint.security.api.SecurityContextManager;
 import com.evolveum.midpoint.task.api.LightweightIdentifierGenerator;
 import com.evolveum.midpoint.task.api.TaskManager;
 import com.evolveum.midpoint.task.api.Tracer;
@@ -56,6 +57,7 @@ public class CommonTaskBeans {
     @Autowired public BucketContentFactoryGenerator contentFactoryCreator;
     @Autowired public ExpressionFactory expressionFactory;
     @Autowired public RepositoryItemSourceFactory repositoryItemSourceFactory;
+    @Autowired public SecurityContextManager securityContextManager;
 
     @Autowired(required = false) public List<ActivityListener> activityListeners;
 
@@ -40,6 +40,7 @@ import com.evolveum.midpoint.repo.common.activity.handlers.ActivityHandler;
 import com.evolveum.midpoint.repo.common.activity.run.state.ActivityBucketManagementStatistics;
 import com.evolveum.midpoint.repo.common.activity.run.state.ActivityItemProcessingStatistics;
 import com.evolveum.midpoint.repo.common.activity.run.state.ActivityState;
+import com.evolveum.midpoint.repo.common.activity.run.buckets.BucketWatermarkKeeper;
 import com.evolveum.midpoint.repo.common.activity.run.buckets.GetBucketOperationOptions;
 import com.evolveum.midpoint.repo.common.activity.run.buckets.GetBucketOperationOptions.GetBucketOperationOptionsBuilder;
 import com.evolveum.midpoint.schema.result.OperationResult;
@@ -196,12 +197,17 @@ public abstract class IterativeActivityRun<
             return runResult;
 
         } finally {
+            releaseRunResources();
             disableGlobalConnIdOperationsListener();
             cancelTaskChannelOverride(originalChannel);
             getActivityState().getConnIdOperationsReport().flush(getRunningTask(), result);
         }
     }
 
+    /** Releases resources (e.g. threads) held during the whole run. Called also if the run fails. */
+    protected void releaseRunResources() {
+    }
+
     private void cancelTaskChannelOverride(String originalChannel) {
         getRunningTask().setChannel(originalChannel);
     }
@@ -395,6 +401,19 @@ public abstract class IterativeActivityRun<
         }
     }
 
+    /**
+     * Creates the keeper of the progress watermark for the current bucket, if work stealing is enabled and applicable.
+     * It has to be fed with the items in the order in which they are submitted for processing.
+     */
+    protected @Nullable BucketWatermarkKeeper createBucketWatermarkKeeper() {
+        if (bucket == null || bucketingSituation.workerTaskOid == null) {
+            return null;
+        }
+        return BucketWatermarkKeeper.create(activity.getDistributionDefinition(), bucket,
+                bucketingSituation.coordinatorTaskOid, bucketingSituation.workerTaskOid, getActivityPath(),
+                getLiveBucketManagementStatistics(), beans);
+    }
+
     private ActivityBucketManagementStatistics getLiveBucketManagementStatistics() {
         return activityState.getLiveStatistics().getLiveBucketManagement();
     }
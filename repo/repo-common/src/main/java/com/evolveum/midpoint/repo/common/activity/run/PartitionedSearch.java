@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.common.activity.run;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.prism.Containerable;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.repo.common.activity.run.buckets.ItemDefinitionProvider;
+import com.evolveum.midpoint.repo.common.activity.run.buckets.segmentation.BucketContentFactory;
+import com.evolveum.midpoint.repo.common.activity.run.sources.SearchableItemSource;
+import com.evolveum.midpoint.schema.ContainerableResultHandler;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.util.task.BucketingUtil;
+import com.evolveum.midpoint.security.api.MidPointPrincipal;
+import com.evolveum.midpoint.task.api.RunningTask;
+import com.evolveum.midpoint.util.exception.CommonException;
+import com.evolveum.midpoint.util.exception.SecurityViolationException;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Searches for items in a set of disjoint partitions concurrently, feeding all the items found into a single handler.
+ *
+ * The partitions are defined by a segmentation configuration (see {@link ResourceSearchPartitioningType}), just like
+ * work buckets are. Each partition narrows the original query (already narrowed to the current bucket, if there's any).
+ *
+ * Only the searching is done in the partition threads. The items found are handed over to the thread that called
+ * {@link #execute(SearchSpecification, SearchableItemSource, ContainerableResultHandler, RunningTask, OperationResult)},
+ * i.e. the coordinator thread of the activity run. It passes them to the handler, which submits them to the worker threads
+ * (via the requests buffer), or processes them right there, if there are no worker threads. So the items are processed
+ * in the task-bound threads, with their local caches and thread-local statistics, just like without the partitioning.
+ *
+ * When the handler asks to stop, or when a search fails, the other searches are stopped as well.
+ *
+ * One instance serves the whole activity run (all its buckets), so the partition threads are created only once.
+ * They have to be released by calling {@link #shutdown()} at the end of the run.
+ */
+class PartitionedSearch<C extends Containerable> {
+
+    private static final Trace LOGGER = TraceManager.getTrace(PartitionedSearch.class);
+
+    private static final String OP_SEARCH_PARTITION = PartitionedSearch.class.getName() + ".searchPartition";
+    private static final String OP_HANDLE_ITEM = PartitionedSearch.class.getName() + ".handleItem";
+
+    private static final String THREAD_NAME_PREFIX = "midpoint-partitioned-search-";
+
+    /** Default for the maximum number of threads. */
+    private static final int DEFAULT_MAX_THREADS = 4;
+
+    /** To avoid runaway configurations. */
+    private static final int MAX_PARTITIONS = 1000;
+
+    /** How many items found can wait for the coordinator thread (per partition thread). */
+    private static final int QUEUE_CAPACITY_PER_THREAD = 100;
+
+    /** How long do the threads wait for the queue before checking whether they should stop. */
+    private static final long QUEUE_WAIT = 100L;
+
+    @NotNull private final AbstractWorkSegmentationType segmentationConfig;
+
+    /** Partitions in the form of (pseudo) buckets, to be used for narrowing the query. */
+    @NotNull private final List<WorkBucketType> partitionBuckets;
+
+    @Nullable private final ItemDefinitionProvider itemDefinitionProvider;
+    private final int threads;
+    @NotNull private final CommonTaskBeans beans;
+
+    /** Created on the first execution. */
+    private ExecutorService executor;
+
+    private PartitionedSearch(@NotNull AbstractWorkSegmentationType segmentationConfig,
+            @NotNull List<WorkBucketType> partitionBuckets, @Nullable ItemDefinitionProvider itemDefinitionProvider,
+            int threads, @NotNull CommonTaskBeans beans) {
+        this.segmentationConfig = segmentationConfig;
+        this.partitionBuckets = partitionBuckets;
+        this.itemDefinitionProvider = itemDefinitionProvider;
+        this.threads = threads;
+        this.beans = beans;
+    }
+
+    /**
+     * Creates the partitioned search for given partitioning configuration.
+     *
+     * @return null if there are less than two partitions
+     */
+    static <C extends Containerable> @Nullable PartitionedSearch<C> create(
+            @NotNull ResourceSearchPartitioningType partitioning,
+            @Nullable ItemDefinitionProvider itemDefinitionProvider, @NotNull CommonTaskBeans beans) {
+
+        BucketsDefinitionType segmentationHolder = new BucketsDefinitionType()
+                .numericSegmentation(clone(partitioning.getNumericSegmentation()))
+                .stringSegmentation(clone(partitioning.getStringSegmentation()))
+                .explicitSegmentation(clone(partitioning.getExplicitSegmentation()));
+        AbstractWorkSegmentationType segmentationConfig =
+                BucketingUtil.getWorkSegmentationConfiguration(segmentationHolder);
+        if (segmentationConfig == null) {
+            LOGGER.debug("No segmentation in search partitioning configuration, the search will not be partitioned");
+            return null;
+        }
+        BucketContentFactory contentFactory = beans.contentFactoryCreator.createContentFactory(segmentationHolder, null);
+
+        List<WorkBucketType> partitionBuckets = new ArrayList<>();
+        AbstractWorkBucketContentType content = null;
+        Integer sequentialNumber = null;
+        while ((content = contentFactory.createNextBucketContent(content, sequentialNumber)) != null) {
+            sequentialNumber = sequentialNumber != null ? sequentialNumber + 1 : 1;
+            if (sequentialNumber > MAX_PARTITIONS) {
+                throw new IllegalStateException("Too many search partitions; the maximum is " + MAX_PARTITIONS);
+            }
+            partitionBuckets.add(new WorkBucketType()
+                    .sequentialNumber(sequentialNumber)
+                    .content(content.clone()));
+        }
+        if (partitionBuckets.size() < 2) {
+            LOGGER.debug("Only {} search partition(s), the search will not be partitioned", partitionBuckets.size());
+            return null;
+        }
+        int threads = partitioning.getThreads() != null ?
+                partitioning.getThreads() : Math.min(partitionBuckets.size(), DEFAULT_MAX_THREADS);
+        if (threads < 2) {
+            LOGGER.debug("Search partitioning threads set to {}, the search will not be partitioned", threads);
+            return null;
+        }
+        LOGGER.debug("Search will be executed in {} partitions, using {} threads", partitionBuckets.size(), threads);
+        return new PartitionedSearch<>(segmentationConfig, partitionBuckets, itemDefinitionProvider,
+                Math.min(threads, partitionBuckets.size()), beans);
+    }
+
+    private static <T extends AbstractWorkSegmentationType> T clone(T segmentation) {
+        //noinspection unchecked
+        return segmentation != null ? (T) segmentation.clone() : null;
+    }
+
+    /**
+     * Executes the searches for given search specification (e.g. for the current bucket), passes the items found
+     * to the handler (in the current thread), and waits for the completion of the searches.
+     */
+    void execute(@NotNull SearchSpecification<C> searchSpecification, @NotNull SearchableItemSource itemSource,
+            @NotNull ContainerableResultHandler<C> handler, @NotNull RunningTask task, @NotNull OperationResult result)
+            throws CommonException {
+        new Execution(createPartitions(searchSpecification, task, result), itemSource, task)
+                .run(handler, result);
+    }
+
+    private List<SearchSpecification<C>> createPartitions(
+            SearchSpecification<C> searchSpecification, RunningTask task, OperationResult result)
+            throws CommonException {
+        List<SearchSpecification<C>> partitions = new ArrayList<>();
+        for (WorkBucketType partitionBucket : partitionBuckets) {
+            SearchSpecification<C> partition = searchSpecification.clone();
+            ObjectQuery narrowedQuery = beans.bucketingManager.narrowQueryForWorkBucket(
+                    searchSpecification.getType(), partition.getQuery(), segmentationConfig,
+                    itemDefinitionProvider, partitionBucket);
+            partition.setQuery(narrowedQuery);
+            beans.getAdvancedActivityRunSupport().applyDefinitionsToQuery(partition, task, result);
+            partitions.add(partition);
+        }
+        return partitions;
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            AtomicInteger threadCounter = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /** Stops the partition threads. To be called at the end of the activity run. */
+    synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private MidPointPrincipal getPrincipal() {
+        try {
+            return beans.securityContextManager.isAuthenticated() ? beans.securityContextManager.getPrincipal() : null;
+        } catch (SecurityViolationException e) {
+            throw new SystemException("Couldn't determine the principal: " + e.getMessage(), e);
+        }
+    }
+
+    /** Execution of the search for a single search specification (e.g. a bucket). */
+    private class Execution {
+
+        @NotNull private final List<Partition> partitions = new ArrayList<>();
+        @NotNull private final SearchableItemSource itemSource;
+        @NotNull private final RunningTask task;
+
+        /** Items found by the partition threads, waiting for the coordinator thread. */
+        @NotNull private final BlockingQueue<C> queue = new ArrayBlockingQueue<>(threads * QUEUE_CAPACITY_PER_THREAD);
+
+        @NotNull private final AtomicBoolean stopped = new AtomicBoolean();
+
+        private Execution(@NotNull List<SearchSpecification<C>> searchSpecifications,
+                @NotNull SearchableItemSource itemSource, @NotNull RunningTask task) {
+            searchSpecifications.forEach(spec -> partitions.add(new Partition(spec)));
+            this.itemSource = itemSource;
+            this.task = task;
+        }
+
+        private void run(ContainerableResultHandler<C> handler, OperationResult result) throws CommonException {
+            MidPointPrincipal principal = getPrincipal();
+            ExecutorService executor = getExecutor();
+            List<Future<?>> futures = new ArrayList<>();
+            try {
+                for (Partition partition : partitions) {
+                    futures.add(executor.submit(() -> partition.execute(principal)));
+                }
+                handOver(futures, handler, result);
+            } finally {
+                stopped.set(true);
+                waitForCompletion(futures);
+                queue.clear();
+                for (Partition partition : partitions) {
+                    if (partition.result != null) {
+                        result.addSubresult(partition.result);
+                    }
+                }
+            }
+
+            for (Partition partition : partitions) {
+                if (partition.exception != null) {
+                    rethrow(partition.exception);
+                }
+            }
+        }
+
+        /** Passes the items found to the handler, until all the searches are done, or the processing is stopped. */
+        private void handOver(List<Future<?>> futures, ContainerableResultHandler<C> handler, OperationResult result) {
+            while (!stopped.get()) {
+                if (!task.canRun()) {
+                    LOGGER.trace("Task was stopped, stopping the partitioned search");
+                    return;
+                }
+                boolean allDone = futures.stream().allMatch(Future::isDone);
+                C item;
+                try {
+                    item = queue.poll(QUEUE_WAIT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (item != null) {
+                    if (!handleItem(item, handler, result)) {
+                        LOGGER.trace("Handler requested to stop, stopping the partitioned search");
+                        return;
+                    }
+                } else if (allDone) {
+                    return; // no searches running and nothing in the queue
+                }
+            }
+        }
+
+        private boolean handleItem(C item, ContainerableResultHandler<C> handler, OperationResult result) {
+            OperationResult itemResult = result.createMinorSubresult(OP_HANDLE_ITEM);
+            try {
+                return handler.handle(item, itemResult);
+            } catch (RuntimeException | Error e) {
+                itemResult.recordFatalError(e);
+                throw e;
+            } finally {
+                itemResult.close();
+                result.summarize();
+            }
+        }
+
+        /** Called in the partition threads. */
+        private boolean offer(C item) {
+            try {
+                while (!stopped.get()) {
+                    if (queue.offer(item, QUEUE_WAIT, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        /** The searches use the queue, so we have to wait for them to finish (they stop soon after being told so). */
+        private void waitForCompletion(List<Future<?>> futures) {
+            boolean interrupted = false;
+            for (Future<?> future : futures) {
+                while (true) {
+                    try {
+                        future.get();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    } catch (CancellationException | ExecutionException e) {
+                        // Should not occur, as the partition catches everything.
+                        LOGGER.error("Unexpected exception in partitioned search: {}", e.getMessage(), e);
+                        break;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void rethrow(Throwable t) throws CommonException {
+            if (t instanceof CommonException) {
+                throw (CommonException) t;
+            } else if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            } else {
+                throw new SystemException(t.getMessage(), t);
+            }
+        }
+
+        /** Search in a single partition. */
+        private class Partition {
+
+            @NotNull private final SearchSpecification<C> searchSpecification;
+
+            private OperationResult result;
+            private Throwable exception;
+
+            private Partition(@NotNull SearchSpecification<C> searchSpecification) {
+                this.searchSpecification = searchSpecification;
+            }
+
+            private void execute(@Nullable MidPointPrincipal principal) {
+                result = new OperationResult(OP_SEARCH_PARTITION);
+                try {
+                    if (stopped.get()) {
+                        result.recordNotApplicable("Search was stopped");
+                        return;
+                    }
+                    if (principal != null) {
+                        beans.securityContextManager.setupPreAuthenticatedSecurityContext(principal);
+                    }
+                    LOGGER.trace("Searching in partition with query: {}", searchSpecification.getQuery());
+                    itemSource.searchIterative(searchSpecification, (item, lResult) -> offer(item), task, result);
+                } catch (Throwable t) {
+                    result.recordFatalError(t);
+                    exception = t;
+                    stopped.set(true);
+                } finally {
+                    result.computeStatusIfUnknown();
+                }
+            }
+        }
+    }
+}
@@ -14,6 +14,7 @@ import com.evolveum.midpoint.repo.common.activity.definition.ObjectSetSpecificat
 import com.evolveum.midpoint.repo.common.activity.definition.RepositoryObjectSetSpecificationImpl;
 import com.evolveum.midpoint.repo.common.activity.definition.ResourceObjectSetSpecificationImpl;
 import com.evolveum.midpoint.repo.common.activity.definition.WorkDefinition;
+import com.evolveum.midpoint.repo.common.activity.run.buckets.BucketWatermarkKeeper;
 import com.evolveum.midpoint.repo.common.activity.run.processing.ContainerableProcessingRequest;
 import com.evolveum.midpoint.repo.common.activity.run.processing.ItemPreprocessor;
 import com.evolveum.midpoint.repo.common.activity.run.processing.ItemProcessingRequest;
@@ -123,6 +124,15 @@ public abstract class SearchBasedActivityRun<
      */
     @NotNull private final AtomicInteger sequentialNumberCounter = new AtomicInteger(0);
 
+    /**
+     * Concurrent search in partitions, if configured. Shared by all the buckets processed in this run.
+     * See {@link #getPartitionedSearch()}.
+     */
+    private PartitionedSearch<C> partitionedSearch;
+
+    /** Whether {@link #partitionedSearch} was already determined (it may be null even then). */
+    private boolean partitionedSearchDetermined;
+
     public SearchBasedActivityRun(@NotNull ActivityRunInstantiationContext<WD, AH> context,
             @NotNull String shortNameCapitalized) {
         super(context, shortNameCapitalized);
@@ -497,12 +507,41 @@ public abstract class SearchBasedActivityRun<
      * Retrieves items from the source and passes them to search
      */
     private void searchIterative(OperationResult result) throws CommonException {
+        BucketWatermarkKeeper watermarkKeeper = createBucketWatermarkKeeper();
         ContainerableResultHandler<C> handler = (object, parentResult) -> {
+            if (watermarkKeeper != null && !watermarkKeeper.acceptItem(object, parentResult)) {
+                return true; // the item belongs to a bucket split off from the current one
+            }
             ItemProcessingRequest<C> request =
                     ContainerableProcessingRequest.create(sequentialNumberCounter.getAndIncrement(), object, this);
             return coordinator.submit(request, parentResult);
         };
-        searchableItemSource.searchIterative(searchSpecification, handler, getRunningTask(), result);
+        // Partitions return the items in no particular order, so they cannot be used with the watermark keeper.
+        PartitionedSearch<C> partitionedSearch = watermarkKeeper == null ? getPartitionedSearch() : null;
+        if (partitionedSearch != null) {
+            partitionedSearch.execute(searchSpecification, searchableItemSource, handler, getRunningTask(), result);
+        } else {
+            searchableItemSource.searchIterative(searchSpecification, handler, getRunningTask(), result);
+        }
+    }
+
+    /** Creates the partitioned search on the first call; it is then used for all the buckets in this run. */
+    private @Nullable PartitionedSearch<C> getPartitionedSearch() {
+        if (!partitionedSearchDetermined) {
+            ResourceSearchPartitioningType partitioning = getSearchPartitioning();
+            if (partitioning != null && advancedSupportAvailable()) {
+                partitionedSearch = PartitionedSearch.create(partitioning, createItemDefinitionProvider(), beans);
+            }
+            partitionedSearchDetermined = true;
+        }
+        return partitionedSearch;
+    }
+
+    @Override
+    protected void releaseRunResources() {
+        if (partitionedSearch != null) {
+            partitionedSearch.shutdown();
+        }
     }
 
     private boolean advancedSupportAvailable() {
@@ -25,6 +25,7 @@ import com.evolveum.midpoint.schema.util.task.work.ObjectSetUtil;
 import com.evolveum.midpoint.task.api.RunningTask;
 import com.evolveum.midpoint.util.exception.CommonException;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectSetType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceSearchPartitioningType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
 
 /**
@@ -92,6 +93,14 @@ public interface SearchBasedActivityRunSpecifics<C extends Containerable>
     default ItemDefinitionProvider createItemDefinitionProvider() {
         return null;
     }
+
+    /**
+     * Returns the configuration of search partitioning, i.e. concurrent searching in disjoint parts of the object set.
+     * Usually provided by activities that search for resource objects. See {@link PartitionedSearch}.
+     */
+    default @Nullable ResourceSearchPartitioningType getSearchPartitioning() {
+        return null;
+    }
     //endregion
 
     //region 2. Object processing
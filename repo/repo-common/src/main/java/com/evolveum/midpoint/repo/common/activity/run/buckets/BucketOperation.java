@@ -29,14 +29,20 @@ import org.jetbrains.annotations.Nullable;
 
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.delta.builder.S_ValuesEntry;
 import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.repo.api.RepositoryService.ModificationsSupplier;
+import com.evolveum.midpoint.repo.api.ModifyObjectResult;
 import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.repo.common.activity.run.state.ActivityBucketManagementStatistics;
 import com.evolveum.midpoint.repo.common.activity.run.CommonTaskBeans;
+import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.util.task.ActivityPath;
 import com.evolveum.midpoint.task.api.TaskManager;
 import com.evolveum.midpoint.util.DebugDumpable;
 import com.evolveum.midpoint.util.DebugUtil;
+import com.evolveum.midpoint.util.exception.ObjectAlreadyExistsException;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
 import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
@@ -104,6 +110,25 @@ class BucketOperation implements DebugDumpable {
         return workerTaskOid == null;
     }
 
+    /**
+     * Modifies the coordinator task (dynamically), and records the write in the task manager statistics.
+     * All bucket-related writes of the coordinator task should go through this method.
+     */
+    @NotNull ModifyObjectResult<TaskType> modifyCoordinatorTask(@NotNull ModificationsSupplier<TaskType> modificationsSupplier,
+            @NotNull OperationResult result) throws ObjectNotFoundException, SchemaException, ObjectAlreadyExistsException {
+        ModifyObjectResult<TaskType> modifyObjectResult = plainRepositoryService.modifyObjectDynamically(
+                TaskType.class, coordinatorTaskOid, null, modificationsSupplier, null, result);
+        taskManager.recordTaskWrite();
+        return modifyObjectResult;
+    }
+
+    /** As {@link #modifyCoordinatorTask(ModificationsSupplier, OperationResult)} but with the modifications known upfront. */
+    void modifyCoordinatorTask(@NotNull Collection<? extends ItemDelta<?, ?>> modifications, @NotNull OperationResult result)
+            throws ObjectNotFoundException, SchemaException, ObjectAlreadyExistsException {
+        plainRepositoryService.modifyObject(TaskType.class, coordinatorTaskOid, modifications, result);
+        taskManager.recordTaskWrite();
+    }
+
     /** Buckets have to be detached and ID-less, free to be added to the delta. */
     static Collection<ItemDelta<?, ?>> bucketsAddDeltas(ItemPath statePath, List<WorkBucketType> buckets) {
         try {
@@ -127,8 +152,19 @@ class BucketOperation implements DebugDumpable {
         }
     }
 
+    static List<ItemDelta<?, ?>> bucketSplitRequestDeltas(ItemPath statePath, WorkBucketType bucket, boolean requested) {
+        try {
+            S_ValuesEntry entry = PrismContext.get().deltaFor(TaskType.class)
+                    .item(createBucketPath(statePath, bucket).append(WorkBucketType.F_SPLIT_REQUESTED));
+            return (requested ? entry.replace(true) : entry.replace())
+                    .asItemDeltas();
+        } catch (SchemaException e) {
+            throw new IllegalStateException("Unexpected schema exception: " + e.getMessage(), e);
+        }
+    }
+
     @NotNull
-    private static ItemPath createBucketPath(ItemPath statePath, WorkBucketType bucket) {
+    static ItemPath createBucketPath(ItemPath statePath, WorkBucketType bucket) {
         return statePath.append(F_BUCKETING, F_BUCKET, bucket.getId());
     }
 
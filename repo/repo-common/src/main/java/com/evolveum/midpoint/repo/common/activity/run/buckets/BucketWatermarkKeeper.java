@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.common.activity.run.buckets;
+
+import java.math.BigInteger;
+
+import com.google.common.base.MoreObjects;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.prism.Containerable;
+import com.evolveum.midpoint.prism.Item;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.repo.common.activity.definition.ActivityDistributionDefinition;
+import com.evolveum.midpoint.repo.common.activity.run.CommonTaskBeans;
+import com.evolveum.midpoint.repo.common.activity.run.state.ActivityBucketManagementStatistics;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.util.task.ActivityPath;
+import com.evolveum.midpoint.util.exception.CommonException;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Holder-side part of the work stealing: keeps the progress watermark of the current (numeric interval) bucket,
+ * periodically writes it to the coordinator task, and learns about the bucket being split.
+ *
+ * The watermark is the highest discriminator value of the items submitted for processing. After the split,
+ * the items at or above the split point are skipped, as they belong to the newly created bucket. Because the split
+ * point is always above the watermark, no item is processed by both workers.
+ *
+ * Not thread safe: it is meant to be called from the thread that retrieves the items and submits them for processing.
+ */
+public class BucketWatermarkKeeper {
+
+    private static final Trace LOGGER = TraceManager.getTrace(BucketWatermarkKeeper.class);
+
+    private static final long DEFAULT_UPDATE_INTERVAL = 10000L;
+
+    @NotNull private final String coordinatorTaskOid;
+    @NotNull private final String workerTaskOid;
+    @NotNull private final ActivityPath activityPath;
+    private final int sequentialNumber;
+    @NotNull private final ItemPath discriminator;
+    private final long updateInterval;
+    private final ActivityBucketManagementStatistics statistics;
+    @NotNull private final CommonTaskBeans beans;
+
+    /** The highest discriminator value submitted so far. */
+    private BigInteger watermark;
+
+    /** Current upper bound of the bucket (exclusive). It is lowered when the bucket is split. */
+    private BigInteger upperBound;
+
+    private long lastUpdateTimestamp = System.currentTimeMillis();
+
+    private BucketWatermarkKeeper(@NotNull String coordinatorTaskOid, @NotNull String workerTaskOid,
+            @NotNull ActivityPath activityPath, int sequentialNumber, @NotNull ItemPath discriminator, long updateInterval,
+            @NotNull BigInteger upperBound, ActivityBucketManagementStatistics statistics, @NotNull CommonTaskBeans beans) {
+        this.coordinatorTaskOid = coordinatorTaskOid;
+        this.workerTaskOid = workerTaskOid;
+        this.activityPath = activityPath;
+        this.sequentialNumber = sequentialNumber;
+        this.discriminator = discriminator;
+        this.updateInterval = updateInterval;
+        this.upperBound = upperBound;
+        this.statistics = statistics;
+        this.beans = beans;
+    }
+
+    /**
+     * Returns the keeper if work stealing is enabled and applicable to given bucket: numeric segmentation
+     * with explicit discriminator, and the bucket with both bounds known.
+     */
+    public static @Nullable BucketWatermarkKeeper create(@NotNull ActivityDistributionDefinition distributionDefinition,
+            @NotNull WorkBucketType bucket, @NotNull String coordinatorTaskOid, @NotNull String workerTaskOid,
+            @NotNull ActivityPath activityPath, ActivityBucketManagementStatistics statistics,
+            @NotNull CommonTaskBeans beans) {
+        BucketsDefinitionType buckets = distributionDefinition.getBuckets();
+        WorkAllocationDefinitionType allocation = buckets != null ? buckets.getAllocation() : null;
+        if (allocation == null || !Boolean.TRUE.equals(allocation.isWorkStealing())) {
+            return null;
+        }
+        NumericWorkSegmentationType segmentation = buckets.getNumericSegmentation();
+        if (segmentation == null || segmentation.getDiscriminator() == null
+                || !(bucket.getContent() instanceof NumericIntervalWorkBucketContentType)) {
+            LOGGER.debug("Work stealing is supported only for numeric segmentation with explicit discriminator");
+            return null;
+        }
+        NumericIntervalWorkBucketContentType content = (NumericIntervalWorkBucketContentType) bucket.getContent();
+        if (content.getFrom() == null || content.getTo() == null) {
+            return null;
+        }
+        return new BucketWatermarkKeeper(coordinatorTaskOid, workerTaskOid, activityPath, bucket.getSequentialNumber(),
+                segmentation.getDiscriminator().getItemPath(),
+                MoreObjects.firstNonNull(allocation.getProgressWatermarkInterval(), DEFAULT_UPDATE_INTERVAL),
+                content.getTo(), statistics, beans);
+    }
+
+    /**
+     * Called before the item is submitted for processing.
+     *
+     * @return false if the item should be skipped, because it belongs to a part of the bucket that was split off.
+     */
+    public boolean acceptItem(@NotNull Containerable item, @NotNull OperationResult result) {
+        updateIfTimePassed(result);
+
+        BigInteger key = getKey(item);
+        if (key == null) {
+            // We cannot tell which items were submitted, so we must not allow any more splits.
+            LOGGER.trace("No numeric discriminator value in {}, disabling further splits of bucket #{}", item, sequentialNumber);
+            watermark = upperBound;
+            return true;
+        }
+        if (key.compareTo(upperBound) >= 0) {
+            LOGGER.trace("Skipping {} as its discriminator value {} is above the split point {}", item, key, upperBound);
+            return false;
+        }
+        if (watermark == null || key.compareTo(watermark) > 0) {
+            watermark = key;
+        }
+        return true;
+    }
+
+    private void updateIfTimePassed(OperationResult result) {
+        long now = System.currentTimeMillis();
+        if (now - lastUpdateTimestamp < updateInterval) {
+            return;
+        }
+        lastUpdateTimestamp = now;
+        try {
+            BigInteger newUpperBound = beans.bucketingManager.updateBucketWatermark(coordinatorTaskOid, workerTaskOid,
+                    activityPath, sequentialNumber, watermark, statistics, result);
+            if (newUpperBound != null && newUpperBound.compareTo(upperBound) < 0) {
+                LOGGER.debug("Bucket #{} was split at {}, the rest of it will be processed by another worker",
+                        sequentialNumber, newUpperBound);
+                upperBound = newUpperBound;
+            }
+        } catch (CommonException | RuntimeException e) {
+            // The split (if any) was not done, so we can safely continue.
+            LoggingUtils.logUnexpectedException(LOGGER, "Couldn't update the watermark of bucket #{} in {}", e,
+                    sequentialNumber, coordinatorTaskOid);
+        }
+    }
+
+    private BigInteger getKey(Containerable item) {
+        Item<?, ?> discriminatorItem = item.asPrismContainerValue().findItem(discriminator);
+        Object value = discriminatorItem != null && discriminatorItem.size() == 1 ?
+                discriminatorItem.getRealValue() : null;
+        if (value instanceof BigInteger) {
+            return (BigInteger) value;
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short) {
+            return BigInteger.valueOf(((Number) value).longValue());
+        } else if (value instanceof String) {
+            try {
+                return new BigInteger((String) value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+    }
+}
@@ -7,6 +7,7 @@
 
 package com.evolveum.midpoint.repo.common.activity.run.buckets;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Consumer;
@@ -43,7 +44,8 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.WorkBucketType;
  * 1. Obtains new buckets to be processed: {@link #getWorkBucket(String, String, ActivityPath, GetBucketOperationOptions, ActivityBucketManagementStatistics, OperationResult)}.
  * 2. Marks buckets as complete: {@link #completeWorkBucket(String, String, ActivityPath, int, ActivityBucketManagementStatistics, Consumer, OperationResult)}.
  * 3. Releases work buckets in case they are not going to be processed: {@link #releaseWorkBucket(String, String, ActivityPath, int, ActivityBucketManagementStatistics, OperationResult)}.
- * 4. Computes query narrowing for given work bucket: {@link #narrowQueryForWorkBucket(Class, ObjectQuery, ActivityDistributionDefinition, ItemDefinitionProvider, WorkBucketType)}.
+ * 4. Records bucket progress watermarks and splits buckets for work stealing: {@link #updateBucketWatermark(String, String, ActivityPath, int, BigInteger, ActivityBucketManagementStatistics, OperationResult)}.
+ * 5. Computes query narrowing for given work bucket: {@link #narrowQueryForWorkBucket(Class, ObjectQuery, ActivityDistributionDefinition, ItemDefinitionProvider, WorkBucketType)}.
  *
  * (The last method should be probably moved to a separate class.)
  */
@@ -103,6 +105,22 @@ public class BucketingManager {
                 .execute(result);
     }
 
+    /**
+     * Records the progress watermark of a bucket. If another worker requested the bucket to be split,
+     * splits it at the middle of the unprocessed range.
+     *
+     * @return Current upper bound of the bucket (exclusive). It is lower than before if the bucket was split.
+     */
+    @Experimental
+    public BigInteger updateBucketWatermark(@NotNull String coordinatorTaskOid, @NotNull String workerTaskOid,
+            @NotNull ActivityPath activityPath, int sequentialNumber, @Nullable BigInteger watermark,
+            ActivityBucketManagementStatistics statistics, OperationResult result)
+            throws ObjectAlreadyExistsException, ObjectNotFoundException, SchemaException {
+        return new UpdateBucketWatermarkOperation(coordinatorTaskOid, workerTaskOid, activityPath, statistics, beans,
+                sequentialNumber, watermark)
+                .execute(result);
+    }
+
     /**
      * Narrows a query by taking specified bucket into account.
      */
@@ -112,10 +130,22 @@ public class BucketingManager {
             @NotNull WorkBucketType workBucket)
             throws SchemaException {
 
-        WorkBucketContentHandler contentHandler = handlerRegistry.getHandler(workBucket.getContent());
-
         AbstractWorkSegmentationType segmentationConfig =
                 BucketingUtil.getWorkSegmentationConfiguration(distributionDefinition.getBuckets());
+        return narrowQueryForWorkBucket(type, query, segmentationConfig, itemDefinitionProvider, workBucket);
+    }
+
+    /**
+     * Narrows a query by taking specified bucket into account; with explicitly provided segmentation configuration.
+     * (Used also for search partitions, which are not related to the activity distribution.)
+     */
+    public ObjectQuery narrowQueryForWorkBucket(@NotNull Class<? extends Containerable> type, ObjectQuery query,
+            @Nullable AbstractWorkSegmentationType segmentationConfig,
+            @Nullable ItemDefinitionProvider itemDefinitionProvider,
+            @NotNull WorkBucketType workBucket)
+            throws SchemaException {
+
+        WorkBucketContentHandler contentHandler = handlerRegistry.getHandler(workBucket.getContent());
 
         List<ObjectFilter> conjunctionMembers = new ArrayList<>(
                 contentHandler.createSpecificFilters(workBucket, segmentationConfig, type, itemDefinitionProvider));
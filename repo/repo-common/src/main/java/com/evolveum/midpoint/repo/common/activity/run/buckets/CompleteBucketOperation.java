@@ -57,8 +57,7 @@ public class CompleteBucketOperation extends BucketOperation {
 
         LOGGER.trace("Completing work bucket #{} in {} (worker {})", sequentialNumber, coordinatorTaskOid, workerTaskOid);
         ModifyObjectResult<TaskType> modifyObjectResult =
-                plainRepositoryService.modifyObjectDynamically(TaskType.class, coordinatorTaskOid, null,
-                        this::computeCompletionModifications, null, result);
+                modifyCoordinatorTask(this::computeCompletionModifications, result);
         bucketProgressHolder.passValue();
         statisticsKeeper.addToConflictCounts(modifyObjectResult);
         statisticsKeeper.register(BucketingConstants.COMPLETE_WORK_BUCKET);
@@ -61,6 +61,9 @@ public class GetBucketOperation extends BucketOperation {
     /** This is to limit sample size if probabilities are used. */
     private static final int MAX_RANDOM_SAMPLING_INTERVAL = 1000;
 
+    /** How long does a non-scavenger wait for a bucket split it (or someone else) has requested. */
+    private static final long MAX_SPLIT_WAIT_TIME = 60000L;
+
     @NotNull private final GetBucketOperationOptions options;
 
     /** Generates new buckets under configuration provided by options. */
@@ -112,13 +115,13 @@ public class GetBucketOperation extends BucketOperation {
 
         GetBucketOperationAttempt attempt =
                 new GetBucketOperationAttempt(coordinatorTask, workerTaskOid, activityPath, bucketFactory,
-                        bucketsToGet, bucketProgressHolder);
+                        bucketsToGet, false, bucketProgressHolder);
 
         attempt.execute();
         bucketProgressHolder.passValue();
 
         if (!attempt.getModifications().isEmpty()) {
-            plainRepositoryService.modifyObject(TaskType.class, coordinatorTaskOid, attempt.getModifications(), result);
+            modifyCoordinatorTask(attempt.getModifications(), result);
         }
 
         if (attempt.getBucketToUse() != null) {
@@ -140,16 +143,15 @@ public class GetBucketOperation extends BucketOperation {
         for (;;) {
 
             Holder<GetBucketOperationAttempt> lastAttemptHolder = new Holder<>();
-            ModifyObjectResult<TaskType> modifyResult = plainRepositoryService.modifyObjectDynamically(TaskType.class,
-                    coordinatorTaskOid, null,
+            ModifyObjectResult<TaskType> modifyResult = modifyCoordinatorTask(
                     coordinatorTask -> {
                         GetBucketOperationAttempt attempt =
                                 new GetBucketOperationAttempt(coordinatorTask, workerTaskOid, activityPath,
-                                        bucketFactory, bucketsToGet, bucketProgressHolder);
+                                        bucketFactory, bucketsToGet, isWorkStealing(), bucketProgressHolder);
                         lastAttemptHolder.setValue(attempt);
                         attempt.execute();
                         return attempt.getModifications();
-                    }, null, result);
+                    }, result);
 
             bucketProgressHolder.passValue();
 
@@ -168,9 +170,17 @@ public class GetBucketOperation extends BucketOperation {
             // Nothing found!
 
             if (!options.isScavenger()) {
-                markScavengingIfNotYet(result);
-                recordNothingFoundForNonScavenger();
-                return null;
+                long toWaitForSplit = lastAttempt.isSplitPending() ?
+                        statisticsKeeper.start + MAX_SPLIT_WAIT_TIME - System.currentTimeMillis() : 0;
+                if (toWaitForSplit <= 0) {
+                    markScavengingIfNotYet(result);
+                    recordNothingFoundForNonScavenger();
+                    return null;
+                }
+                // The split is done by the holder of the bucket when it records its watermark. The work is not complete
+                // (regardless of the free bucket wait time), so we just look again after a while.
+                sleep(toWaitForSplit);
+                continue;
             }
 
             if (lastAttempt.isDefinite() || options.getFreeBucketWaitTime() == 0L) {
@@ -214,6 +224,13 @@ public class GetBucketOperation extends BucketOperation {
         }
     }
 
+    private boolean isWorkStealing() {
+        ActivityDistributionDefinition distribution = options.getDistributionDefinition();
+        WorkAllocationDefinitionType allocation = distribution != null && distribution.getBuckets() != null ?
+                distribution.getBuckets().getAllocation() : null;
+        return allocation != null && Boolean.TRUE.equals(allocation.isWorkStealing());
+    }
+
     private void executeInitialDelayForMultiNode() throws InterruptedException {
         if (options.isExecuteInitialWait()) {
             long delay = (long) (Math.random() * getInitialDelay());
@@ -324,7 +341,7 @@ public class GetBucketOperation extends BucketOperation {
         Set<String> liveWorkers = getLiveWorkers(result);
         Holder<Integer> reclaimingHolder = new Holder<>(0);
 
-        plainRepositoryService.modifyObjectDynamically(TaskType.class, coordinatorTaskOid, null,
+        modifyCoordinatorTask(
                 task -> {
                     Collection<ItemDelta<?, ?>> modifications = new ArrayList<>();
                     ItemPath statePath = ActivityStateUtil.getStateItemPath(task.getActivityState(), activityPath);
@@ -344,7 +361,7 @@ public class GetBucketOperation extends BucketOperation {
                     }
                     reclaimingHolder.setValue(reclaiming);
                     return modifications;
-                }, null, result);
+                }, result);
 
         if (reclaimingHolder.getValue() > 0) {
             LOGGER.info("Reclaimed {} buckets in {}", reclaimingHolder.getValue(), coordinatorTaskOid);
@@ -371,7 +388,7 @@ public class GetBucketOperation extends BucketOperation {
 
     private void markScavengingIfNotYet(OperationResult result)
             throws ObjectAlreadyExistsException, ObjectNotFoundException, SchemaException {
-        plainRepositoryService.modifyObjectDynamically(TaskType.class, coordinatorTaskOid, null,
+        modifyCoordinatorTask(
                 task -> {
                     if (BucketingUtil.isInScavengingPhase(task.getActivityState(), activityPath)) {
                         return List.of();
@@ -381,19 +398,19 @@ public class GetBucketOperation extends BucketOperation {
                                 .item(stateItemPath.append(F_BUCKETING, F_SCAVENGING)).replace(true)
                                 .asItemDeltas();
                     }
-                }, null, result);
+                }, result);
     }
 
     private void markWorkComplete(OperationResult result)
             throws ObjectAlreadyExistsException, ObjectNotFoundException, SchemaException {
         // We use dynamic modify only because we do not know the state item path without loading coordinator task first
-        plainRepositoryService.modifyObjectDynamically(TaskType.class, coordinatorTaskOid, null,
+        modifyCoordinatorTask(
                 task -> {
                     ItemPath stateItemPath = ActivityStateUtil.getStateItemPath(task.getActivityState(), activityPath);
                     return prismContext.deltaFor(TaskType.class)
                             .item(stateItemPath.append(F_BUCKETING, F_WORK_COMPLETE)).replace(true)
                             .asItemDeltas();
-                }, null, result);
+                }, result);
     }
 
     private int determineBucketsToGet() {
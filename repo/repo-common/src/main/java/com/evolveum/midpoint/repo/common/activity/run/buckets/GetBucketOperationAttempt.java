@@ -17,6 +17,7 @@ import static com.evolveum.midpoint.xml.ns._public.common.common_3.ActivityBucke
 import static com.evolveum.midpoint.xml.ns._public.common.common_3.ActivityStateType.F_BUCKETING;
 import static com.evolveum.midpoint.xml.ns._public.common.common_3.WorkBucketStateType.*;
 
+import java.math.BigInteger;
 import java.util.*;
 import java.util.stream.Stream;
 
@@ -24,6 +25,7 @@ import com.evolveum.midpoint.util.DebugUtil;
 
 import com.evolveum.midpoint.util.PassingHolder;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.BucketProgressOverviewType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.NumericIntervalWorkBucketContentType;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -119,8 +121,14 @@ class GetBucketOperationAttempt {
      */
     @NotNull private final BucketFactory bucketFactory;
 
+    /** Should we ask other workers to split their buckets if there's nothing free? */
+    private final boolean workStealing;
+
+    /** True if there is a split request pending (made by us or by someone else) after this attempt. */
+    private boolean splitPending;
+
     GetBucketOperationAttempt(@NotNull TaskType task, @Nullable String workerOid, @NotNull ActivityPath activityPath,
-            @NotNull BucketFactory bucketFactory, int numberOfBucketsToGet,
+            @NotNull BucketFactory bucketFactory, int numberOfBucketsToGet, boolean workStealing,
             @NotNull PassingHolder<BucketProgressOverviewType> bucketProgressHolder) {
         this.workerOid = workerOid;
         this.bucketProgressHolder = bucketProgressHolder;
@@ -129,6 +137,7 @@ class GetBucketOperationAttempt {
         this.currentBuckets = BucketingUtil.getBuckets(activityState);
         this.bucketFactory = bucketFactory;
         this.numberOfBucketsToGet = numberOfBucketsToGet;
+        this.workStealing = workStealing;
     }
 
     /**
@@ -174,11 +183,64 @@ class GetBucketOperationAttempt {
         // If there remained some self-delegated buckets, the number of buckets to get is 0 and we are not here.
         assert getSelfDelegatedBucketsStream().findAny().isEmpty();
 
+        if (workStealing && workerOid != null) {
+            requestSplitIfPossible();
+        }
+
         situation = anyBucketsDelegated() ?
                 Situation.NOTHING_MORE_SOME_DELEGATED :
                 Situation.NOTHING_MORE_DEFINITE;
     }
 
+    /**
+     * Asks the holder of the bucket with the largest unprocessed range to split it. The split itself is done
+     * by the holder (see {@link UpdateBucketWatermarkOperation}), because only the holder knows which items
+     * it has already started processing.
+     */
+    private void requestSplitIfPossible() {
+        if (currentBuckets.stream().anyMatch(b -> b.getState() == DELEGATED && Boolean.TRUE.equals(b.isSplitRequested()))) {
+            LOGGER.trace("A split is already requested, not requesting another one");
+            splitPending = true;
+            return;
+        }
+        WorkBucketType victim = null;
+        BigInteger victimRange = BigInteger.ZERO;
+        for (WorkBucketType bucket : currentBuckets) {
+            if (bucket.getState() != DELEGATED || BucketingUtil.isDelegatedTo(bucket, workerOid)) {
+                continue;
+            }
+            BigInteger range = getUnprocessedRange(bucket);
+            if (range != null && range.compareTo(victimRange) > 0) {
+                victim = bucket;
+                victimRange = range;
+            }
+        }
+        if (victim == null || victimRange.compareTo(UpdateBucketWatermarkOperation.MIN_SPLIT_RANGE) < 0) {
+            LOGGER.trace("No bucket suitable for splitting was found");
+            return;
+        }
+        LOGGER.debug("Requesting split of bucket {} held by {} (unprocessed range: {})",
+                victim.getSequentialNumber(), getWorkerOid(victim), victimRange);
+        victim.setSplitRequested(true);
+        swallow(BucketOperation.bucketSplitRequestDeltas(activityStateItemPath, victim, true));
+        splitPending = true;
+    }
+
+    /** Returns the size of the part of numeric interval bucket that the holder has not started processing yet. */
+    private static BigInteger getUnprocessedRange(WorkBucketType bucket) {
+        if (!(bucket.getContent() instanceof NumericIntervalWorkBucketContentType)) {
+            return null;
+        }
+        NumericIntervalWorkBucketContentType content = (NumericIntervalWorkBucketContentType) bucket.getContent();
+        if (content.getFrom() == null || content.getTo() == null) {
+            return null;
+        }
+        BigInteger start = bucket.getProgressWatermark() != null ?
+                content.getFrom().max(bucket.getProgressWatermark().add(BigInteger.ONE)) :
+                content.getFrom();
+        return content.getTo().subtract(start);
+    }
+
     private boolean anyBucketsDelegated() {
         return currentBuckets.stream()
                 .anyMatch(b -> b.getState() == DELEGATED);
@@ -340,6 +402,10 @@ class GetBucketOperationAttempt {
         return Objects.requireNonNull(situation, "no situation");
     }
 
+    boolean isSplitPending() {
+        return splitPending;
+    }
+
     public boolean isDefinite() {
         return situation == Situation.NOTHING_MORE_DEFINITE;
     }
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.common.activity.run.buckets;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.repo.api.ModifyObjectResult;
+import com.evolveum.midpoint.repo.common.activity.run.CommonTaskBeans;
+import com.evolveum.midpoint.repo.common.activity.run.state.ActivityBucketManagementStatistics;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.util.task.ActivityPath;
+import com.evolveum.midpoint.schema.util.task.ActivityStateUtil;
+import com.evolveum.midpoint.schema.util.task.BucketingUtil;
+import com.evolveum.midpoint.schema.util.task.work.BucketingConstants;
+import com.evolveum.midpoint.util.DebugUtil;
+import com.evolveum.midpoint.util.exception.ObjectAlreadyExistsException;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Records the progress watermark of a (numeric interval) bucket held by a worker, and splits the bucket
+ * if another worker requested that.
+ *
+ * The split is done at the middle of the unprocessed range, i.e. between the watermark and the upper bound
+ * of the bucket. The holder keeps the lower part; the upper part becomes a new READY bucket.
+ * Because the watermark is provided by the holder at the time of the split, no item is processed twice.
+ */
+public class UpdateBucketWatermarkOperation extends BucketOperation {
+
+    private static final Trace LOGGER = TraceManager.getTrace(UpdateBucketWatermarkOperation.class);
+
+    /** Buckets with smaller unprocessed range are not split. */
+    static final BigInteger MIN_SPLIT_RANGE = BigInteger.TWO;
+
+    private final int sequentialNumber;
+
+    @Nullable private final BigInteger watermark;
+
+    /** Upper bound of the bucket after the operation (exclusive). Null if not known. */
+    private BigInteger upperBound;
+
+    /** Was the bucket split by this operation? */
+    private boolean split;
+
+    UpdateBucketWatermarkOperation(@NotNull String coordinatorTaskOid, @Nullable String workerTaskOid,
+            @NotNull ActivityPath activityPath, ActivityBucketManagementStatistics statistics, CommonTaskBeans beans,
+            int sequentialNumber, @Nullable BigInteger watermark) {
+        super(coordinatorTaskOid, workerTaskOid, activityPath, statistics, null, beans);
+        this.sequentialNumber = sequentialNumber;
+        this.watermark = watermark;
+    }
+
+    /**
+     * @return Current upper bound of the bucket (exclusive), or null if it is not known.
+     */
+    public @Nullable BigInteger execute(OperationResult result)
+            throws ObjectAlreadyExistsException, ObjectNotFoundException, SchemaException {
+        LOGGER.trace("Updating watermark of bucket #{} in {} (worker {}) to {}",
+                sequentialNumber, coordinatorTaskOid, workerTaskOid, watermark);
+        ModifyObjectResult<TaskType> modifyObjectResult =
+                modifyCoordinatorTask(this::computeModifications, result);
+        statisticsKeeper.addToConflictCounts(modifyObjectResult);
+        statisticsKeeper.register(split ? BucketingConstants.SPLIT_WORK_BUCKET : BucketingConstants.UPDATE_BUCKET_WATERMARK);
+        return upperBound;
+    }
+
+    private @NotNull Collection<ItemDelta<?, ?>> computeModifications(@NotNull TaskType task) throws SchemaException {
+        upperBound = null;
+        split = false;
+
+        ActivityStateType activityState = ActivityStateUtil.getActivityStateRequired(task.getActivityState(), activityPath);
+        List<WorkBucketType> buckets = activityState.getBucketing().getBucket();
+        WorkBucketType bucket = BucketingUtil.findBucketByNumber(buckets, sequentialNumber);
+        if (bucket == null || bucket.getState() != WorkBucketStateType.DELEGATED
+                || !BucketingUtil.isDelegatedTo(bucket, workerTaskOid)
+                || !(bucket.getContent() instanceof NumericIntervalWorkBucketContentType)) {
+            LOGGER.debug("Bucket #{} is not a numeric bucket delegated to {}, not updating the watermark: {}",
+                    sequentialNumber, workerTaskOid, bucket);
+            return List.of();
+        }
+
+        NumericIntervalWorkBucketContentType content = (NumericIntervalWorkBucketContentType) bucket.getContent();
+        upperBound = content.getTo();
+
+        ItemPath statePath = ActivityStateUtil.getStateItemPath(task.getActivityState(), activityPath);
+        ItemPath bucketPath = createBucketPath(statePath, bucket);
+        Collection<ItemDelta<?, ?>> modifications = new ArrayList<>();
+        if (watermark != null && !watermark.equals(bucket.getProgressWatermark())) {
+            modifications.addAll(
+                    prismContext.deltaFor(TaskType.class)
+                            .item(bucketPath.append(WorkBucketType.F_PROGRESS_WATERMARK)).replace(watermark)
+                            .asItemDeltas());
+        }
+
+        if (Boolean.TRUE.equals(bucket.isSplitRequested())) {
+            modifications.addAll(bucketSplitRequestDeltas(statePath, bucket, false));
+            BigInteger splitPoint = determineSplitPoint(content);
+            if (splitPoint != null) {
+                LOGGER.debug("Splitting bucket #{} at {} (watermark: {}, content: {})",
+                        sequentialNumber, splitPoint, watermark, content);
+                NumericIntervalWorkBucketContentType remainingContent = content.clone().to(splitPoint);
+                WorkBucketType newBucket = new WorkBucketType()
+                        .sequentialNumber(BucketingUtil.getLastBucket(buckets).getSequentialNumber() + 1)
+                        .state(WorkBucketStateType.READY)
+                        .content(new NumericIntervalWorkBucketContentType()
+                                .from(splitPoint)
+                                .to(content.getTo()))
+                        .splitFrom(sequentialNumber);
+                modifications.addAll(
+                        prismContext.deltaFor(TaskType.class)
+                                .item(bucketPath.append(WorkBucketType.F_CONTENT)).replace(remainingContent)
+                                .asItemDeltas());
+                modifications.addAll(bucketsAddDeltas(statePath, List.of(newBucket)));
+                upperBound = splitPoint;
+                split = true;
+            } else {
+                LOGGER.debug("Split of bucket #{} was requested but the unprocessed range is too small (watermark: {},"
+                        + " content: {})", sequentialNumber, watermark, content);
+            }
+        }
+        return modifications;
+    }
+
+    private @Nullable BigInteger determineSplitPoint(NumericIntervalWorkBucketContentType content) {
+        if (content.getFrom() == null || content.getTo() == null) {
+            return null;
+        }
+        BigInteger start = watermark != null ? content.getFrom().max(watermark.add(BigInteger.ONE)) : content.getFrom();
+        BigInteger range = content.getTo().subtract(start);
+        if (range.compareTo(MIN_SPLIT_RANGE) < 0) {
+            return null;
+        }
+        return start.add(range.divide(BigInteger.TWO));
+    }
+
+    @Override
+    protected void extendDebugDump(StringBuilder sb, int indent) {
+        sb.append("\n");
+        DebugUtil.debugDumpWithLabelLn(sb, "sequentialNumber", sequentialNumber, indent + 1);
+        DebugUtil.debugDumpWithLabel(sb, "watermark", watermark, indent + 1);
+    }
+}
@@ -73,6 +73,10 @@ public class BucketFactory {
     @NotNull
     private List<? extends AbstractWorkBucketContentType> createNewBucketsContent(@NotNull List<WorkBucketType> currentBuckets,
             int bucketsNeeded) throws SchemaException {
+        if (currentBuckets.stream().anyMatch(b -> b.getSplitFrom() != null)) {
+            // Buckets are split (by work stealing) only after the segmentation is exhausted.
+            return List.of();
+        }
         WorkBucketType lastBucket = BucketingUtil.getLastBucket(currentBuckets);
         AbstractWorkBucketContentType lastContent = lastBucket != null ? lastBucket.getContent() : null;
         Integer lastSequentialNumber = lastBucket != null ? lastBucket.getSequentialNumber() : null;
@@ -479,6 +479,7 @@ public class WorkersReconciliation {
         ModificationPrecondition<TaskType> precondition = current -> isNameOk(old, current, newName);
         try {
             beans.repositoryService.modifyObject(TaskType.class, old.getOid(), itemDeltas, precondition, null, result);
+            beans.taskManager.recordTaskWrite();
         } catch (PreconditionViolationException e) {
             throw new TaskModificationConflictException();
         }
@@ -520,6 +521,7 @@ public class WorkersReconciliation {
 
         try {
             beans.repositoryService.modifyObject(TaskType.class, old.getOid(), itemDeltas, precondition, null, result);
+            beans.taskManager.recordTaskWrite();
         } catch (PreconditionViolationException e) {
             throw new TaskModificationConflictException();
         }
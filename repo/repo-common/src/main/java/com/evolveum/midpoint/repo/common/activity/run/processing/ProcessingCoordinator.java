@@ -20,6 +20,7 @@ import com.evolveum.midpoint.util.logging.LoggingUtils;
 import com.evolveum.midpoint.util.logging.TraceManager;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import com.evolveum.midpoint.prism.util.CloneUtil;
 import com.evolveum.midpoint.schema.result.OperationResult;
@@ -49,6 +50,9 @@ public class ProcessingCoordinator<I> {
 
     @NotNull private final IterativeActivityRun<I, ?, ?, ?> activityRun;
 
+    /** Adjusts the number of active worker threads. Null if the autoscaling is not enabled. */
+    @Nullable private final WorkerThreadsAutoScaler autoScaler;
+
     /**
      * True if any worker requested the processing to be stopped.
      * Currently this is possible only by returning false from the {@link ItemProcessingRequest#process(RunningTask, OperationResult)} method.
@@ -66,11 +70,13 @@ public class ProcessingCoordinator<I> {
         this.coordinatorTask = activityRun.getRunningTask();
         this.activityRun = activityRun;
 
-        this.threadsCount = threadsCount;
+        this.autoScaler = WorkerThreadsAutoScaler.create(threadsCount,
+                activityRun.getActivity().getDistributionDefinition().getWorkerThreadsAutoScaling());
+        this.threadsCount = autoScaler != null ? autoScaler.getMaxThreads() : threadsCount;
         if (threadsCount > 0) {
             multithreaded = true;
-            workerSpecificResults = new ArrayList<>(threadsCount);
-            requestsBuffer = new RequestsBuffer<>(threadsCount);
+            workerSpecificResults = new ArrayList<>(this.threadsCount);
+            requestsBuffer = new RequestsBuffer<>(this.threadsCount);
         } else {
             multithreaded = false;
             workerSpecificResults = null;
@@ -126,6 +132,13 @@ public class ProcessingCoordinator<I> {
             LoggingUtils.logException(LOGGER, "Couldn't update task statistics for {}", e, activityRun);
             // ignoring the exception
         }
+        if (autoScaler != null) {
+            String reason = autoScaler.adjustIfNeeded(coordinatorTask);
+            if (reason != null) {
+                activityRun.getActivityState().getLiveStatistics().getLiveItemProcessing()
+                        .recordWorkerThreadsChange(autoScaler.getActiveThreads(), reason);
+            }
+        }
     }
 
     /**
@@ -164,7 +177,7 @@ public class ProcessingCoordinator<I> {
             workerSpecificResult.addContext("subtaskIndex", i+1);
             workerSpecificResults.add(workerSpecificResult);
 
-            RunningLightweightTask subtask = coordinatorTask.createSubtask(new WorkerHandler(workerSpecificResult));
+            RunningLightweightTask subtask = coordinatorTask.createSubtask(new WorkerHandler(i, workerSpecificResult));
             subtask.setCategory(coordinatorTask.getCategory());
             subtask.setResult(new OperationResult(OP_EXECUTE_WORKER, OperationResultStatus.IN_PROGRESS, (String) null));
             subtask.setName("Worker thread " + (i+1) + " of " + threadsCount);
@@ -208,9 +221,11 @@ public class ProcessingCoordinator<I> {
     }
 
     private class WorkerHandler implements LightweightTaskHandler {
+        private final int workerIndex;
         private final OperationResult workerSpecificResult;
 
-        private WorkerHandler(OperationResult workerSpecificResult) {
+        private WorkerHandler(int workerIndex, OperationResult workerSpecificResult) {
+            this.workerIndex = workerIndex;
             this.workerSpecificResult = workerSpecificResult;
         }
 
@@ -229,9 +244,12 @@ public class ProcessingCoordinator<I> {
             while (canRun(workerTask)) {
 
                 workerTask.refreshThreadLocalStatistics();
-                ItemProcessingRequest<I> request = requestsBuffer.poll(taskIdentifier);
+                boolean active = autoScaler == null || autoScaler.isActive(workerIndex);
+                ItemProcessingRequest<I> request = active ?
+                        requestsBuffer.poll(taskIdentifier) : requestsBuffer.pollReserved(taskIdentifier);
 
                 if (request != null) {
+                    long start = System.currentTimeMillis();
                     try {
                         if (!request.process(workerTask, workerSpecificResult)) {
                             stopRequestedByAnyWorker.set(true);
@@ -239,6 +257,9 @@ public class ProcessingCoordinator<I> {
                     } finally {
                         requestsBuffer.markProcessed(request, taskIdentifier);
                         treatOperationResultAfterOperation();
+                        if (autoScaler != null) {
+                            autoScaler.recordItemProcessed(System.currentTimeMillis() - start);
+                        }
                     }
                 } else {
                     if (allItemsSubmitted.get()) {
@@ -249,6 +270,9 @@ public class ProcessingCoordinator<I> {
                         try {
                             //noinspection BusyWait
                             Thread.sleep(WORKER_THREAD_WAIT_FOR_REQUEST);
+                            if (autoScaler != null && active) {
+                                autoScaler.recordIdle(WORKER_THREAD_WAIT_FOR_REQUEST);
+                            }
                         } catch (InterruptedException e) {
                             LOGGER.trace("Waiting interrupted, exiting");
                             break;
@@ -116,6 +116,19 @@ class RequestsBuffer<I> {
         }
     }
 
+    /**
+     * Tries to obtain a request reserved for the specified subtask. Does not touch the global queue.
+     * Used by workers that are currently not active (see {@link WorkerThreadsAutoScaler}).
+     */
+    synchronized ItemProcessingRequest<I> pollReserved(String taskIdentifier) {
+        ItemProcessingRequest<I> reserved = getNextReservedRequest(taskIdentifier);
+        if (reserved != null && !bind(reserved, taskIdentifier)) {
+            throw new IllegalStateException("A reserved request couldn't be bound to the current task. Request = " +
+                    reserved + ", task = " + taskIdentifier);
+        }
+        return reserved;
+    }
+
     /**
      * Binds a request identifier to specified subtask, if possible i.e. if the request identifier is not bound to another task.
      * If the request identifier is bound to another task, the request is assigned to it.
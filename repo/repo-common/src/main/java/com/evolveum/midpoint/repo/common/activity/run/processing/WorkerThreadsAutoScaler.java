@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.common.activity.run.processing;
+
+import static com.evolveum.midpoint.util.MiscUtil.or0;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import com.google.common.base.MoreObjects;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.task.api.RunningTask;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Adjusts the number of active worker threads of a {@link ProcessingCoordinator}.
+ *
+ * All the worker threads (up to {@link #maxThreads}) are started at the beginning; only the first {@link #activeThreads}
+ * of them take new requests from the global queue. The others just finish their reserved requests and then wait.
+ *
+ * Once in {@link #adjustmentInterval} the coordinator thread evaluates the last interval, and moves the number of active
+ * threads by one (hill climbing):
+ *
+ * 1. if the workers are starving (waiting for items), the number is decreased,
+ * 2. if the processing is dominated by the repository and the latency grows, the number is decreased,
+ * 3. if the last change did not help the throughput, it is reverted,
+ * 4. otherwise, if the processing is dominated by the connectors (or the last increase helped), the number is increased.
+ *
+ * Thread safety: Workers call only the `record...` methods and {@link #isActive(int)}. The evaluation itself is done
+ * only by the coordinator thread.
+ */
+class WorkerThreadsAutoScaler {
+
+    private static final Trace LOGGER = TraceManager.getTrace(WorkerThreadsAutoScaler.class);
+
+    private static final long DEFAULT_ADJUSTMENT_INTERVAL = 30000L;
+
+    /** Share of the waiting time (relative to the active threads time) considered to be the starvation. */
+    private static final double STARVATION_THRESHOLD = 0.2;
+
+    /** Share of the repository/connector time (relative to the item processing time) considered to be dominant. */
+    private static final double DOMINANT_SHARE_THRESHOLD = 0.5;
+
+    /** Relative change of throughput or latency that is considered significant. */
+    private static final double SIGNIFICANT_CHANGE = 0.05;
+
+    private final int minThreads;
+    private final int maxThreads;
+    private final long adjustmentInterval;
+
+    /** Source of the current time (in milliseconds). Replaceable for tests. */
+    @NotNull private final LongSupplier clock;
+
+    /** Number of workers that take new requests from the global queue. */
+    private volatile int activeThreads;
+
+    /** Items processed in the current interval. */
+    private final AtomicLong itemsProcessed = new AtomicLong();
+
+    /** Time spent processing items in the current interval (in milliseconds). */
+    private final AtomicLong processingTime = new AtomicLong();
+
+    /** Time spent by active workers waiting for items in the current interval (in milliseconds). */
+    private final AtomicLong idleTime = new AtomicLong();
+
+    /** Start of the current interval. Accessed by the coordinator thread only. */
+    private long intervalStart;
+
+    /** Repository and connector total times at the start of the current interval. */
+    private long lastRepositoryTime;
+    private long lastConnectorTime;
+
+    /** Throughput (items per second) and latency (milliseconds per item) from the previous interval. */
+    private double lastThroughput = Double.NaN;
+    private double lastLatency = Double.NaN;
+
+    /** The last change done: +1, -1, or 0. */
+    private int lastChange;
+
+    WorkerThreadsAutoScaler(int initialThreads, int minThreads, int maxThreads, long adjustmentInterval,
+            @NotNull LongSupplier clock) {
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.adjustmentInterval = adjustmentInterval;
+        this.clock = clock;
+        this.activeThreads = Math.max(minThreads, Math.min(initialThreads, maxThreads));
+        this.intervalStart = clock.getAsLong();
+    }
+
+    /** Returns the scaler if the autoscaling is enabled for given (positive) number of worker threads. */
+    static @Nullable WorkerThreadsAutoScaler create(int workerThreads, @Nullable WorkerThreadsAutoScalingDefinitionType bean) {
+        if (workerThreads <= 0 || bean == null || Boolean.FALSE.equals(bean.isEnabled())) {
+            return null;
+        }
+        int min = Math.max(1, MoreObjects.firstNonNull(bean.getMinThreads(), 1));
+        int max = Math.max(min, MoreObjects.firstNonNull(bean.getMaxThreads(), 2 * workerThreads));
+        long interval = MoreObjects.firstNonNull(bean.getAdjustmentInterval(), DEFAULT_ADJUSTMENT_INTERVAL);
+        return new WorkerThreadsAutoScaler(workerThreads, min, max, interval, System::currentTimeMillis);
+    }
+
+    int getMaxThreads() {
+        return maxThreads;
+    }
+
+    int getActiveThreads() {
+        return activeThreads;
+    }
+
+    /** Should the worker with given (zero-based) index take new requests? */
+    boolean isActive(int workerIndex) {
+        return workerIndex < activeThreads;
+    }
+
+    void recordItemProcessed(long duration) {
+        itemsProcessed.incrementAndGet();
+        processingTime.addAndGet(duration);
+    }
+
+    void recordIdle(long duration) {
+        idleTime.addAndGet(duration);
+    }
+
+    /**
+     * Evaluates the current interval (if it is over) and changes the number of active threads, if needed.
+     *
+     * @return Description of the change, or null if there was no change.
+     */
+    @Nullable String adjustIfNeeded(@NotNull RunningTask coordinatorTask) {
+        return adjustIfNeeded(coordinatorTask::getAggregatedLiveOperationStats);
+    }
+
+    /** As {@link #adjustIfNeeded(RunningTask)}; the statistics are obtained only if the interval is over. */
+    @Nullable String adjustIfNeeded(@NotNull Supplier<OperationStatsType> statsSupplier) {
+        long now = clock.getAsLong();
+        long elapsed = now - intervalStart;
+        if (elapsed < adjustmentInterval || elapsed <= 0) {
+            return null;
+        }
+
+        long items = itemsProcessed.getAndSet(0);
+        long processing = processingTime.getAndSet(0);
+        long idle = idleTime.getAndSet(0);
+        intervalStart = now;
+
+        OperationStatsType stats = statsSupplier.get();
+        long repositoryTime = getRepositoryTime(stats);
+        long connectorTime = getConnectorTime(stats);
+        long repositoryDelta = repositoryTime - lastRepositoryTime;
+        long connectorDelta = connectorTime - lastConnectorTime;
+        lastRepositoryTime = repositoryTime;
+        lastConnectorTime = connectorTime;
+
+        int threads = activeThreads;
+        double throughput = items * 1000.0 / elapsed;
+        double latency = items > 0 ? (double) processing / items : Double.NaN;
+        double starvation = (double) idle / (threads * elapsed);
+        double repositoryShare = processing > 0 ? (double) repositoryDelta / processing : 0;
+        double connectorShare = processing > 0 ? (double) connectorDelta / processing : 0;
+
+        LOGGER.trace("Worker threads autoscaling: threads={}, throughput={}, latency={}, starvation={}, repositoryShare={},"
+                + " connectorShare={}", threads, throughput, latency, starvation, repositoryShare, connectorShare);
+
+        String reason;
+        int change;
+        if (starvation > STARVATION_THRESHOLD) {
+            change = -1;
+            reason = "workers are waiting for items";
+        } else if (repositoryShare > DOMINANT_SHARE_THRESHOLD && isSignificantlyHigher(latency, lastLatency)) {
+            change = -1;
+            reason = "repository-bound processing with growing latency";
+        } else if (lastChange != 0 && !isSignificantlyHigher(throughput, lastThroughput)) {
+            change = -lastChange;
+            reason = "last change did not improve throughput";
+        } else if (connectorShare > DOMINANT_SHARE_THRESHOLD || lastChange > 0) {
+            change = 1;
+            reason = lastChange > 0 ? "last increase improved throughput" : "connector-bound processing";
+        } else {
+            change = 0;
+            reason = null;
+        }
+
+        lastThroughput = throughput;
+        lastLatency = latency;
+
+        int newThreads = Math.max(minThreads, Math.min(threads + change, maxThreads));
+        if (newThreads == threads) {
+            lastChange = 0;
+            return null;
+        }
+        lastChange = newThreads - threads;
+        activeThreads = newThreads;
+        LOGGER.debug("Changing the number of active worker threads from {} to {}: {}", threads, newThreads, reason);
+        return reason;
+    }
+
+    private static boolean isSignificantlyHigher(double current, double previous) {
+        return !Double.isNaN(current) && !Double.isNaN(previous) && current > previous * (1 + SIGNIFICANT_CHANGE);
+    }
+
+    private static long getRepositoryTime(OperationStatsType stats) {
+        RepositoryPerformanceInformationType repository = stats != null ? stats.getRepositoryPerformanceInformation() : null;
+        if (repository == null) {
+            return 0;
+        }
+        long total = 0;
+        for (RepositoryOperationPerformanceInformationType operation : repository.getOperation()) {
+            total += or0(operation.getTotalTime());
+        }
+        return total;
+    }
+
+    private static long getConnectorTime(OperationStatsType stats) {
+        EnvironmentalPerformanceInformationType environmental =
+                stats != null ? stats.getEnvironmentalPerformanceInformation() : null;
+        ProvisioningStatisticsType provisioning = environmental != null ? environmental.getProvisioningStatistics() : null;
+        if (provisioning == null) {
+            return 0;
+        }
+        long total = 0;
+        for (ProvisioningStatisticsEntryType entry : provisioning.getEntry()) {
+            for (ProvisioningStatisticsOperationEntryType operation : entry.getOperation()) {
+                total += or0(operation.getTotalTime());
+            }
+        }
+        return total;
+    }
+}
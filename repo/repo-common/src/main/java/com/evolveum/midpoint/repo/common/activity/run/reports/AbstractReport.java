@@ -9,14 +9,12 @@ package com.evolveum.midpoint.repo.common.activity.run.reports;
 
 import static com.evolveum.midpoint.util.MiscUtil.stateCheck;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 import javax.xml.namespace.QName;
 
 import com.evolveum.midpoint.prism.*;
@@ -51,6 +49,10 @@ public abstract class AbstractReport {
 
     private static final Trace LOGGER = TraceManager.getTrace(AbstractReport.class);
 
+    private static final String COMPRESSED_FILE_SUFFIX = ".gz";
+
+    private static final int DEFAULT_BUFFER_SIZE = 10000;
+
     /** The state of this object. */
     @NotNull private State state = State.CLOSED;
 
@@ -60,6 +62,9 @@ public abstract class AbstractReport {
     /** Writer of the data. Non-null if open. */
     private CsvWriter csvWriter;
 
+    /** Asynchronous wrapper for {@link #csvWriter}. Non-null if open and the writing is asynchronous. */
+    private AsynchronousCsvWriter asynchronousWriter;
+
     /** Report definition. Must be non-null if the report is to be really used. */
     private final AbstractActivityReportDefinitionType definition;
 
@@ -158,15 +163,50 @@ public abstract class AbstractReport {
         csvWriter =
                 new CsvWriter(
                         new PrintWriter(
-                                new FileWriter(file, StandardCharsets.UTF_8, true)),
+                                new BufferedWriter(
+                                        new OutputStreamWriter(
+                                                createOutputStream(file), StandardCharsets.UTF_8))),
                         recordDefinition, itemsIncluded);
 
         if (!exists) {
             csvWriter.writeHeader();
         }
+        if (isAsynchronous()) {
+            asynchronousWriter = new AsynchronousCsvWriter(csvWriter, getBufferSize(), file.getName() + "-writer");
+        }
         LOGGER.debug("Opened report file {}", reportData.getFilePath());
     }
 
+    /**
+     * Compressed files are appended to as new gzip members; readers see them as a single stream.
+     * Flushes are "sync flushes", so the data written so far can be read while the file is still open.
+     */
+    private @NotNull OutputStream createOutputStream(@NotNull File file) throws IOException {
+        FileOutputStream fileOutputStream = new FileOutputStream(file, true);
+        if (isCompressedFile(file.getName())) {
+            return new GZIPOutputStream(fileOutputStream, true);
+        } else {
+            return fileOutputStream;
+        }
+    }
+
+    static boolean isCompressedFile(@NotNull String fileName) {
+        return fileName.endsWith(COMPRESSED_FILE_SUFFIX);
+    }
+
+    private boolean isAsynchronous() {
+        return definition != null && Boolean.TRUE.equals(definition.isAsynchronous());
+    }
+
+    private int getBufferSize() {
+        Integer configured = definition != null ? definition.getBufferSize() : null;
+        return configured != null && configured > 0 ? configured : DEFAULT_BUFFER_SIZE;
+    }
+
+    private boolean isCompressed() {
+        return definition != null && Boolean.TRUE.equals(definition.isCompressed());
+    }
+
     private void initializeReportDataObject(OperationResult result) throws CommonException, ActivityRunException {
         for (;;) {
             String existingDataOid = findCurrentNodeDataOid();
@@ -197,7 +237,9 @@ public abstract class AbstractReport {
 
     private void createAndLinkReportDataObject(OperationResult result) throws CommonException, ActivityRunException {
         String bareFileName = createFileName();
-        File filePath = new File(ReportSupportUtil.getExportDir(), bareFileName + ".csv");
+        File filePath = new File(
+                ReportSupportUtil.getExportDir(),
+                bareFileName + (isCompressed() ? ".csv" + COMPRESSED_FILE_SUFFIX : ".csv"));
 
         ReportDataType reportDataObject = createReportDataObject(bareFileName, filePath, result);
         linkReportDataObject(reportDataObject, result);
@@ -323,11 +365,15 @@ public abstract class AbstractReport {
         }
 
         try {
-            if (csvWriter != null) {
+            if (asynchronousWriter != null) {
+                LOGGER.debug("Closing asynchronous writer for {}", reportData);
+                asynchronousWriter.close(); // closes also the CSV writer
+            } else if (csvWriter != null) {
                 LOGGER.debug("Closing print writer for {}", reportData);
                 csvWriter.close();
             }
         } finally {
+            asynchronousWriter = null;
             csvWriter = null;
             reportData = null;
             setClosed();
@@ -335,7 +381,9 @@ public abstract class AbstractReport {
     }
 
     void writeRecord(Containerable record) {
-        if (isOpen()) {
+        if (isOpen() && asynchronousWriter != null) {
+            asynchronousWriter.writeRecord(record);
+        } else if (isOpen()) {
             csvWriter.writeRecord(record);
         } else {
             LOGGER.warn("Couldn't write to the {} report because the state is {}", getReportType(), state);
@@ -343,7 +391,9 @@ public abstract class AbstractReport {
     }
 
     void writeRecords(List<? extends Containerable> records) {
-        if (isOpen()) {
+        if (isOpen() && asynchronousWriter != null) {
+            asynchronousWriter.writeRecords(records);
+        } else if (isOpen()) {
             records.forEach(r -> csvWriter.writeRecordNoFlush(r));
             csvWriter.flush();
         } else {
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.common.activity.run.reports;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.prism.Containerable;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+/**
+ * Writes records to a {@link CsvWriter} in a dedicated thread.
+ *
+ * The clients (item processing threads) only put the records into a bounded queue. The writer thread takes
+ * them in batches, formats and writes them, and flushes the file once per batch.
+ *
+ * The records must not be modified by the clients after they are put into the queue.
+ *
+ * If the writer thread fails (e.g. because of an I/O error), the report is considered failed: the failure is logged
+ * once, and all further records are dropped. The clients are never affected by the failure, because the report
+ * is only an auxiliary output of the activity. They also never wait indefinitely: neither for a free place
+ * in the queue, nor for the writer thread to finish.
+ */
+class AsynchronousCsvWriter {
+
+    private static final Trace LOGGER = TraceManager.getTrace(AsynchronousCsvWriter.class);
+
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private static final long POLL_TIMEOUT = 1000L;
+
+    /** How long we wait for a free place in the queue before re-checking the writer thread. */
+    private static final long OFFER_TIMEOUT = 1000L;
+
+    /** How long we wait for the writer thread to write the remaining records when closing. */
+    private static final long CLOSE_TIMEOUT = 60_000L;
+
+    /** Marks the end of the records stream. */
+    private static final Object END_MARKER = new Object();
+
+    /** The underlying (synchronous) writer. Accessed only from the writer thread after the start. */
+    @NotNull private final CsvWriter csvWriter;
+
+    /** Records waiting to be written, plus the {@link #END_MARKER}. */
+    @NotNull private final BlockingQueue<Object> queue;
+
+    @NotNull private final Thread writerThread;
+
+    /** The failure of the writer thread, if any. After it is set, no more records are written. */
+    private volatile Throwable failure;
+
+    /** Was the failure (or the unexpected end) of the writer thread already logged? */
+    private final AtomicBoolean failureLogged = new AtomicBoolean();
+
+    /** Records dropped because the writer was not running. */
+    private final AtomicLong droppedRecords = new AtomicLong();
+
+    AsynchronousCsvWriter(@NotNull CsvWriter csvWriter, int bufferSize, @NotNull String threadName) {
+        this.csvWriter = csvWriter;
+        this.queue = new ArrayBlockingQueue<>(bufferSize);
+        this.writerThread = new Thread(this::run, threadName);
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /** Enqueues the record for writing. Waits only if the queue is full. Drops the record if the writer is not running. */
+    void writeRecord(@NotNull Containerable record) {
+        put(record);
+    }
+
+    void writeRecords(@NotNull List<? extends Containerable> records) {
+        records.forEach(this::put);
+    }
+
+    private void put(@NotNull Object object) {
+        try {
+            while (isWriterRunning()) {
+                if (queue.offer(object, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.debug("Interrupted while waiting to write a report record, dropping it: {}", object);
+        }
+        droppedRecords.incrementAndGet();
+    }
+
+    /** Checks that the writer is running. If it is not, logs the reason (only once). */
+    private boolean isWriterRunning() {
+        Throwable failure = this.failure;
+        if (failure != null) {
+            if (failureLogged.compareAndSet(false, true)) {
+                LoggingUtils.logException(LOGGER, "Report writer thread {} failed, further records will be dropped",
+                        failure, writerThread.getName());
+            }
+            return false;
+        } else if (!writerThread.isAlive()) {
+            if (failureLogged.compareAndSet(false, true)) {
+                LOGGER.warn("Report writer thread {} is not running, further records will be dropped",
+                        writerThread.getName());
+            }
+            return false;
+        } else {
+            return true;
+        }
+    }
+
+    /**
+     * Writes all the records enqueued so far, stops the writer thread, and closes the file.
+     *
+     * Waits at most {@link #CLOSE_TIMEOUT} for the writer thread. Does not throw an exception if the writer failed,
+     * because the report is only an auxiliary output of the activity; the failure is logged instead.
+     */
+    void close() {
+        long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT;
+        try {
+            while (writerThread.isAlive()
+                    && !queue.offer(END_MARKER, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)
+                    && System.currentTimeMillis() < deadline) {
+                // waiting for the writer to make a place for the end marker
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining > 0) {
+                writerThread.join(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while waiting for the report writer thread {} to finish", writerThread.getName());
+        }
+        if (writerThread.isAlive()) {
+            LOGGER.warn("Report writer thread {} did not finish in {} ms, interrupting it; some records may be lost",
+                    writerThread.getName(), CLOSE_TIMEOUT);
+            writerThread.interrupt();
+        }
+        Throwable failure = this.failure;
+        if (failure != null && failureLogged.compareAndSet(false, true)) {
+            LoggingUtils.logException(LOGGER, "Report writer thread {} failed, the report is incomplete",
+                    failure, writerThread.getName());
+        }
+        long dropped = droppedRecords.get();
+        if (dropped > 0) {
+            LOGGER.warn("Report writer thread {} did not write {} record(s), the report is incomplete",
+                    writerThread.getName(), dropped);
+        }
+    }
+
+    /** For diagnostics and tests. */
+    Throwable getFailure() {
+        return failure;
+    }
+
+    /** For diagnostics and tests. */
+    long getDroppedRecords() {
+        return droppedRecords.get();
+    }
+
+    private void run() {
+        List<Object> batch = new ArrayList<>();
+        try {
+            for (;;) {
+                Object first = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                if (writeBatch(batch)) {
+                    break;
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            LOGGER.warn("Report writer thread {} was interrupted, some records may be lost", writerThread.getName());
+            failure = e;
+        } catch (Throwable t) {
+            failure = t;
+        } finally {
+            if (failure != null) {
+                queue.clear(); // unblocks the clients; they will see the failure
+            }
+            csvWriter.close();
+        }
+    }
+
+    /** Returns true if the end marker was reached. */
+    private boolean writeBatch(List<Object> batch) {
+        boolean end = false;
+        for (Object object : batch) {
+            if (object == END_MARKER) {
+                end = true;
+            } else {
+                try {
+                    csvWriter.writeRecordNoFlush((Containerable) object);
+                } catch (RuntimeException e) {
+                    LoggingUtils.logUnexpectedException(LOGGER, "Couldn't write report record {}", e, object);
+                }
+            }
+        }
+        csvWriter.flush();
+        if (csvWriter.checkError()) {
+            throw new SystemException("Couldn't write the report file");
+        }
+        return end;
+    }
+}
@@ -96,6 +96,11 @@ class CsvWriter {
         printWriter.flush();
     }
 
+    /** Returns true if the underlying writer encountered an error (they are not reported by {@link PrintWriter}). */
+    boolean checkError() {
+        return printWriter.checkError();
+    }
+
     void close() {
         printWriter.close();
     }
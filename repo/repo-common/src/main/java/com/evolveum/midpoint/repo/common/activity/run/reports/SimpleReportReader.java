@@ -13,6 +13,7 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import com.evolveum.midpoint.repo.common.activity.run.CommonTaskBeans;
 
@@ -58,8 +59,9 @@ public class SimpleReportReader implements AutoCloseable {
         String filePath = MiscUtil.requireNonNull(
                 reportDataObject.asObjectable().getFilePath(),
                 () -> "No file in " + reportDataObject);
+        InputStream fileStream = new FileInputStream(filePath);
         return createFor(
-                new FileInputStream(filePath),
+                AbstractReport.isCompressedFile(filePath) ? new GZIPInputStream(fileStream) : fileStream,
                 columns);
     }
 
@@ -23,6 +23,7 @@ import com.evolveum.midpoint.schema.statistics.Operation;
 import com.evolveum.midpoint.schema.util.task.ActivityItemProcessingStatisticsUtil;
 
 import com.evolveum.midpoint.util.annotation.Experimental;
+import com.evolveum.midpoint.util.exception.CommonException;
 
 import com.evolveum.midpoint.util.logging.LoggingUtils;
 
@@ -71,16 +72,6 @@ public class ActivityItemProcessingStatistics extends Initializable {
      */
     @NotNull private final CurrentActivityState<?> activityState;
 
-    /**
-     * When we last updated activity statistics for the simple clients.
-     * EXPERIMENTAL. UGLY HACK. PLEASE REMOVE.
-     */
-    @Experimental
-    private long lastStatisticsUpdatedForSimpleClients = System.currentTimeMillis();
-
-    @Experimental
-    private static final long STATISTICS_UPDATE_INTERVAL = 3000L;
-
     ActivityItemProcessingStatistics(@NotNull CurrentActivityState<?> activityState) {
         this.activityState = activityState;
         this.value = new ActivityItemProcessingStatisticsType();
@@ -142,6 +133,19 @@ public class ActivityItemProcessingStatistics extends Initializable {
         updateMatchingRunRecord(startTimestamp, XmlTypeConverter.createXMLGregorianCalendar(endTimestamp));
     }
 
+    /** Records a change of the number of active worker threads (done by the autoscaling). */
+    public synchronized void recordWorkerThreadsChange(int threads, @NotNull String reason) {
+        assertInitialized();
+        List<WorkerThreadsRecordType> records = value.getWorkerThreads();
+        records.add(new WorkerThreadsRecordType()
+                .timestamp(XmlTypeConverter.createXMLGregorianCalendar())
+                .threads(threads)
+                .reason(reason));
+        while (records.size() > ActivityItemProcessingStatisticsUtil.MAX_WORKER_THREADS_RECORDS) {
+            records.remove(0);
+        }
+    }
+
     private void updateMatchingRunRecord(long startTimestamp) {
         // We must not create an run record without end timestamp.
         // So, if the run is still going on, we use the current timestamp.
@@ -325,15 +329,25 @@ public class ActivityItemProcessingStatistics extends Initializable {
 
     /**
      * Very ugly hack. We create our own operation result (!!).
+     *
+     * The statistics are stored along with other task statistics, so that all of them are written
+     * in a single repository operation, with the frequency driven by the running task.
      */
     @Experimental
     private void updateStatisticsForSimpleClients() {
+        try {
+            activityState.getActivityRun().getRunningTask()
+                    .storeStatisticsIntoRepositoryIfTimePassed(
+                            this::updateProgressAndStatisticsForSimpleClients,
+                            new OperationResult(OP_UPDATE_STATISTICS_FOR_SIMPLE_CLIENT));
+        } catch (CommonException e) {
+            LoggingUtils.logUnexpectedException(LOGGER, "Couldn't update statistics for a simple client in {}", e, this);
+        }
+    }
+
+    private void updateProgressAndStatisticsForSimpleClients() {
         try {
             activityState.updateProgressAndStatisticsNoCommit();
-            if (System.currentTimeMillis() > lastStatisticsUpdatedForSimpleClients + STATISTICS_UPDATE_INTERVAL) {
-                lastStatisticsUpdatedForSimpleClients = System.currentTimeMillis();
-                activityState.flushPendingTaskModificationsChecked(new OperationResult(OP_UPDATE_STATISTICS_FOR_SIMPLE_CLIENT));
-            }
         } catch (ActivityRunException e) {
             LoggingUtils.logUnexpectedException(LOGGER, "Couldn't update statistics for a simple client in {}", e, this);
         }
@@ -449,5 +449,18 @@ public abstract class ActivityState implements DebugDumpable {
         return new CountersIncrementOperation(getTask(), counterGroupItemPath, countersIdentifiers, beans)
                 .execute(result);
     }
+
+    /**
+     * Increments given counters by specified amounts.
+     *
+     * @return Current values of the counters (after the update).
+     */
+    public Map<String, Integer> incrementCounters(@NotNull ExecutionSupport.CountersGroup counterGroup,
+            @NotNull Map<String, Integer> increments, @NotNull OperationResult result)
+            throws SchemaException, ObjectNotFoundException, ObjectAlreadyExistsException {
+        ItemPath counterGroupItemPath = stateItemPath.append(ActivityStateType.F_COUNTERS, counterGroup.getItemName());
+        return new CountersIncrementOperation(getTask(), counterGroupItemPath, increments, beans)
+                .execute(result);
+    }
     //endregion
 }
@@ -166,6 +166,7 @@ public class ActivityTreePurger {
             doPurge(Context.root(localRootPath, taskActivityState));
             if (!deltas.isEmpty()) {
                 beans.repositoryService.modifyObject(TaskType.class, task.getOid(), deltas, result);
+                beans.taskManager.recordTaskWrite();
                 if (task instanceof RunningTask) {
                     task.refresh(result);
                 }
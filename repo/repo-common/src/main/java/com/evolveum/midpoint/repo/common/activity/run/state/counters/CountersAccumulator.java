@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.common.activity.run.state.counters;
+
+import static com.evolveum.midpoint.util.MiscUtil.or0;
+
+import java.util.*;
+import java.util.function.LongSupplier;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.repo.common.activity.run.state.ActivityState;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.ExecutionSupport.CountersGroup;
+import com.evolveum.midpoint.util.exception.ObjectAlreadyExistsException;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+/**
+ * Accumulates counter increments in memory, writing them to the repository in batches.
+ * There is a single instance per activity run, i.e. per task and node.
+ *
+ * The increments (along with all the pending ones) are written to the repository immediately if:
+ *
+ * 1. the repository value of any of the counters is not known yet,
+ * 2. any of the counters has no (known) threshold, or its estimated value gets within {@link #thresholdMargin}
+ * from the threshold,
+ * 3. {@link #flushInterval} has elapsed since the last write.
+ *
+ * Otherwise, the values returned are estimates: the last value read from the repository plus the increments done
+ * locally since then. Increments done by other workers are not visible until the next write. This is why the
+ * threshold margin should cover the increments that all the other workers can do in one flush interval.
+ *
+ * Thread safety: All public methods are synchronized, as they are called from multiple worker threads.
+ */
+public class CountersAccumulator {
+
+    private static final Trace LOGGER = TraceManager.getTrace(CountersAccumulator.class);
+
+    /** Writes the increments to the repository, returning the updated values. Normally the activity state. */
+    @NotNull private final CountersWriter countersWriter;
+
+    /** Maximal time between writing the accumulated increments to the repository (in milliseconds). */
+    private final long flushInterval;
+
+    /** How close to the threshold a counter can get before it is written to the repository on each increment. */
+    private final int thresholdMargin;
+
+    /** Values of counters as they were seen in the repository at the time of the last write. */
+    @NotNull private final Map<CountersGroup, Map<String, Integer>> repositoryValues = new EnumMap<>(CountersGroup.class);
+
+    /** Increments not yet written to the repository. */
+    @NotNull private final Map<CountersGroup, Map<String, Integer>> pendingIncrements = new EnumMap<>(CountersGroup.class);
+
+    /** Source of the current time (in milliseconds). Replaceable for tests. */
+    @NotNull private final LongSupplier clock;
+
+    /** When were the counters last written to the repository? */
+    private long lastFlushTimestamp;
+
+    public CountersAccumulator(@NotNull ActivityState activityState, long flushInterval, int thresholdMargin) {
+        this(activityState::incrementCounters, flushInterval, thresholdMargin, System::currentTimeMillis);
+    }
+
+    CountersAccumulator(@NotNull CountersWriter countersWriter, long flushInterval, int thresholdMargin,
+            @NotNull LongSupplier clock) {
+        this.countersWriter = countersWriter;
+        this.flushInterval = flushInterval;
+        this.thresholdMargin = thresholdMargin;
+        this.clock = clock;
+        this.lastFlushTimestamp = clock.getAsLong();
+    }
+
+    /**
+     * Increments given counters by one.
+     *
+     * @param countersThresholds Identifiers of counters to be incremented, mapped to the counter values at which
+     * the respective thresholds are reached. Null threshold means that the counter is always written immediately.
+     *
+     * @return Current (exact or estimated) values of the counters after the update.
+     */
+    public synchronized @NotNull Map<String, Integer> increment(@NotNull CountersGroup group,
+            @NotNull Map<String, Integer> countersThresholds, @NotNull OperationResult result)
+            throws SchemaException, ObjectNotFoundException, ObjectAlreadyExistsException {
+        Map<String, Integer> groupPending = pendingIncrements.computeIfAbsent(group, g -> new HashMap<>());
+        countersThresholds.keySet()
+                .forEach(identifier -> groupPending.merge(identifier, 1, Integer::sum));
+
+        if (isImmediateFlushNeeded(group, countersThresholds)) {
+            flushInternal(result);
+        }
+
+        Map<String, Integer> currentValues = new HashMap<>();
+        for (String identifier : countersThresholds.keySet()) {
+            currentValues.put(identifier, getEstimatedValue(group, identifier));
+        }
+        return currentValues;
+    }
+
+    private boolean isImmediateFlushNeeded(CountersGroup group, Map<String, Integer> countersThresholds) {
+        if (clock.getAsLong() - lastFlushTimestamp >= flushInterval) {
+            LOGGER.trace("Flush interval elapsed, flushing the counters");
+            return true;
+        }
+        for (Map.Entry<String, Integer> entry : countersThresholds.entrySet()) {
+            String identifier = entry.getKey();
+            Integer threshold = entry.getValue();
+            if (getRepositoryValue(group, identifier) == null) {
+                LOGGER.trace("Repository value of counter '{}' is not known, flushing the counters", identifier);
+                return true;
+            }
+            if (threshold == null || getEstimatedValue(group, identifier) + thresholdMargin >= threshold) {
+                LOGGER.trace("Counter '{}' is close to its threshold ({}), flushing the counters", identifier, threshold);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Writes all pending increments to the repository. */
+    public synchronized void flush(@NotNull OperationResult result)
+            throws SchemaException, ObjectNotFoundException, ObjectAlreadyExistsException {
+        flushInternal(result);
+    }
+
+    private void flushInternal(@NotNull OperationResult result)
+            throws SchemaException, ObjectNotFoundException, ObjectAlreadyExistsException {
+        for (Map.Entry<CountersGroup, Map<String, Integer>> entry : pendingIncrements.entrySet()) {
+            CountersGroup group = entry.getKey();
+            Map<String, Integer> increments = entry.getValue();
+            if (increments.isEmpty()) {
+                continue;
+            }
+            LOGGER.trace("Writing counter increments for {}: {}", group, increments);
+            Map<String, Integer> updatedValues =
+                    countersWriter.incrementCounters(group, new HashMap<>(increments), result);
+            repositoryValues.computeIfAbsent(group, g -> new HashMap<>())
+                    .putAll(updatedValues);
+            increments.clear();
+        }
+        lastFlushTimestamp = clock.getAsLong();
+    }
+
+    private @Nullable Integer getRepositoryValue(CountersGroup group, String identifier) {
+        Map<String, Integer> groupValues = repositoryValues.get(group);
+        return groupValues != null ? groupValues.get(identifier) : null;
+    }
+
+    private int getEstimatedValue(CountersGroup group, String identifier) {
+        Map<String, Integer> groupPending = pendingIncrements.get(group);
+        return or0(getRepositoryValue(group, identifier))
+                + or0(groupPending != null ? groupPending.get(identifier) : null);
+    }
+
+    /** Writes counter increments to the repository. */
+    @FunctionalInterface
+    interface CountersWriter {
+
+        /** @return Current values of the counters (after the update). */
+        Map<String, Integer> incrementCounters(@NotNull CountersGroup group, @NotNull Map<String, Integer> increments,
+                @NotNull OperationResult result)
+                throws SchemaException, ObjectNotFoundException, ObjectAlreadyExistsException;
+    }
+}
@@ -42,8 +42,8 @@ public class CountersIncrementOperation {
     /** Points directly to multi-valued "counter" sub-container in the group. */
     @NotNull private final ItemPath countersItemPath;
 
-    /** Identifiers of counters to be incremented. */
-    @NotNull private final Collection<String> countersIdentifiers;
+    /** Identifiers of counters to be incremented, mapped to the respective increments. */
+    @NotNull private final Map<String, Integer> increments;
 
     /** Useful beans */
     @NotNull private final CommonTaskBeans beans;
@@ -54,12 +54,24 @@ public class CountersIncrementOperation {
     public CountersIncrementOperation(@NotNull Task task, @NotNull ItemPath counterGroupItemPath,
             @NotNull Collection<String> countersIdentifiers,
             @NotNull CommonTaskBeans beans) {
+        this(task, counterGroupItemPath, incrementsByOne(countersIdentifiers), beans);
+    }
+
+    public CountersIncrementOperation(@NotNull Task task, @NotNull ItemPath counterGroupItemPath,
+            @NotNull Map<String, Integer> increments,
+            @NotNull CommonTaskBeans beans) {
         this.task = task;
         this.countersItemPath = counterGroupItemPath.append(ActivityCounterGroupType.F_COUNTER);
-        this.countersIdentifiers = countersIdentifiers;
+        this.increments = increments;
         this.beans = beans;
     }
 
+    private static @NotNull Map<String, Integer> incrementsByOne(@NotNull Collection<String> countersIdentifiers) {
+        Map<String, Integer> increments = new HashMap<>();
+        countersIdentifiers.forEach(identifier -> increments.put(identifier, 1));
+        return increments;
+    }
+
     public Map<String, Integer> execute(OperationResult result)
             throws SchemaException, ObjectNotFoundException, ObjectAlreadyExistsException {
         incrementCountersInRepository(result);
@@ -70,23 +82,26 @@ public class CountersIncrementOperation {
             throws ObjectNotFoundException, SchemaException, ObjectAlreadyExistsException {
         beans.plainRepositoryService.modifyObjectDynamically(TaskType.class, task.getOid(), null, this::prepareModifications,
                 null, result);
+        beans.taskManager.recordTaskWrite();
     }
 
     private @NotNull Collection<? extends ItemDelta<?, ?>> prepareModifications(TaskType task) throws SchemaException {
         updatedValues.clear();
         List<ItemDelta<?, ?>> deltas = new ArrayList<>();
-        for (String counterIdentifier : countersIdentifiers) {
+        for (Map.Entry<String, Integer> entry : increments.entrySet()) {
+            String counterIdentifier = entry.getKey();
+            int increment = entry.getValue();
             ActivityCounterType currentCounter = getCurrentCounter(task, counterIdentifier);
             ItemDelta<?, ?> itemDelta;
             int newValue;
             if (currentCounter != null) {
-                newValue = or0(currentCounter.getValue()) + 1;
+                newValue = or0(currentCounter.getValue()) + increment;
                 itemDelta = beans.prismContext.deltaFor(TaskType.class)
                         .item(countersItemPath.append(currentCounter.getId(), ActivityCounterType.F_VALUE))
                         .replace(newValue)
                         .asItemDelta();
             } else {
-                newValue = 1;
+                newValue = increment;
                 itemDelta = beans.prismContext.deltaFor(TaskType.class)
                         .item(countersItemPath)
                         .add(new ActivityCounterType(beans.prismContext)
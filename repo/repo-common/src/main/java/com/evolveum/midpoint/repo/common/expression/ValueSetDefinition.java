@@ -72,6 +72,18 @@ public class ValueSetDefinition<IV extends PrismValue, D extends ItemDefinition>
         }
     }
 
+    /**
+     * Alternative to {@link #init(ExpressionFactory)}: uses conditions that were already created (e.g. cached ones)
+     * for the condition and yield condition in the set definition bean.
+     */
+    public void init(
+            @Nullable Expression<PrismPropertyValue<Boolean>, PrismPropertyDefinition<Boolean>> condition,
+            @Nullable Expression<PrismPropertyValue<Boolean>, PrismPropertyDefinition<Boolean>> yieldCondition) {
+        predefinedRange = setDefinitionBean.getPredefined();
+        this.condition = condition;
+        this.yieldCondition = yieldCondition;
+    }
+
     public void setAdditionalVariables(VariablesMap additionalVariables) {
         this.additionalVariables = additionalVariables;
     }
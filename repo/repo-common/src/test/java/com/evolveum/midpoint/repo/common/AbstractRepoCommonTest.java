@@ -51,7 +51,7 @@ public class AbstractRepoCommonTest extends AbstractIntegrationTest {
     private static final TestResource<UserType> USER_ADMINISTRATOR = new TestResource<>(COMMON_DIR, "user-administrator.xml", "00000000-0000-0000-0000-000000000002");
 
     private static final String NS_EXT = "http://midpoint.evolveum.com/xml/ns/repo-common-test/extension";
-    private static final ItemName EXT_DISCRIMINATOR = new ItemName(NS_EXT, "discriminator");
+    protected static final ItemName EXT_DISCRIMINATOR = new ItemName(NS_EXT, "discriminator");
 
     @Autowired protected TaskActivityManager activityManager;
     @Autowired protected BucketingManager bucketingManager;
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.common.activity.run;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.prism.Containerable;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.repo.common.AbstractRepoCommonTest;
+import com.evolveum.midpoint.repo.common.activity.run.sources.SearchableItemSource;
+import com.evolveum.midpoint.schema.ContainerableResultHandler;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.RunningTask;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.util.exception.CommonException;
+import com.evolveum.midpoint.util.exception.CommunicationException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.NumericWorkSegmentationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceSearchPartitioningType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.RoleType;
+import com.evolveum.prism.xml.ns._public.types_3.ItemPathType;
+
+/**
+ * Tests {@link PartitionedSearch}: the partitions cover all the items, the items are passed to the handler
+ * in the calling (coordinator) thread, the partition threads are reused, and the stopping and failures are handled.
+ *
+ * The partitions are defined by numeric segmentation on the `extension/discriminator` property of the roles.
+ */
+public class TestPartitionedSearch extends AbstractRepoCommonTest {
+
+    private static final int ROLES = 20;
+    private static final String ROLE_NAME_PATTERN = "partitioned-role-%02d";
+    private static final int PARTITIONS = 4;
+    private static final int THREADS = 2;
+
+    @Autowired private CommonTaskBeans beans;
+
+    @Override
+    public void initSystem(Task initTask, OperationResult initResult) throws Exception {
+        super.initSystem(initTask, initResult);
+        repoObjectCreatorFor(RoleType.class)
+                .withObjectCount(ROLES)
+                .withNamePattern(ROLE_NAME_PATTERN)
+                .withCustomizer(this::setDiscriminator)
+                .execute(initResult);
+    }
+
+    /**
+     * All the roles are found exactly once. The handler is called in the current thread only, while the searches run
+     * in (at most) the configured number of partition threads. The threads are reused for the second execution.
+     */
+    @Test
+    public void test100SearchAllPartitions() throws Exception {
+        given();
+        RunningTask task = taskManager.createFakeRunningTask(getTestTask());
+        OperationResult result = task.getResult();
+        PartitionedSearch<RoleType> search = createPartitionedSearch();
+        RecordingItemSource itemSource = new RecordingItemSource();
+        RecordingHandler handler = new RecordingHandler(Integer.MAX_VALUE);
+
+        try {
+            when();
+            search.execute(createSearchSpecification(), itemSource, handler, task, result);
+            search.execute(createSearchSpecification(), itemSource, handler, task, result);
+
+            then();
+            assertThat(itemSource.searches.get()).as("searches").isEqualTo(2 * PARTITIONS);
+            assertThat(itemSource.threadNames).as("search threads").hasSizeLessThanOrEqualTo(THREADS);
+            assertThat(itemSource.threadNames).as("search threads").doesNotContain(Thread.currentThread().getName());
+            assertThat(handler.threadNames).as("handler threads").containsExactly(Thread.currentThread().getName());
+            assertThat(handler.names).as("roles handled").hasSize(2 * ROLES);
+            assertThat(Set.copyOf(handler.names)).as("distinct roles handled").isEqualTo(getRoleNames());
+        } finally {
+            search.shutdown();
+        }
+    }
+
+    /** When the handler asks to stop, no more items are passed to it. */
+    @Test
+    public void test110StopByHandler() throws Exception {
+        given();
+        RunningTask task = taskManager.createFakeRunningTask(getTestTask());
+        OperationResult result = task.getResult();
+        PartitionedSearch<RoleType> search = createPartitionedSearch();
+        int limit = 3;
+        RecordingHandler handler = new RecordingHandler(limit);
+
+        try {
+            when();
+            search.execute(createSearchSpecification(), new RecordingItemSource(), handler, task, result);
+
+            then();
+            assertThat(handler.names).as("roles handled").hasSize(limit);
+        } finally {
+            search.shutdown();
+        }
+    }
+
+    /** A failure of one partition is reported to the caller, and the other partitions are stopped. */
+    @Test
+    public void test120FailedPartition() throws Exception {
+        given();
+        RunningTask task = taskManager.createFakeRunningTask(getTestTask());
+        OperationResult result = task.getResult();
+        PartitionedSearch<RoleType> search = createPartitionedSearch();
+        RecordingItemSource itemSource = new RecordingItemSource();
+        itemSource.failingSearch = 1;
+
+        try {
+            when();
+            assertThatThrownBy(() -> search.execute(
+                    createSearchSpecification(), itemSource, new RecordingHandler(Integer.MAX_VALUE), task, result))
+                    .isInstanceOf(CommunicationException.class)
+                    .hasMessageContaining("simulated");
+
+            then();
+            assertThat(result.getSubresults())
+                    .as("failed partition results")
+                    .anyMatch(OperationResult::isFatalError);
+        } finally {
+            search.shutdown();
+        }
+    }
+
+    private PartitionedSearch<RoleType> createPartitionedSearch() {
+        ResourceSearchPartitioningType partitioning = new ResourceSearchPartitioningType()
+                .threads(THREADS)
+                .numericSegmentation(new NumericWorkSegmentationType()
+                        .discriminator(new ItemPathType(ItemPath.create(ObjectType.F_EXTENSION, EXT_DISCRIMINATOR)))
+                        .numberOfBuckets(PARTITIONS)
+                        .from(BigInteger.ZERO)
+                        .bucketSize(BigInteger.valueOf(ROLES / PARTITIONS)));
+        PartitionedSearch<RoleType> search = PartitionedSearch.create(partitioning, null, beans);
+        assertThat(search).as("partitioned search").isNotNull();
+        return search;
+    }
+
+    /** No query is needed: the partitions select only the roles with the discriminator. */
+    private SearchSpecification<RoleType> createSearchSpecification() {
+        return new SearchSpecification<>(RoleType.class, null, null, true);
+    }
+
+    private Set<String> getRoleNames() {
+        return IntStream.range(0, ROLES)
+                .mapToObj(i -> String.format(ROLE_NAME_PATTERN, i))
+                .collect(Collectors.toSet());
+    }
+
+    /** Searches the repository, recording the threads used. Can be told to fail in the n-th search. */
+    private class RecordingItemSource implements SearchableItemSource {
+
+        private final Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger searches = new AtomicInteger();
+        private volatile int failingSearch = -1;
+
+        @Override
+        public Integer count(@NotNull SearchSpecification<?> searchSpecification, @NotNull RunningTask task,
+                @NotNull OperationResult result) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <C extends Containerable> void searchIterative(@NotNull SearchSpecification<C> searchSpecification,
+                @NotNull ContainerableResultHandler<C> handler, @NotNull RunningTask task, @NotNull OperationResult result)
+                throws CommonException {
+            threadNames.add(Thread.currentThread().getName());
+            if (searches.getAndIncrement() == failingSearch) {
+                throw new CommunicationException("Search failed (simulated)");
+            }
+            //noinspection unchecked
+            Class<ObjectType> type = (Class<ObjectType>) searchSpecification.getType();
+            repositoryService.searchObjectsIterative(type, searchSpecification.getQuery(),
+                    (object, lResult) -> {
+                        //noinspection unchecked
+                        return handler.handle((C) object.asObjectable(), lResult);
+                    },
+                    null, true, result);
+        }
+    }
+
+    /** Records the items handled and the threads used; asks to stop after given number of items. */
+    private static class RecordingHandler implements ContainerableResultHandler<RoleType> {
+
+        private final List<String> names = new CopyOnWriteArrayList<>();
+        private final Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        private final int limit;
+
+        private RecordingHandler(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean handle(RoleType role, OperationResult parentResult) {
+            threadNames.add(Thread.currentThread().getName());
+            names.add(role.getName().getOrig());
+            return names.size() < limit;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.common.activity.run.processing;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Tests the decisions of {@link WorkerThreadsAutoScaler}: the thresholds for scaling down (starvation, repository-bound
+ * processing with growing latency) and up (connector-bound processing, successful increase), the reverting
+ * of unsuccessful changes, and the bounds.
+ *
+ * The time and the repository/connector statistics are simulated; each interval is exactly {@link #INTERVAL} long.
+ */
+public class TestWorkerThreadsAutoScaler extends AbstractUnitTest {
+
+    private static final long INTERVAL = 1000;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    /** Cumulative repository and connector times, as reported by the coordinator task. */
+    private long repositoryTime;
+    private long connectorTime;
+
+    /** Nothing is evaluated before the interval is over. */
+    @Test
+    public void test100NoAdjustmentBeforeIntervalEnd() {
+        given();
+        WorkerThreadsAutoScaler scaler = createScaler(4, 1, 8);
+        scaler.recordIdle(4 * INTERVAL);
+
+        when();
+        clock.addAndGet(INTERVAL - 1);
+        String change = scaler.adjustIfNeeded(this::getStats);
+
+        then();
+        assertThat(change).as("change").isNull();
+        assertThat(scaler.getActiveThreads()).as("active threads").isEqualTo(4);
+    }
+
+    /** Workers waiting for more than 20 % of their time are a sign of too many threads. */
+    @Test
+    public void test110StarvationThreshold() {
+        given();
+        WorkerThreadsAutoScaler scaler = createScaler(4, 1, 8);
+
+        when("workers wait for exactly 20 % of the time");
+        String atThreshold = runInterval(scaler, 10, 1000, 800, 0, 0);
+
+        then("nothing is changed");
+        assertThat(atThreshold).as("change").isNull();
+        assertThat(scaler.getActiveThreads()).as("active threads").isEqualTo(4);
+
+        when("workers wait for more than 20 % of the time");
+        String aboveThreshold = runInterval(scaler, 10, 1000, 801, 0, 0);
+
+        then("number of threads is decreased");
+        assertThat(aboveThreshold).as("change").isEqualTo("workers are waiting for items");
+        assertThat(scaler.getActiveThreads()).as("active threads").isEqualTo(3);
+        assertThat(scaler.isActive(2)).as("worker #2 active").isTrue();
+        assertThat(scaler.isActive(3)).as("worker #3 active").isFalse();
+    }
+
+    /** Processing dominated (more than 50 %) by the connectors leads to more threads. */
+    @Test
+    public void test120ConnectorBoundThreshold() {
+        given();
+        WorkerThreadsAutoScaler scaler = createScaler(4, 1, 8);
+
+        when("connectors take exactly half of the processing time");
+        String atThreshold = runInterval(scaler, 10, 1000, 0, 0, 500);
+
+        then("nothing is changed");
+        assertThat(atThreshold).as("change").isNull();
+        assertThat(scaler.getActiveThreads()).as("active threads").isEqualTo(4);
+
+        when("connectors take more than half of the processing time");
+        String aboveThreshold = runInterval(scaler, 10, 1000, 0, 0, 501);
+
+        then("number of threads is increased");
+        assertThat(aboveThreshold).as("change").isEqualTo("connector-bound processing");
+        assertThat(scaler.getActiveThreads()).as("active threads").isEqualTo(5);
+    }
+
+    /** The increase that improved the throughput (by more than 5 %) is followed by another one; otherwise it is reverted. */
+    @Test
+    public void test130IncreaseKeptOrReverted() {
+        given();
+        WorkerThreadsAutoScaler scaler = createScaler(4, 1, 8);
+        runInterval(scaler, 100, 1000, 0, 0, 600);
+        assertThat(scaler.getActiveThreads()).as("active threads").isEqualTo(5);
+
+        when("throughput improves");
+        String improved = runInterval(scaler, 106, 1000, 0, 0, 0);
+
+        then("number of threads is increased again");
+        assertThat(improved).as("change").isEqualTo("last increase improved throughput");
+        assertThat(scaler.getActiveThreads()).as("active threads").isEqualTo(6);
+
+        when("throughput does not improve significantly");
+        String notImproved = runInterval(scaler, 111, 1000, 0, 0, 600);
+
+        then("the increase is reverted");
+        assertThat(notImproved).as("change").isEqualTo("last change did not improve throughput");
+        assertThat(scaler.getActiveThreads()).as("active threads").isEqualTo(5);
+    }
+
+    /** Processing dominated by the repository is scaled down only if the latency grows. */
+    @Test
+    public void test140RepositoryBoundWithGrowingLatency() {
+        given();
+        WorkerThreadsAutoScaler scaler = createScaler(4, 1, 8);
+
+        when("repository dominates, the latency is not known yet");
+        String first = runInterval(scaler, 10, 1000, 0, 600, 0);
+
+        then("nothing is changed");
+        assertThat(first).as("change").isNull();
+
+        when("repository dominates, the latency does not grow significantly");
+        String stable = runInterval(scaler, 10, 1050, 0, 600, 0);
+
+        then("nothing is changed");
+        assertThat(stable).as("change").isNull();
+        assertThat(scaler.getActiveThreads()).as("active threads").isEqualTo(4);
+
+        when("repository dominates, the latency grows");
+        String growing = runInterval(scaler, 10, 2000, 0, 1200, 0);
+
+        then("number of threads is decreased");
+        assertThat(growing).as("change").isEqualTo("repository-bound processing with growing latency");
+        assertThat(scaler.getActiveThreads()).as("active threads").isEqualTo(3);
+    }
+
+    /** The number of threads stays within the configured bounds. */
+    @Test
+    public void test150Bounds() {
+        given();
+        WorkerThreadsAutoScaler atMax = createScaler(2, 1, 2);
+
+        when("connector-bound processing at the maximum");
+        String up = runInterval(atMax, 10, 1000, 0, 0, 900);
+
+        then("nothing is changed");
+        assertThat(up).as("change at max").isNull();
+        assertThat(atMax.getActiveThreads()).as("active threads at max").isEqualTo(2);
+
+        given();
+        WorkerThreadsAutoScaler atMin = createScaler(1, 1, 2);
+
+        when("starving workers at the minimum");
+        String down = runInterval(atMin, 10, 1000, 900, 0, 0);
+
+        then("nothing is changed");
+        assertThat(down).as("change at min").isNull();
+        assertThat(atMin.getActiveThreads()).as("active threads at min").isEqualTo(1);
+    }
+
+    private WorkerThreadsAutoScaler createScaler(int initial, int min, int max) {
+        repositoryTime = 0;
+        connectorTime = 0;
+        return new WorkerThreadsAutoScaler(initial, min, max, INTERVAL, clock::get);
+    }
+
+    /**
+     * Simulates one interval: given number of items processed in given total time, active workers waiting
+     * for given time, and given repository and connector times spent.
+     */
+    private String runInterval(WorkerThreadsAutoScaler scaler, int items, long processingTime, long idleTime,
+            long repositoryDelta, long connectorDelta) {
+        // Only the totals matter, so the whole processing time is attributed to the first item.
+        for (int i = 0; i < items; i++) {
+            scaler.recordItemProcessed(i == 0 ? processingTime : 0);
+        }
+        scaler.recordIdle(idleTime);
+        repositoryTime += repositoryDelta;
+        connectorTime += connectorDelta;
+        clock.addAndGet(INTERVAL);
+        return scaler.adjustIfNeeded(this::getStats);
+    }
+
+    private OperationStatsType getStats() {
+        return new OperationStatsType()
+                .repositoryPerformanceInformation(new RepositoryPerformanceInformationType()
+                        .operation(new RepositoryOperationPerformanceInformationType()
+                                .name("searchObjects")
+                                .totalTime(repositoryTime)))
+                .environmentalPerformanceInformation(new EnvironmentalPerformanceInformationType()
+                        .provisioningStatistics(new ProvisioningStatisticsType()
+                                .entry(new ProvisioningStatisticsEntryType()
+                                        .operation(new ProvisioningStatisticsOperationEntryType()
+                                                .totalTime(connectorTime)))));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.common.activity.run.reports;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.prism.ComplexTypeDefinition;
+import com.evolveum.midpoint.test.AbstractIntegrationTest;
+import com.evolveum.midpoint.test.IntegrationTestTools;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.BucketProcessingRecordType;
+
+/**
+ * Tests the batching and the failure handling of {@link AsynchronousCsvWriter}.
+ */
+@ContextConfiguration(locations = "classpath:ctx-repo-common-test-main.xml")
+@DirtiesContext
+public class TestAsynchronousCsvWriter extends AbstractIntegrationTest {
+
+    private static final int BUFFER_SIZE = 10;
+
+    /**
+     * While the first batch is being flushed, the other records wait in the queue; they are then written
+     * as a single batch, with a single flush. All records are written, in the original order.
+     */
+    @Test
+    public void test100Batching() throws Exception {
+        given();
+        CountDownLatch flushAllowed = new CountDownLatch(1);
+        FlushCountingWriter target = new FlushCountingWriter(flushAllowed);
+        CsvWriter csvWriter = createCsvWriter(new PrintWriter(target));
+        csvWriter.writeHeader();
+        target.flushes.set(0);
+        target.blocking = true;
+
+        when();
+        AsynchronousCsvWriter writer = new AsynchronousCsvWriter(csvWriter, BUFFER_SIZE, "test-writer");
+        for (int i = 0; i <= BUFFER_SIZE; i++) {
+            writer.writeRecord(new BucketProcessingRecordType().sequentialNumber(i));
+        }
+        flushAllowed.countDown();
+        writer.close();
+
+        then();
+        assertThat(writer.getFailure()).as("failure").isNull();
+        String[] lines = target.toString().split("\\R");
+        assertThat(lines).as("lines").hasSize(BUFFER_SIZE + 2);
+        for (int i = 0; i <= BUFFER_SIZE; i++) {
+            assertThat(lines[i + 1]).as("line " + (i + 1)).isEqualTo(String.valueOf(i));
+        }
+        // First batch, the rest of the records, and possibly the end marker alone.
+        assertThat(target.flushes.get()).as("flushes").isBetween(2, 3);
+    }
+
+    /**
+     * A failure of the writer thread does not affect the client: the records are dropped (without waiting),
+     * and closing the writer does not hang.
+     */
+    @Test
+    public void test110WriterFailure() throws Exception {
+        given();
+        CsvWriter csvWriter = createCsvWriter(new PrintWriter(new FailingWriter()));
+        AsynchronousCsvWriter writer = new AsynchronousCsvWriter(csvWriter, BUFFER_SIZE, "test-writer-failing");
+
+        when("records are written until the failure is detected");
+        writer.writeRecord(new BucketProcessingRecordType().sequentialNumber(0));
+        IntegrationTestTools.waitFor("writer failure", () -> writer.getFailure() != null, 10000, 100);
+        long droppedBefore = writer.getDroppedRecords();
+        for (int i = 1; i <= BUFFER_SIZE * 10; i++) {
+            writer.writeRecord(new BucketProcessingRecordType().sequentialNumber(i));
+        }
+        writer.writeRecords(List.of(new BucketProcessingRecordType()));
+        writer.close();
+
+        then("no exception is thrown, and the records are dropped");
+        assertThat(writer.getDroppedRecords() - droppedBefore).as("dropped records").isEqualTo(BUFFER_SIZE * 10 + 1);
+    }
+
+    private CsvWriter createCsvWriter(PrintWriter printWriter) {
+        ComplexTypeDefinition definition = prismContext.getSchemaRegistry()
+                .findComplexTypeDefinitionByType(BucketProcessingRecordType.COMPLEX_TYPE);
+        assertThat(definition).as("record definition").isNotNull();
+        return new CsvWriter(printWriter, definition, List.of(BucketProcessingRecordType.F_SEQUENTIAL_NUMBER));
+    }
+
+    /** Counts the flushes; the flushes can be blocked until the latch is released. */
+    private static class FlushCountingWriter extends StringWriter {
+
+        private final AtomicInteger flushes = new AtomicInteger();
+        private final CountDownLatch flushAllowed;
+        private volatile boolean blocking;
+
+        private FlushCountingWriter(CountDownLatch flushAllowed) {
+            this.flushAllowed = flushAllowed;
+        }
+
+        @Override
+        public void flush() {
+            flushes.incrementAndGet();
+            if (blocking) {
+                try {
+                    assertThat(flushAllowed.await(10, TimeUnit.SECONDS)).as("flush allowed").isTrue();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            super.flush();
+        }
+    }
+
+    /** Simulates e.g. a full disk. */
+    private static class FailingWriter extends Writer {
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            throw new IOException("No space left on device (simulated)");
+        }
+
+        @Override
+        public void flush() throws IOException {
+            throw new IOException("No space left on device (simulated)");
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
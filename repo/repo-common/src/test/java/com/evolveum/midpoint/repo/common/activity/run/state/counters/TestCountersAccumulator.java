@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.common.activity.run.state.counters;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import static com.evolveum.midpoint.task.api.ExecutionSupport.CountersGroup.FULL_EXECUTION_MODE_POLICY_RULES;
+import static com.evolveum.midpoint.task.api.ExecutionSupport.CountersGroup.PREVIEW_MODE_POLICY_RULES;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.NotNull;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.ExecutionSupport.CountersGroup;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.util.exception.CommonException;
+
+/**
+ * Tests {@link CountersAccumulator}: the increments are written on the first use of a counter, after the flush interval,
+ * on explicit flush (at the end of the activity run), and whenever a counter gets near to its threshold - so that
+ * the policy rule thresholds are evaluated against exact values, including the increments done by other workers.
+ *
+ * The repository and the time are simulated.
+ */
+public class TestCountersAccumulator extends AbstractUnitTest {
+
+    private static final long FLUSH_INTERVAL = 1000;
+    private static final int THRESHOLD_MARGIN = 3;
+
+    private static final String RULE = "rule";
+    private static final String OTHER_RULE = "other-rule";
+
+    private final AtomicLong clock = new AtomicLong();
+
+    /** Counter values as stored in the (simulated) repository. */
+    private final Map<CountersGroup, Map<String, Integer>> repository = new EnumMap<>(CountersGroup.class);
+
+    /** Number of writes to the (simulated) repository. */
+    private int writes;
+
+    /** The first increment is written immediately; the following ones are kept in memory until the interval elapses. */
+    @Test
+    public void test100FlushOnInterval() throws CommonException {
+        given();
+        CountersAccumulator accumulator = createAccumulator();
+
+        when("first increment");
+        Integer first = increment(accumulator, RULE, 100);
+
+        then("it is written, as the repository value is not known yet");
+        assertThat(first).as("value").isEqualTo(1);
+        assertRepository(RULE, 1, 1);
+
+        when("increments within the interval");
+        clock.addAndGet(FLUSH_INTERVAL - 1);
+        Integer second = increment(accumulator, RULE, 100);
+        Integer third = increment(accumulator, RULE, 100);
+
+        then("they are not written, but the estimated values include them");
+        assertThat(second).as("value").isEqualTo(2);
+        assertThat(third).as("value").isEqualTo(3);
+        assertRepository(RULE, 1, 1);
+
+        when("increment after the interval");
+        clock.addAndGet(1);
+        Integer fourth = increment(accumulator, RULE, 100);
+
+        then("all the pending increments are written at once");
+        assertThat(fourth).as("value").isEqualTo(4);
+        assertRepository(RULE, 4, 2);
+    }
+
+    /** The explicit flush (done at the end of the activity run) writes the pending increments of all groups. */
+    @Test
+    public void test110FlushAtActivityEnd() throws CommonException {
+        given();
+        CountersAccumulator accumulator = createAccumulator();
+        increment(accumulator, FULL_EXECUTION_MODE_POLICY_RULES, RULE, 100);
+        increment(accumulator, PREVIEW_MODE_POLICY_RULES, RULE, 100);
+        increment(accumulator, FULL_EXECUTION_MODE_POLICY_RULES, RULE, 100);
+        increment(accumulator, PREVIEW_MODE_POLICY_RULES, RULE, 100);
+        increment(accumulator, PREVIEW_MODE_POLICY_RULES, RULE, 100);
+        assertThat(getRepositoryValue(FULL_EXECUTION_MODE_POLICY_RULES, RULE)).as("full mode value").isEqualTo(1);
+        assertThat(getRepositoryValue(PREVIEW_MODE_POLICY_RULES, RULE)).as("preview mode value").isEqualTo(1);
+        int writesBefore = writes;
+
+        when();
+        accumulator.flush(new OperationResult("flush"));
+
+        then();
+        assertThat(getRepositoryValue(FULL_EXECUTION_MODE_POLICY_RULES, RULE)).as("full mode value").isEqualTo(2);
+        assertThat(getRepositoryValue(PREVIEW_MODE_POLICY_RULES, RULE)).as("preview mode value").isEqualTo(3);
+        assertThat(writes - writesBefore).as("writes").isEqualTo(2);
+
+        when("flushing with nothing pending");
+        accumulator.flush(new OperationResult("flush"));
+
+        then("nothing is written");
+        assertThat(writes - writesBefore).as("writes").isEqualTo(2);
+    }
+
+    /**
+     * When the estimated value gets within the margin from the threshold, the counter is written; the value returned
+     * (and used for the threshold evaluation) then contains also the increments done by other workers meanwhile.
+     * From that point on, each increment is written immediately.
+     */
+    @Test
+    public void test120ThresholdSeesAccumulatedValues() throws CommonException {
+        given();
+        int threshold = 10;
+        CountersAccumulator accumulator = createAccumulator();
+        increment(accumulator, RULE, threshold);
+        assertRepository(RULE, 1, 1);
+
+        when("other workers increment the counter, local increments are far from the threshold");
+        addInRepository(RULE, 5);
+        List<Integer> estimates = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            estimates.add(increment(accumulator, RULE, threshold));
+        }
+
+        then("they are not written, and the estimates do not contain the other increments");
+        assertThat(estimates).as("values").containsExactly(2, 3, 4, 5, 6);
+        assertRepository(RULE, 6, 1);
+
+        when("local estimate gets within the margin from the threshold");
+        Integer nearThreshold = increment(accumulator, RULE, threshold);
+
+        then("all is written, and the exact value (beyond the threshold) is returned");
+        assertThat(nearThreshold).as("value").isEqualTo(12);
+        assertRepository(RULE, 12, 2);
+
+        when("another increment");
+        Integer next = increment(accumulator, RULE, threshold);
+
+        then("it is written immediately");
+        assertThat(next).as("value").isEqualTo(13);
+        assertRepository(RULE, 13, 3);
+    }
+
+    /** Counters without a known threshold are always written immediately, along with all the pending increments. */
+    @Test
+    public void test130NoThreshold() throws CommonException {
+        given();
+        CountersAccumulator accumulator = createAccumulator();
+        increment(accumulator, RULE, 100);
+        increment(accumulator, OTHER_RULE, 100);
+        increment(accumulator, RULE, 100);
+        assertRepository(RULE, 1, 2);
+
+        when();
+        Integer first = increment(accumulator, OTHER_RULE, null);
+        Integer second = increment(accumulator, OTHER_RULE, null);
+
+        then();
+        assertThat(first).as("value").isEqualTo(2);
+        assertThat(second).as("value").isEqualTo(3);
+        assertRepository(RULE, 2, 4);
+        assertThat(getRepositoryValue(FULL_EXECUTION_MODE_POLICY_RULES, OTHER_RULE)).as("other value").isEqualTo(3);
+    }
+
+    private CountersAccumulator createAccumulator() {
+        repository.clear();
+        writes = 0;
+        return new CountersAccumulator(this::write, FLUSH_INTERVAL, THRESHOLD_MARGIN, clock::get);
+    }
+
+    private Integer increment(CountersAccumulator accumulator, String identifier, Integer threshold)
+            throws CommonException {
+        return increment(accumulator, FULL_EXECUTION_MODE_POLICY_RULES, identifier, threshold);
+    }
+
+    private Integer increment(CountersAccumulator accumulator, CountersGroup group, String identifier, Integer threshold)
+            throws CommonException {
+        Map<String, Integer> countersThresholds = new HashMap<>();
+        countersThresholds.put(identifier, threshold);
+        return accumulator.increment(group, countersThresholds, new OperationResult("increment"))
+                .get(identifier);
+    }
+
+    /** Simulates {@link CountersIncrementOperation}: returns the updated values of the incremented counters. */
+    private Map<String, Integer> write(@NotNull CountersGroup group, @NotNull Map<String, Integer> increments,
+            @NotNull OperationResult result) {
+        writes++;
+        Map<String, Integer> updatedValues = new HashMap<>();
+        increments.forEach((identifier, increment) ->
+                updatedValues.put(identifier, addInRepository(group, identifier, increment)));
+        return updatedValues;
+    }
+
+    /** Simulates the increments done by other workers. */
+    private void addInRepository(String identifier, int increment) {
+        addInRepository(FULL_EXECUTION_MODE_POLICY_RULES, identifier, increment);
+    }
+
+    private int addInRepository(CountersGroup group, String identifier, int increment) {
+        return repository.computeIfAbsent(group, g -> new HashMap<>())
+                .merge(identifier, increment, Integer::sum);
+    }
+
+    private Integer getRepositoryValue(CountersGroup group, String identifier) {
+        Map<String, Integer> groupValues = repository.get(group);
+        return groupValues != null ? groupValues.get(identifier) : null;
+    }
+
+    private void assertRepository(String identifier, int expectedValue, int expectedWrites) {
+        assertThat(getRepositoryValue(FULL_EXECUTION_MODE_POLICY_RULES, identifier))
+                .as("repository value of '" + identifier + "'")
+                .isEqualTo(expectedValue);
+        assertThat(writes).as("writes").isEqualTo(expectedWrites);
+    }
+}
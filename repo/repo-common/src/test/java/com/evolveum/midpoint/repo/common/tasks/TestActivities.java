@@ -103,6 +103,7 @@ public class TestActivities extends AbstractRepoCommonTest {
     private static final TestResource<TaskType> TASK_170_MOCK_BUCKETED = new TestResource<>(TEST_DIR, "task-170-mock-bucketed.xml", "04e257d1-bb25-4675-8e00-f248f164fbc3");
     private static final TestResource<TaskType> TASK_180_BUCKETED_TREE = new TestResource<>(TEST_DIR, "task-180-bucketed-tree.xml", "ac3220c5-6ded-4b94-894e-9ed39c05db66");
     private static final TestResource<TaskType> TASK_185_BUCKETED_TREE_ANALYSIS = new TestResource<>(TEST_DIR, "task-185-bucketed-tree-analysis.xml", "12f07ab1-41c3-4dba-bf47-3d2a032fa555");
+    private static final TestResource<TaskType> TASK_186_BUCKETED_ANALYSIS_ASYNC_REPORTS = new TestResource<>(TEST_DIR, "task-186-bucketed-analysis-async-reports.xml", "6b3e5f0a-2c1d-4e8b-9a7f-0d4c3b2a1e86");
     private static final TestResource<TaskType> TASK_190_SUSPENDING_COMPOSITE = new TestResource<>(TEST_DIR, "task-190-suspending-composite.xml", "1e7cf975-7253-4991-a707-661d3c52f203");
     private static final TestResource<TaskType> TASK_200_SUBTASK = new TestResource<>(TEST_DIR, "task-200-subtask.xml", "ee60863e-ff77-4edc-9e4e-2e1ea7853478");
     private static final TestResource<TaskType> TASK_210_SUSPENDING_COMPOSITE_WITH_SUBTASKS = new TestResource<>(TEST_DIR, "task-210-suspending-composite-with-subtasks.xml", "cd36ca66-cd49-44cf-9eb2-36928acbe1fd");
@@ -1352,6 +1353,63 @@ public class TestActivities extends AbstractRepoCommonTest {
         }
     }
 
+    /**
+     * Like {@link #test185RunBucketedTreeAnalysis()} (activity "second"), but the buckets report is written
+     * asynchronously, with a tiny buffer (so the writer thread must keep up with the producer), and compressed.
+     */
+    @Test
+    public void test186RunBucketedAnalysisWithAsyncReports() throws Exception {
+        given();
+
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        recorder.reset();
+        long taskWritesBefore = taskManager.getLocalSchedulerInformation(result).getTaskWritesTotal();
+
+        Task task1 = taskAdd(TASK_186_BUCKETED_ANALYSIS_ASYNC_REPORTS, result);
+
+        when();
+
+        waitForTaskCloseOrSuspend(task1.getOid(), 40000, 2000);
+
+        then();
+
+        task1.refresh(result);
+        // @formatter:off
+        assertTask(task1, "after")
+                .display()
+                .assertSuccess()
+                .assertClosed();
+
+        assertProgress( task1.getOid(),"after")
+                .display()
+                .assertComplete()
+                .assertBuckets(11, 11);
+        // @formatter:on
+
+        // Getting and completing each of the buckets are (at least) two writes of the task.
+        assertThat(taskManager.getLocalSchedulerInformation(result).getTaskWritesTotal() - taskWritesBefore)
+                .as("task writes recorded")
+                .isGreaterThanOrEqualTo(2 * 11);
+
+        String reportOid = ActivityReportUtil.getReportDataOid(task1.getWorkState(), ActivityPath.empty(),
+                ActivityReportsType.F_BUCKETS, taskManager.getNodeId());
+        assertThat(reportOid).as("buckets report OID").isNotNull();
+        ReportDataType reportData = repositoryService.getObject(ReportDataType.class, reportOid, null, result)
+                .asObjectable();
+        assertThat(reportData.getFilePath()).as("report file path").endsWith(".csv.gz");
+        try (var reader = SimpleReportReader.createForLocalReportData(
+                reportOid, List.of("content-from", "content-to", "size"), beans, result)) {
+            List<List<String>> rows = reader.getRows();
+            displayValue("rows of bucket analysis report", rows);
+            assertThat(rows).as("rows").hasSize(11);
+            assertThat(rows.get(0)).as("row 0").containsExactly("", "r10", "0");
+            assertThat(rows.get(1)).as("row 1").containsExactly("r10", "r11", "1");
+            assertThat(rows.get(10)).as("row 10").containsExactly("r19", "", "1");
+        }
+    }
+
     /**
      * Checks suspension and resuming for composite activities.
      */
@@ -16,9 +16,11 @@ import static com.evolveum.midpoint.xml.ns._public.common.common_3.WorkBucketSta
 import static com.evolveum.midpoint.xml.ns._public.common.common_3.WorkBucketStateType.READY;
 
 import java.io.File;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.*;
 import java.util.function.Consumer;
 import javax.annotation.PostConstruct;
 
@@ -35,6 +37,7 @@ import com.evolveum.midpoint.prism.util.PrismAsserts;
 import com.evolveum.midpoint.repo.common.AbstractRepoCommonTest;
 import com.evolveum.midpoint.repo.common.activity.definition.ActivityDistributionDefinition;
 import com.evolveum.midpoint.repo.common.activity.run.CommonTaskBeans;
+import com.evolveum.midpoint.repo.common.activity.run.buckets.BucketWatermarkKeeper;
 import com.evolveum.midpoint.repo.common.activity.run.buckets.BucketingConfigurationOverrides;
 import com.evolveum.midpoint.repo.common.activity.run.buckets.BucketingManager;
 import com.evolveum.midpoint.repo.common.activity.run.buckets.GetBucketOperationOptions.GetBucketOperationOptionsBuilder;
@@ -46,6 +49,7 @@ import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.util.task.ActivityPath;
 import com.evolveum.midpoint.schema.util.task.BucketingUtil;
 import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.test.IntegrationTestTools;
 import com.evolveum.midpoint.test.TestResource;
 import com.evolveum.midpoint.util.DebugUtil;
 import com.evolveum.midpoint.util.exception.ObjectAlreadyExistsException;
@@ -62,6 +66,7 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
  * Tests 010-099 only check that the bucket allocator provides correct sequence of buckets (plus check query narrowing).
  * Tests 100-199 exercise get bucket / complete bucket cycle within a single (standalone) task.
  * Tests 200-299 check the situation with multiple tasks (coordinators + workers, but still not running).
+ * Tests 300-399 check work stealing, i.e. splitting of buckets held by other workers (again with tasks not running).
  *
  * @see TestBucketingLive
  */
@@ -98,6 +103,11 @@ public class TestBucketingStatic extends AbstractRepoCommonTest {
     private static final TestResource<TaskType> TASK_210_WORKER_4 = new TestResource<>(TEST_DIR, "task-210-4.xml", "f1bb0e85-abac-4e61-8a3a-f72d40f3e8d6");
     private static final TestResource<TaskType> TASK_210_WORKER_5 = new TestResource<>(TEST_DIR, "task-210-5.xml", "81e31c90-6546-4055-8371-a34ef79f5117");
 
+    private static final TestResource<TaskType> TASK_300_COORDINATOR = new TestResource<>(TEST_DIR, "task-300-c.xml", "5d0c4b1e-2f7a-4c39-8e6b-1a9f3d2c7e40");
+    private static final TestResource<TaskType> TASK_300_WORKER_1 = new TestResource<>(TEST_DIR, "task-300-1.xml", "5d0c4b1e-2f7a-4c39-8e6b-1a9f3d2c7e41");
+    private static final TestResource<TaskType> TASK_300_WORKER_2 = new TestResource<>(TEST_DIR, "task-300-2.xml", "5d0c4b1e-2f7a-4c39-8e6b-1a9f3d2c7e42");
+    private static final TestResource<TaskType> TASK_300_WORKER_3 = new TestResource<>(TEST_DIR, "task-300-3.xml", "5d0c4b1e-2f7a-4c39-8e6b-1a9f3d2c7e43");
+
     @PostConstruct
     public void initialize() throws Exception {
         displayTestTitle("Initializing TEST CLASS: " + getClass().getName());
@@ -844,6 +854,137 @@ public class TestBucketingStatic extends AbstractRepoCommonTest {
         assertNumericBucket(buckets.get(0), WorkBucketStateType.COMPLETE, 5, 4, 5);
     }
 
+    /**
+     * Checks work stealing on coordinator + 3 worker tasks (numeric segmentation, 2 buckets of 100 values):
+     *
+     * 1. The third worker finds no free bucket, so it asks the holder of the bucket with the largest unprocessed range
+     * to split it, and waits for the split.
+     * 2. The holder splits the bucket in the middle of the unprocessed range (above its watermark), and skips the items
+     * at or above the split point. The waiting worker gets the upper half.
+     * 3. Both halves are completed concurrently; then there is no more work.
+     *
+     * A split requested for a bucket with too small unprocessed range is not done, and the request is cleared.
+     */
+    @Test
+    public void test300SplitBucket() throws Exception {
+        given();
+        OperationResult result = createOperationResult();
+        taskAdd(TASK_300_COORDINATOR, result); // suspended
+        taskAdd(TASK_300_WORKER_1, result); // suspended
+        taskAdd(TASK_300_WORKER_2, result); // suspended
+        taskAdd(TASK_300_WORKER_3, result); // suspended
+
+        Task coordinator = taskManager.getTaskPlain(TASK_300_COORDINATOR.oid, result);
+
+        String oidC = TASK_300_COORDINATOR.oid;
+        String oidW1 = TASK_300_WORKER_1.oid;
+        String oidW2 = TASK_300_WORKER_2.oid;
+        String oidW3 = TASK_300_WORKER_3.oid;
+
+        WorkBucketType bucket1 = getWorkBucket(coordinator, oidW1, result);
+        WorkBucketType bucket2 = getWorkBucket(coordinator, oidW2, result);
+        assertNumericBucket(bucket1, null, 1, 0, 100);
+        assertNumericBucket(bucket2, null, 2, 100, 200);
+
+        BucketWatermarkKeeper keeper1 = BucketWatermarkKeeper.create(getDistributionDefinition(coordinator), bucket1,
+                oidC, oidW1, ActivityPath.empty(), null, beans);
+        assertThat(keeper1).as("watermark keeper").isNotNull();
+        assertThat(keeper1.acceptItem(item(9), result)).as("item 9 accepted").isTrue();
+        // Worker 2 has processed half of its bucket, so its unprocessed range (50) is smaller than that of worker 1.
+        bucketingManager.updateBucketWatermark(oidC, oidW2, ActivityPath.empty(), 2, BigInteger.valueOf(149), null, result);
+
+        when("worker without a bucket asks for one");
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<WorkBucketType> stolenBucketFuture =
+                    executor.submit(() -> getWorkBucket(coordinator, oidW3, new OperationResult("getWorkBucket.w3")));
+
+            then("worker without a bucket asks for one");
+
+            IntegrationTestTools.waitFor("waiting for the split request",
+                    () -> Boolean.TRUE.equals(getBucket(oidC, 1, result).isSplitRequested()), 10000, 100);
+            assertThat(getBucket(oidC, 2, result).isSplitRequested()).as("split of bucket #2 requested").isNull();
+            assertThat(stolenBucketFuture.isDone()).as("worker 3 done waiting").isFalse();
+
+            when("holder records its watermark");
+
+            // The watermark recorded is 9 (the highest value submitted before), so the unprocessed range is [10, 100).
+            boolean item30Accepted = keeper1.acceptItem(item(30), result);
+            WorkBucketType stolenBucket = stolenBucketFuture.get(10, TimeUnit.SECONDS);
+
+            then("holder records its watermark");
+
+            coordinator.refresh(result);
+            displayDumpable("coordinator after split", coordinator);
+
+            assertThat(item30Accepted).as("item 30 accepted").isTrue();
+            assertThat(keeper1.acceptItem(item(54), result)).as("item 54 accepted").isTrue();
+            assertThat(keeper1.acceptItem(item(55), result)).as("item 55 accepted").isFalse();
+            assertThat(keeper1.acceptItem(item(99), result)).as("item 99 accepted").isFalse();
+
+            assertNumericBucket(stolenBucket, null, 3, 55, 100);
+            assertThat(stolenBucket.getSplitFrom()).as("split from").isEqualTo(1);
+
+            List<WorkBucketType> buckets = new ArrayList<>(getBuckets(coordinator));
+            sortBucketsBySequentialNumber(buckets);
+            assertEquals(3, buckets.size());
+            assertNumericBucket(buckets.get(0), WorkBucketStateType.DELEGATED, 1, 0, 55);
+            assertThat(buckets.get(0).isSplitRequested()).as("split of bucket #1 requested").isNull();
+            assertThat(buckets.get(0).getProgressWatermark()).as("watermark of bucket #1").isEqualTo(BigInteger.valueOf(9));
+            assertNumericBucket(buckets.get(1), WorkBucketStateType.DELEGATED, 2, 100, 200);
+            assertNumericBucket(buckets.get(2), WorkBucketStateType.DELEGATED, 3, 55, 100);
+            assertThat(BucketingUtil.isDelegatedTo(buckets.get(2), oidW3)).as("bucket #3 delegated to worker 3").isTrue();
+
+            when("split of a bucket with too small unprocessed range is requested");
+
+            requestSplit(oidC, 2, result);
+            BigInteger upperBound = bucketingManager.updateBucketWatermark(
+                    oidC, oidW2, ActivityPath.empty(), 2, BigInteger.valueOf(198), null, result);
+
+            then("split of a bucket with too small unprocessed range is requested");
+
+            assertThat(upperBound).as("upper bound of bucket #2").isEqualTo(BigInteger.valueOf(200));
+            WorkBucketType bucket2After = getBucket(oidC, 2, result);
+            assertNumericBucket(bucket2After, WorkBucketStateType.DELEGATED, 2, 100, 200);
+            assertThat(bucket2After.isSplitRequested()).as("split of bucket #2 requested").isNull();
+            assertThat(getBuckets(taskManager.getTaskPlain(oidC, result))).as("buckets").hasSize(3);
+
+            when("both halves are completed concurrently");
+
+            CountDownLatch start = new CountDownLatch(1);
+            Future<?> completion1 = executor.submit(() -> {
+                start.await();
+                bucketingManager.completeWorkBucket(
+                        oidC, oidW1, ActivityPath.empty(), 1, null, null, new OperationResult("complete.w1"));
+                return null;
+            });
+            Future<?> completion3 = executor.submit(() -> {
+                start.await();
+                bucketingManager.completeWorkBucket(
+                        oidC, oidW3, ActivityPath.empty(), 3, null, null, new OperationResult("complete.w3"));
+                return null;
+            });
+            start.countDown();
+            completion1.get(10, TimeUnit.SECONDS);
+            completion3.get(10, TimeUnit.SECONDS);
+            bucketingManager.completeWorkBucket(oidC, oidW2, ActivityPath.empty(), 2, null, null, result);
+
+            then("both halves are completed concurrently");
+
+            coordinator.refresh(result);
+            displayDumpable("coordinator after completion", coordinator);
+            assertThat(getBuckets(coordinator))
+                    .as("buckets")
+                    .isNotEmpty()
+                    .allMatch(b -> b.getState() == COMPLETE, "is complete");
+            assertOptimizedCompletedBuckets(coordinator, ActivityPath.empty());
+            assertNull("Found bucket even if none should be found", getWorkBucket(coordinator, oidW1, result));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     // TODO some test for batch allocation
 
     private WorkBucketType assumeNextValue(BucketFactory bucketFactory, ActivityStateType workState,
@@ -920,6 +1061,32 @@ public class TestBucketingStatic extends AbstractRepoCommonTest {
         return workState.getBucketing().getBucket();
     }
 
+    private WorkBucketType getBucket(String coordinatorOid, int sequentialNumber, OperationResult result)
+            throws SchemaException, ObjectNotFoundException {
+        return BucketingUtil.findBucketByNumber(
+                getBuckets(taskManager.getTaskPlain(coordinatorOid, result)), sequentialNumber);
+    }
+
+    /** Marks the bucket as requested to be split, just like another worker would do. */
+    private void requestSplit(String coordinatorOid, int sequentialNumber, OperationResult result)
+            throws SchemaException, ObjectNotFoundException, ObjectAlreadyExistsException {
+        WorkBucketType bucket = getBucket(coordinatorOid, sequentialNumber, result);
+        repositoryService.modifyObject(TaskType.class, coordinatorOid,
+                prismContext.deltaFor(TaskType.class)
+                        .item(TaskType.F_ACTIVITY_STATE, TaskActivityStateType.F_ACTIVITY, ActivityStateType.F_BUCKETING,
+                                ActivityBucketingStateType.F_BUCKET, bucket.getId(), WorkBucketType.F_SPLIT_REQUESTED)
+                        .replace(true)
+                        .asItemDeltas(),
+                result);
+    }
+
+    /** An item to be processed; the discriminator (employee number) is the given value. */
+    private UserType item(int value) {
+        return new UserType()
+                .name("user-" + value)
+                .employeeNumber(String.valueOf(value));
+    }
+
     private Integer getNumberOfBuckets(Task task) {
         return BucketingUtil.getNumberOfBuckets(task.getWorkState().getActivity());
     }
@@ -868,6 +868,65 @@ public class SqaleRepositoryService extends SqaleServiceBase implements Reposito
         }
     }
 
+    @Override
+    public @NotNull <T extends ObjectType> List<String> searchObjectOids(
+            @NotNull Class<T> type, ObjectQuery query, int maxSize, @NotNull OperationResult parentResult)
+            throws SchemaException {
+        Objects.requireNonNull(type, "Object type must not be null.");
+        Objects.requireNonNull(parentResult, "Operation result must not be null.");
+
+        OperationResult operationResult = parentResult.subresult(opNamePrefix + OP_SEARCH_OBJECT_OIDS)
+                .addQualifier(type.getSimpleName())
+                .addParam("type", type.getName())
+                .addParam("query", query)
+                .addParam("maxSize", maxSize)
+                .build();
+
+        try {
+            logSearchInputParameters(type, query, "Search object OIDs");
+
+            query = ObjectQueryUtil.simplifyQuery(query);
+            if (ObjectQueryUtil.isNoneQuery(query)) {
+                return new ArrayList<>();
+            }
+
+            return executeSearchObjectOids(type, query, maxSize);
+        } catch (RepositoryException | RuntimeException e) {
+            throw handledGeneralException(e, operationResult);
+        } catch (Throwable t) {
+            recordFatalError(operationResult, t);
+            throw t;
+        } finally {
+            operationResult.close();
+        }
+    }
+
+    private <T extends ObjectType> List<String> executeSearchObjectOids(
+            @NotNull Class<T> type, ObjectQuery query, int maxSize)
+            throws RepositoryException {
+
+        long opHandle = registerOperationStart(OP_SEARCH_OBJECT_OIDS, type);
+        try {
+            SqaleQueryContext<T, QObject<MObject>, MObject> context = SqaleQueryContext.from(type, sqlRepoContext);
+            if (query != null) {
+                context.processFilter(query.getFilter());
+            }
+            context.beforeQuery();
+            try (JdbcSession jdbcSession = sqlRepoContext.newJdbcSession().startReadOnlyTransaction()) {
+                // Only the OID column is selected; the full object is not needed here.
+                List<UUID> oids = context.sqlQuery().clone(jdbcSession.connection())
+                        .select(context.path().oid)
+                        .limit(maxSize)
+                        .fetch();
+                return oids.stream()
+                        .map(UUID::toString)
+                        .collect(Collectors.toList());
+            }
+        } finally {
+            registerOperationFinish(opHandle);
+        }
+    }
+
     @Override
     public @NotNull <T extends ObjectType> SearchResultList<PrismObject<T>> searchObjects(
             @NotNull Class<T> type, ObjectQuery query,
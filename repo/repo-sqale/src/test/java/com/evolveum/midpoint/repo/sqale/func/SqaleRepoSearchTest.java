@@ -24,6 +24,7 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Collectors;
 import javax.xml.datatype.XMLGregorianCalendar;
 import javax.xml.namespace.QName;
 
@@ -42,6 +43,7 @@ import com.evolveum.midpoint.prism.query.builder.S_FilterEntryOrEmpty;
 import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.repo.sqale.SqaleRepoBaseTest;
 import com.evolveum.midpoint.repo.sqale.qmodel.focus.QFocus;
+import com.evolveum.midpoint.repo.sqale.qmodel.focus.QUser;
 import com.evolveum.midpoint.repo.sqale.qmodel.object.MObject;
 import com.evolveum.midpoint.repo.sqale.qmodel.object.MObjectType;
 import com.evolveum.midpoint.repo.sqale.qmodel.object.QAssignmentHolder;
@@ -2651,6 +2653,87 @@ public class SqaleRepoSearchTest extends SqaleRepoBaseTest {
         assertSingleOperationRecorded(REPO_OP_PREFIX + RepositoryService.OP_SEARCH_OBJECTS);
     }
 
+    @Test
+    public void test951SearchObjectOidsByFilter() throws SchemaException {
+        when("searching for OIDs of users matching the filter");
+        OperationResult operationResult = createOperationResult();
+        List<String> result = repositoryService.searchObjectOids(UserType.class,
+                prismContext.queryFor(UserType.class)
+                        .item(F_NAME).eq(PolyString.fromOrig("user-1"), PolyString.fromOrig("user-2"))
+                        .build(),
+                10, operationResult);
+
+        then("OIDs of matching users are returned");
+        assertThat(result).containsExactlyInAnyOrder(user1Oid, user2Oid);
+
+        and("operation result is success");
+        assertThatOperationResult(operationResult).isSuccess();
+        OperationResult subresult = operationResult.getLastSubresult();
+        assertThat(subresult).isNotNull();
+        assertThat(subresult.getOperation()).isEqualTo("SqaleRepositoryService.searchObjectOids");
+    }
+
+    @Test
+    public void test952SearchObjectOidsWithLimit() throws SchemaException {
+        when("searching for OIDs of all users with a limit");
+        OperationResult operationResult = createOperationResult();
+        List<String> result = repositoryService.searchObjectOids(UserType.class, null, 2, operationResult);
+
+        then("only the limited number of (distinct) user OIDs is returned");
+        assertThatOperationResult(operationResult).isSuccess();
+        assertThat(count(QUser.class)).isGreaterThan(2); // otherwise the test would be meaningless
+        assertThat(result).hasSize(2).doesNotHaveDuplicates();
+        assertThat(result).isSubsetOf(
+                searchObjects(UserType.class, (ObjectQuery) null, createOperationResult()).stream()
+                        .map(o -> o.getOid())
+                        .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void test953SearchObjectOidsIgnoresPaging() throws SchemaException {
+        when("searching for OIDs with paging in the query");
+        OperationResult operationResult = createOperationResult();
+        List<String> result = repositoryService.searchObjectOids(UserType.class,
+                prismContext.queryFor(UserType.class)
+                        .item(F_NAME).startsWith("user-")
+                        .offset(3)
+                        .maxSize(1)
+                        .build(),
+                10, operationResult);
+
+        then("paging is ignored, only the filter and the limit apply");
+        assertThatOperationResult(operationResult).isSuccess();
+        assertThat(result).containsExactlyInAnyOrder(user1Oid, user2Oid, user3Oid, user4Oid);
+    }
+
+    @Test
+    public void test954SearchObjectOidsWithNoneFilter() throws SchemaException {
+        when("searching for OIDs with NONE filter");
+        OperationResult operationResult = createOperationResult();
+        List<String> result = repositoryService.searchObjectOids(UserType.class,
+                prismContext.queryFor(UserType.class).none().build(),
+                10, operationResult);
+
+        then("nothing is returned");
+        assertThatOperationResult(operationResult).isSuccess();
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    public void test955SearchObjectOidsUpdatesPerformanceMonitor() throws SchemaException {
+        OperationResult operationResult = createOperationResult();
+
+        given("cleared performance information");
+        clearPerformanceMonitor();
+
+        when("search for OIDs is called on the repository");
+        repositoryService.searchObjectOids(ShadowType.class, null, 1, operationResult);
+
+        then("performance monitor is updated");
+        assertThatOperationResult(operationResult).isSuccess();
+        assertSingleOperationRecorded(REPO_OP_PREFIX + RepositoryService.OP_SEARCH_OBJECT_OIDS);
+    }
+
     @Test
     public void test960SearchByAxiomQueryLanguage() throws SchemaException {
         OperationResult operationResult = createOperationResult();
@@ -52,6 +52,24 @@ public interface ExecutionSupport {
             @NotNull OperationResult result)
             throws SchemaException, ObjectNotFoundException, ObjectAlreadyExistsException;
 
+    /**
+     * Increments given counters related to the activity execution, providing their thresholds.
+     *
+     * The implementation may accumulate the increments in memory and write them to the repository later.
+     * Counters that are close to their thresholds (or that have no threshold) are always written immediately.
+     *
+     * @param countersThresholds Identifiers of the counters to be incremented, mapped to the counter values at which
+     * the respective thresholds are reached. Null value means the threshold is not known.
+     *
+     * @return Current values of the counters (after the update). They may not reflect increments done
+     * by other workers if the counters are far from their thresholds.
+     */
+    default Map<String, Integer> incrementCounters(@NotNull CountersGroup counterGroup,
+            @NotNull Map<String, Integer> countersThresholds, @NotNull OperationResult result)
+            throws SchemaException, ObjectNotFoundException, ObjectAlreadyExistsException {
+        return incrementCounters(counterGroup, countersThresholds.keySet(), result);
+    }
+
     /**
      * Group of counters. The counter identifier is unique within its group.
      */
@@ -483,6 +483,14 @@ public interface TaskManager {
      */
     @NotNull String getNodeId();
 
+    /**
+     * Records a write of a task object done by the current node outside the task manager, e.g. when managing buckets
+     * or activity counters. Used for monitoring the overhead of task state maintenance; the numbers are available
+     * in the local scheduler information (see {@link #getLocalSchedulerInformation(OperationResult)}).
+     */
+    @Experimental
+    void recordTaskWrite();
+
     /**
      * Checks whether supplied node is the current node.
      *
@@ -36,9 +36,22 @@ public class RunningTaskQuartzImpl extends TaskQuartzImpl implements RunningTask
 
     private static final long DEFAULT_OPERATION_STATS_UPDATE_INTERVAL = 3000L;
 
+    /**
+     * The interval of storing statistics is stretched so that the storing takes at most 1/N of the wall clock time.
+     * The duration of the store operation reflects both the size of the task object and the current load
+     * of the repository.
+     */
+    private static final int ADAPTIVE_INTERVAL_FACTOR = 20;
+
+    /** Upper limit for the adaptive interval. The configured interval, if greater, takes precedence. */
+    private static final long MAX_ADAPTIVE_INTERVAL = 60000L;
+
     private long operationStatsUpdateInterval = DEFAULT_OPERATION_STATS_UPDATE_INTERVAL;
     private volatile Long lastOperationStatsUpdateTimestamp;
 
+    /** How long did the last storing of the statistics take (in milliseconds)? */
+    private volatile long lastOperationStatsUpdateDuration;
+
     /**
      * Root of the task hierarchy. It is not guaranteed to be current. It is initialized when the task is started.
      * Can even point to the this task object.
@@ -215,7 +228,7 @@ public class RunningTaskQuartzImpl extends TaskQuartzImpl implements RunningTask
             throws SchemaException, ObjectNotFoundException {
         Long lastUpdateTimestamp = lastOperationStatsUpdateTimestamp;
         if (lastUpdateTimestamp != null &&
-                System.currentTimeMillis() - lastUpdateTimestamp <= operationStatsUpdateInterval) {
+                System.currentTimeMillis() - lastUpdateTimestamp <= getEffectiveOperationStatsUpdateInterval()) {
             return false;
         } else {
             // This is a workaround to stop multiple worker threads updating the stats concurrently.
@@ -236,8 +249,18 @@ public class RunningTaskQuartzImpl extends TaskQuartzImpl implements RunningTask
         }
     }
 
+    /**
+     * The configured interval, stretched if the storing of statistics takes too long.
+     * See {@link #ADAPTIVE_INTERVAL_FACTOR}.
+     */
+    private long getEffectiveOperationStatsUpdateInterval() {
+        long adaptiveInterval = Math.min(lastOperationStatsUpdateDuration * ADAPTIVE_INTERVAL_FACTOR, MAX_ADAPTIVE_INTERVAL);
+        return Math.max(operationStatsUpdateInterval, adaptiveInterval);
+    }
+
     @Override
     public void storeStatisticsIntoRepository(OperationResult result) throws SchemaException, ObjectNotFoundException {
+        long start = System.currentTimeMillis();
         addPendingModification(createContainerDeltaIfPersistent(TaskType.F_OPERATION_STATS, getStoredOperationStatsOrClone()));
         addPendingModification(createPropertyDeltaIfPersistent(TaskType.F_PROGRESS, getLegacyProgress()));
         addPendingModification(createPropertyDeltaIfPersistent(TaskType.F_EXPECTED_TOTAL, getExpectedTotal()));
@@ -247,7 +270,9 @@ public class RunningTaskQuartzImpl extends TaskQuartzImpl implements RunningTask
         } catch (ObjectAlreadyExistsException e) {
             throw new SystemException("Unexpected ObjectAlreadyExistsException: " + e.getMessage(), e);
         }
-        lastOperationStatsUpdateTimestamp = System.currentTimeMillis();
+        long end = System.currentTimeMillis();
+        lastOperationStatsUpdateTimestamp = end;
+        lastOperationStatsUpdateDuration = end - start;
     }
 
     @Override
@@ -33,6 +33,7 @@ import com.evolveum.midpoint.task.quartzimpl.nodes.NodeRetriever;
 import com.evolveum.midpoint.task.quartzimpl.quartz.LocalScheduler;
 import com.evolveum.midpoint.task.quartzimpl.quartz.TaskSynchronizer;
 import com.evolveum.midpoint.task.quartzimpl.run.HandlerExecutor;
+import com.evolveum.midpoint.task.quartzimpl.statistics.TaskWritesMonitor;
 import com.evolveum.midpoint.task.quartzimpl.tasks.TaskInstantiator;
 import com.evolveum.midpoint.task.quartzimpl.tasks.TaskPersister;
 import com.evolveum.midpoint.task.quartzimpl.tasks.TaskRetriever;
@@ -68,6 +69,7 @@ public class TaskBeans {
     @Autowired public LightweightTaskManager lightweightTaskManager;
     @Autowired public TaskSynchronizer taskSynchronizer;
     @Autowired public ClusterStatusInformationRetriever clusterStatusInformationRetriever;
+    @Autowired public TaskWritesMonitor taskWritesMonitor;
     //endregion
 
     //region Outside beans
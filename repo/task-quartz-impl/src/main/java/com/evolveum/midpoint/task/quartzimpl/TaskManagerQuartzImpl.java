@@ -819,6 +819,11 @@ public class TaskManagerQuartzImpl implements TaskManager, SystemConfigurationCh
         return configuration.getNodeId();
     }
 
+    @Override
+    public void recordTaskWrite() {
+        beans.taskWritesMonitor.recordTaskWrite();
+    }
+
     @Override
     public SchedulerInformationType getLocalSchedulerInformation(OperationResult parentResult) {
         OperationResult result = parentResult.createSubresult(OP_GET_LOCAL_SCHEDULER_INFORMATION);
@@ -408,6 +408,7 @@ public class TaskQuartzImpl implements Task {
         if (isPersistent() && !deltas.isEmpty()) {
             try {
                 beans.repositoryService.modifyObject(TaskType.class, getOid(), deltas, parentResult);
+                beans.taskWritesMonitor.recordTaskWrite();
             } finally {
                 synchronizeWithQuartzIfNeeded(deltas, parentResult);
             }
@@ -419,6 +420,7 @@ public class TaskQuartzImpl implements Task {
             throws ObjectNotFoundException, SchemaException, ObjectAlreadyExistsException, PreconditionViolationException {
         if (isPersistent()) {
             beans.repositoryService.modifyObject(TaskType.class, getOid(), deltas, precondition, null, result);
+            beans.taskWritesMonitor.recordTaskWrite();
         }
     }
 
@@ -427,6 +429,7 @@ public class TaskQuartzImpl implements Task {
             throws ObjectAlreadyExistsException, ObjectNotFoundException, SchemaException {
         if (isPersistent()) {
             beans.repositoryService.modifyObject(TaskType.class, getOid(), CloneUtil.cloneCollectionMembers(itemDeltas), result);
+            beans.taskWritesMonitor.recordTaskWrite();
         }
         applyModificationsTransient(itemDeltas);
         synchronizeWithQuartzIfNeeded(pendingModifications, result);
@@ -11,6 +11,7 @@ import java.util.Collection;
 import java.util.Set;
 
 import com.evolveum.midpoint.task.quartzimpl.quartz.LocalScheduler;
+import com.evolveum.midpoint.task.quartzimpl.statistics.TaskWritesMonitor;
 
 import com.evolveum.midpoint.task.quartzimpl.tasks.TaskRetriever;
 
@@ -46,6 +47,7 @@ public class LocalExecutionManager {
     @Autowired private LocalNodeState localNodeState;
     @Autowired private TaskManagerQuartzImpl taskManager;
     @Autowired private TaskRetriever taskRetriever;
+    @Autowired private TaskWritesMonitor taskWritesMonitor;
 
     public SchedulerInformationType getLocalSchedulerInformation(OperationResult result) {
         SchedulerInformationType info = new SchedulerInformationType();
@@ -58,6 +60,8 @@ public class LocalExecutionManager {
             TaskType task = new TaskType(taskManager.getPrismContext()).oid(oid);
             info.getExecutingTask().add(task);
         }
+        info.setTaskWritesPerMinute(taskWritesMonitor.getWritesPerMinute());
+        info.setTaskWritesTotal(taskWritesMonitor.getTotalWrites());
         result.computeStatus();
         return info;
     }
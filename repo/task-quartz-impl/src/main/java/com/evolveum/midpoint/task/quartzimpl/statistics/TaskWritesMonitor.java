@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.task.quartzimpl.statistics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts writes of task objects done by this node, in order to provide "task writes per minute" metric.
+ *
+ * The counts are kept in a ring of per-second slots covering the last minute. Each slot is tagged with
+ * the second it belongs to, so stale slots are ignored (and lazily reset) without any background thread.
+ *
+ * Thread safety: Slots are updated using atomic operations. Concurrent reset and increment of the same slot
+ * may lose an increment or two; this is acceptable for a monitoring metric.
+ */
+@Component
+public class TaskWritesMonitor {
+
+    private static final int SLOTS = 60;
+
+    /** Number of writes in given slot. */
+    private final AtomicLongArray counts = new AtomicLongArray(SLOTS);
+
+    /** Epoch second to which given slot belongs. */
+    private final AtomicLongArray seconds = new AtomicLongArray(SLOTS);
+
+    /** Total number of task writes since the start of this node. */
+    private final AtomicLong total = new AtomicLong();
+
+    /** Records a write of a task object to the repository. */
+    public void recordTaskWrite() {
+        long now = currentSecond();
+        int slot = (int) (now % SLOTS);
+        long slotSecond = seconds.get(slot);
+        if (slotSecond != now && seconds.compareAndSet(slot, slotSecond, now)) {
+            counts.set(slot, 0);
+        }
+        counts.incrementAndGet(slot);
+        total.incrementAndGet();
+    }
+
+    /** Returns the number of task writes done by this node in the last minute. */
+    public long getWritesPerMinute() {
+        long now = currentSecond();
+        long sum = 0;
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (now - seconds.get(slot) < SLOTS) {
+                sum += counts.get(slot);
+            }
+        }
+        return sum;
+    }
+
+    /** Returns the number of task writes done by this node since its start. */
+    public long getTotalWrites() {
+        return total.get();
+    }
+
+    private static long currentSecond() {
+        return System.currentTimeMillis() / 1000;
+    }
+}
@@ -206,6 +206,37 @@ public class TestMiscellaneous extends AbstractTaskManagerTest {
                 .isEqualTo("resource1");
     }
 
+    /**
+     * Task writes done by the task manager itself as well as the ones recorded by the clients
+     * are visible in the local scheduler information.
+     */
+    @Test
+    public void test220TaskWritesMonitoring() throws Exception {
+        OperationResult result = createOperationResult();
+
+        given("a stored task and the current task writes statistics");
+        TaskType taskBean = new TaskType()
+                .name("task-writes")
+                .ownerRef(SystemObjectsType.USER_ADMINISTRATOR.value(), UserType.COMPLEX_TYPE);
+        String oid = taskManager.addTask(taskBean.asPrismObject(), null, result);
+        Task task = taskManager.getTaskPlain(oid, result);
+        SchedulerInformationType before = taskManager.getLocalSchedulerInformation(result);
+
+        when("the task is modified and an external write is recorded");
+        task.setDescriptionImmediate("changed", result);
+        taskManager.recordTaskWrite();
+
+        then("both writes are counted");
+        SchedulerInformationType after = taskManager.getLocalSchedulerInformation(result);
+        assertThat(after.getTaskWritesTotal())
+                .as("total task writes")
+                .isGreaterThanOrEqualTo(before.getTaskWritesTotal() + 2);
+        assertThat(after.getTaskWritesPerMinute())
+                .as("task writes per minute")
+                .isGreaterThanOrEqualTo(2)
+                .isLessThanOrEqualTo(after.getTaskWritesTotal());
+    }
+
     private String serialize(TaskExecutionLimitationsType parsed) throws SchemaException {
         return getPrismContext().xmlSerializer().serializeRealValue(parsed, new QName(SchemaConstants.NS_C, "value"));
     }